@@ -45,6 +45,17 @@ It assumes that your file is <a href="http://en.wikipedia.org/wiki/Comma-separat
 each item.</td>
 </tr>
 
+<tr valign=top>
+<td><b>Threads:</b></td>
+<td><%=currPage.textField("threads", 10, 10, "1")%></td>
+<td>The number of chunks to split the file into and parse at the same time. The
+file is split between records, so quoted fields that contain newlines are kept whole,
+but the rows do not reach the pipeline in file order. Requires an encoding such as UTF-8
+or ISO 8859-1. Set the pipeline pool size to at least the number of threads. Defaults to 1.</td>
+</tr>
+
+<%@ include file = "../WEB-INF/includes/linkqueue.jsp" %>
+
 
 <tr><td class="cmdlink" colspan="3"><a href="javascript:document.config_form.submit()">Next &gt;&gt;</a></td></tr>
 
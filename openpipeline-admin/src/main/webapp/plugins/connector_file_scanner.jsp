@@ -60,7 +60,22 @@ directories specified in Files/Directories above.</td>
 <tr valign="top">
 <td><b>Compressed Files:</b></td><td><%=currPage.checkbox("compressed-files", true)%></td>
 <td>If checked, the crawler will look for files inside files
-with a .zip extension.</td>
+with a .zip, .tar, .tar.gz or .tgz extension.</td>
+</tr>
+
+<tr valign="top">
+<td><b>Max Container Depth:</b></td><td><%=currPage.textField("max-container-depth", 10, 10, GenericScanner.DEFAULT_MAX_CONTAINER_DEPTH + "")%></td>
+<td>How deeply compressed files inside compressed files are opened. 1 opens only
+the compressed files themselves, 2 also opens compressed files found inside them,
+and so on. Defaults to 2.</td>
+</tr>
+
+<tr valign="top">
+<td><b>Split Multi-Item XML:</b></td><td><%=currPage.checkbox("split-xml", false)%></td>
+<td>If checked, XML files that start with an &lt;items&gt; tag are split into
+items by the connector. Each item is checked for changes separately, so only the
+items that changed are processed, and items removed from the file are deleted.
+Change detection needs a link queue, and an item_id on each item.</td>
 </tr>
 
 <tr valign="top">
@@ -68,6 +83,27 @@ with a .zip extension.</td>
 <td>Enter the size of the largest file to process, in megabytes. Defaults to 100mb.</td>
 </tr>
 
+<tr valign="top">
+<td><b>Walker Threads:</b></td><td><%=currPage.textField("walker-threads", 10, 10, "1")%></td>
+<td>The number of threads that read directories. On a network file system with
+many files, reading several directories at once can speed up the scan considerably.
+With more than one thread, files are processed in no particular order. Defaults to 1.</td>
+</tr>
+
+<tr valign="top">
+<td><b>Watch:</b></td><td><%=currPage.checkbox("watch", false)%></td>
+<td>If checked, the connector does not end after the scan. It keeps running and
+processes files as soon as they are created, modified or deleted. Stop the job
+to end it.</td>
+</tr>
+
+<tr valign="top">
+<td><b>Watch Delay (ms):</b></td><td><%=currPage.textField("watch-delay", 10, 10, "1000")%></td>
+<td>In watch mode, changes that arrive within this many milliseconds of each
+other are processed together. A file that is still being written is processed
+once, after it settles. Defaults to 1000.</td>
+</tr>
+
 <tr valign="top">
 <td><b>Doc Logging Count:</b></td><td><%=currPage.textField("doc-logging-count")%></td>
 <td>If empty, all documents indexed will be logged. If filled in with a number
@@ -75,7 +75,29 @@ if (currPage.redirect()) {
 		</i>
 		</td>
 	</tr>
-	
+
+	<tr valign="top">
+		<td><b>Endpoint:</b></td>
+		<td><%=currPage.textField("endpoint", 40)%></td>
+		<td>Optional. The URL of an S3-compatible service to use instead of Amazon S3, for example,
+		http://localhost:9000. Buckets are addressed by path rather than by host name.</td>
+	</tr>
+
+	<tr valign="top">
+		<td><b>Prefetch:</b></td>
+		<td><%=currPage.textField("prefetch", 10, 10, "0")%></td>
+		<td>The number of files to download at the same time, ahead of the pipeline. Fetching
+		files one at a time is limited by the round trip to S3, so a value of 8 or 16 can speed up
+		crawls of many small files. 0 turns prefetching off. Defaults to 0.</td>
+	</tr>
+
+	<tr valign="top">
+		<td><b>Prefetch Memory (MB):</b></td>
+		<td><%=currPage.textField("prefetch-max-mb", 10, 10, "64")%></td>
+		<td>The most content, in megabytes, to hold in memory for files that have been
+		prefetched but not yet processed. Files larger than this are read directly. Defaults to 64.</td>
+	</tr>
+
 	<%@ include file = "../WEB-INF/includes/linkqueue.jsp" %>
 	
 	<tr><td class="cmdlink" colspan="3"><a href="javascript:document.config_form.submit()">Next &gt;&gt;</a></td></tr>
@@ -140,6 +140,67 @@ See the top of this page for an explanation.
 </td>
 </tr>
 
+<tr valign=top>
+<td><b>Partitions:</b></td>
+<td><%=currPage.textField("partitions", 10, 10, "1")%></td>
+<td>The number of ranges of the primary key to scan at the same time, each on its
+own connection. Requires a numeric primary key and the Bounds SQL below. When this
+is greater than 1, the Index SQL must take a second parameter for the upper end of
+the range, in this form:<br/><br/>
+<p><i>
+WHERE [primary key column] &gt; ? AND [primary key column] &lt;= ?<br/>
+</i></p>
+Set the pipeline pool size to at least the number of partitions, so each partition
+has a pipeline to feed. Defaults to 1.
+</td>
+</tr>
+
+<tr valign=top>
+<td><b>Bounds SQL:</b></td>
+<td><%=currPage.textArea("bounds-sql", "40", "3", false)%></td>
+<td>A select statement that returns the lowest and highest primary key, for example,
+SELECT MIN(id), MAX(id) FROM mytable. The range between them is divided evenly
+among the partitions.</td>
+</tr>
+
+<tr valign=top>
+<td><b>Watermark Column:</b></td>
+<td><%=currPage.textField("watermark-col")%></td>
+<td>Optional. A column that goes up every time a row changes, for example, an
+updated_at timestamp or a row version number. If set, the crawler fetches only the
+rows that changed since the last run, using the Changes SQL below instead of the
+Index SQL, and does not use the link queue. The highest value seen is saved
+after each run in config/watermarks/[job name].xml. Delete that file to reload everything.
+</td>
+</tr>
+
+<tr valign=top>
+<td><b>Changes SQL:</b></td>
+<td><%=currPage.textArea("changes-sql", "40", "5", false)%></td>
+<td>A select statement that returns the rows that changed since the last run, including
+the watermark column. Must be in the following form:<br/><br/>
+<p><i>
+SELECT [list of columns]<br/>
+FROM [table]<br/>
+WHERE [watermark column] &gt; ?<br/>
+ORDER BY [watermark column]<br/>
+</i></p>
+The ORDER BY is optional, but with it, a row that fails in the pipeline holds the
+watermark just below itself, so only the rows from that one on are fetched again on
+the next run. Without it, all the changes are fetched again. The watermark is saved only
+after every item has gone all the way through the pipeline.
+</td>
+</tr>
+
+<tr valign=top>
+<td><b>Deletes SQL:</b></td>
+<td><%=currPage.textArea("deletes-sql", "40", "3", false)%></td>
+<td>Optional. A select statement that returns the itemIds of the rows deleted since the
+last run, usually from a tombstone table, for example,
+SELECT id, deleted_at FROM deleted_rows WHERE deleted_at &gt; ?. If a second
+column is returned, it counts toward the watermark.</td>
+</tr>
+
 <%@ include file = "../WEB-INF/includes/linkqueue.jsp" %>
 
 <tr><td class="cmdlink" colspan="3"><a href="javascript:document.config_form.submit()">Next &gt;&gt;</a></td></tr>
@@ -0,0 +1,38 @@
+<%@ page import = "org.openpipeline.server.pages.*, org.openpipeline.pipeline.stage.AsyncBoundary" %>
+<%
+ConfigureStagesPage currPage = (ConfigureStagesPage)session.getAttribute("currpage");
+%>
+<table>
+	<tr>
+		<th colspan="3">Async Boundary</th>
+	</tr>
+
+	<tr valign="top">
+		<td colspan="3">Runs the stages after this one on a separate thread. Items are
+		copied into a fixed-size buffer, and the connector moves on to the next item
+		without waiting for the rest of the pipeline. Place this stage in front of a
+		slow stage, like an Item Sender or a Disk Writer.</td>
+	</tr>
+
+	<tr valign="top">
+		<td><b>Buffer size:</b></td>
+		<td><%=currPage.textField("ring-size", 10, 10, AsyncBoundary.DEFAULT_RING_SIZE + "")%></td>
+		<td>The number of items that can wait for the rest of the pipeline.</td>
+	</tr>
+
+	<tr valign="top">
+		<td><b>Full timeout:</b></td>
+		<td><%=currPage.textField("full-timeout", 10, 10, "0")%></td>
+		<td>When the buffer is full, the connector waits for a free slot. If this is set
+		to a number of milliseconds, the connector waits that long and then drops the item
+		with an error. 0 means wait indefinitely.</td>
+	</tr>
+
+	<tr valign="top">
+		<td><b>Buffer binary:</b></td>
+		<td><%=currPage.checkbox("buffer-binary", true)%></td>
+		<td>Read any binary content into memory before handing the item off. Leave this
+		checked unless the connector's input streams stay open after the item is submitted.</td>
+	</tr>
+
+</table>
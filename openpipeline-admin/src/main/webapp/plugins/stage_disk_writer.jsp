@@ -32,5 +32,12 @@ ConfigureStagesPage currPage = (ConfigureStagesPage)session.getAttribute("currpa
 		<td><%=currPage.checkbox("include-binary", true)%></td>
 		<td>If the item carries any binary content, write it to disk as a file alongside the .xml.</td>
 	</tr>
+
+	<tr valign="top">
+		<td><b>Combine batches:</b></td>
+		<td><%=currPage.checkbox("combine-batches", false)%></td>
+		<td>If the job passes items to the pipeline in batches, write each batch to a single
+		.xml file, named after the first item in the batch.</td>
+	</tr>
 	
 </table>
\ No newline at end of file
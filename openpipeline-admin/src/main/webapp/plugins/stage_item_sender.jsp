@@ -28,4 +28,18 @@ ConfigureStagesPage currPage = (ConfigureStagesPage)session.getAttribute("currpa
 		<td>A remote destination will be selected for sending an item based on the selected approach. (Default: <i>Round Robin</i>)<br>
 		</td>
 	</tr>
+
+	<tr valign="top">
+		<td><b>Wire Format:</b></td>
+		<td><%=currPage.selectField("wire-format", "XML,Binary", "xml,binary")%></td>
+		<td>The format used to send items. Binary is much faster to encode and decode, and
+		keeps token annotations. The remote servers must be running a version that accepts it. (Default: <i>XML</i>)<br>
+		</td>
+	</tr>
+
+	<tr valign="top">
+		<td><b>Send Binary Content:</b></td>
+		<td><%=currPage.checkbox("send-binary", false)%></td>
+		<td>In binary format, also send the content of any attached file (the DocBinary).</td>
+	</tr>
 </table>
\ No newline at end of file
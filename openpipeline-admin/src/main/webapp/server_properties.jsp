@@ -1,7 +1,7 @@
 <% 
 String pageTitle = "Server Properties"; 
 ServerPropertiesPage currPage = new ServerPropertiesPage();
-String [] props = {"debug"};
+String [] props = {"debug", "binary-memory-budget", "binary-spill-threshold", "binary-spill-dir", "item-memory-limit"};
 currPage.setPropertiesToSave(props);
 currPage.processPage(pageContext);
 %>
@@ -11,6 +11,10 @@ currPage.processPage(pageContext);
 
 Server server = Server.getServer();
 String debugChecked = (server.getDebug() ? " checked " : "");
+String memoryBudget = server.getProperty("binary-memory-budget", "");
+String spillThreshold = server.getProperty("binary-spill-threshold", "");
+String spillDir = server.getProperty("binary-spill-dir", "");
+String itemLimit = server.getProperty("item-memory-limit", "");
 
 %>
 <br>
@@ -18,6 +22,10 @@ String debugChecked = (server.getDebug() ? " checked " : "");
 <table>
 
 <tr><td nowrap>Debug:</td><td><input type="checkbox" name="debug" <%=debugChecked%> value="Y"></td></tr>
+<tr><td nowrap>Item memory limit (bytes):</td><td><input type="text" name="item-memory-limit" value="<%=itemLimit%>"> Connectors wait when items in flight exceed this. Default half the heap, 0 for no limit.</td></tr>
+<tr><td nowrap>Binary memory budget (bytes):</td><td><input type="text" name="binary-memory-budget" value="<%=memoryBudget%>"> Document content held in memory by all jobs. Default 64MB.</td></tr>
+<tr><td nowrap>Binary spill threshold (bytes):</td><td><input type="text" name="binary-spill-threshold" value="<%=spillThreshold%>"> Larger documents go to temp files. Default 1MB.</td></tr>
+<tr><td nowrap>Binary spill directory:</td><td><input type="text" name="binary-spill-dir" value="<%=spillDir%>"> Blank for the system temp directory.</td></tr>
 
 <tr><td nowrap>&nbsp;</td><td><input type="submit" name="update" value="Update"></td></tr>
 <tr><td colspan="2">&nbsp;</td></tr>
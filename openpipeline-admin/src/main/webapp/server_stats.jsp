@@ -1,3 +1,4 @@
+<%@ page import = "org.openpipeline.scheduler.*, org.openpipeline.pipeline.stage.StageStats"%> 
 <% 
 String pageTitle = "Server Statistics"; 
 ServerStatsPage currPage = new ServerStatsPage();
@@ -15,9 +16,55 @@ currPage.processPage(pageContext);
 <tr><td nowrap>Uptime:</td><td><%=currPage.getUptime()%></td></tr>
 <tr><td nowrap>Memory usage:</td><td><%=currPage.getMemUsage()%></td></tr>
 <tr><td nowrap>Max memory allocated to JVM:</td><td><%=currPage.getMaxMemory()%></td></tr>
+<tr><td nowrap>Items in flight:</td><td><%=currPage.getItemMemoryUsage()%></td></tr>
+<tr><td nowrap>Connector waits for memory:</td><td><%=currPage.getItemAdmissionWaits()%></td></tr>
+<tr><td nowrap>Binary content in memory:</td><td><%=currPage.getBinaryMemoryUsage()%></td></tr>
+<tr><td nowrap>Binaries spilled to disk:</td><td><%=currPage.getBinarySpills()%></td></tr>
 <tr><td nowrap>Number of processors:</td><td><%=currPage.getAvailProcessors()%></td></tr>
 <tr><td valign="top">Class Path:</td><td><%=currPage.getClassPath()%></td></tr>
 
 </table>
 </form>
+
+<% if (!currPage.getJobsWithStats().isEmpty()) { %>
+<br>
+<b>Pipeline Statistics</b>
+<p>Self time is the time spent in a stage, not counting the stages after it.
+Times are in milliseconds or microseconds per item. The same numbers are available 
+as XML at <a href="stage_stats">stage_stats</a>.</p>
+
+<% for (JobInfo job: currPage.getJobsWithStats()) { %>
+<a name="<%=job.getJobName()%>"></a>
+<table id="config_table">
+<tr>
+	<th colspan="9"><%=job.getJobName()%><%=job.getIsRunning() ? " (running)" : " (last run)"%></th>
+</tr>
+<tr>
+	<th>Stage</th>
+	<th>Items in</th>
+	<th>Items out</th>
+	<th>Errors</th>
+	<th>Data in</th>
+	<th>Self time</th>
+	<th>Mean</th>
+	<th>99th pct</th>
+	<th>Items/sec</th>
+</tr>
+<% for (StageStats stats: job.getStageStats()) { %>
+<tr>
+	<td><%=stats.getStageName()%></td>
+	<td><%=stats.getItemsIn()%></td>
+	<td><%=stats.getItemsOut()%></td>
+	<td><%=stats.getErrors()%></td>
+	<td><%=currPage.formatBytes(stats.getBytesIn())%></td>
+	<td><%=currPage.formatNanos(stats.getSelfNanos())%></td>
+	<td><%=currPage.formatMicros(stats.getMeanSelfMicros())%></td>
+	<td><%=currPage.formatMicros(stats.getSelfMicrosPercentile(0.99))%></td>
+	<td><%=currPage.formatRate(stats)%></td>
+</tr>
+<% } %>
+</table>
+<br>
+<% } %>
+<% } %>
 <%@ include file = "WEB-INF/includes/footer.jsp" %>
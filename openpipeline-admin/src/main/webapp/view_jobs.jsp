@@ -31,6 +31,7 @@ This table displays all of the jobs in the system and their current status.
 	<th>Last Message</th>
 	<th>Warnings</th>
 	<th>Errors</th>
+	<th>Stats</th>
 	<th>Action</th>
 	<th>Log</th>
 	<th class="center">Remove</th>
@@ -60,6 +61,11 @@ This table displays all of the jobs in the system and their current status.
 		removeLink = "javascript:confirmRemove('" + job.getJobName() + "', 'view_jobs.jsp?action=remove" + jobLink + "')";
 	}
 	
+	String statsLink = "";
+	if (!job.getStageStats().isEmpty()) {
+		statsLink = "<a href=\"server_stats.jsp#" + job.getJobName() + "\">stats</a>";
+	}
+	
 	String setScheduleLink = "set_schedule.jsp?jobname=" + job.getJobName();
 	String startJobLink = "";
 	String endJobLink = "";
@@ -76,6 +82,7 @@ This table displays all of the jobs in the system and their current status.
 	  <td style='vertical-align: top'><%=lastMessage%></td>
 	  <td><%=warningCount%></td>
 	  <td><%=errorCount%></td>
+	  <td><%=statsLink%></td>
 	  <td><a href="<%=startStopLink%>"><%=startStopText%></a></td>
 	  <td><a href="<%=job.getLogLink()%>">log</a></td>
 	  <td class="center"><a href="<%=removeLink%>">x</a></td>
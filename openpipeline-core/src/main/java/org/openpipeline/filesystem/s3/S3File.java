@@ -9,6 +9,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 
@@ -44,6 +45,12 @@ public class S3File {
 	private boolean exists;
 	private boolean connected;
 
+	// set if this file came from a directory listing
+	private S3ObjectSummary summary;
+	// true if this file or directory was seen in a listing, so it is known
+	// to exist without asking S3 again
+	private boolean listed;
+
 	// Used for listing the files and metadata
 	private ListObjectsRequest request;
 
@@ -65,6 +72,15 @@ public class S3File {
 		this.s3Client = s3Client;
 	}
 
+	/**
+	 * Create a file from an entry in a directory listing.
+	 */
+	S3File(S3ObjectSummary summary, AmazonS3Client s3Client) {
+		this(summary.getKey(), summary.getBucketName(), s3Client);
+		this.summary = summary;
+		this.listed = true;
+	}
+
 	private void connect() throws IOException {
 
 		if (connected) {
@@ -175,23 +191,34 @@ public class S3File {
 		return fullPath.substring(0, pos + 1);
 	}
 
+	/**
+	 * Returns true if the file or directory exists. A file that came from a
+	 * directory listing is assumed to exist, as it did when it was listed.
+	 */
 	public boolean exists() throws IOException {
+		if (listed) {
+			return true;
+		}
 		connected = false;
 		connect();
 		return exists;
 	}
 
 	public boolean isDirectory() throws IOException {
-		connect();
+		if (!listed) {
+			connect();
+		}
 		return fullPath.endsWith("/");
 	}
 
 	public boolean isFile() throws IOException {
-		connect();
 		return !isDirectory();
 	}
 
 	public long lastModified() throws IOException {
+		if (summary != null) {
+			return summary.getLastModified().getTime();
+		}
 		if (exists() && metadata != null) {
 			return metadata.getLastModified().getTime();
 		}
@@ -199,12 +226,32 @@ public class S3File {
 	}
 
 	public long length() throws IOException {
+		if (summary != null) {
+			return summary.getSize();
+		}
 		if (exists() && isFile()) {
 			return metadata.getContentLength();
 		}
 		return 0;
 	}
 
+	/**
+	 * Returns the ETag of the file, which changes when the content changes.
+	 * Uses the value from the directory listing if there is one, and
+	 * otherwise fetches the metadata.
+	 * 
+	 * @return the ETag, or null if this is a directory
+	 */
+	public String getETag() throws IOException {
+		if (summary != null) {
+			return summary.getETag();
+		}
+		if (getMetadata() != null) {
+			return metadata.getETag();
+		}
+		return null;
+	}
+
 	/**
 	 * Deletes the S3File. If the S3File is a folder, deletes all
 	 * sub-directories and files first.
@@ -307,89 +354,121 @@ public class S3File {
 		}
 
 		if (isDirectory()) {
-			try {
+			List<S3File> buffer = new ArrayList<S3File>();
 
-				List<S3File> buffer = new ArrayList<S3File>();
-
-				ObjectListing list = null;
-				while (true) {
-
-					// Retrieve a list of objects with the name prefix root/path
-					if (list == null) {
-						request = new ListObjectsRequest()
-								.withBucketName(bucket)
-								.withDelimiter(delimiter).withPrefix(fullPath);
-
-						list = s3Client.listObjects(request);
-
-					} else {
-						// continue if the previous list was truncate
-						list = s3Client.listNextBatchOfObjects(list);
-					}
-
-					// Collect the results
-					List<S3ObjectSummary> summaries = list.getObjectSummaries();
-					Iterator<S3ObjectSummary> iter = summaries.iterator();
-
-					while (iter.hasNext()) {
-
-						S3ObjectSummary obj = iter.next();
-						String name = obj.getKey();
-
-						if (name.startsWith(fullPath)) {
-							name = name.substring(fullPath.length());
-						}
-
-						if (name.trim().length() > 0 && !name.equals("/")) {
-
-							S3File newFile = new S3File(fullPath + name,
-									bucket, s3Client);
-							buffer.add(newFile);
-						}
-					}
-
-					// Get the list of subdirs, in s3 subdirs are just filename
-					// prefixes
-					List<String> prefixes = list.getCommonPrefixes();
-					Iterator<String> i2 = prefixes.iterator();
-					while (i2.hasNext()) {
-						String name = i2.next();
-						if (name.startsWith(fullPath)) {
-							name = name.substring(fullPath.length());
-						}
-						if (name.trim().length() > 0 && !name.equals("/")) {
-
-							S3File newFile = new S3File(fullPath + name,
-									bucket, s3Client);
-							buffer.add(newFile);
-						}
-					}
-
-					if (!list.isTruncated()) {
-						break;
-					}
-				}
+			ObjectListing list = null;
+			while (true) {
+				list = listPage(list);
 
-				int sz = buffer.size();
-				S3File[] remoteFiles = buffer.toArray(new S3File[sz]);
-				return remoteFiles;
-
-			} catch (AmazonServiceException e) {
-				if (e.getErrorType().equals(
-						AmazonServiceException.ErrorType.Service)) {
-					// request is valid, service side error, can retry
-					throw new IOException(e);
-				} else {
-					// client side error: invalid access key or parameter, throw
-					// RuntimeException
-					throw e;
+				// Collect the results
+				buffer.addAll(Arrays.asList(toFiles(list)));
+
+				if (!list.isTruncated()) {
+					break;
 				}
 			}
+
+			int sz = buffer.size();
+			S3File[] remoteFiles = buffer.toArray(new S3File[sz]);
+			return remoteFiles;
+
 		} else {
 			return null;
 		}
 	}
 
+	/**
+	 * Fetch one page of the listing of this directory.
+	 * 
+	 * @param previous
+	 *            the previous page, or null to fetch the first one
+	 * @return the page
+	 * @throws IOException
+	 *             if a service side error occurs
+	 * @throws RuntimeException
+	 *             on any other S3 error
+	 */
+	ObjectListing listPage(ObjectListing previous) throws IOException {
+		try {
+			if (previous == null) {
+				// Retrieve a list of objects with the name prefix root/path
+				ListObjectsRequest request = new ListObjectsRequest()
+						.withBucketName(bucket).withDelimiter(delimiter)
+						.withPrefix(fullPath);
+				return s3Client.listObjects(request);
+
+			} else {
+				// continue if the previous list was truncated
+				return s3Client.listNextBatchOfObjects(previous);
+			}
+
+		} catch (AmazonServiceException e) {
+			if (e.getErrorType().equals(
+					AmazonServiceException.ErrorType.Service)) {
+				// request is valid, service side error, can retry
+				throw new IOException(e);
+			} else {
+				// client side error: invalid access key or parameter, throw
+				// RuntimeException
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * Return the files and sub-directories in one page of the listing of this
+	 * directory. The files carry the metadata from the listing.
+	 */
+	S3File[] toFiles(ObjectListing list) {
+		List<S3File> buffer = new ArrayList<S3File>();
+
+		List<S3ObjectSummary> summaries = list.getObjectSummaries();
+		Iterator<S3ObjectSummary> iter = summaries.iterator();
+
+		while (iter.hasNext()) {
+
+			S3ObjectSummary obj = iter.next();
+			String name = obj.getKey();
+
+			if (name.startsWith(fullPath)) {
+				name = name.substring(fullPath.length());
+			}
+
+			if (name.trim().length() > 0 && !name.equals("/")) {
+				buffer.add(new S3File(obj, s3Client));
+			}
+		}
+
+		// Get the list of subdirs, in s3 subdirs are just filename
+		// prefixes
+		List<String> prefixes = list.getCommonPrefixes();
+		Iterator<String> i2 = prefixes.iterator();
+		while (i2.hasNext()) {
+			String name = i2.next();
+			if (name.startsWith(fullPath)) {
+				name = name.substring(fullPath.length());
+			}
+			if (name.trim().length() > 0 && !name.equals("/")) {
+
+				S3File newFile = new S3File(fullPath + name, bucket, s3Client);
+				newFile.listed = true;
+				buffer.add(newFile);
+			}
+		}
+
+		return buffer.toArray(new S3File[buffer.size()]);
+	}
+
+	/**
+	 * Return the entry for this file in the listing of its directory.
+	 * 
+	 * @return the listing entry, or null if this file did not come from a
+	 *         listing, or is a directory
+	 */
+	public S3ObjectSummary getSummary() {
+		return summary;
+	}
+
 	public S3FilesPageIterator getPageIterator() {
 		return new S3FilesPageIterator(this.getFullPath(), s3Client, bucket,
 				delimiter);
@@ -2,12 +2,16 @@ package org.openpipeline.filesystem.s3;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.concurrent.Future;
 
 import org.openpipeline.filesystem.s3.S3File;
 import org.openpipeline.filesystem.s3.S3FileSystem;
 import org.openpipeline.pipeline.connector.filesystem.FileIterator;
 import org.openpipeline.pipeline.connector.filesystem.FileSystem;
 import org.openpipeline.pipeline.item.Item;
+import org.openpipeline.util.FNVHash;
+
+import com.amazonaws.services.s3.model.ObjectListing;
 
 /**
  * Abstract base class for different file systems. Maps to java.util.File. Also
@@ -16,9 +20,22 @@ import org.openpipeline.pipeline.item.Item;
 public class S3FileSystem implements FileSystem {
 
 	private S3File file;
+	private S3Prefetcher prefetcher;
 
 	public S3FileSystem(S3File file) {
+		this(file, null);
+	}
+
+	/**
+	 * @param file
+	 *            the file or directory
+	 * @param prefetcher
+	 *            downloads the files under this directory ahead of time, or
+	 *            null to read each one when it is asked for
+	 */
+	public S3FileSystem(S3File file, S3Prefetcher prefetcher) {
 		this.file = file;
+		this.prefetcher = prefetcher;
 	}
 
 	@Override
@@ -26,22 +43,64 @@ public class S3FileSystem implements FileSystem {
 		return new S3FileIterator(file);
 	}
 
+	/**
+	 * Iterates over a directory one page of the listing at a time. With a
+	 * prefetcher, the next page is listed while this one is processed.
+	 */
 	class S3FileIterator implements FileIterator {
+		private S3File dir;
+		private ObjectListing listing;
+		private Future<ObjectListing> nextListing;
 		private S3File[] files;
 		private int next;
+		private S3File last;
 
-		public S3FileIterator(S3File file) throws IOException {
-			this.files = file.listS3Files();
+		public S3FileIterator(S3File dir) throws IOException {
+			this.dir = dir;
+			listing = dir.listPage(null);
+			startPage();
 		}
 
-		public boolean hasNext() {
-			return next < files.length;
+		private void startPage() {
+			files = dir.toFiles(listing);
+			next = 0;
+			if (prefetcher != null) {
+				if (listing.isTruncated()) {
+					nextListing = prefetcher.listNext(dir, listing);
+				}
+				prefetcher.add(files);
+			}
+		}
+
+		public boolean hasNext() throws IOException {
+			finishLast();
+			while (next == files.length) {
+				if (!listing.isTruncated()) {
+					return false;
+				}
+				if (nextListing != null) {
+					listing = S3Prefetcher.getResult(nextListing);
+					nextListing = null;
+				} else {
+					listing = dir.listPage(listing);
+				}
+				startPage();
+			}
+			return true;
 		}
 
 		public S3FileSystem next() {
-			S3File nextFile = files[next];
+			finishLast();
+			last = files[next];
 			next++;
-			return new S3FileSystem(nextFile);
+			return new S3FileSystem(last, prefetcher);
+		}
+
+		private void finishLast() {
+			if (last != null && prefetcher != null) {
+				prefetcher.done(last);
+			}
+			last = null;
 		}
 	}
 
@@ -60,6 +119,12 @@ public class S3FileSystem implements FileSystem {
 
 	@Override
 	public InputStream getInputStream() throws IOException {
+		if (prefetcher != null) {
+			InputStream in = prefetcher.take(file);
+			if (in != null) {
+				return in;
+			}
+		}
 		return file.getInputStream();
 	}
 
@@ -77,9 +142,42 @@ public class S3FileSystem implements FileSystem {
 		}
 	}
 
+	/**
+	 * Returns a hash of the ETag, size and last-modified time of the file. For
+	 * a file that came from a directory listing, these all come from the
+	 * listing, so checking for changes does not cost a request per file.
+	 */
 	@Override
 	public long getSignature() {
-		return getLastUpdate();
+		try {
+			return getSignature(file);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Returns the signature of an S3 file. See {@link #getSignature()}.
+	 */
+	public static long getSignature(S3File file) throws IOException {
+		String eTag = file.getETag();
+		if (eTag == null) {
+			return file.lastModified();
+		}
+
+		// some services quote the ETag and some don't
+		long hash = FNVHash.OFFSET_BASIS;
+		for (int i = 0; i < eTag.length(); i++) {
+			char ch = eTag.charAt(i);
+			if (ch != '"') {
+				hash = FNVHash.update(hash, ch);
+			}
+		}
+		hash = FNVHash.update(hash, file.length());
+		hash = FNVHash.update(hash, file.lastModified());
+
+		// -1 means "not found" to a link queue
+		return hash == -1 ? 0 : hash;
 	}
 
 	@Override
@@ -0,0 +1,275 @@
+package org.openpipeline.filesystem.s3;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.openpipeline.util.ByteArray;
+
+import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
+
+/**
+ * Downloads S3 objects ahead of the code that reads them. Reading objects one
+ * at a time is limited by the latency of each GET, not by bandwidth, so this
+ * class keeps several GETs in flight on background threads and holds the
+ * content in memory until it is asked for. It also fetches the next page of
+ * a directory listing while the current page is being processed.
+ * <p>
+ * The files in a page of a listing are added when an S3FileSystem iterator
+ * reaches that page. The files of the most recent page go to the front of the
+ * line, because the scanner works depth-first. When the iterator moves past a
+ * file, any content that was fetched for it and not taken is thrown away.
+ * <p>
+ * The total size of the content held here is limited by maxBytes. An object
+ * bigger than that is not prefetched; it is read directly when its turn
+ * comes.
+ * <p>
+ * Except for the downloads themselves, this class is not thread-safe. It is
+ * meant to be used by the single thread that walks the file system.
+ */
+public class S3Prefetcher {
+
+	public static final int DEFAULT_MAX_IN_FLIGHT = 8;
+	public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+	private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * Decides which files are worth prefetching, for example, the ones
+	 * that match the include/exclude patterns.
+	 */
+	public interface Filter {
+		public boolean accept(S3File file);
+	}
+
+	private int maxInFlight;
+	private long maxBytes;
+	private Filter filter;
+	private ExecutorService downloads;
+	private ExecutorService lister;
+
+	// files waiting to be downloaded, in the order they will be needed
+	private LinkedList<S3File> pending = new LinkedList<S3File>();
+	// downloads that have been started and not taken, by key
+	private Map<String, Download> started = new HashMap<String, Download>();
+	private long reservedBytes;
+
+	public S3Prefetcher() {
+		this(DEFAULT_MAX_IN_FLIGHT, DEFAULT_MAX_BYTES);
+	}
+
+	/**
+	 * @param maxInFlight
+	 *            the number of objects to download or hold at one time
+	 * @param maxBytes
+	 *            the maximum number of bytes of content to hold at one time
+	 */
+	public S3Prefetcher(int maxInFlight, long maxBytes) {
+		this.maxInFlight = Math.max(1, maxInFlight);
+		this.maxBytes = maxBytes;
+		downloads = Executors.newFixedThreadPool(this.maxInFlight,
+				new DaemonThreadFactory("s3-prefetch"));
+		lister = Executors.newSingleThreadExecutor(new DaemonThreadFactory(
+				"s3-list"));
+	}
+
+	public void setFilter(Filter filter) {
+		this.filter = filter;
+	}
+
+	/**
+	 * Start fetching the next page of a directory listing.
+	 */
+	Future<ObjectListing> listNext(final S3File dir, final ObjectListing current) {
+		return lister.submit(new Callable<ObjectListing>() {
+			public ObjectListing call() throws Exception {
+				return dir.listPage(current);
+			}
+		});
+	}
+
+	/**
+	 * Add a page of files. They will be needed before any files
+	 * added earlier.
+	 */
+	void add(S3File[] files) {
+		for (int i = files.length - 1; i >= 0; i--) {
+			S3File file = files[i];
+			// directories don't have a summary
+			if (file.getSummary() != null
+					&& (filter == null || filter.accept(file))) {
+				pending.addFirst(file);
+			}
+		}
+		fill();
+	}
+
+	/**
+	 * Return the content of the file, if it was prefetched. Waits for the
+	 * download to finish if necessary.
+	 *
+	 * @return the content, or null if the file was not prefetched and
+	 *         should be read directly
+	 * @throws IOException
+	 */
+	public InputStream take(S3File file) throws IOException {
+		Download download = started.remove(file.getFullPath());
+		if (download == null) {
+			pending.remove(file);
+			fill();
+			return null;
+		}
+
+		try {
+			return getResult(download.future);
+		} finally {
+			reservedBytes -= download.size;
+			fill();
+		}
+	}
+
+	/**
+	 * Called when the iterator moves past a file. If the file's content
+	 * was not taken, it is no longer needed.
+	 */
+	void done(S3File file) {
+		Download download = started.remove(file.getFullPath());
+		if (download != null) {
+			download.cancelled = true;
+			download.future.cancel(false);
+			reservedBytes -= download.size;
+		} else {
+			pending.remove(file);
+		}
+		fill();
+	}
+
+	/**
+	 * Start downloads until there are maxInFlight of them, or there is
+	 * not enough room for the next one.
+	 */
+	private void fill() {
+		while (!pending.isEmpty() && started.size() < maxInFlight) {
+			S3File file = pending.getFirst();
+			long size = file.getSummary().getSize();
+			if (size > maxBytes) {
+				// too big to hold; it gets read directly
+				pending.removeFirst();
+				continue;
+			}
+			if (reservedBytes + size > maxBytes) {
+				break;
+			}
+			pending.removeFirst();
+			reservedBytes += size;
+
+			Download download = new Download(file, size);
+			download.future = downloads.submit(download);
+			started.put(file.getFullPath(), download);
+		}
+	}
+
+	/**
+	 * Return the number of bytes reserved for downloads that are in flight or
+	 * waiting to be taken.
+	 */
+	public long getReservedBytes() {
+		return reservedBytes;
+	}
+
+	/**
+	 * Stop all downloads and release the threads.
+	 */
+	public void close() {
+		for (Download download : started.values()) {
+			download.cancelled = true;
+		}
+		started.clear();
+		pending.clear();
+		reservedBytes = 0;
+		downloads.shutdownNow();
+		lister.shutdownNow();
+	}
+
+	/**
+	 * Wait for a result, and unwrap the exception if there was one.
+	 */
+	static <T> T getResult(Future<T> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+
+	/**
+	 * Reads one object into memory.
+	 */
+	private static class Download implements Callable<InputStream> {
+		private S3File file;
+		private long size;
+		private Future<InputStream> future;
+		private volatile boolean cancelled;
+
+		Download(S3File file, long size) {
+			this.file = file;
+			this.size = size;
+		}
+
+		public InputStream call() throws IOException {
+			ByteArray content = new ByteArray((int) size);
+			InputStream in = file.getInputStream();
+			try {
+				byte[] buf = new byte[READ_BUFFER_SIZE];
+				int len;
+				while ((len = in.read(buf)) > 0) {
+					if (cancelled) {
+						// don't read the rest of the object just to close the connection
+						if (in instanceof S3ObjectInputStream) {
+							((S3ObjectInputStream) in).abort();
+						}
+						return null;
+					}
+					content.append(buf, 0, len);
+				}
+			} finally {
+				in.close();
+			}
+			return content;
+		}
+	}
+
+	private static class DaemonThreadFactory implements ThreadFactory {
+		private String name;
+		private int count;
+
+		DaemonThreadFactory(String name) {
+			this.name = name;
+		}
+
+		public synchronized Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, name + "-" + count++);
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -15,8 +15,13 @@
  ******************************************************************************/
 package org.openpipeline.pipeline.connector;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.openpipeline.pipeline.stage.PipelinePool;
 import org.openpipeline.pipeline.stage.StageList;
+import org.openpipeline.pipeline.stage.StageStats;
 import org.openpipeline.scheduler.PipelineException;
 import org.openpipeline.server.Server;
 import org.openpipeline.util.XMLConfig;
@@ -32,10 +37,11 @@ public abstract class Connector {
 	private Logger logger;
 	private String jobName;
 	private String lastMessage;
-	private int errorCount;
-	private int warningCount;
+	private AtomicInteger errorCount = new AtomicInteger();
+	private AtomicInteger warningCount = new AtomicInteger();
 	private XMLConfig params;
 	private StageList stageList;
+	private PipelinePool pipelinePool;
 	volatile private boolean interrupted;
 	
 	/**
@@ -44,7 +50,7 @@ public abstract class Connector {
 	 * @param msg the error message
 	 */
 	public void error(String msg) {
-		errorCount++;
+		errorCount.incrementAndGet();
 		logger.error(msg);
 	}
 	
@@ -55,7 +61,7 @@ public abstract class Connector {
 	 * @param t any associated exception
 	 */
 	public void error(String msg, Throwable t) {
-		errorCount++;
+		errorCount.incrementAndGet();
 		logger.error(msg, t);
 	}
 	
@@ -88,7 +94,7 @@ public abstract class Connector {
 	 * @return the number of errors
 	 */
 	public int getErrorCount() {
-		return errorCount;
+		return errorCount.get();
 	}
 	
 	/**
@@ -173,22 +179,40 @@ public abstract class Connector {
 	 * @return the number of warnings
 	 */
 	public int getWarningCount() {
-		return warningCount;
+		return warningCount.get();
 	}
 
 	/**
 	 * Performs any necessary initialization. By default, this method
 	 * initializes the logger and the list of stages. Override this method to
 	 * do any connector-specific initialization. 
+	 * <p>
+	 * If the connector supports pipeline pools and the "pipeline-pool-size"
+	 * param is greater than 1, this method creates a PipelinePool instead
+	 * of a single StageList.
 	 * @throws PipelineException 
 	 */
 	public void initialize() throws PipelineException {
 		logger = Server.getServer().getLogger();
 
-		stageList = new StageList();
-		stageList.setConnector(this);
-		stageList.createPipeline(params);
-		stageList.initialize();
+		int poolSize = PipelinePool.DEFAULT_POOL_SIZE;
+		if (params != null) {
+			poolSize = params.getIntProperty("pipeline-pool-size", PipelinePool.DEFAULT_POOL_SIZE);
+		}
+
+		if (poolSize > 1 && pipelinePoolSupported()) {
+			pipelinePool = new PipelinePool();
+			pipelinePool.setConnector(this);
+			pipelinePool.setQueueSize(params.getIntProperty("pipeline-queue-size", PipelinePool.DEFAULT_QUEUE_SIZE));
+			pipelinePool.createPipelines(params, poolSize);
+			pipelinePool.initialize();
+
+		} else {
+			stageList = new StageList();
+			stageList.setConnector(this);
+			stageList.createPipeline(params);
+			stageList.initialize();
+		}
 	}
 
 	/**
@@ -196,6 +220,9 @@ public abstract class Connector {
 	 * @throws PipelineException
 	 */
 	public void close() throws PipelineException {
+		if (pipelinePool != null) {
+			pipelinePool.close();
+		}
 		if (stageList != null) {
 			stageList.close();
 		}
@@ -204,11 +231,63 @@ public abstract class Connector {
 	/**
 	 * Return the StageList for this connector, that is, 
 	 * the pipeline of stages that items will be pushed through.
-	 * @return a fully-configured, initialized list of stages
+	 * @return a fully-configured, initialized list of stages, or null
+	 * if this connector is running a pipeline pool
 	 */
 	public StageList getStageList() {
 		return stageList;
 	}
+
+	/**
+	 * Return the pool of pipelines for this connector, if the job is configured
+	 * to run more than one. See {@link PipelinePool}.
+	 * @return a fully-configured, initialized pool, or null if this connector
+	 * uses a single StageList
+	 */
+	public PipelinePool getPipelinePool() {
+		return pipelinePool;
+	}
+
+	/**
+	 * Return a snapshot of the statistics for each stage in the pipeline,
+	 * in pipeline order. If this connector is running a pipeline pool, the
+	 * stats for the pipelines in the pool are added together.
+	 * @return a list of stats, empty if none are available
+	 */
+	public List<StageStats> getStageStats() {
+		List<StageStats> result = new ArrayList();
+		StageList[] lists;
+		if (pipelinePool != null) {
+			lists = pipelinePool.getStageLists();
+		} else if (stageList != null) {
+			lists = new StageList[] { stageList };
+		} else {
+			return result;
+		}
+
+		for (StageList list: lists) {
+			List<StageStats> stats = list.getStageStats();
+			for (int i = 0; i < stats.size(); i++) {
+				if (i < result.size()) {
+					result.get(i).add(stats.get(i));
+				} else {
+					result.add(stats.get(i).snapshot());
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns true if this connector can push items through a PipelinePool.
+	 * A connector that returns true must check getPipelinePool() and, if it's
+	 * not null, get items from the pool instead of reusing a single Item.
+	 * Defaults to false unless overridden.
+	 * @return true if pipeline pools are supported
+	 */
+	public boolean pipelinePoolSupported() {
+		return false;
+	}
 	
 	/**
 	 * Interrupt the execution of this connector.
@@ -260,7 +339,7 @@ public abstract class Connector {
 	 * @param msg the warning message
 	 */
 	public void warn(String msg) {
-		warningCount++;
+		warningCount.incrementAndGet();
 		logger.warn(msg);
 	}
 
@@ -271,7 +350,7 @@ public abstract class Connector {
 	 * @param t any associated exception
 	 */
 	public void warn(String msg, Throwable t) {
-		warningCount++;
+		warningCount.incrementAndGet();
 		logger.warn(msg, t);
 	}
 	
@@ -37,6 +37,7 @@ public class FileScanner extends Connector {
 	private Logger logger;
 	private String linkQueueName;
 	private GenericScanner scanner;
+	private volatile FileWatcher watcher;
 
 	// parameters
 	private List fileRoots;
@@ -44,8 +45,13 @@ public class FileScanner extends Connector {
 	private List excludes;
 	private boolean scanSubDirs;
 	private boolean scanCompressedFiles;
+	private boolean splitXML;
 	private int docLoggingCount = 1;
 	private long maxFileSize;
+	private int walkerThreads;
+	private int maxContainerDepth;
+	private boolean watch;
+	private long watchDelay;
 
 	public void execute() {
 		try {
@@ -78,39 +84,46 @@ public class FileScanner extends Connector {
 
 			scanner = new GenericScanner();
 			scanner.setParentConnector(this);
-			scanner.setStartOfCrawl(System.currentTimeMillis());
 			scanner.setDebug(debug);
 			scanner.setDocLoggingCount(docLoggingCount);
 			scanner.setLinkQueue(linkQueue);
 			scanner.setLogger(logger);
 			scanner.setStageList(super.getStageList());
+			scanner.setPipelinePool(super.getPipelinePool());
 			scanner.setScanSubDirs(scanSubDirs);
 			scanner.setScanCompressedFiles(scanCompressedFiles);
+			scanner.setSplitMultiItemXML(splitXML);
 			scanner.setWildcardMatcher(wildcardMatcher);
 			scanner.setMaxFileSize(maxFileSize);
-
-			// start scanning here
-			for (int i = 0; i < fileRoots.size(); i++) {
-				String filename = (String) fileRoots.get(i);
-				File file = new File(filename);
-
-				if (file.exists()) {
-					DiskFileSystem diskFile = new DiskFileSystem(file);
-					scanner.scan(diskFile);
-				} else {
-					logger.warn("File or directory does not exist:" + file.toString());
-				}
+			scanner.setWalkerThreads(walkerThreads);
+			scanner.setMaxContainerDepth(maxContainerDepth);
+
+			// in watch mode, start watching before the first scan so
+			// no change is missed
+			if (watch) {
+				watcher = new FileWatcher(this, scanner, fileRoots, scanSubDirs);
+				watcher.setDelay(watchDelay);
+				watcher.setLogger(logger);
+				watcher.start();
 			}
 
-			// the crawl is complete. Now roll through the linkqueue and find
-			// deleted items
-			scanner.lookForDeletes();
+			fullScan();
+
+			if (watcher != null && !super.getInterrupted()) {
+				super.setLastMessage("Watching");
+				watcher.watch();
+			}
 
 			super.setLastMessage("Ended");
 
 		} catch (Exception t) {
 			super.error("Error executing FileScanner", t);
 			super.setLastMessage("Error: " + t.toString());
+		} finally {
+			if (watcher != null) {
+				watcher.close();
+				watcher = null;
+			}
 		}
 		
 		int docsProcessed = 0;
@@ -123,11 +136,39 @@ public class FileScanner extends Connector {
 		logger.info("FileScanner ended. Docs scanned: " + docsProcessed + " Elapsed time: " + elapsed);
 	}
 
+	/**
+	 * Scan all the file roots, then look for files that have been deleted.
+	 */
+	void fullScan() throws Exception {
+		scanner.setStartOfCrawl(System.currentTimeMillis());
+
+		// start scanning here
+		for (int i = 0; i < fileRoots.size(); i++) {
+			String filename = (String) fileRoots.get(i);
+			File file = new File(filename);
+
+			if (file.exists()) {
+				DiskFileSystem diskFile = new DiskFileSystem(file);
+				scanner.scan(diskFile);
+			} else {
+				logger.warn("File or directory does not exist:" + file.toString());
+			}
+		}
+
+		// the crawl is complete. Now roll through the linkqueue and find
+		// deleted items
+		scanner.lookForDeletes();
+	}
+
 	public void interrupt() {
 		super.interrupt();
 		if (scanner != null) {
 			scanner.interrupt();
 		}
+		FileWatcher w = watcher;
+		if (w != null) {
+			w.interrupt();
+		}
 	}
 
 
@@ -135,12 +176,17 @@ public class FileScanner extends Connector {
 		XMLConfig params = super.getParams();
 		scanSubDirs = params.getBooleanProperty("subdirs", true);
 		scanCompressedFiles = params.getBooleanProperty("compressed-files", true);
+		splitXML = params.getBooleanProperty("split-xml", false);
 		fileRoots = params.getValues("fileroots");
 		includes = params.getValues("include-patterns");
 		excludes = params.getValues("exclude-patterns");
 		docLoggingCount = params.getIntProperty("doc-logging-count", 1);
 		linkQueueName = params.getProperty("linkqueue-name");
 		maxFileSize =  params.getLongProperty("max-file-size", MAX_FILE_SIZE_DEFAULT);
+		walkerThreads = params.getIntProperty("walker-threads", 1);
+		maxContainerDepth = params.getIntProperty("max-container-depth", GenericScanner.DEFAULT_MAX_CONTAINER_DEPTH);
+		watch = params.getBooleanProperty("watch", false);
+		watchDelay = params.getLongProperty("watch-delay", FileWatcher.DEFAULT_DELAY);
 	}
 
 	public String getLastMessage() {
@@ -174,5 +220,9 @@ public class FileScanner extends Connector {
 		return "log_viewer.jsp";
 	}
 
+	public boolean pipelinePoolSupported() {
+		return true;
+	}
+
 
 }
@@ -0,0 +1,312 @@
+/*******************************************************************************
+ * Copyright 2010 Dieselpoint, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.openpipeline.pipeline.connector;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openpipeline.pipeline.connector.filesystem.DiskFileSystem;
+import org.slf4j.Logger;
+
+/**
+ * Watches the directories under the FileScanner roots, and passes files that
+ * are created, modified or deleted to the GenericScanner as they happen.
+ * Call start() before the initial scan, so no change is missed, and then
+ * watch(), which runs until interrupt() is called.
+ * <p>
+ * Events that arrive within "delay" milliseconds of each other are
+ * processed together, and a file that changes several times in that window is
+ * processed once. If the operating system drops events (an overflow), or a
+ * watched directory is deleted or moved away, the watcher cannot tell which
+ * files are affected, so it asks the FileScanner for a full rescan. The same
+ * goes for a container file, like a .zip file, that is modified or deleted
+ * when there is a link queue, because the entries that were removed from it
+ * are only found by the rescan.
+ */
+class FileWatcher {
+
+	public static final long DEFAULT_DELAY = 1000;
+
+	private final FileScanner owner;
+	private final GenericScanner scanner;
+	private final List<Path> roots = new ArrayList();
+	private final boolean scanSubDirs;
+	private long delay = DEFAULT_DELAY;
+	private Logger logger;
+
+	private WatchService watchService;
+	private Map<WatchKey, Path> keys = new HashMap();
+	private Map<Path, WatchKey> dirs = new HashMap();
+	private Set<Path> dirRoots = new HashSet();
+	// directories whose keys went invalid in the current batch
+	private Set<Path> removedDirs = new HashSet();
+	private volatile boolean interrupted;
+
+	/**
+	 * @param owner the connector, which does a full rescan if needed
+	 * @param scanner the scanner that processes the changed files
+	 * @param fileRoots the files and directories to watch
+	 * @param scanSubDirs true to watch subdirectories of the roots
+	 */
+	FileWatcher(FileScanner owner, GenericScanner scanner, List<String> fileRoots,
+			boolean scanSubDirs) {
+		this.owner = owner;
+		this.scanner = scanner;
+		this.scanSubDirs = scanSubDirs;
+		for (String root: fileRoots) {
+			roots.add(new File(root).getAbsoluteFile().toPath());
+		}
+	}
+
+	void setDelay(long delay) {
+		this.delay = delay;
+	}
+
+	void setLogger(Logger logger) {
+		this.logger = logger;
+	}
+
+	/**
+	 * Open the watch service and register the roots.
+	 */
+	void start() throws IOException {
+		watchService = FileSystems.getDefault().newWatchService();
+		registerRoots();
+	}
+
+	/**
+	 * Process changes until interrupted.
+	 */
+	void watch() throws Exception {
+		try {
+			while (!interrupted) {
+				WatchKey key = watchService.poll(1, TimeUnit.SECONDS);
+				if (key == null) {
+					continue;
+				}
+
+				// gather everything that arrives within the delay. A later
+				// event for the same file replaces an earlier one
+				Map<Path, WatchEvent.Kind> changes = new LinkedHashMap();
+				boolean overflow = false;
+				long deadline = System.currentTimeMillis() + delay;
+				while (key != null) {
+					overflow |= collect(key, changes);
+					long wait = deadline - System.currentTimeMillis();
+					key = wait > 0 ? watchService.poll(wait, TimeUnit.MILLISECONDS)
+							: watchService.poll();
+				}
+
+				if (overflow || !process(changes)) {
+					rescan();
+				}
+				removedDirs.clear();
+				scanner.flush();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			close();
+		}
+	}
+
+	void interrupt() {
+		interrupted = true;
+	}
+
+	void close() {
+		if (watchService != null) {
+			try {
+				watchService.close();
+			} catch (IOException e) {
+				// nothing to do
+			}
+			watchService = null;
+		}
+	}
+
+	/**
+	 * Add the events on a key to the map of changes.
+	 * @return true if events were lost
+	 */
+	private boolean collect(WatchKey key, Map<Path, WatchEvent.Kind> changes) {
+		boolean overflow = false;
+		Path dir = keys.get(key);
+		for (WatchEvent event: key.pollEvents()) {
+			if (event.kind() == OVERFLOW) {
+				overflow = true;
+				continue;
+			}
+			if (dir == null) {
+				continue;
+			}
+			Path path = dir.resolve((Path) event.context());
+			changes.remove(path);
+			changes.put(path, event.kind());
+		}
+		if (!key.reset()) {
+			// the directory is gone
+			keys.remove(key);
+			if (dir != null) {
+				dirs.remove(dir);
+				removedDirs.add(dir);
+			}
+		}
+		return overflow;
+	}
+
+	/**
+	 * Pass the changes to the scanner.
+	 * @return false if a full rescan is needed
+	 */
+	private boolean process(Map<Path, WatchEvent.Kind> changes) throws Exception {
+		boolean complete = true;
+		for (Map.Entry<Path, WatchEvent.Kind> entry: changes.entrySet()) {
+			Path path = entry.getKey();
+			if (!isWatched(path)) {
+				continue;
+			}
+			String name = path.toFile().getAbsolutePath();
+
+			BasicFileAttributes attrs = null;
+			if (entry.getValue() != ENTRY_DELETE) {
+				try {
+					attrs = Files.readAttributes(path, BasicFileAttributes.class);
+				} catch (NoSuchFileException e) {
+					// created or modified, and then deleted
+				}
+			}
+
+			if (attrs == null) {
+				if (entry.getValue() == ENTRY_DELETE
+						&& (dirs.containsKey(path) || removedDirs.contains(path))) {
+					// the files under it produce no events if it was moved away
+					complete = false;
+				} else if (scanner.needsFullScan(path.toFile())) {
+					// a container. The link queue has its entries, not the container
+					complete = false;
+				} else {
+					scanner.processDeleted(name);
+				}
+
+			} else if (attrs.isDirectory()) {
+				if (entry.getValue() == ENTRY_CREATE && scanSubDirs
+						&& !dirs.containsKey(path)) {
+					registerTree(path);
+					scanner.scanChanged(new DiskFileSystem(path.toFile(), attrs));
+				}
+
+			} else if (scanner.needsFullScan(path.toFile())) {
+				// a container that was rewritten can have lost entries
+				complete = false;
+
+			} else {
+				scanner.scanChanged(new DiskFileSystem(path.toFile(), attrs));
+			}
+		}
+		return complete;
+	}
+
+	private void rescan() throws Exception {
+		if (logger != null) {
+			logger.info("Change events were lost, or a directory was removed or a container file changed, rescanning all files");
+		}
+		for (WatchKey key: keys.keySet()) {
+			key.cancel();
+		}
+		keys.clear();
+		dirs.clear();
+
+		// register first, so changes made during the rescan are caught
+		registerRoots();
+		owner.fullScan();
+	}
+
+	/**
+	 * Return true if the path is one of the file roots, or under one of
+	 * the directory roots.
+	 */
+	private boolean isWatched(Path path) {
+		for (Path root: roots) {
+			if (path.equals(root)) {
+				return true;
+			}
+			if (dirRoots.contains(root) && path.startsWith(root)) {
+				return scanSubDirs || root.equals(path.getParent());
+			}
+		}
+		return false;
+	}
+
+	private void registerRoots() throws IOException {
+		dirRoots.clear();
+		for (Path root: roots) {
+			if (Files.isDirectory(root)) {
+				dirRoots.add(root);
+				registerTree(root);
+			} else if (root.getParent() != null && Files.isDirectory(root.getParent())) {
+				// a single file. Watch its directory, and ignore the other files
+				register(root.getParent());
+			}
+		}
+	}
+
+	private void registerTree(final Path top) throws IOException {
+		Files.walkFileTree(top, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
+					throws IOException {
+				if (!scanSubDirs && !dir.equals(top)) {
+					return FileVisitResult.SKIP_SUBTREE;
+				}
+				register(dir);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	private void register(Path dir) throws IOException {
+		if (dirs.containsKey(dir)) {
+			return;
+		}
+		WatchKey key = dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+		keys.put(key, dir);
+		dirs.put(dir, key);
+	}
+}
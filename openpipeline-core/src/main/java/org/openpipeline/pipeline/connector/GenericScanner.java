@@ -17,14 +17,20 @@ package org.openpipeline.pipeline.connector;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.zip.GZIPInputStream;
 
+import org.openpipeline.pipeline.connector.filesystem.DiskFileSystem;
 import org.openpipeline.pipeline.connector.filesystem.FileIterator;
 import org.openpipeline.pipeline.connector.filesystem.FileSystem;
+import org.openpipeline.pipeline.connector.filesystem.MultiItemXMLFileSystem;
+import org.openpipeline.pipeline.connector.filesystem.ParallelDiskWalker;
+import org.openpipeline.pipeline.connector.filesystem.TarFileSystem;
 import org.openpipeline.pipeline.connector.filesystem.ZipFileSystem;
 import org.openpipeline.pipeline.connector.linkqueue.LinkQueue;
 import org.openpipeline.pipeline.item.DocBinary;
 import org.openpipeline.pipeline.item.Item;
+import org.openpipeline.pipeline.stage.PipelinePool;
 import org.openpipeline.pipeline.stage.StageList;
 import org.openpipeline.scheduler.PipelineException;
 import org.openpipeline.util.WildcardMatcher;
@@ -39,6 +45,7 @@ public class GenericScanner {
 	private WildcardMatcher wildcardMatcher;
 	private boolean scanSubDirs;
 	private boolean scanCompressedFiles;
+	private boolean splitMultiItemXML;
 	private Item item = new Item();
 	private boolean debug;
 	private int docsProcessed;
@@ -48,10 +55,20 @@ public class GenericScanner {
 	private long elapsed;
 	private FileSystem root;
 	private StageList stageList;
+	private PipelinePool pipelinePool;
+	private int containerDepth;
+	private boolean sharedStream;
+	private ZipFileSystem fetchedZip;
+	private int maxContainerDepth = DEFAULT_MAX_CONTAINER_DEPTH;
 	private long maxFileSizeInBytes = Long.MAX_VALUE;
 	private Connector connector;
 	private Logger logger;
 	private volatile boolean interrupted;
+	private int walkerThreads = 1;
+
+	// the number of files the parallel walker can find ahead of the pipeline
+	private static final int WALKER_QUEUE_SIZE = 1000;
+	public static final int DEFAULT_MAX_CONTAINER_DEPTH = 2;
 
 	/**
 	 * Set the timestamp, in millis, when this crawl started.
@@ -77,12 +94,57 @@ public class GenericScanner {
 
 		root = file;
 		try {
-			scanInternal(file);
+			if (walkerThreads > 1 && file instanceof DiskFileSystem
+					&& file.isDirectory()) {
+				scanParallel((DiskFileSystem) file);
+			} else {
+				scanInternal(file);
+			}
 		} finally {
 			elapsed = System.currentTimeMillis() - startOfCrawl;
 		}
 	}
 
+	/**
+	 * Scan a directory on disk, using a ParallelDiskWalker to find the files.
+	 * The files are processed on this thread as the walker finds them.
+	 */
+	private void scanParallel(DiskFileSystem dir) throws Exception {
+		ParallelDiskWalker walker = new ParallelDiskWalker(walkerThreads,
+				WALKER_QUEUE_SIZE);
+		walker.setWildcardMatcher(wildcardMatcher);
+		walker.setScanSubDirs(scanSubDirs);
+		walker.start(dir.getFile());
+		try {
+			while (!interrupted) {
+				DiskFileSystem file = walker.next();
+				reportWalkerErrors(walker);
+				if (file == null) {
+					break;
+				}
+
+				try {
+					if (!handleContainerFiles(file)) {
+						processFile(file);
+					}
+				} catch (Throwable t) {
+					// don't die, just log it
+					connector.error("Error processing file:" + file.getFullName(), t);
+				}
+			}
+		} finally {
+			walker.close();
+			reportWalkerErrors(walker);
+		}
+	}
+
+	private void reportWalkerErrors(ParallelDiskWalker walker) {
+		IOException e;
+		while ((e = walker.pollError()) != null) {
+			connector.error(e.getMessage(), e);
+		}
+	}
+
 	/**
 	 * Internal, recursively-called scan function.
 	 */
@@ -150,34 +212,85 @@ public class GenericScanner {
 		String filename = file.getFullName();
 		String lowerFilename = filename.toLowerCase();
 
+		FileSystem container;
 		if (lowerFilename.endsWith(".zip")) {
-			if (scanCompressedFiles) {
-				ZipFileSystem zipFile = new ZipFileSystem(new File(filename));
-				scanInternal(zipFile);
+			if (!scanCompressedFiles) {
+				return true;
+			}
+			if (file instanceof DiskFileSystem) {
+				container = new ZipFileSystem(((DiskFileSystem) file).getFile());
+			} else {
+				container = new ZipFileSystem(filename, file.getInputStream());
 			}
-			return true;
 
-		} else if (lowerFilename.endsWith(".tar.gz")
-				|| lowerFilename.endsWith(".tgz")) {
-			if (scanCompressedFiles) {
-				// TODO the ant jar file has an implementation we can use
-				// ZipFileSystem zipFile = new ZipFileSystem(new
-				// File(filename));
-				// scanInternal(zipFile);
+		} else if (lowerFilename.endsWith(".tar")
+				|| TarFileSystem.isGzipName(lowerFilename)) {
+			if (!scanCompressedFiles) {
+				return true;
+			}
+			if (file instanceof DiskFileSystem) {
+				container = new TarFileSystem(((DiskFileSystem) file).getFile());
+			} else {
+				container = new TarFileSystem(filename, file.getInputStream(),
+						TarFileSystem.isGzipName(lowerFilename));
 			}
-			return true;
 
+		} else {
+			container = null;
 		}
 
-		/*
-		 * TODO if we implement MultiItemFileSystem, put it here else if
-		 * (lowerFilename.endsWith(".xml")) { // if xml is multi-item // do it,
-		 * return true // else fall through, return false }
-		 */
+		if (container != null) {
+			// a container inside a container is read from the outer one's 
+			// stream, so there is no extra pass over the data, but
+			// don't go deeper than the configured limit
+			if (containerDepth >= maxContainerDepth) {
+				if (debug) {
+					logger.debug("Container nested too deeply, skipping:" + filename);
+				}
+				return true;
+			}
+			boolean wasSharedStream = sharedStream;
+			boolean randomAccess = container instanceof ZipFileSystem
+					&& ((ZipFileSystem) container).isRandomAccess();
+			sharedStream = !randomAccess;
+			containerDepth++;
+			try {
+				scanInternal(container);
+			} finally {
+				containerDepth--;
+				sharedStream = wasSharedStream;
+				if (randomAccess) {
+					closeZip((ZipFileSystem) container);
+				}
+			}
+			return true;
+		}
+
+		// a multi-item XML file on disk is split here, so that each item is
+		// tracked separately in the link queue
+		if (splitMultiItemXML && lowerFilename.endsWith(".xml")
+				&& file instanceof DiskFileSystem) {
+			File xmlFile = ((DiskFileSystem) file).getFile();
+			if (MultiItemXMLFileSystem.isMultiItem(xmlFile)) {
+				scanItems(new MultiItemXMLFileSystem(xmlFile));
+				return true;
+			}
+		}
 
 		return false;
 	}
 
+	/**
+	 * Process each item in a multi-item file. The include/exclude patterns
+	 * have already been applied to the file, and don't apply to the items.
+	 */
+	private void scanItems(FileSystem container) throws Exception {
+		FileIterator it = container.getIterator();
+		while (!interrupted && it.hasNext()) {
+			processFile(it.next());
+		}
+	}
+
 	private void processFile(FileSystem file) throws IOException,
 			PipelineException {
 		if (interrupted)
@@ -202,7 +315,22 @@ public class GenericScanner {
 		 * will zap it if it doesn't get updated
 		 */
 
-		item.clear();
+		Item item = newItem();
+		boolean populated = false;
+		try {
+			populateItem(file, item);
+			populated = true;
+		} finally {
+			if (!populated) {
+				releaseItem(item);
+			}
+		}
+
+		processItem(item, fullname);
+	}
+
+	private void populateItem(FileSystem file, Item item) throws IOException {
+		String fullname = file.getFullName();
 
 		// if this file system produces items...
 		if (file.getItem(item)) {
@@ -221,6 +349,16 @@ public class GenericScanner {
 			} else {
 				DocBinary docBinary = new DocBinary();
 
+				InputStream in = file.getInputStream();
+				if (pipelinePool != null && sharedStream) {
+					// entries in a streamed container share one underlying stream,
+					// which moves on to the next entry before a pipeline thread
+					// gets to this one. Buffer the content. Entries in a zip file
+					// on disk have their own streams, and are decompressed by the
+					// pipeline threads in parallel.
+					in = DocBinary.getBinary(in);
+				}
+
 				String lowerFilename = file.getFullName().toLowerCase();
 				/**
 				 * If the filename ends with .gz then use the GZIPInputStream to
@@ -229,8 +367,7 @@ public class GenericScanner {
 				 * compressed using GZIP tool is renamed to sample.txt.gz.
 				 */
 				if (lowerFilename.endsWith(".gz") && scanCompressedFiles) {
-					GZIPInputStream gzipStream = new GZIPInputStream(
-							file.getInputStream());
+					GZIPInputStream gzipStream = new GZIPInputStream(in);
 					int index = lowerFilename.indexOf(".gz");
 					String newFilename = file.getFullName().substring(0, index);
 					docBinary.setName(newFilename);
@@ -241,22 +378,46 @@ public class GenericScanner {
 					docBinary.setName(file.getFullName());
 					docBinary.setTimestamp(file.getLastUpdate());
 					docBinary.setSize(file.getSize());
-					docBinary.setInputStream(file.getInputStream());
+					docBinary.setInputStream(in);
+					if (file instanceof DiskFileSystem) {
+						// lets stages map or transfer the file instead of reading the stream
+						docBinary.setFile(((DiskFileSystem) file).getFile());
+					}
 				}
 
 				item.setDocBinary(docBinary);
 				
 			}
 		}
+	}
+
+	/**
+	 * Return an empty item to populate. If there is a pipeline pool, the
+	 * item comes from the pool, otherwise the single internal item is reused.
+	 */
+	private Item newItem() throws PipelineException {
+		if (pipelinePool != null) {
+			return pipelinePool.getItem();
+		}
+		item.clear();
+		return item;
+	}
 
-		processItem(item, fullname);
+	private void releaseItem(Item item) {
+		if (pipelinePool != null) {
+			pipelinePool.releaseItem(item);
+		}
 	}
 
 	private void processItem(Item item, String fullname)
 			throws PipelineException {
 
 		// push it down the pipeline
-		stageList.processItem(item);
+		if (pipelinePool != null) {
+			pipelinePool.processItem(item);
+		} else {
+			stageList.processItem(item);
+		}
 
 		docsProcessed++;
 		if (docLoggingCount == 1) {
@@ -301,23 +462,175 @@ public class GenericScanner {
 			}
 
 			// try to crawl it
-			FileSystem file = root.fetch(name);
+			FileSystem file = fetch(name);
 			if (file != null) {
 				// could get here if they removed one of the file root entries,
 				// or added some excludes
 				processFile(file);
 
 			} else {
-				item.clear();
-				item.setItemId(name);
-				item.setAction(Item.ACTION_DELETE);
+				deleteItem(name);
+			}
+		}
+
+		if (fetchedZip != null) {
+			closeZip(fetchedZip);
+			fetchedZip = null;
+		}
+	}
+
+	/**
+	 * Fetch a file by name. Entries in a zip file on disk are fetched 
+	 * directly from the zip file, without reading the rest of it.
+	 */
+	private FileSystem fetch(String name) throws IOException, PipelineException {
+		if (splitMultiItemXML && MultiItemXMLFileSystem.getItemId(name) != null) {
+			// an item in a multi-item XML file. The file can't be searched
+			// for it, and it's no longer in the file if the scan missed it
+			return null;
+		}
+		FileSystem file = root.fetch(name);
+		if (file != null || !scanCompressedFiles || !(root instanceof DiskFileSystem)) {
+			return file;
+		}
+
+		// names look like /mydir/myzipfile.zip/myfilename.txt
+		String lowerName = name.toLowerCase();
+		int pos = lowerName.indexOf(".zip/");
+		while (pos >= 0) {
+			String zipName = name.substring(0, pos + 4);
+			if (fetchedZip == null || !fetchedZip.getFullName().equals(zipName)) {
+				File zip = new File(zipName);
+				if (zip.isFile()) {
+					if (fetchedZip != null) {
+						closeZip(fetchedZip);
+					}
+					fetchedZip = new ZipFileSystem(zip);
+				}
+			}
+			if (fetchedZip != null && fetchedZip.getFullName().equals(zipName)) {
+				return fetchedZip.fetch(name);
+			}
+			pos = lowerName.indexOf(".zip/", pos + 1);
+		}
+		return null;
+	}
+
+	/**
+	 * Close a zip file on disk once the pipeline threads are finished
+	 * reading from it.
+	 */
+	private void closeZip(ZipFileSystem zip) throws IOException, PipelineException {
+		if (pipelinePool != null) {
+			pipelinePool.waitUntilIdle();
+		}
+		zip.close();
+	}
+
+	/**
+	 * Push a delete item down the pipeline, and remove the name from the
+	 * link queue.
+	 */
+	private void deleteItem(String name) throws PipelineException {
+		String itemId = null;
+		if (splitMultiItemXML) {
+			// the link queue has the name of the file in front of the item_id
+			itemId = MultiItemXMLFileSystem.getItemId(name);
+		}
+		Item item = newItem();
+		item.setItemId(itemId == null ? name : itemId);
+		item.setAction(Item.ACTION_DELETE);
+
+		// push it down the pipeline
+		if (pipelinePool != null) {
+			pipelinePool.processItem(item);
+		} else {
+			stageList.processItem(item);
+		}
+
+		// remove it from the queue
+		if (linkQueue != null) {
+			linkQueue.remove(name);
+		}
+	}
+
+	/**
+	 * Process a file or directory that was created or modified after the
+	 * scan, for example, one reported by a file system watcher. A directory
+	 * is scanned recursively. The include/exclude patterns apply, and
+	 * unchanged files are skipped as usual.
+	 * 
+	 * @param file
+	 *            the new or modified file
+	 */
+	public void scanChanged(FileSystem file) throws Exception {
+		scanInternal(file);
+	}
+
+	/**
+	 * Process a file that was deleted after the scan. If there is a link
+	 * queue and the file is not in it, the file was never processed, and
+	 * nothing happens.
+	 * 
+	 * @param name
+	 *            the full name of the deleted file
+	 */
+	public void processDeleted(String name) throws IOException, PipelineException {
+		if (linkQueue != null && linkQueue.getSignature(name) == -1) {
+			return;
+		}
+		if (linkQueue == null && isContainer(new File(name))) {
+			// the items came from its entries, and it never had an id of its own
+			return;
+		}
+		deleteItem(name);
+	}
 
-				// push it down the pipeline
-				stageList.processItem(item);
+	/**
+	 * Return true if a change to a file on disk, made after the scan, needs
+	 * a full scan to be handled. This is the case for a container, like a
+	 * .zip file, when there is a link queue. The link queue holds the names
+	 * of the entries, not of the container, so the entries that are gone
+	 * when the container is deleted or rewritten are only found by
+	 * lookForDeletes().
+	 * 
+	 * @param file
+	 *            the modified or deleted file
+	 */
+	public boolean needsFullScan(File file) throws IOException {
+		return linkQueue != null && isContainer(file);
+	}
 
-				// remove it from the queue
-				linkQueue.remove(name);
+	/**
+	 * Return true if handleContainerFiles() opens the file and processes
+	 * its entries instead of the file itself.
+	 */
+	private boolean isContainer(File file) throws IOException {
+		String lowerFilename = file.getName().toLowerCase();
+		if (lowerFilename.endsWith(".zip") || lowerFilename.endsWith(".tar")
+				|| TarFileSystem.isGzipName(lowerFilename)) {
+			return scanCompressedFiles;
+		}
+		if (splitMultiItemXML && lowerFilename.endsWith(".xml")) {
+			if (file.isFile()) {
+				return MultiItemXMLFileSystem.isMultiItem(file);
 			}
+			// it's gone. A plain XML file is in the link queue under its own name
+			return linkQueue != null
+					&& linkQueue.getSignature(file.getAbsolutePath()) == -1;
+		}
+		return false;
+	}
+
+	/**
+	 * Push any items that are being held in the pipeline, for example, in
+	 * a partial batch, through to the end.
+	 */
+	public void flush() throws PipelineException {
+		if (pipelinePool != null) {
+			pipelinePool.flush();
+		} else {
+			stageList.flush();
 		}
 	}
 
@@ -337,6 +650,17 @@ public class GenericScanner {
 		this.scanCompressedFiles = scanCompressedFiles;
 	}
 
+	/**
+	 * If true, XML files in multi-item format are split into items here,
+	 * instead of in the XMLFilter, and each item is checked for changes
+	 * and deletes separately. Defaults to false.
+	 * 
+	 * @param splitMultiItemXML
+	 */
+	public void setSplitMultiItemXML(boolean splitMultiItemXML) {
+		this.splitMultiItemXML = splitMultiItemXML;
+	}
+
 	public void setDebug(boolean debug) {
 		this.debug = debug;
 	}
@@ -370,6 +694,16 @@ public class GenericScanner {
 		this.stageList = stageList;
 	}
 
+	/**
+	 * Set a pool of pipelines to process items in parallel. If set,
+	 * it is used instead of the StageList.
+	 * 
+	 * @param pipelinePool
+	 */
+	public void setPipelinePool(PipelinePool pipelinePool) {
+		this.pipelinePool = pipelinePool;
+	}
+
 	/**
 	 * Set the maximum file size to process, in megabytes.
 	 * 
@@ -380,6 +714,29 @@ public class GenericScanner {
 																// bytes
 	}
 
+	/**
+	 * Set the number of threads used to walk a directory tree on disk.
+	 * If greater than 1, subdirectories are read in parallel and files
+	 * are processed in no particular order. Defaults to 1.
+	 * 
+	 * @param walkerThreads
+	 */
+	public void setWalkerThreads(int walkerThreads) {
+		this.walkerThreads = walkerThreads;
+	}
+
+	/**
+	 * Set how deeply container files, like .zip and .tar files, are opened.
+	 * 1 means that a container on disk is opened but containers inside it
+	 * are skipped, 2 means that containers inside it are opened too, and so on.
+	 * Defaults to 2.
+	 * 
+	 * @param maxContainerDepth
+	 */
+	public void setMaxContainerDepth(int maxContainerDepth) {
+		this.maxContainerDepth = maxContainerDepth;
+	}
+
 	public void setParentConnector(Connector connector) {
 		this.connector = connector;
 	}
@@ -18,6 +18,7 @@ package org.openpipeline.pipeline.connector;
 import java.util.concurrent.CountDownLatch;
 
 import org.openpipeline.pipeline.item.Item;
+import org.openpipeline.pipeline.stage.PipelinePool;
 import org.openpipeline.scheduler.PipelineException;
 
 /**
@@ -33,9 +34,6 @@ public class ItemReceiverConnector extends Connector {
 	 * which requires this connector
 	 * to be live for processing incoming items.
 	 * 
-	 * TODO: once pipeline pools are implemented, make
-	 * sure this connector uses one. will improve concurrency.
-	 * 
 	 * See:
 	 * http://stackoverflow.com/questions/1625666/publish-jax-ws-endpoint-with-embedded-jetty-7
 	 * 
@@ -56,18 +54,66 @@ public class ItemReceiverConnector extends Connector {
 	}
 
 	/**
-	 * Pushes item down a pipeline.
+	 * Return an empty item to receive the data. If this connector is
+	 * running a pipeline pool, the item comes from the pool, and must be
+	 * passed to either processItem() or releaseItem().
+	 * @return an empty item
+	 * @throws PipelineException
+	 */
+	public Item getItem() throws PipelineException {
+		PipelinePool pipelinePool = super.getPipelinePool();
+		if (pipelinePool != null) {
+			return pipelinePool.getItem();
+		}
+		return new Item();
+	}
+
+	/**
+	 * Return an item obtained from getItem() that will not be processed.
+	 * @param item the item to return
+	 */
+	public void releaseItem(Item item) {
+		PipelinePool pipelinePool = super.getPipelinePool();
+		if (pipelinePool != null) {
+			pipelinePool.releaseItem(item);
+		}
+	}
+
+	/**
+	 * Pushes item down a pipeline. If this connector is running a pipeline
+	 * pool, the item is put on the pool's work queue and processed
+	 * asynchronously.
 	 * @param item
 	 * @throws PipelineException
 	 */
 	public void processItem(Item item) throws PipelineException {
+		PipelinePool pipelinePool = super.getPipelinePool();
+		if (pipelinePool != null) {
+			pipelinePool.processItem(item);
+			return;
+		}
 		synchronized (this) {
-			// pipelines are single-threaded
-			// later, fix this when pipeline pools are implemented
+			// a single pipeline is single-threaded
 			super.getStageList().processItem(item);
 		}
 	}
 
+	/**
+	 * Process any items waiting in a partial batch. Called at the end of each
+	 * request, so the last items in it don't wait for the next request. If
+	 * this connector is running a pipeline pool, the pool's workers do this
+	 * themselves when they run out of work.
+	 * @throws PipelineException
+	 */
+	public void flushBatch() throws PipelineException {
+		if (super.getPipelinePool() != null) {
+			return;
+		}
+		synchronized (this) {
+			super.getStageList().flushBatch();
+		}
+	}
+
 	public String getDescription() {
 		return "Receives one or more items from remote machines.";
 	}
@@ -93,6 +139,10 @@ public class ItemReceiverConnector extends Connector {
 		this.interruptSignal.countDown();
 	}
 
+	public boolean pipelinePoolSupported() {
+		return true;
+	}
+
 
 
 }
@@ -25,9 +25,13 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.openpipeline.pipeline.docfilter.XMLFilter;
 import org.openpipeline.pipeline.item.Item;
+import org.openpipeline.pipeline.item.ItemCodec;
+import org.openpipeline.pipeline.stage.Stage;
 import org.openpipeline.scheduler.PipelineException;
 import org.openpipeline.scheduler.PipelineScheduler;
+import org.openpipeline.util.ByteArray;
 
 /**
  * A servlet that receives items and pushed them down a pipeline.
@@ -64,14 +68,25 @@ public class ItemReceiverServlet extends HttpServlet {
 		}
 		
 		ServletInputStream in = req.getInputStream();
+
+		// ItemSender sends this content type when it's set to the binary format
+		String contentType = req.getContentType();
+		if (contentType != null && contentType.startsWith(ItemCodec.CONTENT_TYPE)) {
+			receiveBinary(in, connector, resp);
+			return;
+		}
+
 		InputStreamReader reader = new InputStreamReader(in, "UTF-8");
 
-		// must create a new item because this method is multithreaded
-		Item item = new Item();
+		// the request may contain a single item or a batch of them. The filter
+		// parses each one into the scratch item and pushes it to the submitter
+		XMLFilter filter = new XMLFilter();
+		filter.setReader(reader);
+		filter.setNextStage(new ItemSubmitter(connector));
 
 		try {
-			item.importXML(reader);
-			connector.processItem(item);
+			filter.processItem(new Item());
+			connector.flushBatch();
 
 			resp.getWriter().write("ok");
 			resp.getWriter().close();
@@ -83,6 +98,85 @@ public class ItemReceiverServlet extends HttpServlet {
 		}
 	}
 
+	/**
+	 * Decode items in the ItemCodec format directly into items obtained
+	 * from the connector, and submit them.
+	 */
+	private void receiveBinary(ServletInputStream in, ItemReceiverConnector connector,
+			HttpServletResponse resp) throws IOException {
+		ByteArray buf = new ByteArray();
+		buf.append(in);
+		ItemCodec codec = new ItemCodec();
+
+		try {
+			int count = codec.readHeader(buf);
+			for (int i = 0; i < count; i++) {
+				// must get a separate item because this servlet is multithreaded
+				Item item = connector.getItem();
+				boolean submitted = false;
+				try {
+					codec.read(buf, item);
+					connector.processItem(item);
+					submitted = true;
+				} finally {
+					if (!submitted) {
+						connector.releaseItem(item);
+					}
+				}
+			}
+			connector.flushBatch();
+
+			resp.getWriter().write("ok");
+			resp.getWriter().close();
+
+		} catch (IOException e) {
+			String msg = "Error decoding items";
+			connector.error(msg, e);
+			resp.sendError(HttpServletResponse.SC_BAD_REQUEST, msg + e.toString());
+
+		} catch (PipelineException e) {
+			String msg = "Error processing item";
+			connector.error(msg, e);
+			resp.sendError(HttpServletResponse.SC_NOT_IMPLEMENTED, msg + e.toString());
+		}
+	}
+
+	/**
+	 * Submits each parsed item to the connector. If the connector runs a
+	 * pipeline pool, the item is processed on another thread after the filter
+	 * has moved on, so it is copied into an item from the pool first.
+	 * Otherwise it is processed before the filter parses the next one,
+	 * and no copy is needed.
+	 */
+	static class ItemSubmitter extends Stage {
+		private ItemReceiverConnector connector;
+
+		ItemSubmitter(ItemReceiverConnector connector) {
+			this.connector = connector;
+		}
+
+		@Override
+		public void processItem(Item parsed) throws PipelineException {
+			if (connector.getPipelinePool() == null) {
+				connector.processItem(parsed);
+				return;
+			}
+
+			// must get a separate item because this servlet is multithreaded
+			Item item = connector.getItem();
+			boolean submitted = false;
+			try {
+				parsed.copyTo(item);
+				connector.processItem(item);
+				submitted = true;
+			} finally {
+				if (!submitted) {
+					connector.releaseItem(item);
+				}
+			}
+		}
+	}
+
 	
 	/**
 	 * Returns the Connector for the given jobName, if it exists.
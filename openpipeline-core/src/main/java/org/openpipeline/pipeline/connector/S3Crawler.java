@@ -1,9 +1,11 @@
 package org.openpipeline.pipeline.connector;
 
+import java.io.IOException;
 import java.util.List;
 
 import org.openpipeline.filesystem.s3.S3File;
 import org.openpipeline.filesystem.s3.S3FileSystem;
+import org.openpipeline.filesystem.s3.S3Prefetcher;
 import org.openpipeline.pipeline.connector.Connector;
 import org.openpipeline.pipeline.connector.GenericScanner;
 import org.openpipeline.pipeline.connector.linkqueue.LinkQueue;
@@ -15,9 +17,19 @@ import org.slf4j.Logger;
 
 import com.amazonaws.auth.BasicAWSCredentials;
 import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.S3ClientOptions;
 
 /**
  * A connector that scans an S3 file system and processes the files it finds.
+ * <p>
+ * If "prefetch" is greater than 0, that many objects are downloaded ahead of
+ * the pipeline, and the next page of each listing is fetched while the current
+ * one is processed. See {@link S3Prefetcher}. "endpoint" points the crawler at
+ * an S3-compatible service other than Amazon, using path-style requests.
+ * <p>
+ * Changes are detected from the ETag, size and last-modified time in the
+ * directory listings, so an unchanged object is neither fetched nor
+ * prefetched.
  */
 public class S3Crawler extends Connector {
 
@@ -30,6 +42,7 @@ public class S3Crawler extends Connector {
 	private AmazonS3Client s3Client;
 
 	private GenericScanner scanner;
+	private S3Prefetcher prefetcher;
 	private String linkQueueName;
 	private List<String> fileRoots;
 	private List<String> includes;
@@ -38,6 +51,9 @@ public class S3Crawler extends Connector {
 	private boolean scanCompressedFiles;
 	private int docLoggingCount = 1;
 	private long maxFileSize;
+	private int prefetch;
+	private long prefetchMaxBytes;
+	private String endpoint;
 
 
 	@Override
@@ -76,16 +92,23 @@ public class S3Crawler extends Connector {
 			scanner.setLinkQueue(linkQueue);
 			scanner.setLogger(logger);
 			scanner.setStageList(super.getStageList());
+			scanner.setPipelinePool(super.getPipelinePool());
 			scanner.setScanSubDirs(scanSubDirs);
 			scanner.setScanCompressedFiles(scanCompressedFiles);
 			scanner.setWildcardMatcher(wildcardMatcher);
 			scanner.setMaxFileSize(maxFileSize);
 
+			if (prefetch > 0) {
+				prefetcher = new S3Prefetcher(prefetch, prefetchMaxBytes);
+				prefetcher.setFilter(new PrefetchFilter(wildcardMatcher,
+						linkQueue));
+			}
+
 			// start scanning here
 			for (int i = 0; i < fileRoots.size(); i++) {
 				String filename = (String) fileRoots.get(i);
 				S3File file = new S3File(filename, bucketName,s3Client);
-				S3FileSystem fileSystem = new S3FileSystem(file);
+				S3FileSystem fileSystem = new S3FileSystem(file, prefetcher);
 
 				if (file.exists()) {
 					scanner.scan(fileSystem);
@@ -104,6 +127,46 @@ public class S3Crawler extends Connector {
 		} catch (Throwable e) {
 			super.error("Error executing S3FileScanner", e);
 			super.setLastMessage("Error: " + e.toString());
+		} finally {
+			if (prefetcher != null) {
+				prefetcher.close();
+				prefetcher = null;
+			}
+		}
+	}
+
+	/**
+	 * Only prefetch the files the scanner is going to read.
+	 */
+	private class PrefetchFilter implements S3Prefetcher.Filter {
+		private WildcardMatcher wildcardMatcher;
+		private LinkQueue linkQueue;
+
+		PrefetchFilter(WildcardMatcher wildcardMatcher, LinkQueue linkQueue) {
+			this.wildcardMatcher = wildcardMatcher;
+			this.linkQueue = linkQueue;
+		}
+
+		public boolean accept(S3File file) {
+			String name = file.getFullPath();
+			if (!wildcardMatcher.isIncluded(name)) {
+				return false;
+			}
+			if (file.getSummary().getSize() > maxFileSize * 1024 * 1024) {
+				return false;
+			}
+
+			// the scanner will skip a file that hasn't changed, so don't
+			// download it. The signature comes from the listing.
+			if (linkQueue != null) {
+				try {
+					long sig = S3FileSystem.getSignature(file);
+					return linkQueue.getSignature(name) != sig;
+				} catch (IOException e) {
+					return true;
+				}
+			}
+			return true;
 		}
 	}
 
@@ -132,6 +195,11 @@ public class S3Crawler extends Connector {
 		return "log_viewer.jsp";
 	}
 
+	@Override
+	public boolean pipelinePoolSupported() {
+		return true;
+	}
+
 	public void extractParams() {
 		XMLConfig params = super.getParams();
 		if (params != null) {
@@ -143,6 +211,12 @@ public class S3Crawler extends Connector {
 
 			s3Client = new AmazonS3Client(new BasicAWSCredentials(accessKey, secretKey));
 
+			endpoint = params.getProperty("endpoint");
+			if (endpoint != null) {
+				s3Client.setEndpoint(endpoint);
+				s3Client.setS3ClientOptions(new S3ClientOptions().withPathStyleAccess(true));
+			}
+
 			scanSubDirs = params.getBooleanProperty("subdirs", true);
 			scanCompressedFiles = params.getBooleanProperty("compressed-files",
 					true);
@@ -153,6 +227,9 @@ public class S3Crawler extends Connector {
 			linkQueueName = params.getProperty("linkqueue-name");
 			maxFileSize = params.getLongProperty("max-file-size",
 					MAX_FILE_SIZE_DEFAULT);
+			prefetch = params.getIntProperty("prefetch", 0);
+			prefetchMaxBytes = params.getLongProperty("prefetch-max-mb",
+					S3Prefetcher.DEFAULT_MAX_BYTES / (1024 * 1024)) * 1024 * 1024;
 
 			
 			
@@ -15,6 +15,9 @@
  ******************************************************************************/
 package org.openpipeline.pipeline.connector;
 
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
@@ -22,6 +25,8 @@ import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
 import java.util.Map;
 import java.util.zip.Adler32;
 
@@ -29,14 +34,24 @@ import org.openpipeline.pipeline.connector.linkqueue.LinkQueue;
 import org.openpipeline.pipeline.connector.linkqueue.LinkQueueFactory;
 import org.openpipeline.pipeline.item.AttributeDef;
 import org.openpipeline.pipeline.item.Item;
+import org.openpipeline.pipeline.stage.PipelinePool;
 import org.openpipeline.pipeline.stage.StageList;
 import org.openpipeline.scheduler.PipelineException;
+import org.openpipeline.server.Server;
 import org.openpipeline.util.Util;
 import org.openpipeline.util.XMLConfig;
 import org.slf4j.Logger;
 
 /**
  * Crawls SQL databases.
+ * <p>
+ * If a watermark column is configured, the crawler runs in change-data-capture
+ * mode. Instead of paging through the whole table and comparing checksums, it
+ * runs the changes SQL once, with the highest watermark seen on the last run
+ * as its parameter, and pushes only the rows that come back. An optional
+ * deletes SQL returns the itemIds of rows deleted since the same watermark.
+ * The watermark is saved per job in config/watermarks under the home dir,
+ * and only after a run that completes. Delete the file to force a full reload.
  */
 public class SQLDatabaseCrawler extends Connector {
 
@@ -49,9 +64,8 @@ public class SQLDatabaseCrawler extends Connector {
 	private int itemsAdded;
 	private int itemsDeleted;
 	private int itemsUnchanged;
-	private Adler32 adler32 = new Adler32();
+	private int totalRowCount;
 
-	private PreparedStatement indexStatement = null;
 	private String driver;
 	private String url;
 	private String user;
@@ -61,12 +75,23 @@ public class SQLDatabaseCrawler extends Connector {
 	private String afterSQL;
 	private String itemIdCol;
 	private int fetchSize = 1000;
-	private String lastPrimaryKey = "";
 	private String primaryKeyCol;
 	private String[] cols;
 	private int itemIdColNum;
 	private int primaryKeyColNum;
 	private boolean inferDataTypes;
+	private int partitions;
+	private String boundsSQL;
+	private String watermarkCol;
+	private String changesSQL;
+	private String deletesSQL;
+	// the watermark at the start of the run, the highest one seen on a row
+	// that was processed, and the lowest one on a row that failed
+	private Comparable<?> startWatermark;
+	private Comparable<?> watermark;
+	private Comparable<?> failedWatermark;
+	private int failedRows;
+	private int errorsAtStart;
 
 	public void execute() {
 
@@ -77,6 +102,8 @@ public class SQLDatabaseCrawler extends Connector {
 		itemsAdded = 0;
 		itemsDeleted = 0;
 		itemsUnchanged = 0;
+		totalRowCount = 0;
+		cols = null;
 
 		DONE: try {
 
@@ -107,26 +134,19 @@ public class SQLDatabaseCrawler extends Connector {
 				break DONE;
 			}
 
-			indexStatement = con.prepareStatement(indexSQL,
-					java.sql.ResultSet.TYPE_FORWARD_ONLY,
-					java.sql.ResultSet.CONCUR_READ_ONLY);
-			indexStatement.setFetchSize(fetchSize);
-
-			logger.info("Processing index SQL:" + indexSQL);
-
-			int totalRowCount = 0;
-			while (true) {
-				int rowCount = runQuery();
-				if (rowCount == 0) {
-					break;
-				}
-
-				totalRowCount += rowCount;
-				super.setLastMessage("Total rows processed: " + totalRowCount);
+			if (watermarkCol != null) {
+				runChanges(con);
+			} else if (partitions > 1) {
+				logger.info("Processing index SQL:" + indexSQL);
+				runPartitions(con);
+			} else {
+				logger.info("Processing index SQL:" + indexSQL);
+				RangeScan scan = new RangeScan("", null);
+				scan.scan(con);
+			}
 
-				if (super.getInterrupted()) {
-					break DONE;
-				}
+			if (super.getInterrupted()) {
+				break DONE;
 			}
 
 			if (afterSQL != null) {
@@ -139,7 +159,11 @@ public class SQLDatabaseCrawler extends Connector {
 				}
 			}
 
-			itemsDeleted = lookForDeletes(super.getStageList());
+			if (watermarkCol == null) {
+				itemsDeleted = lookForDeletes(super.getStageList());
+			} else {
+				saveWatermark();
+			}
 
 			String elapsedStr = Util.getFormattedElapsedTime(System
 					.currentTimeMillis() - startOfCrawl);
@@ -203,111 +227,626 @@ public class SQLDatabaseCrawler extends Connector {
 		fetchSize = params.getIntProperty("fetch-size");
 
 		inferDataTypes = params.getBooleanProperty("infer-data-types", true);
+
+		partitions = params.getIntProperty("partitions", 1);
+		boundsSQL = params.getProperty("bounds-sql");
+
+		watermarkCol = params.getProperty("watermark-col");
+		changesSQL = params.getProperty("changes-sql");
+		deletesSQL = params.getProperty("deletes-sql");
 	}
 
 	/**
-	 * Fetch one page of results and process it.
-	 * 
-	 * @return
-	 * @throws SQLException
-	 * @throws PipelineException
+	 * Fetch the rows that changed since the last run, and the rows that were
+	 * deleted, and push them down the pipeline. The link queue, if any, is
+	 * not used; the database says what changed.
 	 */
-	private int runQuery() throws SQLException, PipelineException {
-
-		logger.info("Running index SQL for primary key [" + primaryKeyCol
-				+ "] > " + lastPrimaryKey);
-		ResultSetMetaData meta = indexStatement.getMetaData();
-		if (meta != null) {
-			if (cols == null) {
-				populateColumns(meta, item);
+	private void runChanges(Connection con) throws Exception {
+		if (changesSQL == null) {
+			throw new PipelineException("Changes SQL is required when a watermark column is set");
+		}
+		Comparable<?> lastWatermark = loadWatermark();
+		startWatermark = lastWatermark;
+		watermark = lastWatermark;
+		failedWatermark = null;
+		failedRows = 0;
+		errorsAtStart = super.getErrorCount();
+
+		// deletes first, so a row that was deleted and added again ends up added
+		if (deletesSQL != null && lastWatermark != null) {
+			logger.info("Processing deletes SQL for watermark > " + lastWatermark);
+			PreparedStatement state = con.prepareStatement(deletesSQL);
+			try {
+				bindWatermark(state, lastWatermark);
+				ResultSet rs = state.executeQuery();
+				boolean hasWatermark = rs.getMetaData().getColumnCount() > 1;
+				while (rs.next() && !super.getInterrupted()) {
+					String id = rs.getString(1);
+					if (id == null) {
+						continue;
+					}
+					Item item = newItem(this.item);
+					item.setAttributeDefs(null);
+					item.setItemId(id.trim());
+					item.setAction(Item.ACTION_DELETE);
+					processItem(item);
+					itemsDeleted++;
+
+					if (hasWatermark) {
+						raiseWatermark(readWatermark(rs, 2));
+					}
+				}
+				rs.close();
+			} finally {
+				state.close();
 			}
+		}
 
-			String dataType = (String) item.getAttributeDefs().get(primaryKeyCol)
-					.getPropertiesMap().get("datatype");
-			if ("N".equals(dataType)) {
-				indexStatement
-						.setInt(1, Integer.getInteger(lastPrimaryKey, 0));
+		logger.info("Processing changes SQL for watermark > " + lastWatermark);
+		PreparedStatement state = con.prepareStatement(changesSQL,
+				java.sql.ResultSet.TYPE_FORWARD_ONLY,
+				java.sql.ResultSet.CONCUR_READ_ONLY);
+		state.setFetchSize(fetchSize);
+		try {
+			ResultSetMetaData meta = state.getMetaData();
+			if (lastWatermark != null) {
+				bindWatermark(state, lastWatermark);
+			} else if (meta != null) {
+				ensureColumns(meta);
+				bindWatermark(state, lowestWatermark(meta.getColumnType(findColumn(watermarkCol))));
 			} else {
-				indexStatement.setString(1, lastPrimaryKey);
+				state.setString(1, "");
+			}
+			ResultSet rs = state.executeQuery();
+
+			ensureColumns(rs.getMetaData());
+			int watermarkColNum = findColumn(watermarkCol);
+			int colCount = rs.getMetaData().getColumnCount();
+			int rowCount = 0;
+			int added = 0;
+
+			while (rs.next()) {
+				rowCount++;
+				Item item = newItem(this.item);
+				String itemId = null;
+
+				for (int i = 1; i <= colCount; i++) {
+					String value = rs.getString(i);
+					if (value == null) {
+						continue;
+					}
+					value = value.trim();
+					if (value.length() == 0) {
+						continue;
+					}
+					item.getRootNode().addNode(cols[i - 1], value);
+					if (i == itemIdColNum) {
+						itemId = value;
+					}
+				}
+				item.setItemId(itemId);
+				Comparable<?> rowWatermark = readWatermark(rs, watermarkColNum);
+
+				try {
+					processItem(item);
+					added++;
+					raiseWatermark(rowWatermark);
+				} catch (PipelineException e) {
+					error("Error processing item " + itemId
+							+ ". Message = " + e.getMessage());
+					rowFailed(rowWatermark);
+				}
+
+				if (rowCount % fetchSize == 0) {
+					addRows(rowCount, added, 0);
+					rowCount = 0;
+					added = 0;
+				}
+				if (super.getInterrupted()) {
+					break;
+				}
+			}
+			rs.close();
+			addRows(rowCount, added, 0);
+
+		} finally {
+			state.close();
+		}
+	}
+
+	private int findColumn(String name) throws PipelineException {
+		for (int i = 0; i < cols.length; i++) {
+			if (cols[i].equals(name)) {
+				return i + 1; // add one for jdbc
 			}
+		}
+		throw new PipelineException("The watermark column was not found in the result set: "
+				+ name);
+	}
+
+	/**
+	 * Read a watermark value in a form that compares correctly and survives
+	 * being saved as a string: BigDecimal for numbers, Timestamp for dates
+	 * and times, and String for anything else.
+	 */
+	private Comparable<?> readWatermark(ResultSet rs, int col) throws SQLException {
+		Comparable<?> value;
+		switch (watermarkType(rs.getMetaData().getColumnType(col))) {
+		case 'N':
+			value = rs.getBigDecimal(col);
+			break;
+		case 'D':
+			value = rs.getTimestamp(col);
+			break;
+		default:
+			value = rs.getString(col);
+		}
+		return value;
+	}
+
+	/**
+	 * Called for a row that was processed. Once a row has failed, the
+	 * watermark stops rising, so that with a Changes SQL that is ordered by
+	 * the watermark column, it stays below the failed row.
+	 */
+	private void raiseWatermark(Comparable<?> value) {
+		if (value == null || failedRows > 0) {
+			return;
+		}
+		if (watermark == null || compareWatermarks(value, watermark) > 0) {
+			watermark = value;
+		}
+	}
+
+	/**
+	 * Called for a row that failed, so it is fetched again on the next run.
+	 */
+	private void rowFailed(Comparable<?> value) {
+		failedRows++;
+		if (value != null && (failedWatermark == null 
+				|| compareWatermarks(value, failedWatermark) < 0)) {
+			failedWatermark = value;
+		}
+	}
+
+	/**
+	 * Compare two watermarks. Values of different types, which
+	 * should not happen, are compared as strings.
+	 */
+	private static int compareWatermarks(Comparable<?> a, Comparable<?> b) {
+		if (a instanceof BigDecimal && b instanceof BigDecimal) {
+			return ((BigDecimal) a).compareTo((BigDecimal) b);
+		}
+		if (a instanceof Timestamp && b instanceof Timestamp) {
+			return ((Timestamp) a).compareTo((Timestamp) b);
+		}
+		return a.toString().compareTo(b.toString());
+	}
+
+	private static char watermarkType(int sqlType) {
+		switch (sqlType) {
+		case Types.BIGINT:
+		case Types.DECIMAL:
+		case Types.INTEGER:
+		case Types.NUMERIC:
+		case Types.SMALLINT:
+		case Types.TINYINT:
+			return 'N';
+		case Types.DATE:
+		case Types.TIME:
+		case Types.TIMESTAMP:
+			return 'D';
+		default:
+			return 'S';
+		}
+	}
+
+	/**
+	 * The value to start from on the first run. Like the index SQL, a
+	 * numeric scan with no watermark starts at values > 0.
+	 */
+	private static Comparable<?> lowestWatermark(int sqlType) {
+		switch (watermarkType(sqlType)) {
+		case 'N':
+			return BigDecimal.ZERO;
+		case 'D':
+			return new Timestamp(0);
+		default:
+			return "";
+		}
+	}
+
+	private static void bindWatermark(PreparedStatement state, Comparable<?> value) 
+			throws SQLException {
+		if (value instanceof BigDecimal) {
+			state.setBigDecimal(1, (BigDecimal) value);
+		} else if (value instanceof Timestamp) {
+			state.setTimestamp(1, (Timestamp) value);
+		} else {
+			state.setString(1, value.toString());
+		}
+	}
+
+	private File getWatermarkFile() {
+		return new File(Server.getServer().getHomeDir(), "config/watermarks/"
+				+ super.getJobName() + ".xml");
+	}
+
+	private Comparable<?> loadWatermark() throws IOException {
+		File file = getWatermarkFile();
+		if (!file.exists()) {
+			return null;
+		}
+		XMLConfig conf = new XMLConfig();
+		conf.load(file);
+		String value = conf.getProperty("watermark");
+		if (value == null) {
+			return null;
+		}
+		String type = conf.getProperty("watermark-type", "S");
+		if (type.equals("N")) {
+			return new BigDecimal(value);
+		} else if (type.equals("D")) {
+			return Timestamp.valueOf(value);
+		}
+		return value;
+	}
+
+	/**
+	 * Save the highest watermark seen. The items have to be all the way
+	 * through the pipeline first, or a crash could lose them, so the pool or
+	 * the pipeline is flushed, which also empties any batches and async
+	 * boundaries.
+	 * <p>
+	 * The watermark must stay below any row that failed. If it can't, because
+	 * the failure happened on another thread, or a row after the failed one
+	 * had a higher watermark, the previous watermark is kept, and all the
+	 * changes are fetched again on the next run.
+	 */
+	private void saveWatermark() throws IOException, PipelineException {
+		if (super.getInterrupted()) {
+			return;
+		}
+		PipelinePool pipelinePool = super.getPipelinePool();
+		if (pipelinePool != null) {
+			pipelinePool.flush();
 		} else {
-			indexStatement.setString(1, lastPrimaryKey);
+			super.getStageList().flush();
 		}
-		ResultSet rs = indexStatement.executeQuery();
 
+		// errors reported by the pool or by stages after an async boundary
+		boolean asyncErrors = super.getErrorCount() - errorsAtStart > failedRows;
+		if (asyncErrors || (failedRows > 0 && (failedWatermark == null 
+				|| watermark == null || compareWatermarks(watermark, failedWatermark) >= 0))) {
+			logger.warn("Some rows failed. Keeping the previous watermark: " + startWatermark);
+			return;
+		}
+		if (watermark == null || watermark == startWatermark) {
+			return;
+		}
+
+		String type = "S";
+		String value = watermark.toString();
+		if (watermark instanceof BigDecimal) {
+			type = "N";
+			value = ((BigDecimal) watermark).toPlainString();
+		} else if (watermark instanceof Timestamp) {
+			type = "D";
+		}
+		XMLConfig conf = new XMLConfig();
+		conf.setProperty("watermark", value);
+		conf.setProperty("watermark-type", type);
+		conf.save(getWatermarkFile());
+		logger.info("Saved watermark: " + watermark);
+	}
+
+	/**
+	 * Split the primary key range into partitions and scan them at the same
+	 * time, each on its own connection and thread. The boundaries come from
+	 * the bounds SQL, which must return the lowest and highest primary key,
+	 * and are spread evenly between them, so the primary key must be numeric.
+	 * If any partition fails, the whole crawl fails, so that lookForDeletes()
+	 * does not delete the records that were not reached.
+	 */
+	private void runPartitions(Connection con) throws Exception {
+		if (boundsSQL == null) {
+			throw new PipelineException("Bounds SQL is required when partitions > 1");
+		}
+
+		long min;
+		long max;
+		logger.info("Processing bounds SQL:" + boundsSQL);
+		Statement state = con.createStatement();
+		try {
+			ResultSet rs = state.executeQuery(boundsSQL);
+			if (!rs.next()) {
+				return;
+			}
+			min = rs.getLong(1);
+			if (rs.wasNull()) {
+				return; // empty table
+			}
+			max = rs.getLong(2);
+			rs.close();
+		} finally {
+			state.close();
+		}
+
+		// divide first, to avoid overflow
+		long step = max / partitions - min / partitions + 1;
+		RangeScan[] scans = new RangeScan[partitions];
+		Thread[] threads = new Thread[partitions];
+		long lower = min - 1;
+		for (int i = 0; i < partitions; i++) {
+			long upper = (i == partitions - 1) ? max : Math.min(lower + step, max);
+			scans[i] = new RangeScan(String.valueOf(lower), String.valueOf(upper));
+			lower = upper;
+
+			threads[i] = new Thread(scans[i]);
+			threads[i].setName(super.getJobName() + "-partition-" + i);
+			threads[i].start();
+		}
+
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		for (RangeScan scan : scans) {
+			if (scan.error != null) {
+				throw scan.error;
+			}
+		}
+	}
+
+	/**
+	 * Called by each scan after each page of results.
+	 */
+	private synchronized void addRows(int rowCount, int added, int unchanged) {
+		totalRowCount += rowCount;
+		itemsAdded += added;
+		itemsUnchanged += unchanged;
+		super.setLastMessage("Total rows processed: " + totalRowCount);
+	}
+
+	/**
+	 * Discover the columns on the first query. With partitions, the first
+	 * scan to get here does it for all of them.
+	 */
+	private synchronized void ensureColumns(ResultSetMetaData meta)
+			throws SQLException, PipelineException {
 		if (cols == null) {
-			populateColumns(rs.getMetaData(), item);
+			populateColumns(meta, item);
 		}
+	}
+
+	private boolean isNumericKey() {
+		AttributeDef def = item.getAttributeDefs().get(primaryKeyCol);
+		return def != null && "N".equals(def.getPropertiesMap().get("datatype"));
+	}
 
-		int colCount = rs.getMetaData().getColumnCount();
-		String primaryKey = "";
-		String itemId = "";
-		int rowCount = 0;
+	/**
+	 * Pages through the rows with a primary key greater than a lower bound and, 
+	 * optionally, no greater than an upper bound. The index SQL gets the last
+	 * primary key seen as its first parameter, and the upper bound, if any, 
+	 * as its second.
+	 */
+	class RangeScan implements Runnable {
+		private String lastPrimaryKey;
+		private String upperBound;
+		private PreparedStatement indexStatement;
+		private Adler32 adler32 = new Adler32();
+		private Item scanItem = new Item();
+		private Exception error;
+
+		RangeScan(String lowerBound, String upperBound) {
+			this.lastPrimaryKey = lowerBound;
+			this.upperBound = upperBound;
+		}
 
-		while (rs.next()) {
+		/**
+		 * Run this scan on its own connection.
+		 */
+		public void run() {
+			Connection con = null;
+			try {
+				con = DriverManager.getConnection(url, user, password);
+				scan(con);
+			} catch (Exception e) {
+				error = e;
+				logger.error("Error scanning primary keys " + lastPrimaryKey 
+						+ " to " + upperBound, e);
+			} finally {
+				try {
+					if (con != null) {
+						con.close();
+					}
+				} catch (SQLException e) {
+					// ok to ignore
+				}
+			}
+		}
 
-			rowCount++;
+		void scan(Connection con) throws SQLException, PipelineException {
+			indexStatement = con.prepareStatement(indexSQL,
+					java.sql.ResultSet.TYPE_FORWARD_ONLY,
+					java.sql.ResultSet.CONCUR_READ_ONLY);
+			indexStatement.setFetchSize(fetchSize);
+			try {
+				while (!getInterrupted()) {
+					int rowCount = runQuery();
+					if (rowCount == 0) {
+						break;
+					}
+				}
+			} finally {
+				indexStatement.close();
+			}
+		}
 
-			if (item.hasAttributeDefs()) {
-				Map defs = item.getAttributeDefs();
-				item.clear();
-				item.setAttributeDefs(defs);
+		/**
+		 * Fetch one page of results and process it.
+		 * 
+		 * @return the number of rows fetched
+		 * @throws SQLException
+		 * @throws PipelineException
+		 */
+		private int runQuery() throws SQLException, PipelineException {
+
+			logger.info("Running index SQL for primary key [" + primaryKeyCol
+					+ "] > " + lastPrimaryKey
+					+ (upperBound == null ? "" : " <= " + upperBound));
+			ResultSetMetaData meta = indexStatement.getMetaData();
+			if (meta != null) {
+				ensureColumns(meta);
+				setKey(1, lastPrimaryKey);
 			} else {
-				item.clear();
+				indexStatement.setString(1, lastPrimaryKey);
+			}
+			if (upperBound != null) {
+				setKey(2, upperBound);
 			}
+			ResultSet rs = indexStatement.executeQuery();
 
-			adler32.reset();
+			ensureColumns(rs.getMetaData());
 
-			for (int i = 1; i <= colCount; i++) {
-				String value = rs.getString(i);
+			int colCount = rs.getMetaData().getColumnCount();
+			String primaryKey = "";
+			String itemId = "";
+			int rowCount = 0;
+			int added = 0;
+			int unchanged = 0;
 
-				if (value == null) {
-					continue;
-				}
-				value = value.trim();
-				if (value.length() == 0) {
-					continue;
+			while (rs.next()) {
+
+				rowCount++;
+
+				Item item = newItem(scanItem);
+
+				adler32.reset();
+
+				for (int i = 1; i <= colCount; i++) {
+					String value = rs.getString(i);
+
+					if (value == null) {
+						continue;
+					}
+					value = value.trim();
+					if (value.length() == 0) {
+						continue;
+					}
+
+					item.getRootNode().addNode(cols[i - 1], value);
+
+					if (i == itemIdColNum) {
+						itemId = value;
+					}
+					if (i == primaryKeyColNum) {
+						primaryKey = value;
+					}
+
+					updateChecksum(value);
 				}
 
-				item.getRootNode().addNode(cols[i - 1], value);
+				if (hasChanged(itemId, adler32.getValue())) {
+					item.setItemId(itemId);
 
-				if (i == itemIdColNum) {
-					itemId = value;
+					try {
+						processItem(item);
+						added++;
+					} catch (PipelineException e) {
+						error("Error processing item " + itemId
+								+ ". Message = " + e.getMessage());
+					}
+
+				} else {
+					unchanged++;
+					releaseItem(item);
 				}
-				if (i == primaryKeyColNum) {
-					primaryKey = value;
+
+				if (getInterrupted()) {
+					break;
 				}
+			}
 
-				updateChecksum(value);
+			if (rowCount > 0) {
+				lastPrimaryKey = primaryKey;
 			}
 
-			if (hasChanged(itemId, adler32.getValue())) {
-				item.setItemId(itemId);
+			rs.close();
 
-				try {
-					super.getStageList().processItem(item);
-					itemsAdded++;
-				} catch (PipelineException e) {
-					super.error("Error processing item " + itemId
-							+ ". Message = " + e.getMessage());
-				}
+			logger.info("Rows processed: " + rowCount);
+			addRows(rowCount, added, unchanged);
 
+			return rowCount;
+		}
+
+		private void setKey(int index, String key) throws SQLException {
+			if (isNumericKey()) {
+				// a numeric scan with no lower bound starts at keys > 0
+				BigDecimal value = key.length() == 0 ? BigDecimal.ZERO : new BigDecimal(key);
+				indexStatement.setBigDecimal(index, value);
 			} else {
-				itemsUnchanged++;
+				indexStatement.setString(index, key);
 			}
+		}
 
-			if (super.getInterrupted()) {
-				break;
+		/**
+		 * Calculates a checksum across the record. This method accepts each field
+		 * and updates the Adler32 value. (A 64 bit value would be better).
+		 */
+		private void updateChecksum(String value) {
+			int len = value.length();
+			for (int i = 0; i < len; i++) {
+				char ch = value.charAt(i);
+				adler32.update((ch >> 8) & 0xff);
+				adler32.update(ch & 0xff);
 			}
 		}
+	}
 
-		lastPrimaryKey = primaryKey;
+	/**
+	 * Return an empty item to populate. It carries the attribute defs
+	 * discovered in populateColumns(). If there is a pipeline pool, the item
+	 * comes from the pool, otherwise the reusable item is cleared and returned.
+	 */
+	private Item newItem(Item reusable) throws PipelineException {
+		Map defs = null;
+		if (item.hasAttributeDefs()) {
+			defs = item.getAttributeDefs();
+		}
 
-		rs.close();
+		Item newItem;
+		PipelinePool pipelinePool = super.getPipelinePool();
+		if (pipelinePool != null) {
+			newItem = pipelinePool.getItem();
+		} else {
+			newItem = reusable;
+			newItem.clear();
+		}
+		newItem.setAttributeDefs(defs);
+		return newItem;
+	}
 
-		logger.info("Rows processed: " + rowCount);
+	private void releaseItem(Item item) {
+		PipelinePool pipelinePool = super.getPipelinePool();
+		if (pipelinePool != null) {
+			pipelinePool.releaseItem(item);
+		}
+	}
 
-		return rowCount;
+	/**
+	 * Push the item down the pipeline, or hand it to the pipeline pool.
+	 * Partitions without a pool take turns on the single pipeline.
+	 */
+	private void processItem(Item item) throws PipelineException {
+		PipelinePool pipelinePool = super.getPipelinePool();
+		if (pipelinePool != null) {
+			pipelinePool.processItem(item);
+		} else {
+			StageList stageList = super.getStageList();
+			synchronized (stageList) {
+				stageList.processItem(item);
+			}
+		}
 	}
 
 	/**
@@ -384,22 +923,10 @@ public class SQLDatabaseCrawler extends Connector {
 		}
 	}
 
-	/**
-	 * Calculates a checksum across the record. This method accepts each field
-	 * and updates the Adler32 value. (A 64 bit value would be better).
-	 */
-	private void updateChecksum(String value) {
-		int len = value.length();
-		for (int i = 0; i < len; i++) {
-			char ch = value.charAt(i);
-			adler32.update((ch >> 8) & 0xff);
-			adler32.update(ch & 0xff);
-		}
-	}
-
 	/**
 	 * Return true if the name was found in the linkqueue and the signature has
 	 * changed. Also updates the queue with the current startOfCrawl timestamp.
+	 * The link queue is not thread-safe, so partitions take turns.
 	 */
 	private boolean hasChanged(String id, long sig) {
 		if (linkQueue != null) {
@@ -411,8 +938,11 @@ public class SQLDatabaseCrawler extends Connector {
 								+ "itemId/primary key, and it must be present in every record");
 			}
 
-			long prevSig = linkQueue.getSignature(id);
-			linkQueue.update(id, sig, startOfCrawl);
+			long prevSig;
+			synchronized (linkQueue) {
+				prevSig = linkQueue.getSignature(id);
+				linkQueue.update(id, sig, startOfCrawl);
+			}
 			if (prevSig == sig) {
 				return false;
 			}
@@ -423,7 +953,8 @@ public class SQLDatabaseCrawler extends Connector {
 	/**
 	 * Find all the records that didn't get touched, and delete them.
 	 * 
-	 * @param stageList
+	 * @param stageList the pipeline to push deletes into. Ignored if
+	 * this connector is running a pipeline pool.
 	 */
 	public int lookForDeletes(StageList stageList) throws Exception {
 		if (linkQueue == null)
@@ -437,12 +968,18 @@ public class SQLDatabaseCrawler extends Connector {
 			}
 
 			itemsDeleted++;
-			item.clear();
+			Item item = newItem(this.item);
+			item.setAttributeDefs(null);
 			item.setItemId(id);
 			item.setAction(Item.ACTION_DELETE);
 
 			// push it down the pipeline
-			stageList.processItem(item);
+			PipelinePool pipelinePool = super.getPipelinePool();
+			if (pipelinePool != null) {
+				pipelinePool.processItem(item);
+			} else {
+				stageList.processItem(item);
+			}
 
 			// remove it from the queue
 			linkQueue.remove(id);
@@ -478,6 +1015,10 @@ public class SQLDatabaseCrawler extends Connector {
 		return "SQLCrawler";
 	}
 
+	public boolean pipelinePoolSupported() {
+		return true;
+	}
+
 	public int getItemsAdded() {
 		return itemsAdded;
 	}
@@ -15,56 +15,54 @@
  ******************************************************************************/
 package org.openpipeline.pipeline.connector.csvcrawler;
 
+import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.Arrays;
 import java.util.Map;
 
 import org.openpipeline.pipeline.connector.Connector;
+import org.openpipeline.pipeline.connector.linkqueue.LinkQueue;
+import org.openpipeline.pipeline.connector.linkqueue.LinkQueueFactory;
 import org.openpipeline.pipeline.item.Item;
+import org.openpipeline.pipeline.stage.PipelinePool;
+import org.openpipeline.pipeline.stage.StageList;
 import org.openpipeline.scheduler.PipelineException;
+import org.openpipeline.util.CharSpan;
+import org.openpipeline.util.FNVHash;
 import org.openpipeline.util.Util;
 import org.openpipeline.util.XMLConfig;
 import org.slf4j.Logger;
 
 /**
  * Crawls CSV files
+ * <p>
+ * If "threads" is greater than 1, the file is split into that many chunks at
+ * record boundaries, and the chunks are parsed at the same time. Set the
+ * pipeline pool size to at least the number of threads, so each thread has
+ * a pipeline to feed.
+ * <p>
+ * If a link queue is configured, each row's signature is stored in it under
+ * the row's itemId. Rows whose signature has not changed since the last run
+ * are skipped before they reach the pipeline, and itemIds that are no longer
+ * in the file are sent down the pipeline as deletes.
  */
 public class CSVCrawler extends Connector {
 
+	private static final int PROGRESS_INTERVAL = 1000;
+
 	private Logger logger;
 	private int rowsProcessed;
 	private Item item = new Item();
 	
-	/*
-	private int recsProcessed;
-
-
 	private LinkQueue linkQueue;
 	private long startOfCrawl;
 
 	private int itemsAdded;
 	private int itemsDeleted;
 	private int itemsUnchanged;
-	private Adler32 adler32 = new Adler32();
-
-	private PreparedStatement indexStatement = null;
-	private String driver;
-	private String url;
-	private String user;
-	private String password;
-	private String beforeSQL;
-	private String indexSQL;
-	private String afterSQL;
-	private String itemIdCol;
-	private int fetchSize = 1000;
-	private String lastPrimaryKey = "";
-	private String primaryKeyCol;
-	private String[] cols;
-	private int itemIdColNum;
-	private int primaryKeyColNum;
-	private boolean inferDataTypes;
-	*/
 
 	public void execute() {
 
@@ -73,7 +71,7 @@ public class CSVCrawler extends Connector {
 			logger = super.getLogger();
 			logger.info("Starting " + super.getJobName() + "...");
 			super.setLastMessage("Running");
-			long startOfCrawl = System.currentTimeMillis();
+			startOfCrawl = System.currentTimeMillis();
 			
 			XMLConfig params = super.getParams();
 			if (params == null) {
@@ -84,39 +82,155 @@ public class CSVCrawler extends Connector {
 			String filename = params.getProperty("filename"); // could make this a URL instead
 			String encoding = params.getProperty("encoding", "UTF-8");
 			String itemIdCol = params.getProperty("itemid-col");
+			int threads = params.getIntProperty("threads", 1);
+
+			String linkQueueName = params.getProperty("linkqueue-name");
+			linkQueue = LinkQueueFactory.getLinkQueueByName(linkQueueName);
+			if (linkQueue != null) {
+				linkQueue.setParams(params); // inits the queue, could throw error
+			}
 
 			if (super.getInterrupted()) {
 				break DONE;
 			}
 
-			FileInputStream fis = new FileInputStream(filename);
-			InputStreamReader isr = new InputStreamReader(fis, encoding);
-			
-			CsvReader rows = new CsvReader(isr);
-			
-			rows.readHeaders();
-			String [] headers = rows.getHeaders();
-			int colCount = headers.length;
-			int itemIdColNum = -1;
+			rowsProcessed = 0;
+			itemsAdded = 0;
+			itemsDeleted = 0;
+			itemsUnchanged = 0;
 
-			
-			// find the number of the column to use for the itemId
-			for (int i = 0; i < colCount; i++) {
-				if (headers[i].equals(itemIdCol)) {
-					itemIdColNum = i;
+			if (threads > 1 && !CsvSplitter.isSplittable(encoding)) {
+				super.warn("Cannot split a file with encoding " + encoding + ", using one thread");
+				threads = 1;
+			}
+
+			if (threads > 1) {
+				runChunks(new File(filename), encoding, itemIdCol, threads);
+			} else {
+				FileInputStream fis = new FileInputStream(filename);
+				InputStreamReader isr = new InputStreamReader(fis, encoding);
+				CsvReader rows = new CsvReader(isr);
+				try {
+					rows.readHeaders();
+					String [] headers = rows.getHeaders();
+					int itemIdColNum = findItemIdCol(headers, itemIdCol);
+					processRows(rows, headers, itemIdColNum, this.item);
+				} finally {
+					rows.close();
+					isr.close();
+					fis.close();
 				}
 			}
-			if (itemIdColNum == -1) {
-				throw new PipelineException("The column to use for the itemId was not found in the result set: " + itemIdCol + " cols:" + Arrays.asList(headers).toString());
+
+			if (super.getInterrupted()) {
+				break DONE;
 			}
 
-			rowsProcessed = 0;
-			while (rows.readRecord()) {
+			itemsDeleted = lookForDeletes();
+
+			String elapsedStr = Util.getFormattedElapsedTime(System.currentTimeMillis() - startOfCrawl);
+			String msg = "CSVCrawler ended. Rows processed: " + rowsProcessed 
+					+ " Items added: " + itemsAdded + " deleted: " + itemsDeleted 
+					+ " unchanged: " + itemsUnchanged + " Elapsed time: " + elapsedStr;
+
+			logger.info(msg);
+			super.setLastMessage(msg);
+			
+		} catch (Exception e) {
+			super.error("Error executing CSVCrawler", e);
+			super.setLastMessage("Error: " + e.toString());
+
+		} 		
+	}
+
+	/**
+	 * Split the file at record boundaries and parse the chunks at the same
+	 * time, each on its own thread. The rows do not reach the pipeline in
+	 * file order. The header comes from the first chunk and is used for all
+	 * of them.
+	 */
+	private void runChunks(File file, String encoding, String itemIdCol, int threads) 
+			throws Exception {
+		long[] bounds = CsvSplitter.split(file, threads);
 
-				if (super.getInterrupted()) {
-					break DONE;
+		ChunkParser[] parsers = new ChunkParser[threads];
+		parsers[0] = new ChunkParser(file, bounds[0], bounds[1], encoding);
+		String[] headers;
+		int itemIdColNum;
+		try {
+			parsers[0].rows.readHeaders();
+			headers = parsers[0].rows.getHeaders();
+			itemIdColNum = findItemIdCol(headers, itemIdCol);
+		} catch (Exception e) {
+			parsers[0].close();
+			throw e;
+		}
+
+		Thread[] parserThreads = new Thread[threads];
+		for (int i = 0; i < threads; i++) {
+			if (i > 0) {
+				if (bounds[i] == bounds[i + 1]) {
+					continue;
 				}
-				
+				parsers[i] = new ChunkParser(file, bounds[i], bounds[i + 1], encoding);
+			}
+			parsers[i].setHeaders(headers, itemIdColNum);
+			parserThreads[i] = new Thread(parsers[i]);
+			parserThreads[i].setName(super.getJobName() + "-chunk-" + i);
+			parserThreads[i].start();
+		}
+
+		for (Thread thread : parserThreads) {
+			if (thread != null) {
+				thread.join();
+			}
+		}
+		for (ChunkParser parser : parsers) {
+			if (parser != null && parser.error != null) {
+				throw parser.error;
+			}
+		}
+	}
+
+	/**
+	 * Find the number of the column to use for the itemId.
+	 */
+	private int findItemIdCol(String [] headers, String itemIdCol) throws PipelineException {
+		int itemIdColNum = -1;
+		for (int i = 0; i < headers.length; i++) {
+			if (headers[i].equals(itemIdCol)) {
+				itemIdColNum = i;
+			}
+		}
+		if (itemIdColNum == -1) {
+			throw new PipelineException("The column to use for the itemId was not found in the result set: " + itemIdCol + " cols:" + Arrays.asList(headers).toString());
+		}
+		return itemIdColNum;
+	}
+
+	/**
+	 * Read rows until the end of the input and push each one down the pipeline.
+	 * @param reusable the item to fill if there is no pipeline pool
+	 */
+	private void processRows(CsvReader rows, String [] headers, int itemIdColNum, Item reusable) 
+			throws IOException, PipelineException {
+		PipelinePool pipelinePool = super.getPipelinePool();
+		int colCount = headers.length;
+		int count = 0;
+		int added = 0;
+		int unchanged = 0;
+
+		while (rows.readRecord()) {
+
+			if (super.getInterrupted()) {
+				break;
+			}
+			
+			Item item;
+			if (pipelinePool != null) {
+				item = pipelinePool.getItem();
+			} else {
+				item = reusable;
 				if (item.hasAttributeDefs()) {
 					Map defs = item.getAttributeDefs();
 					item.clear();
@@ -124,52 +238,184 @@ public class CSVCrawler extends Connector {
 				} else {
 					item.clear();
 				}
+			}
+			
+			long signature = FNVHash.OFFSET_BASIS;
+			for (int i = 0; i < colCount; i++) {
+				// copied straight from the reader's buffer, no Strings
+				CharSpan value = rows.getTrimmedSpan(i);
 				
-				for (int i = 0; i < colCount; i++) {
-					String value = rows.get(i);
-					
-					if (value == null) {
-						continue;
-					}
-					value = value.trim();
-					if (value.length() == 0) {
-						continue;
-					}
-					
-					item.getRootNode().addNode(headers[i], value);
+				// mark the column boundary, so a value that moves to the 
+				// next column changes the signature
+				signature = FNVHash.update(signature, '\uffff');
 
-					if (i == itemIdColNum) {
-						item.setItemId(value);
-					}
+				if (value.size() == 0) {
+					continue;
 				}
 				
-				try {
-					super.getStageList().processItem(item);
-				} catch (PipelineException e) {
-					super.error("Error processing item " + item.getItemId()
-							+ ". Message = " + e.getMessage());
+				item.getRootNode().addNode(headers[i], value);
+
+				if (i == itemIdColNum) {
+					item.setItemId(value.toString());
 				}
-				
-				rowsProcessed++;
+				signature = FNVHash.update(signature, value.getArray(),
+						value.getOffset(), value.size());
 			}
-	
-			rows.close();
-			isr.close();
-			fis.close();
 
-			String elapsedStr = Util.getFormattedElapsedTime(System.currentTimeMillis() - startOfCrawl);
-			String msg = "CSVCrawler ended. Rows processed: " + rowsProcessed + " Elapsed time: " + elapsedStr;
+			count++;
+			boolean submitted = false;
+			try {
+				if (!hasChanged(item.getItemId(), signature)) {
+					unchanged++;
+					continue;
+				}
 
-			logger.info(msg);
-			super.setLastMessage(msg);
+				if (pipelinePool != null) {
+					pipelinePool.processItem(item);
+				} else {
+					// chunks without a pool take turns on the single pipeline
+					StageList stageList = super.getStageList();
+					synchronized (stageList) {
+						stageList.processItem(item);
+					}
+				}
+				submitted = true;
+				added++;
+
+			} catch (PipelineException e) {
+				super.error("Error processing item " + item.getItemId()
+						+ ". Message = " + e.getMessage());
+			} finally {
+				// an item from the pool that wasn't handed back to it
+				if (!submitted && pipelinePool != null) {
+					pipelinePool.releaseItem(item);
+				}
+			}
 			
-		} catch (Exception e) {
-			super.error("Error executing CSVCrawler", e);
-			super.setLastMessage("Error: " + e.toString());
+			if (count >= PROGRESS_INTERVAL) {
+				addRows(count, added, unchanged);
+				count = 0;
+				added = 0;
+				unchanged = 0;
+			}
+		}
+		addRows(count, added, unchanged);
+	}
 
-		} 		
+	private synchronized void addRows(int count, int added, int unchanged) {
+		rowsProcessed += count;
+		itemsAdded += added;
+		itemsUnchanged += unchanged;
+	}
+
+	/**
+	 * Return true if the id was not found in the link queue, or the signature
+	 * has changed. Also updates the queue with the current startOfCrawl
+	 * timestamp. The link queue is not thread-safe, so chunks take turns.
+	 */
+	private boolean hasChanged(String id, long sig) {
+		if (linkQueue != null) {
+
+			if (id == null) {
+				throw new RuntimeException(
+						"Error: no itemId defined for row. "
+								+ "If you use a link queue, you must also define an "
+								+ "itemId column, and it must be present in every row");
+			}
+
+			long prevSig;
+			synchronized (linkQueue) {
+				prevSig = linkQueue.getSignature(id);
+				linkQueue.update(id, sig, startOfCrawl);
+			}
+			if (prevSig == sig) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Find all the rows that were not in the file this time, and delete them.
+	 */
+	private int lookForDeletes() throws PipelineException {
+		if (linkQueue == null) {
+			return 0;
+		}
+
+		PipelinePool pipelinePool = super.getPipelinePool();
+		int deleted = 0;
+		while (true) {
+			String id = linkQueue.fetchNextUncrawled(startOfCrawl);
+			if (id == null) {
+				break;
+			}
+
+			deleted++;
+			Item item;
+			if (pipelinePool != null) {
+				item = pipelinePool.getItem();
+			} else {
+				item = this.item;
+				item.clear();
+			}
+			item.setItemId(id);
+			item.setAction(Item.ACTION_DELETE);
+
+			// push it down the pipeline
+			if (pipelinePool != null) {
+				pipelinePool.processItem(item);
+			} else {
+				super.getStageList().processItem(item);
+			}
+
+			// remove it from the queue
+			linkQueue.remove(id);
+		}
+		return deleted;
 	}
 
+	/**
+	 * Parses one chunk of the file on its own thread.
+	 */
+	class ChunkParser implements Runnable {
+		private InputStream in;
+		private CsvReader rows;
+		private String [] headers;
+		private int itemIdColNum;
+		private Item chunkItem = new Item();
+		private Exception error;
+
+		ChunkParser(File file, long start, long end, String encoding) throws IOException {
+			in = new CsvSplitter.ChunkInputStream(file, start, end);
+			rows = new CsvReader(new InputStreamReader(in, encoding));
+		}
+
+		void setHeaders(String [] headers, int itemIdColNum) {
+			this.headers = headers;
+			this.itemIdColNum = itemIdColNum;
+		}
+
+		public void run() {
+			try {
+				processRows(rows, headers, itemIdColNum, chunkItem);
+			} catch (Exception e) {
+				error = e;
+				logger.error("Error parsing " + Thread.currentThread().getName(), e);
+			} finally {
+				close();
+			}
+		}
+
+		void close() {
+			rows.close();
+			try {
+				in.close();
+			} catch (IOException e) {
+				// ok to ignore
+			}
+		}
+	}
 
 	public String getDescription() {
 		return "A simple crawler for a CSV file";
@@ -199,6 +445,22 @@ public class CSVCrawler extends Connector {
 		return "CSVCrawler";
 	}
 
+	public boolean pipelinePoolSupported() {
+		return true;
+	}
+
+	public int getItemsAdded() {
+		return itemsAdded;
+	}
+
+	public int getItemsDeleted() {
+		return itemsDeleted;
+	}
+
+	public int getItemsUnchanged() {
+		return itemsUnchanged;
+	}
+
 
 
 }
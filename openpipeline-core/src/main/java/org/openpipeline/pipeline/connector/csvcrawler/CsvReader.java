@@ -33,6 +33,9 @@ import java.nio.charset.Charset;
 import java.text.NumberFormat;
 import java.util.HashMap;
 
+import org.openpipeline.util.CharArraySequence;
+import org.openpipeline.util.CharSpan;
+
 /**
  * A stream based parser for parsing delimited text data from a file or a
  * stream.
@@ -58,6 +61,15 @@ public class CsvReader {
 
 	private RawRecordBuffer rawBuffer = new RawRecordBuffer();
 
+	// the values of all the columns in the current record, end to end
+	private ColumnBuffer recordBuffer = new ColumnBuffer();
+
+	private int[] columnStarts = new int[StaticSettings.INITIAL_COLUMN_COUNT];
+
+	private int[] columnLengths = new int[StaticSettings.INITIAL_COLUMN_COUNT];
+
+	private CharArraySequence span = new CharArraySequence();
+
 	private boolean[] isQualified = null;
 
 	private String rawRecord = "";
@@ -514,10 +526,10 @@ public class CsvReader {
 	public String[] getValues() throws IOException {
 		checkClosed();
 
-		// need to return a clone, and can't use clone because values.Length
-		// might be greater than columnsCount
 		String[] clone = new String[columnsCount];
-		System.arraycopy(values, 0, clone, 0, columnsCount);
+		for (int i = 0; i < columnsCount; i++) {
+			clone[i] = get(i);
+		}
 		return clone;
 	}
 
@@ -534,12 +546,70 @@ public class CsvReader {
 		checkClosed();
 
 		if (columnIndex > -1 && columnIndex < columnsCount) {
+			// the String is created the first time it is asked for
+			if (values[columnIndex] == null) {
+				int length = columnLengths[columnIndex];
+				values[columnIndex] = length == 0 ? "" : new String(
+						recordBuffer.Buffer, columnStarts[columnIndex], length);
+			}
 			return values[columnIndex];
 		} else {
 			return "";
 		}
 	}
 
+	/**
+	 * Returns the current column value for a given column index as a span of
+	 * the reader's internal buffer, without creating a String. The same span
+	 * object is returned on every call, and the buffer is overwritten by the
+	 * next record, so copy the characters out before calling this method
+	 * again or reading the next record.
+	 * 
+	 * @param columnIndex
+	 *            The index of the column.
+	 * @return The current column value. Empty if the column does not exist.
+	 * @exception IOException
+	 *                Thrown if this object has already been closed.
+	 */
+	public CharSpan getSpan(int columnIndex) throws IOException {
+		checkClosed();
+
+		if (columnIndex > -1 && columnIndex < columnsCount) {
+			span.reset(recordBuffer.Buffer, columnStarts[columnIndex],
+					columnLengths[columnIndex]);
+		} else {
+			span.reset(recordBuffer.Buffer, 0, 0);
+		}
+		return span;
+	}
+
+	/**
+	 * Like {@link #getSpan(int)}, but with leading and trailing whitespace
+	 * and control characters left out of the span, the same ones
+	 * String.trim() would remove.
+	 * 
+	 * @param columnIndex
+	 *            The index of the column.
+	 * @return The current column value, trimmed.
+	 * @exception IOException
+	 *                Thrown if this object has already been closed.
+	 */
+	public CharSpan getTrimmedSpan(int columnIndex) throws IOException {
+		getSpan(columnIndex);
+
+		char[] buf = span.getArray();
+		int start = span.getOffset();
+		int end = start + span.size();
+		while (start < end && buf[start] <= Letters.SPACE) {
+			start++;
+		}
+		while (end > start && buf[end - 1] <= Letters.SPACE) {
+			end--;
+		}
+		span.reset(buf, start, end - start);
+		return span;
+	}
+
 	/**
 	 * Returns the current column value for a given column header name.
 	 * 
@@ -586,6 +656,7 @@ public class CsvReader {
 		checkClosed();
 
 		columnsCount = 0;
+		recordBuffer.Position = 0;
 		rawBuffer.Position = 0;
 
 		dataBuffer.LineStart = dataBuffer.Position;
@@ -1292,7 +1363,7 @@ public class CsvReader {
 	 *                parsing, normally resulting from improper data format.
 	 */
 	private void endColumn() throws IOException {
-		String currentValue = "";
+		int valueStart = recordBuffer.Position;
 
 		// must be called before setting startedColumn = false
 		if (startedColumn) {
@@ -1307,9 +1378,8 @@ public class CsvReader {
 						}
 					}
 
-					currentValue = new String(dataBuffer.Buffer,
-							dataBuffer.ColumnStart, lastLetter
-									- dataBuffer.ColumnStart + 1);
+					appendValue(dataBuffer.Buffer, dataBuffer.ColumnStart,
+							lastLetter - dataBuffer.ColumnStart + 1);
 				}
 			} else {
 				updateCurrentValue();
@@ -1323,8 +1393,7 @@ public class CsvReader {
 					}
 				}
 
-				currentValue = new String(columnBuffer.Buffer, 0,
-						lastLetter + 1);
+				appendValue(columnBuffer.Buffer, 0, lastLetter + 1);
 			}
 		}
 
@@ -1364,17 +1433,56 @@ public class CsvReader {
 					isQualified.length);
 
 			isQualified = qualifiedHolder;
+
+			int[] startsHolder = new int[newLength];
+
+			System.arraycopy(columnStarts, 0, startsHolder, 0,
+					columnStarts.length);
+
+			columnStarts = startsHolder;
+
+			int[] lengthsHolder = new int[newLength];
+
+			System.arraycopy(columnLengths, 0, lengthsHolder, 0,
+					columnLengths.length);
+
+			columnLengths = lengthsHolder;
 		}
 
-		values[columnsCount] = currentValue;
+		// the String is not created unless get() asks for it
+		values[columnsCount] = null;
 
-		isQualified[columnsCount] = startedWithQualifier;
+		columnStarts[columnsCount] = valueStart;
 
-		currentValue = "";
+		columnLengths[columnsCount] = recordBuffer.Position - valueStart;
+
+		isQualified[columnsCount] = startedWithQualifier;
 
 		columnsCount++;
 	}
 
+	/**
+	 * Copy the value of the current column to the end of the record buffer.
+	 */
+	private void appendValue(char[] buffer, int offset, int length) {
+		if (recordBuffer.Buffer.length - recordBuffer.Position < length) {
+			int newLength = recordBuffer.Buffer.length
+					+ Math.max(length, recordBuffer.Buffer.length);
+
+			char[] holder = new char[newLength];
+
+			System.arraycopy(recordBuffer.Buffer, 0, holder, 0,
+					recordBuffer.Position);
+
+			recordBuffer.Buffer = holder;
+		}
+
+		System.arraycopy(buffer, offset, recordBuffer.Buffer,
+				recordBuffer.Position, length);
+
+		recordBuffer.Position += length;
+	}
+
 	private void appendLetter(char letter) {
 		if (columnBuffer.Position == columnBuffer.Buffer.length) {
 			int newLength = columnBuffer.Buffer.length * 2;
@@ -1492,6 +1600,7 @@ public class CsvReader {
 		// clear public column values for current line
 
 		columnsCount = 0;
+		recordBuffer.Position = 0;
 
 		boolean skippedLine = false;
 
@@ -1558,6 +1667,7 @@ public class CsvReader {
 				headersHolder.IndexByName = null;
 				dataBuffer.Buffer = null;
 				columnBuffer.Buffer = null;
+				recordBuffer.Buffer = null;
 				rawBuffer.Buffer = null;
 			}
 
@@ -0,0 +1,201 @@
+/*******************************************************************************
+ * Copyright 2010 Dieselpoint, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.openpipeline.pipeline.connector.csvcrawler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Divides a CSV file into chunks that can be parsed separately. Each chunk
+ * starts at the beginning of a record, so a quoted field that contains a
+ * newline is never cut in two.
+ * <p>
+ * A newline ends a record if an even number of quotes comes before it in
+ * the file. Quotes inside a quoted field are escaped by doubling them, so
+ * they don't change the count. The file is mapped into memory and the quotes
+ * in each chunk are counted on a separate thread. Then each split point is
+ * moved forward to the first newline that ends a record.
+ * <p>
+ * This only works for encodings in which a quote and a newline are always
+ * single bytes, for example, UTF-8 or ISO-8859-1, and for files that use
+ * the default quote character and escape mode.
+ */
+class CsvSplitter {
+
+	private static final int MAP_WINDOW = 64 * 1024 * 1024;
+	private static final byte QUOTE = '"';
+	private static final byte LF = '\n';
+
+	/**
+	 * Return true if the file can be split when it is read with this encoding.
+	 */
+	static boolean isSplittable(String encoding) {
+		byte[] bytes = "\"\n".getBytes(Charset.forName(encoding));
+		return Arrays.equals(bytes, new byte[] { QUOTE, LF });
+	}
+
+	/**
+	 * Find the split points.
+	 * @param file the file to split
+	 * @param chunks the number of chunks
+	 * @return an array of chunks + 1 offsets. Chunk i runs from offset i up to, but
+	 * not including, offset i + 1. A chunk may be empty.
+	 * @throws IOException
+	 */
+	static long[] split(final File file, int chunks) throws IOException {
+		final long len = file.length();
+		final long[] targets = new long[chunks + 1];
+		for (int i = 0; i < chunks; i++) {
+			targets[i] = len / chunks * i;
+		}
+		targets[chunks] = len;
+
+		final long[] quotes = new long[chunks];
+		final IOException[] error = new IOException[1];
+		Thread[] threads = new Thread[chunks];
+		for (int i = 0; i < chunks; i++) {
+			final int chunk = i;
+			threads[i] = new Thread() {
+				public void run() {
+					try {
+						quotes[chunk] = countQuotes(file, targets[chunk], targets[chunk + 1]);
+					} catch (IOException e) {
+						error[0] = e;
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException(e);
+			}
+		}
+		if (error[0] != null) {
+			throw error[0];
+		}
+
+		long[] bounds = new long[chunks + 1];
+		bounds[chunks] = len;
+		long quoteCount = 0;
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			for (int i = 1; i < chunks; i++) {
+				quoteCount += quotes[i - 1];
+				if (bounds[i - 1] >= targets[i]) {
+					// the last chunk ran past this target
+					bounds[i] = bounds[i - 1];
+				} else {
+					bounds[i] = nextRecord(channel, targets[i], len, (quoteCount & 1) != 0);
+				}
+			}
+		} finally {
+			raf.close();
+		}
+		return bounds;
+	}
+
+	private static long countQuotes(File file, long start, long end) throws IOException {
+		long count = 0;
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			for (long pos = start; pos < end; pos += MAP_WINDOW) {
+				int size = (int) Math.min(MAP_WINDOW, end - pos);
+				MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, pos, size);
+				for (int i = 0; i < size; i++) {
+					if (buf.get(i) == QUOTE) {
+						count++;
+					}
+				}
+			}
+		} finally {
+			raf.close();
+		}
+		return count;
+	}
+
+	/**
+	 * Return the offset just past the first newline at or after start
+	 * that is not inside quotes, or the end of the file if there is none.
+	 */
+	private static long nextRecord(FileChannel channel, long start, long len, boolean inQuotes)
+			throws IOException {
+		for (long pos = start; pos < len; pos += MAP_WINDOW) {
+			int size = (int) Math.min(MAP_WINDOW, len - pos);
+			MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, pos, size);
+			for (int i = 0; i < size; i++) {
+				byte b = buf.get(i);
+				if (b == QUOTE) {
+					inQuotes = !inQuotes;
+				} else if (b == LF && !inQuotes) {
+					return pos + i + 1;
+				}
+			}
+		}
+		return len;
+	}
+
+	/**
+	 * Reads the bytes of one chunk of a file.
+	 */
+	static class ChunkInputStream extends InputStream {
+		private RandomAccessFile raf;
+		private long remaining;
+
+		ChunkInputStream(File file, long start, long end) throws IOException {
+			raf = new RandomAccessFile(file, "r");
+			raf.seek(start);
+			remaining = end - start;
+		}
+
+		public int read() throws IOException {
+			if (remaining <= 0) {
+				return -1;
+			}
+			int b = raf.read();
+			if (b >= 0) {
+				remaining--;
+			}
+			return b;
+		}
+
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (remaining <= 0) {
+				return -1;
+			}
+			int count = raf.read(b, off, (int) Math.min(len, remaining));
+			if (count > 0) {
+				remaining -= count;
+			}
+			return count;
+		}
+
+		public void close() throws IOException {
+			raf.close();
+		}
+	}
+}
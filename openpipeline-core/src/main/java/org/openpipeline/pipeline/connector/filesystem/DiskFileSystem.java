@@ -19,6 +19,8 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
 
 import org.openpipeline.pipeline.item.Item;
 
@@ -29,12 +31,25 @@ import org.openpipeline.pipeline.item.Item;
 public class DiskFileSystem implements FileSystem {
 	private File file;
 	private String name;
+	private BasicFileAttributes attrs;
 	
 	public DiskFileSystem(File file) {
 		this.file = file;
 		this.name = file.getAbsolutePath(); // cache it because it might get called more than once
 	}
 
+	/**
+	 * Create a file system object with attributes that have already been
+	 * read from disk. isFile(), isDirectory(), getSize() and getLastUpdate()
+	 * use them instead of making a separate system call each.
+	 * @param file the file
+	 * @param attrs the attributes of the file
+	 */
+	public DiskFileSystem(File file, BasicFileAttributes attrs) {
+		this(file);
+		this.attrs = attrs;
+	}
+
 	public String getFullName() {
 		return name;
 	}
@@ -53,24 +68,44 @@ public class DiskFileSystem implements FileSystem {
 	}
 
 	public long getLastUpdate() {
+		if (attrs != null) {
+			return attrs.lastModifiedTime().toMillis();
+		}
 		return file.lastModified();
 	}
 
 	public long getSignature() {
-		return file.lastModified();
+		return getLastUpdate();
 	}
 
 	public boolean isDirectory() {
+		if (attrs != null) {
+			return attrs.isDirectory();
+		}
 		return file.isDirectory();
 	}
 
 	public boolean isFile() {
+		if (attrs != null) {
+			return attrs.isRegularFile();
+		}
 		return file.isFile();
 	}
 
 	public long getSize() {
+		if (attrs != null) {
+			return attrs.size();
+		}
 		return file.length();
 	}
+
+	/**
+	 * Return the underlying file on local disk.
+	 * @return the file
+	 */
+	public File getFile() {
+		return file;
+	}
 	
 	public FileSystem fetch(String fullname) {
 		File newFile = new File(fullname);
@@ -100,9 +135,16 @@ public class DiskFileSystem implements FileSystem {
 		}
 
 		public FileSystem next() {
-			FileSystem nextFile = new DiskFileSystem(files[next]);
+			File nextFile = files[next];
 			next++;
-			return nextFile;
+			// one stat per entry, instead of one per isFile(), isDirectory(), etc.
+			try {
+				BasicFileAttributes nextAttrs = Files.readAttributes(nextFile.toPath(),
+						BasicFileAttributes.class);
+				return new DiskFileSystem(nextFile, nextAttrs);
+			} catch (IOException e) {
+				return new DiskFileSystem(nextFile);
+			}
 		}
 	}
 
@@ -15,16 +15,43 @@
  ******************************************************************************/
 package org.openpipeline.pipeline.connector.filesystem;
 
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.openpipeline.pipeline.docfilter.XMLFilter;
 import org.openpipeline.pipeline.item.Item;
+import org.openpipeline.scheduler.PipelineException;
+import org.openpipeline.util.FNVHash;
+import org.openpipeline.util.FastStringBuffer;
 
 /**
- * NOT YET IMPLEMENTED. See notes inside the class for more.
- * <p>
  * Provides a way of iterating over the items in an XML file
- * in multi-item format.
+ * in multi-item format, that is, a file where the first tag is &lt;items&gt;
+ * and each &lt;item&gt; tag inside it is a separate item. See {@link XMLFilter}
+ * for the format.
+ * <p>
+ * The file is parsed as a stream, one item at a time, so it can be
+ * arbitrarily large. Each item appears as a separate file in the iterator.
+ * Its name is the name of the file plus "/" and the item_id, like the
+ * entries in a zip file, so a LinkQueue can track the items individually,
+ * and its signature is a 64-bit hash of the content of the item.
+ * An unchanged item in a changed file will be skipped, and an item that
+ * disappears from the file will be deleted. The item itself keeps the plain
+ * item_id; see {@link #getItemId(String)}. Items without an item_id get
+ * the name of the file plus "#" and the position of the item in the file,
+ * as both the name and the item_id.
+ * <p>
+ * Like the entries in a zip file, an item is only valid until the iterator
+ * moves on to the next one.
  * <p>
  * See the {@link FileSystem} interface for more on container files.
  */
@@ -38,54 +65,268 @@ public class MultiItemXMLFileSystem implements FileSystem {
 	 * the file as a whole.
 	 */
 
-	private String itemId;
-	
+	private File file;
+	private String fullName;
+	private InputStream stream;
+	private long lastUpdate;
+
+	public MultiItemXMLFileSystem(File file) {
+		this.file = file;
+		this.fullName = file.getAbsolutePath();
+		this.lastUpdate = file.lastModified();
+	}
+
+	/**
+	 * Read the file from a stream. The stream can only be iterated once.
+	 * @param fullName the name of the file
+	 * @param stream the content of the file
+	 * @param lastUpdate the timestamp of the file, in millis
+	 */
+	public MultiItemXMLFileSystem(String fullName, InputStream stream, long lastUpdate) {
+		this.fullName = fullName;
+		this.stream = stream;
+		this.lastUpdate = lastUpdate;
+	}
+
+	/**
+	 * Return true if the first tag in the file is &lt;items&gt;.
+	 * @param file an XML file
+	 * @return true if the file is in multi-item format
+	 */
+	public static boolean isMultiItem(File file) throws IOException {
+		InputStream in = new BufferedInputStream(new FileInputStream(file));
+		XMLStreamReader parser = null;
+		try {
+			XMLInputFactory factory = XMLInputFactory.newInstance();
+			factory.setProperty("javax.xml.stream.supportDTD", Boolean.FALSE);
+			parser = factory.createXMLStreamReader(in);
+			while (parser.hasNext()) {
+				if (parser.next() == XMLStreamConstants.START_ELEMENT) {
+					return XMLFilter.DEFAULT_ITEMS_TAG.equals(parser.getLocalName());
+				}
+			}
+			return false;
+
+		} catch (XMLStreamException e) {
+			// not well-formed; let the XMLFilter report it
+			return false;
+
+		} finally {
+			if (parser != null) {
+				try {
+					parser.close();
+				} catch (XMLStreamException e) {
+					// ok to ignore
+				}
+			}
+			in.close();
+		}
+	}
+
+	/**
+	 * Return the item_id of an item, given the name it has in the iterator,
+	 * or null if the name is not that of an item in a multi-item file on disk.
+	 * @param name a name from getFullName() of one of the items
+	 * @return the item_id, or null
+	 */
+	public static String getItemId(String name) {
+		String lowerName = name.toLowerCase();
+		int pos = lowerName.indexOf(".xml/");
+		while (pos >= 0) {
+			if (isXMLFile(new File(name.substring(0, pos + 4)))) {
+				return name.substring(pos + 5);
+			}
+			pos = lowerName.indexOf(".xml/", pos + 1);
+		}
+		return null;
+	}
+
+	/**
+	 * Return true if the path is a file on disk, or, if it's gone, the nearest
+	 * path above it that still exists is a directory. That rules out 
+	 * directories, and entries in a zip or tar file, with names that end in .xml.
+	 */
+	private static boolean isXMLFile(File file) {
+		if (file.exists()) {
+			return file.isFile();
+		}
+		File parent = file.getParentFile();
+		while (parent != null && !parent.exists()) {
+			parent = parent.getParentFile();
+		}
+		return parent == null || parent.isDirectory();
+	}
+
 	public FileSystem fetch(String fullname) throws IOException {
 		// this class is not able to do random access into a file
 		return null;
 	}
 
 	public String getFullName() {
-		return itemId;
+		return fullName;
 	}
 
 	public InputStream getInputStream() throws IOException {
-		return null;
+		throw new UnsupportedOperationException();
 	}
 
 	public boolean getItem(Item item) throws IOException {
-		// TODO Auto-generated method stub
 		return false;
 	}
 
 	public FileIterator getIterator() throws IOException {
-		// TODO Auto-generated method stub
-		return null;
+		InputStream in;
+		if (stream != null) {
+			in = stream;
+			stream = null;
+		} else if (file != null) {
+			in = new BufferedInputStream(new FileInputStream(file));
+		} else {
+			throw new FileNotFoundException("XML stream already read: " + fullName);
+		}
+		XMLFilter filter = new XMLFilter();
+		filter.setInputStream(in);
+		return new ItemIterator(filter, in);
 	}
 
 	public long getLastUpdate() {
-		// TODO Auto-generated method stub
-		return 0;
+		return lastUpdate;
 	}
 
 	public long getSignature() {
-		// TODO Auto-generated method stub
-		return 0;
+		throw new UnsupportedOperationException();
 	}
 
 	public long getSize() {
-		// TODO Auto-generated method stub
-		return 0;
+		return file == null ? -1 : file.length(); // this shouldn't be used
 	}
 
 	public boolean isDirectory() {
-		// TODO Auto-generated method stub
-		return false;
+		return true;
 	}
 
 	public boolean isFile() {
-		// TODO Auto-generated method stub
 		return false;
 	}
 
+	public String toString() {
+		return getFullName();
+	}
+
+	class ItemIterator implements FileIterator {
+		private XMLFilter filter;
+		private InputStream in;
+		private Item item = new Item();
+		private FastStringBuffer xml = new FastStringBuffer(1024);
+		private int position;
+		private String itemName;
+
+		public ItemIterator(XMLFilter filter, InputStream in) {
+			this.filter = filter;
+			this.in = in;
+		}
+
+		public boolean hasNext() throws IOException {
+			if (filter == null) {
+				return false;
+			}
+			boolean found;
+			try {
+				found = filter.readNextItem(item);
+			} catch (PipelineException e) {
+				close();
+				IOException ioe = new IOException("Error parsing " + fullName);
+				ioe.initCause(e);
+				throw ioe;
+			}
+			if (!found) {
+				close();
+				return false;
+			}
+
+			position++;
+			if (item.getItemId() == null) {
+				itemName = fullName + "#" + position;
+				item.setItemId(itemName);
+			} else {
+				itemName = fullName + "/" + item.getItemId();
+			}
+			xml.clear();
+			item.appendXMLtoBuffer(xml, false);
+			return true;
+		}
+
+		private void close() throws IOException {
+			filter = null;
+			in.close();
+		}
+
+		public FileSystem next() {
+			return new XMLItem(item, itemName, FNVHash.hash(xml.getArray(), 0, xml.size()),
+					xml.size());
+		}
+	}
+
+	/**
+	 * One item in the file.
+	 */
+	class XMLItem implements FileSystem {
+		private Item item;
+		private String name;
+		private long signature;
+		private long size;
+
+		public XMLItem(Item item, String name, long signature, long size) {
+			this.item = item;
+			this.name = name;
+			this.signature = signature;
+			this.size = size;
+		}
+
+		public String getFullName() {
+			return name;
+		}
+
+		public InputStream getInputStream() {
+			return null;
+		}
+
+		public boolean getItem(Item target) {
+			item.copyTo(target);
+			return true;
+		}
+
+		public FileIterator getIterator() {
+			throw new UnsupportedOperationException();
+		}
+
+		public long getLastUpdate() {
+			return lastUpdate;
+		}
+
+		public long getSignature() {
+			return signature;
+		}
+
+		public boolean isDirectory() {
+			return false;
+		}
+
+		public boolean isFile() {
+			return true;
+		}
+
+		public long getSize() {
+			return size;
+		}
+
+		public FileSystem fetch(String fullname) {
+			// not supported
+			return null;
+		}
+
+		public String toString() {
+			return getFullName();
+		}
+	}
 }
@@ -0,0 +1,36 @@
+/*******************************************************************************
+ * Copyright 2010 Dieselpoint, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.openpipeline.pipeline.connector.filesystem;
+
+import java.io.BufferedInputStream;
+import java.io.InputStream;
+
+/**
+ * A simple InputStream that ignores calls to close(). The reason is that
+ * DocFilters often close InputStreams when they're done with them, and
+ * that causes problems for container files like zip and tar files. 
+ * The stream needs to stay open so the next document can be retrieved from it.
+ */
+class NonClosableInputStream extends BufferedInputStream {
+
+	public NonClosableInputStream(InputStream in) {
+		super(in);
+	}
+	
+	@Override
+	public void close() {
+	}
+}
@@ -0,0 +1,212 @@
+/*******************************************************************************
+ * Copyright 2010 Dieselpoint, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.openpipeline.pipeline.connector.filesystem;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+
+import org.openpipeline.util.WildcardMatcher;
+
+/**
+ * Walks a directory tree on disk with several threads, and hands the files
+ * it finds to a single consumer through a bounded queue. Each directory is
+ * read with a DirectoryStream, and each entry is stat'ed once; the attributes
+ * travel with the DiskFileSystem object, so the consumer does not touch the
+ * disk again to get the size or timestamp. Subdirectories are walked in
+ * parallel on a fork/join pool. This helps most on network file systems,
+ * where each system call has a long latency.
+ * <p>
+ * Files are matched against the include/exclude patterns on the walker
+ * threads. Only files that match are queued. The order in which files
+ * are returned is not defined.
+ * <p>
+ * Errors reading a directory or an entry do not stop the walk. They are
+ * collected, and the consumer can get them with pollError().
+ */
+public class ParallelDiskWalker {
+
+	private static final DiskFileSystem END = new DiskFileSystem(new File(""));
+
+	private final ForkJoinPool pool;
+	private final BlockingQueue<DiskFileSystem> queue;
+	private final ConcurrentLinkedQueue<IOException> errors = new ConcurrentLinkedQueue<IOException>();
+	private WildcardMatcher wildcardMatcher;
+	private boolean scanSubDirs = true;
+	private volatile boolean cancelled;
+	private boolean done;
+
+	/**
+	 * Create a walker.
+	 * @param threads the number of threads that read directories
+	 * @param queueSize the number of files that can be waiting for the consumer
+	 */
+	public ParallelDiskWalker(int threads, int queueSize) {
+		pool = new ForkJoinPool(Math.max(1, threads));
+		queue = new ArrayBlockingQueue<DiskFileSystem>(Math.max(1, queueSize));
+	}
+
+	public void setWildcardMatcher(WildcardMatcher wildcardMatcher) {
+		this.wildcardMatcher = wildcardMatcher;
+	}
+
+	public void setScanSubDirs(boolean scanSubDirs) {
+		this.scanSubDirs = scanSubDirs;
+	}
+
+	/**
+	 * Start walking the tree under a directory. Returns immediately.
+	 * @param dir the root directory
+	 */
+	public void start(final File dir) {
+		Thread driver = new Thread("disk-walker") {
+			public void run() {
+				try {
+					pool.invoke(new DirectoryTask(dir.toPath()));
+				} catch (Throwable t) {
+					errors.add(new IOException("Error walking " + dir, t));
+				} finally {
+					put(END);
+				}
+			}
+		};
+		driver.setDaemon(true);
+		driver.start();
+	}
+
+	/**
+	 * Return the next file, waiting for one if necessary.
+	 * @return a file that matches the include/exclude patterns, or null
+	 * if the walk is complete
+	 * @throws InterruptedException
+	 */
+	public DiskFileSystem next() throws InterruptedException {
+		if (done) {
+			return null;
+		}
+		DiskFileSystem file = queue.take();
+		if (file == END) {
+			done = true;
+			return null;
+		}
+		return file;
+	}
+
+	/**
+	 * Return the next error encountered by the walker threads.
+	 * @return an exception, or null if there are none waiting
+	 */
+	public IOException pollError() {
+		return errors.poll();
+	}
+
+	/**
+	 * Stop the walk, if it is still running, and release the threads.
+	 */
+	public void close() {
+		cancelled = true;
+		queue.clear();
+		pool.shutdownNow();
+	}
+
+	/**
+	 * Add a file to the queue, waiting for room. Gives up if the walk
+	 * is cancelled, so a consumer that stops early does not leave the
+	 * walker threads blocked.
+	 */
+	private void put(DiskFileSystem file) {
+		try {
+			while (!queue.offer(file, 100, TimeUnit.MILLISECONDS)) {
+				if (cancelled) {
+					return;
+				}
+			}
+		} catch (InterruptedException e) {
+			cancelled = true;
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Reads one directory, queues its files, and forks a task for each
+	 * subdirectory.
+	 */
+	class DirectoryTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final Path dir;
+
+		DirectoryTask(Path dir) {
+			this.dir = dir;
+		}
+
+		@Override
+		protected void compute() {
+			if (cancelled) {
+				return;
+			}
+			List<DirectoryTask> subdirs = new ArrayList<DirectoryTask>();
+			try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+				for (Path path: stream) {
+					if (cancelled) {
+						break;
+					}
+
+					BasicFileAttributes attrs;
+					try {
+						attrs = Files.readAttributes(path, BasicFileAttributes.class);
+					} catch (IOException e) {
+						errors.add(e);
+						continue;
+					}
+
+					if (attrs.isDirectory()) {
+						if (scanSubDirs) {
+							DirectoryTask task = new DirectoryTask(path);
+							task.fork();
+							subdirs.add(task);
+						}
+					} else if (attrs.isRegularFile()) {
+						DiskFileSystem file = new DiskFileSystem(path.toFile(), attrs);
+						if (wildcardMatcher == null
+								|| wildcardMatcher.isIncluded(file.getFullName())) {
+							put(file);
+						}
+					}
+				}
+			} catch (IOException e) {
+				errors.add(new IOException("Error reading directory " + dir, e));
+			} catch (DirectoryIteratorException e) {
+				errors.add(new IOException("Error reading directory " + dir, e.getCause()));
+			}
+
+			for (DirectoryTask task: subdirs) {
+				task.join();
+			}
+		}
+	}
+}
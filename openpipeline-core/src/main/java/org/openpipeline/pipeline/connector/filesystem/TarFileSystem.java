@@ -0,0 +1,238 @@
+/*******************************************************************************
+ * Copyright 2010 Dieselpoint, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.openpipeline.pipeline.connector.filesystem;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+import org.openpipeline.pipeline.item.Item;
+
+/**
+ * A wrapper around a tar file that makes it look like a file system. Handles
+ * plain .tar files and gzipped .tar.gz/.tgz files. The archive is read as a
+ * stream, in a single pass, so the entries must be processed in the order the
+ * iterator returns them. The tar file can be on disk, or it can be read
+ * from a stream, for example, when it is an entry inside another container file.
+ */
+public class TarFileSystem implements FileSystem {
+	private File file;
+	private String fullName;
+	private InputStream stream;
+	private boolean gzip;
+	
+	public TarFileSystem(File file) {
+		this.file = file;
+		this.fullName = file.getAbsolutePath();
+		this.gzip = isGzipName(fullName);
+	}
+
+	/**
+	 * Read the tar file from a stream. The stream can only be iterated once.
+	 * @param fullName the name of the tar file, used as a prefix for the entry names
+	 * @param stream the content of the tar file
+	 * @param gzip true if the content is gzipped
+	 */
+	public TarFileSystem(String fullName, InputStream stream, boolean gzip) {
+		this.fullName = fullName;
+		this.stream = stream;
+		this.gzip = gzip;
+	}
+
+	/**
+	 * Return true if the name ends in .tar.gz or .tgz.
+	 */
+	public static boolean isGzipName(String name) {
+		String lower = name.toLowerCase();
+		return lower.endsWith(".tar.gz") || lower.endsWith(".tgz");
+	}
+
+	public String getFullName() {
+		return fullName;
+	}
+
+	public InputStream getInputStream() {
+		throw new UnsupportedOperationException();
+	}
+	
+	@SuppressWarnings("unused")
+	public boolean getItem(Item item) {
+		return false;
+	}
+
+	public FileIterator getIterator() throws IOException {
+		InputStream in;
+		if (stream != null) {
+			in = stream;
+			stream = null;
+		} else if (file != null) {
+			in = new FileInputStream(file);
+		} else {
+			throw new FileNotFoundException("Tar stream already read: " + fullName);
+		}
+		try {
+			in = new BufferedInputStream(in);
+			if (gzip) {
+				in = new GZIPInputStream(in);
+			}
+		} catch (IOException e) {
+			in.close();
+			throw e;
+		}
+		return new TarFileIterator(new TarInputStream(in));
+	}
+
+	public long getLastUpdate() {
+		throw new UnsupportedOperationException();
+	}
+
+	public long getSignature() {
+		throw new UnsupportedOperationException();
+	}
+
+	public boolean isDirectory() {
+		return true;
+	}
+
+	public boolean isFile() {
+		return false;
+	}
+	
+	public long getSize() {
+		return file == null ? -1 : file.length(); // this shouldn't be used
+	}
+	
+	@SuppressWarnings("unused")
+	public FileSystem fetch(String fullname) {
+		// not supported
+		return null;
+	}
+	
+	public String toString() {
+		return getFullName();
+	}
+	
+	class TarFileIterator implements FileIterator {
+		private TarInputStream tarStream;
+		private TarInputStream.Entry entry;
+		
+		public TarFileIterator(TarInputStream tarStream) {
+			this.tarStream = tarStream;
+		}
+		
+		public boolean hasNext() throws IOException {
+			if (tarStream == null) {
+				return false;
+			}
+			
+			while (true) {
+				try {
+					entry = tarStream.getNextEntry();
+				} catch (IOException e) {
+					tarStream.close();
+					tarStream = null;
+					throw e;
+				}
+				if (entry == null) {
+					tarStream.close();
+					tarStream = null;
+					return false;
+				}
+				
+				// like zip files, tar files come in one big list. Skip 
+				// directories, links and anything else without content
+				if (!entry.isFile()) {
+					continue;
+				}
+				break;
+			}
+			
+			return true;
+		}
+
+		public FileSystem next() {
+			return new TarFile(entry, tarStream);
+		}
+	}
+
+	/**
+	 * Wraps an entry in the tar file.
+	 */
+	class TarFile implements FileSystem {
+		private TarInputStream tarStream;
+		private TarInputStream.Entry entry;
+
+		public TarFile(TarInputStream.Entry entry, TarInputStream tarStream) {
+			this.tarStream = tarStream;
+			this.entry = entry;
+		}
+
+		/**
+		 * Is returned in the form /mydir/mytarfile.tar/myfilename.txt
+		 */
+		public String getFullName() {
+			return fullName + "/" + entry.name;
+		}
+
+		public InputStream getInputStream() {
+			// see NonClosableInputStream for the reason behind it
+			return new NonClosableInputStream(tarStream);
+		}
+		
+		@SuppressWarnings("unused")
+		public boolean getItem(Item item) {
+			return false;
+		}
+
+		public FileIterator getIterator() {
+			throw new UnsupportedOperationException();
+		}
+
+		public long getLastUpdate() {
+			return entry.modTime;
+		}
+
+		public long getSignature() {
+			return entry.modTime;
+		}
+
+		public boolean isDirectory() {
+			return false;
+		}
+
+		public boolean isFile() {
+			return true;
+		}
+		
+		public long getSize() {
+			return entry.size;
+		}
+
+		@SuppressWarnings("unused")
+		public FileSystem fetch(String fullname) {
+			// not supported
+			return null;
+		}
+		
+		public String toString() {
+			return getFullName();
+		}
+	}
+}
@@ -0,0 +1,307 @@
+/*******************************************************************************
+ * Copyright 2010 Dieselpoint, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.openpipeline.pipeline.connector.filesystem;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the entries of a tar archive from a stream, in a single pass.
+ * Call getNextEntry() to move to the next entry, and then read its content
+ * from this stream. Understands POSIX ustar headers, GNU long names and
+ * pax extended headers for the path and size, which covers the archives
+ * written by GNU tar, bsdtar and most libraries.
+ */
+class TarInputStream extends InputStream {
+
+	private static final int BLOCK = 512;
+
+	private final InputStream in;
+	private final byte[] header = new byte[BLOCK];
+	private long remaining;
+	private long padding;
+
+	TarInputStream(InputStream in) {
+		this.in = in;
+	}
+
+	/**
+	 * Skip whatever is left of the current entry and read the next header.
+	 * @return the next entry, or null at the end of the archive
+	 * @throws IOException if the archive is corrupt
+	 */
+	Entry getNextEntry() throws IOException {
+		skipFully(remaining + padding);
+		remaining = 0;
+		padding = 0;
+
+		String longName = null;
+		long paxSize = -1;
+
+		while (true) {
+			if (!readHeader()) {
+				return null;
+			}
+
+			long size = parseNumber(124, 12);
+			byte type = header[156];
+
+			if (type == 'L' || type == 'x' || type == 'g') {
+				// the data of this entry describes the next one
+				byte[] data = readData(size);
+				if (type == 'L') {
+					longName = parseString(data, 0, data.length);
+				} else if (type == 'x') {
+					String path = parsePax(data, "path");
+					if (path != null) {
+						longName = path;
+					}
+					String paxSizeStr = parsePax(data, "size");
+					if (paxSizeStr != null) {
+						paxSize = Long.parseLong(paxSizeStr);
+					}
+				}
+				continue;
+			}
+
+			Entry entry = new Entry();
+			entry.type = type;
+			entry.size = paxSize >= 0 ? paxSize : size;
+			entry.modTime = parseNumber(136, 12) * 1000;
+			if (longName != null) {
+				entry.name = longName;
+			} else {
+				entry.name = parseString(header, 0, 100);
+				String magic = parseString(header, 257, 5);
+				String prefix = parseString(header, 345, 155);
+				if (magic.equals("ustar") && prefix.length() > 0) {
+					entry.name = prefix + "/" + entry.name;
+				}
+			}
+
+			// directories, links and devices have no content, whatever
+			// the size field says
+			remaining = entry.isFile() ? entry.size : 0;
+			padding = entry.isFile() ? (BLOCK - remaining % BLOCK) % BLOCK : 0;
+			return entry;
+		}
+	}
+
+	/**
+	 * Read the next header block.
+	 * @return false at the end of the archive
+	 */
+	private boolean readHeader() throws IOException {
+		int count = readBlock(header);
+		if (count == 0) {
+			return false; // end of stream without an end-of-archive marker
+		}
+		if (count < BLOCK) {
+			throw new IOException("Truncated tar header");
+		}
+
+		boolean allZero = true;
+		long sum = 0;
+		for (int i = 0; i < BLOCK; i++) {
+			int b = header[i] & 0xff;
+			if (b != 0) {
+				allZero = false;
+			}
+			// the checksum field counts as spaces
+			sum += (i >= 148 && i < 156) ? ' ' : b;
+		}
+		if (allZero) {
+			return false; // end-of-archive marker
+		}
+		if (sum != parseNumber(148, 8)) {
+			throw new IOException("Bad tar header checksum");
+		}
+		return true;
+	}
+
+	private byte[] readData(long size) throws IOException {
+		if (size < 0 || size > Integer.MAX_VALUE - BLOCK) {
+			throw new IOException("Bad tar extended header size: " + size);
+		}
+		byte[] data = new byte[(int) size];
+		int pos = 0;
+		while (pos < data.length) {
+			int count = in.read(data, pos, data.length - pos);
+			if (count < 0) {
+				throw new IOException("Truncated tar archive");
+			}
+			pos += count;
+		}
+		skipFully((BLOCK - size % BLOCK) % BLOCK);
+		return data;
+	}
+
+	private int readBlock(byte[] buf) throws IOException {
+		int pos = 0;
+		while (pos < buf.length) {
+			int count = in.read(buf, pos, buf.length - pos);
+			if (count < 0) {
+				break;
+			}
+			pos += count;
+		}
+		return pos;
+	}
+
+	private void skipFully(long count) throws IOException {
+		while (count > 0) {
+			long skipped = in.skip(count);
+			if (skipped <= 0) {
+				// skip() may not be supported; fall back to reading
+				if (in.read() < 0) {
+					throw new IOException("Truncated tar archive");
+				}
+				skipped = 1;
+			}
+			count -= skipped;
+		}
+	}
+
+	/**
+	 * Parse a numeric header field. Fields are octal text, or, for large values,
+	 * big-endian binary with the high bit of the first byte set.
+	 */
+	private long parseNumber(int offset, int len) throws IOException {
+		if ((header[offset] & 0x80) != 0) {
+			long value = header[offset] & 0x7f;
+			for (int i = 1; i < len; i++) {
+				value = (value << 8) | (header[offset + i] & 0xff);
+			}
+			return value;
+		}
+		long value = 0;
+		int end = offset + len;
+		int i = offset;
+		while (i < end && (header[i] == ' ' || header[i] == 0)) {
+			i++;
+		}
+		for (; i < end; i++) {
+			byte b = header[i];
+			if (b == ' ' || b == 0) {
+				break;
+			}
+			if (b < '0' || b > '7') {
+				throw new IOException("Bad number in tar header");
+			}
+			value = (value << 3) + (b - '0');
+		}
+		return value;
+	}
+
+	private static String parseString(byte[] buf, int offset, int len) {
+		int end = offset;
+		while (end < offset + len && buf[end] != 0) {
+			end++;
+		}
+		return new String(buf, offset, end - offset, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Find a value in a pax extended header. Each record has the form
+	 * "length key=value\n", where length counts the whole record.
+	 */
+	private static String parsePax(byte[] data, String key) throws IOException {
+		int pos = 0;
+		while (pos < data.length) {
+			int space = pos;
+			int len = 0;
+			while (space < data.length && data[space] != ' ') {
+				len = len * 10 + (data[space] - '0');
+				space++;
+			}
+			if (len <= 0 || pos + len > data.length) {
+				throw new IOException("Bad pax header");
+			}
+			String record = new String(data, space + 1, pos + len - space - 2,
+					StandardCharsets.UTF_8);
+			int eq = record.indexOf('=');
+			if (eq > 0 && record.substring(0, eq).equals(key)) {
+				return record.substring(eq + 1);
+			}
+			pos += len;
+		}
+		return null;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (remaining <= 0) {
+			return -1;
+		}
+		int b = in.read();
+		if (b < 0) {
+			throw new IOException("Truncated tar archive");
+		}
+		remaining--;
+		return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (remaining <= 0) {
+			return -1;
+		}
+		len = (int) Math.min(len, remaining);
+		int count = in.read(b, off, len);
+		if (count < 0) {
+			throw new IOException("Truncated tar archive");
+		}
+		remaining -= count;
+		return count;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		n = Math.min(n, remaining);
+		long skipped = in.skip(n);
+		if (skipped > 0) {
+			remaining -= skipped;
+		}
+		return Math.max(skipped, 0);
+	}
+
+	@Override
+	public int available() throws IOException {
+		return (int) Math.min(in.available(), remaining);
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+	/**
+	 * The header of one entry in the archive.
+	 */
+	static class Entry {
+		String name;
+		long size;
+		long modTime;
+		byte type;
+
+		boolean isFile() {
+			// '0' is a regular file, NUL is a pre-POSIX regular file,
+			// '7' is a contiguous file
+			return type == '0' || type == 0 || type == '7';
+		}
+	}
+}
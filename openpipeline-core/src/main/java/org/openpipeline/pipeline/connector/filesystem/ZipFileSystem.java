@@ -15,12 +15,11 @@
  ******************************************************************************/
 package org.openpipeline.pipeline.connector.filesystem;
 
-import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Enumeration;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
@@ -28,16 +27,38 @@ import org.openpipeline.pipeline.item.Item;
 
 /**
  * A wrapper around a zip file that makes it look like a file system.
+ * The zip file can be on disk, or it can be read from a stream, for example,
+ * when it is an entry inside another container file.
+ * <p>
+ * A zip file on disk is opened with random access. The entries are listed
+ * from the central directory, and each entry gets its own InputStream and
+ * inflater, so entries can be read on different threads, in any order, and
+ * fetched individually by name. The file stays open until close() is called.
+ * A zip file read from a stream can only be read in order, once.
  */
 public class ZipFileSystem implements FileSystem {
 	private File file;
+	private String fullName;
+	private InputStream stream;
+	private java.util.zip.ZipFile zipFile;
 	
 	public ZipFileSystem(File file) {
 		this.file = file;
+		this.fullName = file.getAbsolutePath();
+	}
+
+	/**
+	 * Read the zip file from a stream. The stream can only be iterated once.
+	 * @param fullName the name of the zip file, used as a prefix for the entry names
+	 * @param stream the content of the zip file
+	 */
+	public ZipFileSystem(String fullName, InputStream stream) {
+		this.fullName = fullName;
+		this.stream = stream;
 	}
 
 	public String getFullName() {
-		return file.getAbsolutePath();
+		return fullName;
 	}
 
 	public InputStream getInputStream() {
@@ -50,8 +71,43 @@ public class ZipFileSystem implements FileSystem {
 	}
 
 
-	public FileIterator getIterator() throws FileNotFoundException {
-		return new ZipFileIterator(file);
+	public FileIterator getIterator() throws IOException {
+		if (file != null) {
+			return new RandomAccessIterator(open().entries());
+		}
+		if (stream == null) {
+			throw new FileNotFoundException("Zip stream already read: " + fullName);
+		}
+		InputStream in = stream;
+		stream = null;
+		return new ZipFileIterator(in);
+	}
+
+	/**
+	 * Return true if the entries of this zip file are independent of each
+	 * other, that is, the stream of one entry stays valid while other entries
+	 * are read, until close() is called. True for zip files on disk.
+	 */
+	public boolean isRandomAccess() {
+		return file != null;
+	}
+
+	private synchronized java.util.zip.ZipFile open() throws IOException {
+		if (zipFile == null) {
+			zipFile = new java.util.zip.ZipFile(file);
+		}
+		return zipFile;
+	}
+
+	/**
+	 * Close the underlying zip file, if it's open. Any entry streams that are
+	 * still open get closed too.
+	 */
+	public synchronized void close() throws IOException {
+		if (zipFile != null) {
+			zipFile.close();
+			zipFile = null;
+		}
 	}
 
 	public long getLastUpdate() {
@@ -71,27 +127,59 @@ public class ZipFileSystem implements FileSystem {
 	}
 	
 	public long getSize() {
-		return file.length(); // this shouldn't be used
+		return file == null ? -1 : file.length(); // this shouldn't be used
 	}
 	
-	@SuppressWarnings("unused")
-	public FileSystem fetch(String fullname) {
-		// not supported
-		return null;
+	/**
+	 * Fetch a single entry by its full name, in the form
+	 * /mydir/myzipfile.zip/myfilename.txt. Only supported for zip files on disk.
+	 */
+	public FileSystem fetch(String fullname) throws IOException {
+		String prefix = fullName + "/";
+		if (file == null || !fullname.startsWith(prefix)) {
+			return null;
+		}
+		ZipEntry zipEntry = open().getEntry(fullname.substring(prefix.length()));
+		if (zipEntry == null || zipEntry.isDirectory()) {
+			return null;
+		}
+		return new ZipMember(zipEntry);
 	}
 	
-	
 	public String toString() {
 		return getFullName();
 	}
 	
+	class RandomAccessIterator implements FileIterator {
+		private Enumeration<? extends ZipEntry> entries;
+		private ZipEntry zipEntry;
+
+		public RandomAccessIterator(Enumeration<? extends ZipEntry> entries) {
+			this.entries = entries;
+		}
+
+		public boolean hasNext() {
+			while (entries.hasMoreElements()) {
+				zipEntry = entries.nextElement();
+				if (!zipEntry.isDirectory()) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		public FileSystem next() {
+			return new ZipMember(zipEntry);
+		}
+	}
+
 	class ZipFileIterator implements FileIterator {
 		private InputStream in;
 		private ZipInputStream zipStream;
 		private ZipEntry zipEntry;
 		
-		public ZipFileIterator(File file) throws FileNotFoundException {
-			in = new FileInputStream(file);
+		public ZipFileIterator(InputStream in) {
+			this.in = in;
 			zipStream = new ZipInputStream(in);
 		}
 		
@@ -110,11 +198,6 @@ public class ZipFileSystem implements FileSystem {
 				if (zipEntry.isDirectory()) {
 					continue;
 				}
-				
-				// don't do nested zip files
-				if (zipEntry.getName().toLowerCase().endsWith(".zip")) {
-					continue;
-				}
 				break;
 			}
 			
@@ -122,23 +205,39 @@ public class ZipFileSystem implements FileSystem {
 		}
 
 		public FileSystem next() {
-			return new ZipFile(file, zipEntry, zipStream);
+			return new ZipFile(zipEntry, zipStream);
 		}
 	}
 
 	
 	/**
-	 * Wraps a ZipEntry.
+	 * Wraps a ZipEntry in a zip file on disk. Each call to getInputStream()
+	 * returns a new, independent stream.
+	 */
+	class ZipMember extends ZipFile {
+
+		public ZipMember(ZipEntry zipEntry) {
+			super(zipEntry, null);
+		}
+
+		@Override
+		public InputStream getInputStream() throws IOException {
+			return open().getInputStream(zipEntry);
+		}
+	}
+	
+	/**
+	 * Wraps a ZipEntry in a zip stream.
 	 */
 	class ZipFile implements FileSystem {
 		private ZipInputStream zipStream;
-		private ZipEntry zipEntry;
+		protected ZipEntry zipEntry;
 		private String filePath;
 
-		public ZipFile(File file, ZipEntry zipEntry, ZipInputStream zipStream) {
+		public ZipFile(ZipEntry zipEntry, ZipInputStream zipStream) {
 			this.zipStream = zipStream;
 			this.zipEntry = zipEntry;
-			this.filePath = file.getAbsolutePath() + "/";
+			this.filePath = fullName + "/";
 		}
 
 		/**
@@ -148,8 +247,8 @@ public class ZipFileSystem implements FileSystem {
 			return filePath + zipEntry.getName();
 		}
 
-		public InputStream getInputStream() {
-			// see below for the reason behind NonClosableInputStream
+		public InputStream getInputStream() throws IOException {
+			// see NonClosableInputStream for the reason behind it
 			return new NonClosableInputStream(zipStream);
 		}
 		
@@ -195,23 +294,4 @@ public class ZipFileSystem implements FileSystem {
 
 	}
 
-	/**
-	 * A simple InputStream that ignores calls to close(). The reason is that
-	 * DocFilters often close InputStreams when they're done with them, and
-	 * that causes problems for ZipInputStream. The stream needs to stay open
-	 * so the next document can be retrieved from it.
-	 */
-	class NonClosableInputStream extends BufferedInputStream {
-
-		public NonClosableInputStream(InputStream in) {
-			super(in);
-		}
-		
-		@Override
-		public void close() {
-		}
-	}
-
-
-
 }
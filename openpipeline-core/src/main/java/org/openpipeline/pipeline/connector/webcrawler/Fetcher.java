@@ -15,7 +15,6 @@
  ******************************************************************************/
 package org.openpipeline.pipeline.connector.webcrawler;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
@@ -31,7 +30,10 @@ import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.impl.client.DefaultRedirectHandler;
 import org.apache.http.protocol.BasicHttpContext;
 import org.apache.http.protocol.HttpContext;
+import org.openpipeline.pipeline.item.DocBinary;
+import org.openpipeline.pipeline.item.SpillBuffer;
 import org.openpipeline.server.Server;
+import org.openpipeline.util.ByteArray;
 import org.openpipeline.util.XMLConfig;
 import org.slf4j.Logger;
 
@@ -49,7 +51,7 @@ public class Fetcher {
 	private UrlFilter urlFilter;
 	private Robots robotsDirectives;
 	private String redirectUrl;
-	private byte[] inputStream;
+	private SpillBuffer content;
 	private byte[] dataBuffer;
 	private XMLConfig params;
 	private long lastModified;
@@ -88,6 +90,7 @@ public class Fetcher {
 		HttpResponse httpResponse = null;
 		HttpGet get = null;
 		lastModified = 0;
+		releaseContent();
 
 		try {
 			/*
@@ -243,7 +246,7 @@ public class Fetcher {
 									"Fetcher exception: data exceeds the max file size.");
 						}
 						/* Often the data length is not known */
-						inputStream = getData(entity);
+						content = getData(entity);
 					}
 					break;
 				}
@@ -309,7 +312,8 @@ public class Fetcher {
 
 			if (action == HttpResultMapper.ACTION_FINALIZE) {
 
-				String file = new String(getInputStream());
+				ByteArray data = DocBinary.getBinary(content.getInputStream());
+				String file = new String(data.getArray(), 0, data.size());
 				robotsDirectives.readRobotsTxt(file);
 
 			} else {
@@ -324,47 +328,71 @@ public class Fetcher {
 		}
 	}
 
-	private byte[] getData(HttpEntity entity) throws IllegalStateException,
+	/**
+	 * Read the response into a SpillBuffer, which keeps it in memory
+	 * or spills it to disk depending on its size and the server-wide
+	 * memory budget.
+	 */
+	private SpillBuffer getData(HttpEntity entity) throws IllegalStateException,
 			IOException {
 
 		InputStream input = entity.getContent();
-		ByteArrayOutputStream output = new ByteArrayOutputStream();
-
-		/* Read bytes into the dataBuffer */
-		int len = 0;
-		int count = 0;
-		int size = dataBuffer.length;
+		SpillBuffer output = new SpillBuffer();
+		boolean ok = false;
 
-		len = input.read(dataBuffer, 0, size);
-		while (len != -1) {
+		try {
+			/* Read bytes into the dataBuffer */
+			long count = 0;
+			int len = input.read(dataBuffer, 0, dataBuffer.length);
+			while (len != -1) {
+
+				count += len;
+				if (count > maxFileSize) {
+					throw new RuntimeException(
+							"Fetcher exception: data exceeds the max file size.");
+				}
 
-			if (count >= size) {
-				input.close();
-				throw new RuntimeException(
-						"Fetcher exception: data exceeds the max file size.");
+				output.write(dataBuffer, 0, len);
+				len = input.read(dataBuffer, 0, dataBuffer.length);
 			}
-
-			output.write(dataBuffer, 0, len);
-			len = input.read(dataBuffer, 0, size);
-
-			count += len;
+			output.close();
+			ok = true;
+		} finally {
+			if (!ok) {
+				// give back the memory and delete any spill file
+				output.release();
+			}
+			input.close();
 		}
-		input.close();
-
-		/* Get data as a byte[] */
-		return output.toByteArray();
+		return output;
 	}
 
 	public void setUrlFilter(UrlFilter urlFilter) {
 		this.urlFilter = urlFilter;
 	}
 
-	public byte[] getInputStream() {
-		return inputStream;
+	/**
+	 * Return the content fetched by the last call to fetch(), or null if
+	 * there was none. The content is released on the next fetch, or by
+	 * calling releaseContent().
+	 */
+	public SpillBuffer getContent() {
+		return content;
+	}
+
+	public void setContent(SpillBuffer content) {
+		releaseContent();
+		this.content = content;
 	}
 
-	public void setInputStream(byte[] input) {
-		inputStream = input;
+	/**
+	 * Release the memory or temp file held by the last fetch.
+	 */
+	public void releaseContent() {
+		if (content != null) {
+			content.release();
+			content = null;
+		}
 	}
 
 	public String getRedirectUrl() {
@@ -431,7 +459,7 @@ public class Fetcher {
 		robotsDirectives = new Robots();
 
 		urlFilter = new UrlFilter();
-		dataBuffer = new byte[maxFileSize];
+		dataBuffer = new byte[8192];
 
 		lastModified = 0;
 
@@ -15,6 +15,9 @@
  ******************************************************************************/
 package org.openpipeline.pipeline.connector.webcrawler;
 
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.Collections;
@@ -29,10 +32,10 @@ import org.openpipeline.pipeline.docfilter.DocFilterFactory;
 import org.openpipeline.pipeline.docfilter.HTMLFilter;
 import org.openpipeline.pipeline.item.DocBinary;
 import org.openpipeline.pipeline.item.Item;
+import org.openpipeline.pipeline.item.SpillBuffer;
 import org.openpipeline.pipeline.stage.StageList;
 import org.openpipeline.scheduler.PipelineException;
 import org.openpipeline.server.Server;
-import org.openpipeline.util.ByteArray;
 import org.openpipeline.util.URLUtils;
 import org.openpipeline.util.WildcardMatcher;
 import org.openpipeline.util.XMLConfig;
@@ -57,6 +60,7 @@ public class WorkerThread implements Callable<WorkerThread> {
 	private Fetcher fetcher;
 	private XMLConfig params;
 	private Adler32 adler32 = new Adler32();
+	private char[] charBuffer = new char[4096];
 	private Item item = new Item();
 	private Item tempItem = new Item();
 	private DocFilterFactory docFilterFactory;
@@ -171,7 +175,7 @@ public class WorkerThread implements Callable<WorkerThread> {
 				/* unit test for linkqueue only */
 				if (inputProvided) {
 					action = HttpResultMapper.ACTION_FINALIZE;
-					fetcher.setInputStream(inputStream);
+					fetcher.setContent(toSpillBuffer(inputStream));
 					fetcher.setRedirectUrl(linkDBRecord.getNextUrl());
 					fetcher.setLastFetchTimeThisDomain(System
 							.currentTimeMillis());
@@ -323,11 +327,11 @@ public class WorkerThread implements Callable<WorkerThread> {
 							+ redirectUrl);
 				}
 
-				byte[] inputStream = fetcher.getInputStream();
+				SpillBuffer content = fetcher.getContent();
 
 				/* Compute checksum for the fetched data */
 				long previousSignature = linkDBRecord.getSignature();
-				long newSignature = updateChecksum(inputStream);
+				long newSignature = updateChecksum(content);
 
 				/*
 				 * Finalize next URL in the link Queue.
@@ -342,7 +346,7 @@ public class WorkerThread implements Callable<WorkerThread> {
 
 				/* Process data from modified pages */
 				if (newSignature != -1 && previousSignature != newSignature) {
-					processData(linkDBRecord, inputStream);
+					processData(linkDBRecord, content);
 				}
 
 				/*
@@ -392,6 +396,9 @@ public class WorkerThread implements Callable<WorkerThread> {
 					logger.error("Error removing nextURL=" + nextUrl
 							+ " or redirect URL=" + redirectUrl);
 				}
+			} finally {
+				/* Give back the memory or temp file holding the page */
+				fetcher.releaseContent();
 			}
 			return;
 		default:
@@ -435,21 +442,19 @@ public class WorkerThread implements Callable<WorkerThread> {
 	 * 
 	 * @param linkDBRecord
 	 *            containing the URL which was fetched
-	 * @param inputStream
+	 * @param content
 	 *            containing the fetched data
 	 * @throws PipelineException
 	 */
-	private void processData(LinkDBRecord linkDBRecord, byte[] inputStream)
-			throws PipelineException {
+	private void processData(LinkDBRecord linkDBRecord, SpillBuffer content)
+			throws PipelineException, IOException {
 
 		String nextUrl = linkDBRecord.getNextUrl();
 
 		/* Get the docBinary data */
 		DocBinary docBinary = new DocBinary();
-		ByteArray input = new ByteArray(inputStream);
-		docBinary.setInputStream(input);
-		int size = inputStream.length;
-		docBinary.setSize(size);
+		docBinary.setInputStream(content.getInputStream());
+		docBinary.setSize(content.size());
 		docBinary.setName(nextUrl);
 
 		/* Extract the new links */
@@ -503,10 +508,8 @@ public class WorkerThread implements Callable<WorkerThread> {
 				item.clear();
 
 				/* Reset the input stream */
-				input = new ByteArray(inputStream);
-				docBinary.setInputStream(input);
-				int size2 = inputStream.length;
-				docBinary.setSize(size2);
+				docBinary.setInputStream(content.getInputStream());
+				docBinary.setSize(content.size());
 				docBinary.setName(nextUrl);
 
 				item.setDocBinary(docBinary);
@@ -669,29 +672,49 @@ public class WorkerThread implements Callable<WorkerThread> {
 	 * 
 	 * @return the computed check sum
 	 */
-	private long updateChecksum(byte[] inputStream) {
+	private long updateChecksum(SpillBuffer content) throws IOException {
 
-		if (inputStream == null) {
+		if (content == null) {
 			/* No data was fetched, redirect, etc, do nothing */
 			return -1;
 		}
-		String input = new String(inputStream);// TODO look into charset
+		// TODO look into charset
+		Reader input = new InputStreamReader(content.getInputStream());
 		adler32.reset();
 
-		if (input.length() == 0)
-			adler32.update(0);
-		else {
-			int len = input.length();
-			for (int i = 0; i < len; i++) {
-				char ch = input.charAt(i);
-				adler32.update((ch >> 8) & 0xff);
-				adler32.update(ch & 0xff);
+		try {
+			int count = 0;
+			int len;
+			while ((len = input.read(charBuffer)) != -1) {
+				for (int i = 0; i < len; i++) {
+					char ch = charBuffer[i];
+					adler32.update((ch >> 8) & 0xff);
+					adler32.update(ch & 0xff);
+				}
+				count += len;
 			}
+			if (count == 0)
+				adler32.update(0);
+		} finally {
+			input.close();
 		}
 		long signature = adler32.getValue();
 		return signature;
 	}
 
+	/**
+	 * Copy the data supplied for a unit test into a SpillBuffer.
+	 */
+	private SpillBuffer toSpillBuffer(byte[] input) throws IOException {
+		if (input == null) {
+			return null;
+		}
+		SpillBuffer buf = new SpillBuffer();
+		buf.write(input);
+		buf.close();
+		return buf;
+	}
+
 	public void initialize() throws RuntimeException {
 
 		if (params == null) {
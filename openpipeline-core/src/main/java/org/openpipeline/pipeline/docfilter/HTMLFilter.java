@@ -24,6 +24,7 @@ import java.io.StringReader;
 import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -39,6 +40,7 @@ import org.openpipeline.pipeline.item.Node;
 import org.openpipeline.pipeline.item.StandardAttributeNames;
 import org.openpipeline.scheduler.PipelineException;
 import org.openpipeline.util.ByteArray;
+import org.openpipeline.util.ByteBufferInputStream;
 import org.openpipeline.util.FastStringBuffer;
 
 /**
@@ -48,6 +50,9 @@ public class HTMLFilter extends DocFilter {
 
 	static private final byte[] CHARSET_BYTES = "charset=".getBytes();
 
+	// local files at least this large are memory-mapped instead of read
+	static private final long MAP_THRESHOLD = 256 * 1024;
+
 	private FastStringBuffer generalText = new FastStringBuffer();
 	private FastStringBuffer titleText = new FastStringBuffer();
 	// Metatags can be multivalued
@@ -74,22 +79,31 @@ public class HTMLFilter extends DocFilter {
 			}
 
 			DocBinary docBinary = item.getDocBinary();
-			InputStream inputStream = docBinary.getInputStream();
-			
+
+			// a large local file is mapped rather than copied onto the heap
+			ByteBuffer content;
+			InputStream contentStream;
+			if (docBinary.getFile() != null && docBinary.getSize() >= MAP_THRESHOLD) {
+				content = docBinary.getMappedBuffer();
+				contentStream = new ByteBufferInputStream(content.duplicate());
+			} else {
+				InputStream inputStream = docBinary.getInputStream();
 				int size = (int) docBinary.getSize();
 				if (size <= 0) {
 					size = 100 * 1024;// guess
 				}
 				ByteArray arr = new ByteArray(size);
 				arr.append(inputStream);
-			
+				content = ByteBuffer.wrap(arr.getArray(), 0, arr.size());
+				contentStream = arr;
+			}
 
 			InputStreamReader isr;
-			String cs = extractCharset(arr);
+			String cs = extractCharset(content);
 			if (cs == null) {
-				isr = new InputStreamReader(arr);
+				isr = new InputStreamReader(contentStream);
 			} else {
-				isr = new InputStreamReader(arr, cs);
+				isr = new InputStreamReader(contentStream, cs);
 			}
 
 			populateBuffers(isr);
@@ -353,9 +367,8 @@ public class HTMLFilter extends DocFilter {
 		return url.toString();
 	}
 
-	private String extractCharset(ByteArray binary) {
-		byte[] buf = binary.getArray();
-		int size = binary.size();
+	private String extractCharset(ByteBuffer buf) {
+		int size = buf.limit();
 
 		int start = findBytes(CHARSET_BYTES, buf, size);
 		if (start == -1)
@@ -363,7 +376,7 @@ public class HTMLFilter extends DocFilter {
 		start += CHARSET_BYTES.length;
 		int end = start;
 		while (end < size) {
-			byte b = buf[end];
+			byte b = buf.get(end);
 			// look for the first space, ;, >, or "
 			if (b == 32 || b == 59 || b == 62 || b == 34) {
 				break;
@@ -371,9 +384,14 @@ public class HTMLFilter extends DocFilter {
 			end++;
 		}
 
+		byte[] name = new byte[end - start];
+		for (int i = 0; i < name.length; i++) {
+			name[i] = buf.get(start + i);
+		}
+
 		String encoding = null;
 		try {
-			encoding = new String(buf, start, end - start, "iso-8859-1");
+			encoding = new String(name, "iso-8859-1");
 			// this is just a test to see if the encoding is legitimate
 			new String(CHARSET_BYTES, encoding);
 		} catch (UnsupportedEncodingException e) {
@@ -385,14 +403,14 @@ public class HTMLFilter extends DocFilter {
 	/**
 	 * Return the starting offset of sub in buf.
 	 */
-	private int findBytes(byte[] sub, byte[] buf, int bufSize) {
+	private int findBytes(byte[] sub, ByteBuffer buf, int bufSize) {
 		if (sub.length > bufSize)
 			return -1;
 
 		for (int i = 0; i < (bufSize - sub.length); i++) {
 			boolean found = true;
 			for (int j = 0; j < sub.length; j++) {
-				if (sub[j] != buf[i + j]) {
+				if (sub[j] != buf.get(i + j)) {
 					found = false;
 					break;
 				}
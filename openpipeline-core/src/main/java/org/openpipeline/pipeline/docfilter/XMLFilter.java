@@ -62,6 +62,7 @@ public class XMLFilter extends DocFilter {
 	private XMLInputFactory factory = XMLInputFactory.newInstance();
 	private Reader reader;
 	private InputStream in;
+	private XMLStreamReader incrementalParser;
 	
 	// this is true if we're in MultiItemMode, that is,
 	// we acknowledge <item> and <item_id> tags.
@@ -94,6 +95,7 @@ public class XMLFilter extends DocFilter {
 	 * @param reader a Reader containing XML 
 	 */
 	public void setReader(Reader reader) {
+		closeIncrementalParser();
 		this.reader = reader;
 		this.in = null;
 	}
@@ -104,10 +106,50 @@ public class XMLFilter extends DocFilter {
 	 * @param in the InputStream containing the document content
 	 */
 	public void setInputStream(InputStream in) {
+		closeIncrementalParser();
 		this.in = in;
 		this.reader = null;
 	}
 
+	/**
+	 * Read the next item from the Reader or InputStream set by setReader() or
+	 * setInputStream(), without pushing it down the pipeline. Call it repeatedly
+	 * to step through the items in a multi-item file one at a time. A single-item
+	 * file yields one item.
+	 * @param item the item to populate
+	 * @return true if an item was read, false at the end of the file
+	 * @throws PipelineException if the XML can't be parsed
+	 */
+	public boolean readNextItem(Item item) throws PipelineException {
+		try {
+			if (incrementalParser == null) {
+				multiItemMode = false;
+				initialized = false;
+				incrementalParser = getParser(null);
+			}
+			if (parseWithStax(item, incrementalParser)) {
+				return true;
+			}
+			closeIncrementalParser();
+			return false;
+
+		} catch (Throwable t) {
+			closeIncrementalParser();
+			throw new PipelineException(t);
+		}
+	}
+
+	private void closeIncrementalParser() {
+		if (incrementalParser != null) {
+			try {
+				incrementalParser.close();
+			} catch (Throwable t) {
+				// ok to ignore
+			}
+			incrementalParser = null;
+		}
+	}
+
 	@Override
 	public void processItem(Item item) throws PipelineException {
 		multiItemMode = false;
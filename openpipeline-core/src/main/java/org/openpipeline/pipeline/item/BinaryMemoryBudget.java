@@ -0,0 +1,154 @@
+/*******************************************************************************
+ * Copyright 2010 Dieselpoint, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.openpipeline.pipeline.item;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A server-wide limit on the number of bytes of binary content that
+ * {@link SpillBuffer}s may hold in memory. All jobs share the same budget.
+ * A buffer that cannot get memory from the budget writes its content to
+ * a temp file instead.
+ * <p>
+ * The server sets the limits from the "binary-memory-budget" and
+ * "binary-spill-threshold" properties in the server config file, in bytes.
+ * Temp files go in "binary-spill-dir", or the system temp directory if
+ * it is not set.
+ */
+public class BinaryMemoryBudget {
+
+	public static final long DEFAULT_MAX_BYTES = 64 * 1024 * 1024;
+	public static final int DEFAULT_SPILL_THRESHOLD = 1024 * 1024;
+
+	private static volatile long maxBytes = DEFAULT_MAX_BYTES;
+	private static volatile int spillThreshold = DEFAULT_SPILL_THRESHOLD;
+	private static volatile File tempDir;
+
+	private static final AtomicLong usedBytes = new AtomicLong();
+	private static final AtomicLong spillCount = new AtomicLong();
+	private static final AtomicLong spilledBytes = new AtomicLong();
+
+	private BinaryMemoryBudget() {
+	}
+
+	/**
+	 * Try to take some bytes from the budget.
+	 * @param bytes the number of bytes wanted
+	 * @return true if the bytes were reserved, false if the budget is exhausted
+	 */
+	public static boolean reserve(long bytes) {
+		while (true) {
+			long used = usedBytes.get();
+			if (used + bytes > maxBytes) {
+				return false;
+			}
+			if (usedBytes.compareAndSet(used, used + bytes)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Return bytes to the budget that were taken with reserve().
+	 * @param bytes the number of bytes to return
+	 */
+	public static void release(long bytes) {
+		usedBytes.addAndGet(-bytes);
+	}
+
+	/**
+	 * Record that a buffer has started writing its content to disk.
+	 */
+	static void recordSpill() {
+		spillCount.incrementAndGet();
+	}
+
+	/**
+	 * Record the number of bytes a buffer wrote to disk.
+	 */
+	static void recordSpilledBytes(long bytes) {
+		spilledBytes.addAndGet(bytes);
+	}
+
+	/**
+	 * Return the number of bytes currently held in memory.
+	 */
+	public static long getUsedBytes() {
+		return usedBytes.get();
+	}
+
+	/**
+	 * Return the maximum number of bytes that may be held in memory.
+	 */
+	public static long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * Set the maximum number of bytes that may be held in memory,
+	 * across all jobs.
+	 */
+	public static void setMaxBytes(long bytes) {
+		maxBytes = bytes;
+	}
+
+	/**
+	 * Return the size above which a single buffer goes to disk, even if
+	 * the budget has room.
+	 */
+	public static int getSpillThreshold() {
+		return spillThreshold;
+	}
+
+	/**
+	 * Set the size above which a single buffer goes to disk, even if
+	 * the budget has room.
+	 */
+	public static void setSpillThreshold(int bytes) {
+		spillThreshold = bytes;
+	}
+
+	/**
+	 * Return the directory for temp files, or null for the system default.
+	 */
+	public static File getTempDir() {
+		return tempDir;
+	}
+
+	/**
+	 * Set the directory for temp files. Null means the system default.
+	 */
+	public static void setTempDir(File dir) {
+		tempDir = dir;
+	}
+
+	/**
+	 * Return the number of buffers that have been written to disk since
+	 * the server started.
+	 */
+	public static long getSpillCount() {
+		return spillCount.get();
+	}
+
+	/**
+	 * Return the total number of bytes written to disk since the server
+	 * started.
+	 */
+	public static long getSpilledBytes() {
+		return spilledBytes.get();
+	}
+}
@@ -15,9 +15,14 @@
  ******************************************************************************/
 package org.openpipeline.pipeline.item;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PushbackInputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 
 import org.openpipeline.util.ByteArray;
 import org.openpipeline.util.Util;
@@ -29,6 +34,11 @@ import org.openpipeline.util.Util;
  * attach binary content to an Item and pass it down the pipeline. A stage,
  * possibly a DocFilter stage, can process the binary and insert the extracted
  * text into the Item.
+ * <p>
+ * If the content comes from a file on local disk, the connector can also
+ * call {@link #setFile(File)}. Stages can then get at the content through
+ * {@link #getFileChannel()} or {@link #getMappedBuffer()} without
+ * copying it onto the heap.
  */
 public class DocBinary {
 	private InputStream stream;
@@ -38,6 +48,7 @@ public class DocBinary {
 	private String name;
 	private String encoding;
 	private long size = -1;
+	private File file;
 
 	/**
 	 * Sets the binary content. An internal buffer will be cleared, and then
@@ -122,6 +133,7 @@ public class DocBinary {
 		timestamp = 0;
 		mimeType = null;
 		name = null;
+		file = null;
 	}
 
 	/**
@@ -176,6 +188,98 @@ public class DocBinary {
 		return size;
 	}
 
+	/**
+	 * Return a copy of this object with the content of the InputStream read
+	 * into memory. Use this method when an item has to be held after the
+	 * code that supplied the stream has moved on, and may have closed or
+	 * reused it. This object's stream is consumed.
+	 * <p>
+	 * If this object is backed by a file, the content is not read. The
+	 * stream is closed and the copy gets a new stream on the same file.
+	 *
+	 * @return a copy that carries an in-memory stream
+	 * @throws IOException
+	 */
+	public DocBinary getBufferedCopy() throws IOException {
+		DocBinary copy = new DocBinary();
+		copy.timestamp = timestamp;
+		copy.mimeType = mimeType;
+		copy.name = name;
+		copy.encoding = encoding;
+		copy.size = size;
+		copy.file = file;
+		if (file != null) {
+			if (stream != null) {
+				stream.close();
+			}
+			copy.stream = new FileInputStream(file);
+		} else if (stream != null) {
+			copy.stream = getBinary(stream);
+		}
+		return copy;
+	}
+
+	/**
+	 * Set the local file that holds the content. The InputStream, if
+	 * any, must read the same bytes. Do not set a file if the stream
+	 * transforms the content, for example, by decompressing it.
+	 * 
+	 * @param file
+	 *            the file that holds the content
+	 */
+	public void setFile(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * Get the local file that holds the content.
+	 * 
+	 * @return the file, or null if the content did not come from a local file
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Open a read-only channel on the file that holds the content. The
+	 * caller must close it. Use FileChannel.transferTo() to copy the content
+	 * somewhere else without passing it through the heap.
+	 * 
+	 * @return an open channel, or null if there is no file
+	 * @throws IOException
+	 */
+	public FileChannel getFileChannel() throws IOException {
+		if (file == null) {
+			return null;
+		}
+		return new RandomAccessFile(file, "r").getChannel();
+	}
+
+	/**
+	 * Map the file that holds the content into memory, read-only. The
+	 * pages are loaded by the operating system as they are read, and
+	 * stay in the page cache rather than the Java heap. The mapping is
+	 * released when the buffer is garbage collected.
+	 * 
+	 * @return a buffer over the whole file, or null if there is no file
+	 * @throws IOException if the file cannot be read, or is larger than 2GB
+	 */
+	public MappedByteBuffer getMappedBuffer() throws IOException {
+		if (file == null) {
+			return null;
+		}
+		FileChannel channel = getFileChannel();
+		try {
+			long len = channel.size();
+			if (len > Integer.MAX_VALUE) {
+				throw new IOException("File too large to map: " + file);
+			}
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, len);
+		} finally {
+			channel.close();
+		}
+	}
+
 	public InputStream getInputStream() {
 		return stream;
 	}
@@ -21,6 +21,7 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
@@ -28,6 +29,7 @@ import javax.xml.stream.XMLStreamException;
 
 import org.openpipeline.pipeline.docfilter.XMLFilter;
 import org.openpipeline.scheduler.PipelineException;
+import org.openpipeline.util.ByteArray;
 import org.openpipeline.util.FastStringBuffer;
 
 /**
@@ -55,6 +57,12 @@ public class Item {
 	public static final int ACTION_UPDATE = 1;
 	public static final int ACTION_DELETE = 2;
 
+	// rough per-object heap sizes used by estimateMemory()
+	private static final int ITEM_BYTES = 256;
+	private static final int NODE_BYTES = 120;
+	private static final int ANNOTATION_BYTES = 48;
+	private static final int TOKEN_BYTES = 64;
+
 	private int action;
 	private Node root;
 	private FastStringBuffer buf;
@@ -62,6 +70,7 @@ public class Item {
 	private Map<String, AttributeDef> attributeDefs;
 	private DocBinary docBinary;
 	private XMLFilter xmlFilter;
+	private NodeArena arena = new NodeArena();
 
 	public Item() {
 		this(16);
@@ -97,7 +106,8 @@ public class Item {
 	 * @param keepDocBinary set true to refrain from clearing the docBinary object
 	 */
 	public void clear(boolean keepDocBinary) {
-		this.root = new Node(this, null);
+		arena.reset();
+		this.root = newNode(null);
 		this.root.setName("item");
 		this.buf.clear();
 		this.action = ACTION_ADD;
@@ -108,10 +118,45 @@ public class Item {
 		}
 	}
 
+	/**
+	 * Copy the contents of this item into another item. The target is
+	 * cleared first. The node tree, text, itemId, action and attribute definitions
+	 * are copied, so the target is not affected by later changes to this item.
+	 * Annotations and the DocBinary object are shared, not copied.
+	 * @param target the item to receive the copy
+	 */
+	public void copyTo(Item target) {
+		target.clear();
+		target.buf.append(buf.getArray(), 0, buf.size());
+		target.action = action;
+		target.itemId = itemId;
+		if (attributeDefs != null) {
+			target.attributeDefs = new LinkedHashMap(attributeDefs);
+		}
+		target.docBinary = docBinary;
+		target.root = root.copy(target, null, buf);
+	}
+
 	public FastStringBuffer getBuffer() {
 		return buf;
 	}
 
+	/*
+	 * The nodes, node lists and text values in the tree come from the arena,
+	 * and are recycled on clear().
+	 */
+	Node newNode(Node parent) {
+		return arena.newNode(this, parent);
+	}
+
+	NodeList newNodeList() {
+		return arena.newNodeList();
+	}
+
+	TextValue newTextValue() {
+		return arena.newTextValue(buf);
+	}
+
 	public int getAction() {
 		return action;
 	}
@@ -179,7 +224,24 @@ public class Item {
 		xmlBuf.append("</items>");
 	}
 	
-	private void appendAttributeDefs(FastStringBuffer xmlBuf) {
+	/**
+	 * Append several items to the buffer as a single &lt;items&gt; document. Each
+	 * item's attribute definitions precede the item, so XMLFilter will
+	 * read them back with the right item.
+	 * @param items the items to append
+	 * @param xmlBuf the buffer to receive the data
+	 * @param includeAnnotations true to include annotations
+	 */
+	public static void appendXMLtoBuffer(List<Item> items, FastStringBuffer xmlBuf, boolean includeAnnotations) {
+		xmlBuf.append("<items>");
+		for (Item item: items) {
+			item.appendAttributeDefs(xmlBuf);
+			item.root.appendXMLtoBuffer(xmlBuf, includeAnnotations);
+		}
+		xmlBuf.append("</items>");
+	}
+
+	void appendAttributeDefs(FastStringBuffer xmlBuf) {
 		if (attributeDefs == null) {
 			return;
 		}
@@ -241,6 +303,47 @@ public class Item {
 		}
 	}
 	
+	/**
+	 * Estimate the number of bytes of heap that the content of this item
+	 * occupies: the text buffer, the nodes, any annotations, and binary content
+	 * that is held in memory. Binary content in a file or an unread stream
+	 * is not counted. The estimate is rough, and is meant for admission
+	 * control, not profiling.
+	 * @return an estimate in bytes
+	 */
+	public long estimateMemory() {
+		long bytes = ITEM_BYTES + 2L * buf.size();
+		bytes += estimateMemory(root);
+		if (docBinary != null && docBinary.getInputStream() instanceof ByteArray) {
+			bytes += ((ByteArray) docBinary.getInputStream()).size();
+		}
+		return bytes;
+	}
+
+	private long estimateMemory(Node node) {
+		long bytes = NODE_BYTES;
+		Map annotations = node.getAnnotationsMap();
+		if (annotations != null) {
+			for (Object value: annotations.values()) {
+				bytes += ANNOTATION_BYTES;
+				if (value instanceof TokenList) {
+					bytes += (long) TOKEN_BYTES * ((TokenList) value).size();
+				} else if (value instanceof CharSequence) {
+					bytes += 2L * ((CharSequence) value).length();
+				}
+			}
+		}
+		int attrCount = node.getAttributeCount();
+		for (int i = 0; i < attrCount; i++) {
+			bytes += estimateMemory(node.getAttributes().get(i));
+		}
+		int childCount = node.getChildCount();
+		for (int i = 0; i < childCount; i++) {
+			bytes += estimateMemory(node.getChildren().get(i));
+		}
+		return bytes;
+	}
+
 	/**
 	 * Return a Map of AttributeDef objects, where the key
 	 * is the attributeId and the value is the AttributeDef.
@@ -0,0 +1,478 @@
+/*******************************************************************************
+ * Copyright 2010 Dieselpoint, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.openpipeline.pipeline.item;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.openpipeline.util.ByteArray;
+import org.openpipeline.util.FastStringBuffer;
+
+/**
+ * Reads and writes Items in a compact binary format. It's an alternative
+ * to XML for sending items from one machine to another, and is much
+ * cheaper to encode and decode. Node text is sent as the item's text buffer
+ * plus offsets into it, node names are sent once per message, and TokenList
+ * annotations survive the trip, which they don't in XML. Optionally, the
+ * content of the DocBinary can be included.
+ * <p>
+ * A message is a header followed by one or more items:
+ * <pre>
+ * header:  'O' 'P' 'I' version, vInt item count
+ * item:    vInt action, string itemId, attribute defs, text buffer,
+ *          root node, docBinary
+ * node:    flags, name, value, attributes, children, annotations
+ * </pre>
+ * Integers are vInts/vLongs and strings are a vInt char count + 1 (0 for null)
+ * followed by modified UTF-8, as written by ByteArray. Node and annotation
+ * names are sent as an index into a table that is built up as the message
+ * is written, so each distinct name is written only once per message.
+ * <p>
+ * Annotations other than TokenLists and Strings are sent as their toString(),
+ * and arrive as Strings.
+ * <p>
+ * An instance keeps the name table for the current message, so use one
+ * instance per thread.
+ */
+public class ItemCodec {
+
+	/**
+	 * The HTTP content type for a message in this format.
+	 */
+	public static final String CONTENT_TYPE = "application/x-openpipeline-item";
+
+	public static final int VERSION = 1;
+
+	private static final byte[] MAGIC = {'O', 'P', 'I'};
+
+	// node flags
+	private static final int HAS_VALUE = 1;
+	private static final int INLINE_VALUE = 2; // value isn't in the item buffer
+	private static final int IS_ATTRIBUTE = 4;
+
+	// annotation types
+	private static final int ANNOT_STRING = 0;
+	private static final int ANNOT_TOKENS = 1;
+
+	private boolean includeDocBinary;
+	private HashMap<String, Integer> nameIds = new HashMap();
+	private List<String> names = new ArrayList();
+	private TextValue span;
+
+	/**
+	 * Set true to include the content of the item's DocBinary. Default false.
+	 * @param includeDocBinary true to send the binary content
+	 */
+	public void setIncludeDocBinary(boolean includeDocBinary) {
+		this.includeDocBinary = includeDocBinary;
+	}
+
+	/**
+	 * Start a message. Call this once before writing the items.
+	 * @param out the buffer to receive the data
+	 * @param itemCount the number of items that will follow
+	 */
+	public void writeHeader(ByteArray out, int itemCount) {
+		out.append(MAGIC);
+		out.appendByte((byte) VERSION);
+		out.appendvInt(itemCount);
+		nameIds.clear();
+		names.clear();
+	}
+
+	/**
+	 * Start reading a message.
+	 * @param in the buffer that contains the message, positioned at the start
+	 * @return the number of items in the message
+	 * @throws IOException if the data is not in this format, or is a version
+	 * this class does not read
+	 */
+	public int readHeader(ByteArray in) throws IOException {
+		if (in.size() - in.getPosition() < MAGIC.length + 1) {
+			throw new IOException("Item message is too short");
+		}
+		for (int i = 0; i < MAGIC.length; i++) {
+			if (in.get() != MAGIC[i]) {
+				throw new IOException("Not an item message");
+			}
+		}
+		int version = in.get();
+		if (version != VERSION) {
+			throw new IOException("Unsupported item message version: " + version);
+		}
+		nameIds.clear();
+		names.clear();
+		return in.getvInt();
+	}
+
+	/**
+	 * Append an item to the message. If the DocBinary is included and has
+	 * an InputStream, the stream is read into memory and the item gets a
+	 * copy of the DocBinary, so the content is still available downstream.
+	 * @param item the item to write
+	 * @param out the buffer to receive the data
+	 * @throws IOException if the DocBinary content can't be read
+	 */
+	public void write(Item item, ByteArray out) throws IOException {
+		out.appendvInt(item.getAction());
+		writeString(out, item.getItemId());
+
+		if (item.hasAttributeDefs()) {
+			Map<String, AttributeDef> defs = item.getAttributeDefs();
+			out.appendvInt(defs.size());
+			for (AttributeDef def: defs.values()) {
+				writeString(out, def.getAttributeId());
+				Map<String, String> props = def.getPropertiesMap();
+				out.appendvInt(props.size());
+				for (Map.Entry<String, String> entry: props.entrySet()) {
+					writeString(out, entry.getKey());
+					writeString(out, entry.getValue());
+				}
+			}
+		} else {
+			out.appendvInt(0);
+		}
+
+		FastStringBuffer buf = item.getBuffer();
+		out.appendvInt(buf.size());
+		out.appendModifiedUTF(buf.getArray(), 0, buf.size(), false);
+
+		writeNode(item.getRootNode(), buf, out);
+		writeDocBinary(item, out);
+	}
+
+	private void writeNode(Node node, FastStringBuffer buf, ByteArray out) {
+		TextValue value = node.getValue();
+		boolean inline = value != null && value.getBuffer() != buf;
+		int flags = 0;
+		if (value != null) {
+			flags |= HAS_VALUE;
+		}
+		if (inline) {
+			flags |= INLINE_VALUE;
+		}
+		if (node.isAttribute()) {
+			flags |= IS_ATTRIBUTE;
+		}
+		out.appendByte((byte) flags);
+		writeName(out, node.getName());
+
+		if (inline) {
+			out.appendvInt(value.size() + 1);
+			out.appendModifiedUTF(value.getArray(), value.getOffset(), value.size(), false);
+		} else if (value != null) {
+			out.appendvInt(value.getOffset());
+			out.appendvInt(value.size());
+		}
+
+		int attrCount = node.getAttributeCount();
+		out.appendvInt(attrCount);
+		if (attrCount > 0) {
+			NodeList attrs = node.getAttributes();
+			for (int i = 0; i < attrCount; i++) {
+				writeNode(attrs.get(i), buf, out);
+			}
+		}
+
+		int childCount = node.getChildCount();
+		out.appendvInt(childCount);
+		if (childCount > 0) {
+			NodeList children = node.getChildren();
+			for (int i = 0; i < childCount; i++) {
+				writeNode(children.get(i), buf, out);
+			}
+		}
+
+		Map annotations = node.getAnnotationsMap();
+		if (annotations == null || annotations.isEmpty()) {
+			out.appendvInt(0);
+			return;
+		}
+		out.appendvInt(annotations.size());
+		Iterator it = annotations.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry entry = (Map.Entry) it.next();
+			writeName(out, (String) entry.getKey());
+			Object annot = entry.getValue();
+			if (annot instanceof TokenList && isInBuffer((TokenList) annot, buf)) {
+				out.appendByte((byte) ANNOT_TOKENS);
+				writeTokens(out, (TokenList) annot);
+			} else {
+				out.appendByte((byte) ANNOT_STRING);
+				writeString(out, annot == null ? null : annot.toString());
+			}
+		}
+	}
+
+	private boolean isInBuffer(TokenList tokens, FastStringBuffer buf) {
+		for (int i = 0; i < tokens.size(); i++) {
+			if (tokens.get(i).getBuffer() != buf) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void writeTokens(ByteArray out, TokenList tokens) {
+		int count = tokens.size();
+		out.appendvInt(count);
+		for (int i = 0; i < count; i++) {
+			Token token = tokens.get(i);
+			out.appendvInt(token.getOffset());
+			out.appendvInt(token.size());
+			out.appendvInt(token.getType());
+			out.appendvInt(token.getWordOffset());
+			out.appendFloat(token.getWeight());
+		}
+	}
+
+	private void writeDocBinary(Item item, ByteArray out) throws IOException {
+		DocBinary docBinary = item.getDocBinary();
+		if (!includeDocBinary || docBinary == null) {
+			out.appendBoolean(false);
+			return;
+		}
+		out.appendBoolean(true);
+		writeString(out, docBinary.getName());
+		writeString(out, docBinary.getMimeType());
+		writeString(out, docBinary.getEncoding());
+		out.appendvLong(docBinary.getTimestamp());
+		out.appendvLong(docBinary.getSize() + 1);
+
+		InputStream stream = docBinary.getInputStream();
+		if (stream == null) {
+			out.appendvInt(0);
+			return;
+		}
+		if (!(stream instanceof ByteArray)) {
+			docBinary = docBinary.getBufferedCopy();
+			item.setDocBinary(docBinary);
+			stream = docBinary.getInputStream();
+			if (!(stream instanceof ByteArray)) {
+				// a file-backed copy streams from the file
+				ByteArray binary = DocBinary.getBinary(stream);
+				stream.close();
+				docBinary.setInputStream(binary);
+				stream = binary;
+			}
+		}
+		ByteArray content = (ByteArray) stream;
+		int len = content.size() - content.getPosition();
+		out.appendvInt(len + 1);
+		out.append(content.getArray(), content.getPosition(), len);
+	}
+
+	/**
+	 * Read the next item in the message. The item is cleared first.
+	 * @param in the buffer that contains the message
+	 * @param item the item to populate
+	 * @throws IOException if the data is corrupt
+	 */
+	public void read(ByteArray in, Item item) throws IOException {
+		item.clear();
+		try {
+			item.setAction(in.getvInt());
+			item.setItemId(readString(in));
+
+			int defCount = readCount(in);
+			for (int i = 0; i < defCount; i++) {
+				AttributeDef def = new AttributeDef();
+				def.setAttributeId(readString(in));
+				int propCount = readCount(in);
+				for (int j = 0; j < propCount; j++) {
+					def.put(readString(in), readString(in));
+				}
+				item.getAttributeDefs().put(def.getAttributeId(), def);
+			}
+
+			FastStringBuffer buf = item.getBuffer();
+			readChars(in, readCount(in), buf);
+
+			if (span == null || span.getBuffer() != buf) {
+				span = new TextValue(buf);
+			}
+			readNode(in, item, item.getRootNode(), buf);
+			readDocBinary(in, item);
+			if (in.getPosition() > in.size()) {
+				throw new IOException("Item message is truncated");
+			}
+
+		} catch (ArrayIndexOutOfBoundsException e) {
+			throw new IOException("Item message is truncated or corrupt");
+		}
+	}
+
+	private void readNode(ByteArray in, Item item, Node node, FastStringBuffer buf) throws IOException {
+		int flags = in.get();
+		node.setName(readName(in));
+		node.setIsAttribute((flags & IS_ATTRIBUTE) != 0);
+
+		if ((flags & INLINE_VALUE) != 0) {
+			node.setValue(readString(in));
+		} else if ((flags & HAS_VALUE) != 0) {
+			int offset = in.getvInt();
+			int size = in.getvInt();
+			if (offset < 0 || size < 0 || offset + size > buf.size()) {
+				throw new IOException("Node value is out of range");
+			}
+			span.setOffset(offset);
+			span.setSize(size);
+			node.setValue(span); // points into the buffer, no copy
+		}
+
+		int attrCount = readCount(in);
+		for (int i = 0; i < attrCount; i++) {
+			Node attr = item.newNode(node);
+			readNode(in, item, attr, buf);
+			node.addAttribute(attr);
+		}
+
+		int childCount = readCount(in);
+		for (int i = 0; i < childCount; i++) {
+			Node child = item.newNode(node);
+			readNode(in, item, child, buf);
+			node.getChildren().append(child);
+		}
+
+		int annotCount = readCount(in);
+		for (int i = 0; i < annotCount; i++) {
+			String name = readName(in);
+			int type = in.get();
+			if (type == ANNOT_TOKENS) {
+				node.putAnnotations(name, readTokens(in, buf));
+			} else if (type == ANNOT_STRING) {
+				node.putAnnotations(name, readString(in));
+			} else {
+				throw new IOException("Unknown annotation type: " + type);
+			}
+		}
+	}
+
+	private TokenList readTokens(ByteArray in, FastStringBuffer buf) throws IOException {
+		int count = readCount(in);
+		TokenList tokens = new TokenList(Math.max(count, 1));
+		for (int i = 0; i < count; i++) {
+			Token token = new Token();
+			token.setBuffer(buf);
+			token.setOffset(in.getvInt());
+			token.setSize(in.getvInt());
+			token.setType(in.getvInt());
+			token.setWordOffset(in.getvInt());
+			token.setWeight(in.getFloat());
+			tokens.append(token);
+		}
+		return tokens;
+	}
+
+	private void readDocBinary(ByteArray in, Item item) throws IOException {
+		if (!in.getBoolean()) {
+			return;
+		}
+		DocBinary docBinary = new DocBinary();
+		docBinary.setName(readString(in));
+		docBinary.setMimeType(readString(in));
+		docBinary.setEncoding(readString(in));
+		docBinary.setTimestamp(in.getvLong());
+		docBinary.setSize(in.getvLong() - 1);
+
+		int len = readCount(in) - 1;
+		if (len >= 0) {
+			byte[] content = new byte[len];
+			System.arraycopy(in.getArray(), in.getPosition(), content, 0, len);
+			in.setPosition(in.getPosition() + len);
+			docBinary.setInputStream(new ByteArray(content));
+		}
+		item.setDocBinary(docBinary);
+	}
+
+	private void writeName(ByteArray out, String name) {
+		if (name == null) {
+			out.appendvInt(0);
+			return;
+		}
+		Integer id = nameIds.get(name);
+		if (id != null) {
+			out.appendvInt(id + 1);
+			return;
+		}
+		// a new name: its id is the next one, and the string follows
+		nameIds.put(name, names.size());
+		names.add(name);
+		out.appendvInt(names.size());
+		writeString(out, name);
+	}
+
+	private String readName(ByteArray in) throws IOException {
+		int id = in.getvInt() - 1;
+		if (id < 0) {
+			return null;
+		}
+		if (id < names.size()) {
+			return names.get(id);
+		}
+		if (id != names.size()) {
+			throw new IOException("Bad name reference: " + id);
+		}
+		String name = readString(in);
+		names.add(name);
+		return name;
+	}
+
+	private void writeString(ByteArray out, String str) {
+		if (str == null) {
+			out.appendvInt(0);
+			return;
+		}
+		out.appendvInt(str.length() + 1);
+		out.appendModifiedUTF(str, false);
+	}
+
+	private String readString(ByteArray in) throws IOException {
+		int len = readCount(in) - 1;
+		if (len < 0) {
+			return null;
+		}
+		FastStringBuffer buf = new FastStringBuffer(len);
+		readChars(in, len, buf);
+		return buf.toString();
+	}
+
+	/**
+	 * Read a count of things that follow. Each one takes at least a byte, so
+	 * a count larger than the rest of the message means it's corrupt.
+	 */
+	private int readCount(ByteArray in) throws IOException {
+		int count = in.getvInt();
+		if (count < 0 || count > in.size() - in.getPosition() + 1) {
+			throw new IOException("Item message is truncated or corrupt");
+		}
+		return count;
+	}
+
+	private void readChars(ByteArray in, int count, FastStringBuffer buf) throws IOException {
+		for (int i = 0; i < count; i++) {
+			if (in.getPosition() >= in.size()) {
+				throw new IOException("Item message is truncated");
+			}
+			buf.append(in.getNextUTFChar());
+		}
+	}
+}
@@ -0,0 +1,300 @@
+/*******************************************************************************
+ * Copyright 2010 Dieselpoint, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.openpipeline.pipeline.item;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.openpipeline.util.FastStringBuffer;
+
+/**
+ * Writes items as XML, encoded as UTF-8, directly to an OutputStream.
+ * The output is the same as {@link Item#appendXMLtoBuffer(FastStringBuffer, boolean)},
+ * but the document is never built up in memory. The writer walks the node tree,
+ * encodes and escapes the text as it goes, and passes the bytes to the stream
+ * through a small fixed-size buffer. Use this for large items, where building
+ * the whole document as a char array and then converting it to bytes
+ * would hold several copies of it in memory at once.
+ * <p>
+ * One difference: appendWithXMLEncode() replaces the two halves of a surrogate
+ * pair with spaces when the text also contains chars that need escaping. This
+ * class always writes the pair as a proper four-byte UTF-8 character.
+ * <p>
+ * The writer can be reused; call setOutputStream() for each new stream.
+ */
+public class ItemXMLWriter {
+
+	public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+	private OutputStream out;
+	private byte[] buf;
+	private int pos;
+	private int limit; // drain the buffer past this point, so a char always fits
+	private boolean includeAnnotations;
+	private FastStringBuffer scratch = new FastStringBuffer();
+
+	public ItemXMLWriter() {
+		this(DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Constructor
+	 * @param bufSize the size of the output buffer
+	 */
+	public ItemXMLWriter(int bufSize) {
+		buf = new byte[Math.max(bufSize, 64)];
+		limit = buf.length - 8;
+	}
+
+	/**
+	 * Set the stream to write to. Anything still buffered for the
+	 * previous stream is discarded, so call flush() first.
+	 * @param out the stream that receives the bytes
+	 */
+	public void setOutputStream(OutputStream out) {
+		this.out = out;
+		pos = 0;
+	}
+
+	/**
+	 * Set true to write annotations. Default false.
+	 */
+	public void setIncludeAnnotations(boolean includeAnnotations) {
+		this.includeAnnotations = includeAnnotations;
+	}
+
+	/**
+	 * Write the standard XML declaration.
+	 */
+	public void writeDeclaration() throws IOException {
+		writeRaw("<?xml version=\"1.0\" encoding=\"utf-8\"?>");
+	}
+
+	/**
+	 * Write a single item as an &lt;items&gt; document, including its
+	 * attribute definitions.
+	 * @param item the item to write
+	 */
+	public void write(Item item) throws IOException {
+		writeRaw("<items>");
+		writeItem(item);
+		writeRaw("</items>");
+	}
+
+	/**
+	 * Write several items as a single &lt;items&gt; document. Each item's
+	 * attribute definitions precede the item.
+	 * @param items the items to write
+	 */
+	public void write(List<Item> items) throws IOException {
+		writeRaw("<items>");
+		for (Item item: items) {
+			writeItem(item);
+		}
+		writeRaw("</items>");
+	}
+
+	/**
+	 * Write any buffered bytes to the stream, and flush it.
+	 */
+	public void flush() throws IOException {
+		drain();
+		out.flush();
+	}
+
+	private void writeItem(Item item) throws IOException {
+		if (item.hasAttributeDefs()) {
+			// there are few of these, and they're short
+			scratch.clear();
+			item.appendAttributeDefs(scratch);
+			write(scratch.getArray(), 0, scratch.size(), false);
+		}
+		writeNode(item.getRootNode());
+	}
+
+	private void writeNode(Node node) throws IOException {
+		String name = node.getName();
+		TextValue value = node.getValue();
+
+		// if name is null, then this is a text-only node
+		if (name == null) {
+			if (value != null) {
+				write(value.getArray(), value.getOffset(), value.size(), true);
+				writeAnnotations(node);
+			}
+			return;
+		}
+
+		writeByte('<');
+		writeRaw(name);
+		int attrCount = node.getAttributeCount();
+		if (attrCount > 0) {
+			NodeList attrs = node.getAttributes();
+			for (int i = 0; i < attrCount; i++) {
+				Node attr = attrs.get(i);
+				TextValue attrValue = attr.getValue();
+				writeByte(' ');
+				writeRaw(attr.getName());
+				writeByte('=');
+				writeByte('"');
+				write(attrValue.getArray(), attrValue.getOffset(), attrValue.size(), true);
+				writeByte('"');
+			}
+		}
+		writeByte('>');
+
+		if (value != null) {
+			write(value.getArray(), value.getOffset(), value.size(), true);
+			writeAnnotations(node);
+		}
+
+		int childCount = node.getChildCount();
+		if (childCount > 0) {
+			NodeList children = node.getChildren();
+			for (int i = 0; i < childCount; i++) {
+				writeNode(children.get(i));
+			}
+		}
+
+		writeByte('<');
+		writeByte('/');
+		writeRaw(name);
+		writeByte('>');
+	}
+
+	private void writeAnnotations(Node node) throws IOException {
+		if (!includeAnnotations) {
+			return;
+		}
+		Map map = node.getAnnotationsMap();
+		if (map == null || map.isEmpty()) {
+			return;
+		}
+		writeRaw("<annotations>");
+		Iterator it = map.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry entry = (Map.Entry) it.next();
+			writeRaw("<annot name=\"");
+			writeRaw((String) entry.getKey());
+			writeRaw("\">");
+			// don't xmlencode; it should come back as xml
+			writeRaw(entry.getValue().toString());
+			writeRaw("</annot>");
+		}
+		writeRaw("</annotations>");
+	}
+
+	private void writeRaw(String str) throws IOException {
+		int len = str.length();
+		for (int i = 0; i < len; i++) {
+			char ch = str.charAt(i);
+			if (ch < 0x80) {
+				writeByte(ch);
+			} else {
+				// rare in tag names and markup
+				char[] arr = str.toCharArray();
+				write(arr, i, len - i, false);
+				return;
+			}
+		}
+	}
+
+	private void writeByte(int b) throws IOException {
+		if (pos > limit) {
+			drain();
+		}
+		buf[pos++] = (byte) b;
+	}
+
+	/**
+	 * Encode the chars as UTF-8, optionally escaping them for XML the
+	 * same way FastStringBuffer.appendWithXMLEncode() does. Control chars
+	 * that aren't allowed in XML become spaces.
+	 */
+	private void write(char[] arr, int offset, int length, boolean escape) throws IOException {
+		final int end = offset + length;
+		for (int i = offset; i < end; i++) {
+			if (pos > limit) {
+				drain();
+			}
+			char ch = arr[i];
+
+			if (ch < 0x80) {
+				if (ch < 0x20 && ch != 0x9 && ch != 0xA && ch != 0xD) {
+					buf[pos++] = ' ';
+				} else if (!escape) {
+					buf[pos++] = (byte) ch;
+				} else {
+					switch (ch) {
+					case '<':
+						putAscii("&lt;");
+						break;
+					case '>':
+						putAscii("&gt;");
+						break;
+					case '&':
+						putAscii("&amp;");
+						break;
+					case '"':
+						putAscii("&quot;");
+						break;
+					default:
+						buf[pos++] = (byte) ch;
+					}
+				}
+
+			} else if (ch < 0x800) {
+				buf[pos++] = (byte) (0xC0 | (ch >> 6));
+				buf[pos++] = (byte) (0x80 | (ch & 0x3F));
+
+			} else if (Character.isHighSurrogate(ch) && i + 1 < end
+					&& Character.isLowSurrogate(arr[i + 1])) {
+				int cp = Character.toCodePoint(ch, arr[++i]);
+				buf[pos++] = (byte) (0xF0 | (cp >> 18));
+				buf[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+				buf[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+				buf[pos++] = (byte) (0x80 | (cp & 0x3F));
+
+			} else if (Character.isSurrogate(ch)) {
+				buf[pos++] = '?'; // unpaired, same as the JDK encoder
+
+			} else if (ch >= 0xFFFE) {
+				buf[pos++] = ' '; // not allowed in XML
+
+			} else {
+				buf[pos++] = (byte) (0xE0 | (ch >> 12));
+				buf[pos++] = (byte) (0x80 | ((ch >> 6) & 0x3F));
+				buf[pos++] = (byte) (0x80 | (ch & 0x3F));
+			}
+		}
+	}
+
+	private void putAscii(String str) {
+		for (int i = 0; i < str.length(); i++) {
+			buf[pos++] = (byte) str.charAt(i);
+		}
+	}
+
+	private void drain() throws IOException {
+		if (pos > 0) {
+			out.write(buf, 0, pos);
+			pos = 0;
+		}
+	}
+}
@@ -52,6 +52,8 @@ public class Node {
 	private Node parent; 
 	private TextValue value;
 	private boolean isAttribute = false;
+	private int nameId = NodeNames.NO_ID;
+	private int namesSeen = -1;		// size of the name table when nameId was looked up
 
 	/* The rules:
 	 * A node can have name and attributes, and either children or value but not both
@@ -63,10 +65,26 @@ public class Node {
 		this.item = item;
 		this.parent = parent;
 	}
+
+	/**
+	 * Return this node to the state it was in when it was constructed.
+	 * Used by NodeArena when it recycles the node.
+	 */
+	void reset(Node parent) {
+		this.parent = parent;
+		annotationsMap = null;
+		attributes = null;
+		children = null;
+		name = null;
+		value = null;
+		isAttribute = false;
+		nameId = NodeNames.NO_ID;
+		namesSeen = -1;
+	}
 	
 	public Node addAttribute(String name, String value) {
-		Node attr = new Node(item, this);
-		attr.setName(name);
+		Node attr = item.newNode(this);
+		attr.name = name; // a new node isn't in any list yet, so no index to invalidate
 		attr.setValue(value);
 		addAttribute(attr);
 		return attr;
@@ -88,7 +106,7 @@ public class Node {
 
 	public NodeList getAttributes() {
 		if (attributes == null) {
-			attributes = new NodeList();
+			attributes = item.newNodeList();
 		}
 		return attributes;
 	}
@@ -98,8 +116,29 @@ public class Node {
 		if (attributes == null) {
 			return null;
 		}
-		for (Node attr: attributes) {
-			if (name.equals(attr.getName())) {
+		int pos = attributes.indexOf(name);
+		if (pos < 0) {
+			return null;
+		}
+		return attributes.get(pos).getValue();
+	}
+
+	/**
+	 * Return the value of the attribute with the given name id.
+	 * @param nameId an id from NodeNames.intern()
+	 * @return the value, or null if there is no such attribute
+	 */
+	public TextValue getAttribute(int nameId) {
+		if (attributes == null || nameId == NodeNames.NO_ID) {
+			return null;
+		}
+		int count = attributes.size();
+		if (count >= NodeList.INDEX_THRESHOLD) {
+			return getAttribute(NodeNames.getName(nameId));
+		}
+		for (int i = 0; i < count; i++) {
+			Node attr = attributes.get(i);
+			if (attr.getNameId() == nameId) {
 				return attr.getValue();
 			}
 		}
@@ -115,8 +154,8 @@ public class Node {
 			demoteValue();
 		}
 		
-		Node node = new Node(item, this);
-		node.setName(name);
+		Node node = item.newNode(this);
+		node.name = name; // a new node isn't in any list yet, so no index to invalidate
 		getChildren().append(node);
 		return node;
 	}
@@ -125,7 +164,7 @@ public class Node {
 	 * Make any existing text assigned to this node a child.
 	 */
 	private void demoteValue() {
-		Node textNode = new Node(item, this);
+		Node textNode = item.newNode(this);
 		textNode.value = this.value;
 		getChildren().append(textNode);
 		this.value = null;
@@ -150,6 +189,20 @@ public class Node {
 		node.setValue(value);
 		return node;
 	}
+
+	/**
+	 * Add a node with the given name and value. The characters covered
+	 * by the span are copied straight into the item's buffer, so the span
+	 * can be reused afterward, and no String is created.
+	 * @param name the name of the node. If not null, becomes a tag in the xml.
+	 * @param value the text underneath the tag
+	 * @return the node that was added
+	 */
+	public Node addNode(String name, CharSpan value) {
+		Node node = addNode(name);
+		node.setValue(value);
+		return node;
+	}
 	
 
 	/**
@@ -309,11 +362,22 @@ public class Node {
 
 	public NodeList getChildren() {
 		if (children == null) {
-			children = new NodeList();
+			children = item.newNodeList();
+			if (parent != null && parent.children != null && !isAttribute) {
+				// searches of the parent's list can no longer skip this node
+				parent.children.setNested();
+			}
 		}
 		return children;
 	}
 
+	/**
+	 * Return true if this node has a list of children, even an empty one.
+	 */
+	boolean hasChildList() {
+		return children != null;
+	}
+
 	public Item getItem() {
 		return item;
 	}
@@ -351,6 +415,17 @@ public class Node {
 	
 	public void setName(String name) {
 		this.name = name;
+		this.nameId = NodeNames.NO_ID;
+		this.namesSeen = -1;
+		if (parent != null) {
+			if (isAttribute) {
+				if (parent.attributes != null) {
+					parent.attributes.invalidateIndex();
+				}
+			} else if (parent.children != null) {
+				parent.children.invalidateIndex();
+			}
+		}
 	}
 
 	public void setParent(Node tag) {
@@ -359,7 +434,7 @@ public class Node {
 
 	public void setValue(String text) {
 		if (value == null) {
-			value = new TextValue(item.getBuffer());
+			value = item.newTextValue();
 		}
 		value.setOffset(value.getBuffer().size());
 		value.getBuffer().append(text);
@@ -377,7 +452,7 @@ public class Node {
 	
 	private void setValue(char[] array, int offset, int size) {
 		if (value == null) {
-			value = new TextValue(item.getBuffer());
+			value = item.newTextValue();
 		}
 		
 		// if the new value is in the existing array, then we just
@@ -396,6 +471,24 @@ public class Node {
 		return name;
 	}
 
+	/**
+	 * Return the id of this node's name in the {@link NodeNames} table.
+	 * The id is looked up the first time this method is called, and again
+	 * only if more names have been interned since.
+	 * @return the id, or NodeNames.NO_ID if the node has no name or no stage
+	 * has interned it
+	 */
+	public int getNameId() {
+		if (nameId == NodeNames.NO_ID && name != null) {
+			int size = NodeNames.size();
+			if (namesSeen != size) {
+				namesSeen = size;
+				nameId = NodeNames.lookup(name);
+			}
+		}
+		return nameId;
+	}
+
 	/**
 	 * Returns the full path to this node, including 
 	 * parent nodes separated by "/". Excludes the root node.
@@ -467,6 +560,9 @@ public class Node {
 	 * @return the node, or null if not found
 	 */
 	public Node getChild(String name) {
+		if (children != null && children.size() >= NodeList.INDEX_THRESHOLD) {
+			return getChildIndexed(name);
+		}
 		if (this.hasChildren()) {
 			NodeList children = this.getChildren();
 			for (Node child: children) {
@@ -484,6 +580,57 @@ public class Node {
 		return null;
 	}
 
+	/**
+	 * Same result as the scan in getChild(), using the index on the child list.
+	 * The search is depth-first, so a match under an earlier child comes before
+	 * a direct child with the name. If none of the children have children,
+	 * the index alone has the answer.
+	 */
+	private Node getChildIndexed(String name) {
+		int pos = children.indexOf(name);
+		if (children.isFlat()) {
+			return pos < 0 ? null : children.get(pos);
+		}
+		int end = pos < 0 ? children.size() : pos;
+		for (int i = 0; i < end; i++) {
+			Node child = children.get(i);
+			if (child.children != null) {
+				Node node = child.getChild(name);
+				if (node != null) {
+					return node;
+				}
+			}
+		}
+		return pos < 0 ? null : children.get(pos);
+	}
+
+	/**
+	 * Search for a node with the specified name id and return it.
+	 * @param nameId an id from NodeNames.intern()
+	 * @return the node, or null if not found
+	 */
+	public Node getChild(int nameId) {
+		if (children != null && nameId != NodeNames.NO_ID) {
+			int count = children.size();
+			if (count >= NodeList.INDEX_THRESHOLD) {
+				return getChildIndexed(NodeNames.getName(nameId));
+			}
+			for (int i = 0; i < count; i++) {
+				Node child = children.get(i);
+				if (child.getNameId() == nameId) {
+					return child;
+				}
+				
+				// else recurse
+				Node node = child.getChild(nameId);
+				if (node != null) {
+					return node;
+				}
+			}
+		}
+		return null;
+	}
+
 	/**
 	 * Search for a child with the specified name and return
 	 * any text value associated with it as a String.
@@ -504,6 +651,63 @@ public class Node {
 		return val.toString();
 	}
 
+	/**
+	 * Search for a child with the specified name id and return
+	 * any text value associated with it as a String.
+	 * @param nameId an id from NodeNames.intern()
+	 * @return the value as a String, or null if the node is not found or
+	 * does not have a text value
+	 */
+	public String getChildValue(int nameId) {
+		Node child = getChild(nameId);
+		if (child == null || child.getValue() == null) {
+			return null;
+		}
+		return child.getValue().toString();
+	}
+
+	/**
+	 * Make a deep copy of this node and everything under it. Used by Item.copyTo().
+	 * Text that lives in the source item's buffer is assumed to be at the same
+	 * offset in the target item's buffer; any other text is appended to it.
+	 */
+	Node copy(Item target, Node newParent, FastStringBuffer sourceBuf) {
+		Node node = target.newNode(newParent);
+		node.name = name;
+		node.nameId = nameId;
+		node.namesSeen = namesSeen;
+		node.isAttribute = isAttribute;
+		if (value != null) {
+			node.value = target.newTextValue();
+			if (value.getBuffer() == sourceBuf) {
+				node.value.setOffset(value.getOffset());
+				node.value.setSize(value.size());
+			} else {
+				node.setValue(value.getArray(), value.getOffset(), value.size());
+			}
+		}
+		if (annotationsMap != null) {
+			node.annotationsMap = new HashMap(annotationsMap);
+		}
+		if (attributes != null) {
+			int count = attributes.size();
+			node.attributes = target.newNodeList();
+			node.attributes.ensureCapacity(count);
+			for (int i = 0; i < count; i++) {
+				node.attributes.append(attributes.get(i).copy(target, node, sourceBuf));
+			}
+		}
+		if (children != null) {
+			int count = children.size();
+			node.children = target.newNodeList();
+			node.children.ensureCapacity(count);
+			for (int i = 0; i < count; i++) {
+				node.children.append(children.get(i).copy(target, node, sourceBuf));
+			}
+		}
+		return node;
+	}
+
 	public String toString() {
 		FastStringBuffer buf = new FastStringBuffer();
 		buf.append("<");
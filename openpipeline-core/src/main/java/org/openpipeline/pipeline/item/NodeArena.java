@@ -0,0 +1,124 @@
+/*******************************************************************************
+ * Copyright 2010 Dieselpoint, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.openpipeline.pipeline.item;
+
+import java.util.Arrays;
+
+import org.openpipeline.util.FastStringBuffer;
+
+/**
+ * Holds the Node, NodeList and TextValue objects that make up an Item's tree,
+ * and hands them out again after the item is cleared. Connectors reuse the same
+ * Item for every record, so once the arena has grown to the size of a typical
+ * record, building the next record's tree does not allocate anything.
+ * <p>
+ * Objects are recycled only on Item.clear(). An arena that grew very
+ * large for an unusual item gives back everything past MAX_RETAINED objects
+ * of each type, so one huge document does not pin memory for the rest of the job.
+ */
+class NodeArena {
+
+	static final int MAX_RETAINED = 16 * 1024;
+
+	private Node[] nodes = new Node[16];
+	private int nodeCount;
+
+	private NodeList[] lists = new NodeList[16];
+	private int listCount;
+
+	private TextValue[] values = new TextValue[16];
+	private int valueCount;
+
+	/**
+	 * Return a node with no name, value, children, attributes or annotations.
+	 */
+	Node newNode(Item item, Node parent) {
+		if (nodeCount == nodes.length) {
+			nodes = Arrays.copyOf(nodes, nodeCount * 2);
+		}
+		Node node = nodes[nodeCount];
+		if (node == null) {
+			node = new Node(item, parent);
+			nodes[nodeCount] = node;
+		} else {
+			node.reset(parent);
+		}
+		nodeCount++;
+		return node;
+	}
+
+	/**
+	 * Return an empty NodeList.
+	 */
+	NodeList newNodeList() {
+		if (listCount == lists.length) {
+			lists = Arrays.copyOf(lists, listCount * 2);
+		}
+		NodeList list = lists[listCount];
+		if (list == null) {
+			list = new NodeList();
+			lists[listCount] = list;
+		} else {
+			list.clear();
+		}
+		listCount++;
+		return list;
+	}
+
+	/**
+	 * Return an empty TextValue that points into the given buffer.
+	 */
+	TextValue newTextValue(FastStringBuffer buf) {
+		if (valueCount == values.length) {
+			values = Arrays.copyOf(values, valueCount * 2);
+		}
+		TextValue value = values[valueCount];
+		if (value == null || value.getBuffer() != buf) {
+			value = new TextValue(buf);
+			values[valueCount] = value;
+		} else {
+			value.setOffset(0);
+			value.setSize(0);
+		}
+		valueCount++;
+		return value;
+	}
+
+	/**
+	 * Make all the objects available for reuse.
+	 */
+	void reset() {
+		if (nodes.length > MAX_RETAINED) {
+			nodes = Arrays.copyOf(nodes, MAX_RETAINED);
+		}
+		if (lists.length > MAX_RETAINED) {
+			lists = Arrays.copyOf(lists, MAX_RETAINED);
+		}
+		if (values.length > MAX_RETAINED) {
+			values = Arrays.copyOf(values, MAX_RETAINED);
+		}
+		nodeCount = 0;
+		listCount = 0;
+		valueCount = 0;
+	}
+
+	/**
+	 * Return the number of nodes handed out since the last reset.
+	 */
+	int getNodeCount() {
+		return nodeCount;
+	}
+}
@@ -15,13 +15,24 @@
  ******************************************************************************/
 package org.openpipeline.pipeline.item;
 
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Iterator;
 
 import org.openpipeline.util.FastStringBuffer;
 
 public class NodeList implements Iterable<Node> {
+
+	/**
+	 * Lists with at least this many nodes get an index by name.
+	 */
+	static final int INDEX_THRESHOLD = 16;
+
 	private int size;
 	private Node [] array;
+	private HashMap<String, Integer> nameIndex; // name -> position of first node with that name
+	private boolean indexValid;
+	private boolean nested; // true if a node in the list may have children of its own
 	
 	public NodeList() {
 		this(4);
@@ -37,6 +48,21 @@ public class NodeList implements Iterable<Node> {
 	
 	public void setSize(int size) {
 		this.size = size;
+		indexValid = false;
+		if (size == 0) {
+			nested = false;
+		}
+	}
+
+	/**
+	 * Remove all nodes from the list. Unlike setSize(0), this also releases
+	 * the references to the nodes.
+	 */
+	public void clear() {
+		Arrays.fill(array, 0, size, null);
+		size = 0;
+		indexValid = false;
+		nested = false;
 	}
 	
 	public Node get(int i) {
@@ -47,12 +73,23 @@ public class NodeList implements Iterable<Node> {
 	public void put(int i, Node node) {
 		checkNodeIndex(i);
 		array[i] = node;
+		indexValid = false;
+		checkNested(node);
 	}
 	
 	public void append(Node node) {
 		size++;
 		ensureCapacity(size);
 		array[size - 1] = node;
+		checkNested(node);
+		
+		// appending can't change the first position of any name already in the index
+		if (indexValid) {
+			String name = node.getName();
+			if (name != null && !nameIndex.containsKey(name)) {
+				nameIndex.put(name, size - 1);
+			}
+		}
 	}
 	
 	
@@ -61,6 +98,7 @@ public class NodeList implements Iterable<Node> {
 		Node removed = array[i];
 		System.arraycopy(array, i + 1, array, i, size - i - 1);
 		size--;
+		indexValid = false;
 		return removed;
 	}
 
@@ -89,6 +127,80 @@ public class NodeList implements Iterable<Node> {
 		System.arraycopy(array, position, array, position + 1, size - position);
 		array[position] = node;
 		size++;
+		indexValid = false;
+		checkNested(node);
+	}
+
+	private void checkNested(Node node) {
+		if (node.hasChildList()) {
+			nested = true;
+		}
+	}
+
+	/**
+	 * Note that a node in the list may have children. Called when a node
+	 * in the list gets a list of children of its own.
+	 */
+	void setNested() {
+		nested = true;
+	}
+
+	/**
+	 * Return true if no node in the list has children, so a depth-first
+	 * search by name only has to look at the list itself.
+	 */
+	boolean isFlat() {
+		return !nested;
+	}
+
+	/**
+	 * Return the position of the first node in the list with the given name.
+	 * Short lists are scanned. Longer ones build an index the first time
+	 * they are searched, which stays valid as nodes are appended, and is
+	 * rebuilt after any other change.
+	 * @param name the name to find
+	 * @return the position, or -1 if there is no node with that name
+	 */
+	public int indexOf(String name) {
+		if (size < INDEX_THRESHOLD) {
+			for (int i = 0; i < size; i++) {
+				if (name.equals(array[i].getName())) {
+					return i;
+				}
+			}
+			return -1;
+		}
+		
+		if (!indexValid) {
+			if (nameIndex == null) {
+				nameIndex = new HashMap();
+			} else {
+				nameIndex.clear();
+			}
+			for (int i = 0; i < size; i++) {
+				String nodeName = array[i].getName();
+				if (nodeName != null && !nameIndex.containsKey(nodeName)) {
+					nameIndex.put(nodeName, i);
+				}
+			}
+			indexValid = true;
+		}
+		Integer pos = nameIndex.get(name);
+		return pos == null ? -1 : pos;
+	}
+
+	/**
+	 * Mark the index out of date. Called when a node in the list is renamed.
+	 */
+	void invalidateIndex() {
+		indexValid = false;
+	}
+
+	/**
+	 * Return true if the index is built and up to date.
+	 */
+	boolean isIndexValid() {
+		return indexValid;
 	}
 
 	
@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright 2010 Dieselpoint, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.openpipeline.pipeline.item;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A global table that assigns a small int id to each node name that a stage
+ * cares about. A stage interns its configured names in initialize(), and then
+ * in processNode() compares {@link Node#getNameId()} to the ids, which is
+ * an int compare instead of a String.equals() on every node.
+ * <p>
+ * Only names passed to {@link #intern(String)} get an id. Names that appear
+ * in the data but that no stage has asked for have the id NO_ID, so
+ * the table stays small no matter how many different tags the data has.
+ * <p>
+ * Ids are never reused, and are the same across all items and threads
+ * for the life of the JVM.
+ */
+public final class NodeNames {
+
+	/**
+	 * The id of a node that has no name, or a name that has not been interned.
+	 */
+	public static final int NO_ID = -1;
+
+	private static final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap();
+	private static volatile String[] names = new String[0];
+
+	private NodeNames() {
+	}
+
+	/**
+	 * Return the id for a name, assigning a new one if the name has not
+	 * been seen before.
+	 * @param name the node name
+	 * @return the id, or NO_ID if name is null
+	 */
+	public static int intern(String name) {
+		if (name == null) {
+			return NO_ID;
+		}
+		Integer id = ids.get(name);
+		if (id != null) {
+			return id;
+		}
+		synchronized (NodeNames.class) {
+			id = ids.get(name);
+			if (id != null) {
+				return id;
+			}
+			// the id goes in the map before the array is published, so a
+			// node that sees the new size() will find its name in lookup()
+			int newId = names.length;
+			String[] newNames = Arrays.copyOf(names, newId + 1);
+			newNames[newId] = name;
+			ids.put(name, newId);
+			names = newNames;
+			return newId;
+		}
+	}
+
+	/**
+	 * Return the id for a name without assigning one.
+	 * @param name the node name
+	 * @return the id, or NO_ID if the name has not been interned
+	 */
+	public static int lookup(String name) {
+		if (name == null) {
+			return NO_ID;
+		}
+		Integer id = ids.get(name);
+		return id == null ? NO_ID : id;
+	}
+
+	/**
+	 * Return the name that has the given id.
+	 * @param id an id returned by intern()
+	 * @return the name, or null if there is no such id
+	 */
+	public static String getName(int id) {
+		String[] arr = names;
+		if (id < 0 || id >= arr.length) {
+			return null;
+		}
+		return arr[id];
+	}
+
+	/**
+	 * Return the number of names in the table. A node name that was looked
+	 * up when the table was smaller may have been interned since.
+	 */
+	static int size() {
+		return names.length;
+	}
+}
@@ -0,0 +1,214 @@
+/*******************************************************************************
+ * Copyright 2010 Dieselpoint, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.openpipeline.pipeline.item;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.openpipeline.util.ByteArray;
+
+/**
+ * Holds the binary content of a document, in memory if it is small and
+ * the {@link BinaryMemoryBudget} has room, otherwise in a temp file.
+ * Write the content to this object, or call append(InputStream), and then
+ * call getInputStream() as many times as needed to read it back. The
+ * content is never copied; an in-memory stream reads the internal array.
+ * <p>
+ * Call release() when the content is no longer needed. It returns the
+ * memory to the budget and deletes the temp file, if any. Streams
+ * returned by getInputStream() must not be used after that.
+ */
+public class SpillBuffer extends OutputStream {
+
+	private static final byte[] EMPTY = new byte[0];
+	private static final int MIN_CAPACITY = 4096;
+
+	private final int threshold;
+	private byte[] array = EMPTY;
+	private int size;
+	private long reserved;
+
+	private File file;
+	private OutputStream fileOut;
+	private long fileSize;
+
+	/**
+	 * Create a buffer that uses the server-wide spill threshold.
+	 */
+	public SpillBuffer() {
+		this(BinaryMemoryBudget.getSpillThreshold());
+	}
+
+	/**
+	 * Create a buffer that goes to disk once it holds more than threshold bytes.
+	 * @param threshold the most bytes to hold in memory
+	 */
+	public SpillBuffer(int threshold) {
+		this.threshold = threshold;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		if (fileOut == null && !ensureCapacity(size + 1)) {
+			spill();
+		}
+		if (fileOut != null) {
+			fileOut.write(b);
+			fileSize++;
+		} else {
+			array[size++] = (byte) b;
+		}
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (fileOut == null && !ensureCapacity(size + len)) {
+			spill();
+		}
+		if (fileOut != null) {
+			fileOut.write(b, off, len);
+			fileSize += len;
+		} else {
+			System.arraycopy(b, off, array, size, len);
+			size += len;
+		}
+	}
+
+	/**
+	 * Read the stream to the end and add its content to this buffer.
+	 * The stream is not closed.
+	 * @param in the stream to read
+	 * @throws IOException
+	 */
+	public void append(InputStream in) throws IOException {
+		byte[] buf = new byte[8192];
+		int count;
+		while ((count = in.read(buf)) != -1) {
+			write(buf, 0, count);
+		}
+	}
+
+	/**
+	 * Grow the array to hold the needed number of bytes, taking the
+	 * extra memory from the budget. Return false if the array would
+	 * exceed the threshold or the budget is exhausted.
+	 */
+	private boolean ensureCapacity(int needed) {
+		if (needed <= array.length) {
+			return true;
+		}
+		if (needed > threshold || needed < 0) {
+			return false;
+		}
+		int newCapacity = Math.max(needed, Math.max(array.length * 2, MIN_CAPACITY));
+		newCapacity = Math.min(newCapacity, threshold);
+		int extra = newCapacity - array.length;
+		if (!BinaryMemoryBudget.reserve(extra)) {
+			return false;
+		}
+		reserved += extra;
+		byte[] newArray = new byte[newCapacity];
+		System.arraycopy(array, 0, newArray, 0, size);
+		array = newArray;
+		return true;
+	}
+
+	/**
+	 * Move the content to a temp file and give the memory back.
+	 */
+	private void spill() throws IOException {
+		File dir = BinaryMemoryBudget.getTempDir();
+		file = File.createTempFile("openpipeline", ".bin", dir);
+		fileOut = new BufferedOutputStream(new FileOutputStream(file), 8192);
+		fileOut.write(array, 0, size);
+		fileSize = size;
+		releaseMemory();
+		BinaryMemoryBudget.recordSpill();
+	}
+
+	private void releaseMemory() {
+		BinaryMemoryBudget.release(reserved);
+		reserved = 0;
+		array = EMPTY;
+		size = 0;
+	}
+
+	/**
+	 * Finish writing. Called automatically by getInputStream().
+	 */
+	@Override
+	public void close() throws IOException {
+		if (fileOut != null) {
+			OutputStream out = fileOut;
+			fileOut = null;
+			out.close();
+			BinaryMemoryBudget.recordSpilledBytes(fileSize);
+		}
+	}
+
+	/**
+	 * Return the number of bytes in the buffer.
+	 */
+	public long size() {
+		return file == null ? size : fileSize;
+	}
+
+	/**
+	 * Return true if the content is in a temp file rather than in memory.
+	 */
+	public boolean isSpilled() {
+		return file != null;
+	}
+
+	/**
+	 * Return a new stream that reads the content from the beginning.
+	 * No more content may be written after this method is called.
+	 * @return a stream over the content
+	 * @throws IOException
+	 */
+	public InputStream getInputStream() throws IOException {
+		close();
+		if (file != null) {
+			return new FileInputStream(file);
+		}
+		return new ByteArray(array, size);
+	}
+
+	/**
+	 * Return the memory to the budget and delete the temp file, if any.
+	 * The buffer is empty afterward and can be written again.
+	 */
+	public void release() {
+		try {
+			close();
+		} catch (IOException e) {
+			// the file is going away anyway
+		}
+		releaseMemory();
+		if (file != null) {
+			if (!file.delete()) {
+				file.deleteOnExit();
+			}
+			file = null;
+			fileSize = 0;
+		}
+	}
+}
@@ -0,0 +1,287 @@
+/*******************************************************************************
+ * Copyright 2010 Dieselpoint, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.openpipeline.pipeline.stage;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openpipeline.pipeline.item.DocBinary;
+import org.openpipeline.pipeline.item.Item;
+import org.openpipeline.scheduler.PipelineException;
+import org.openpipeline.util.FastStringBuffer;
+
+/**
+ * Decouples the stages before this one from the stages after it. Normally
+ * each stage calls the next one on the same thread, so a slow stage at the end
+ * of the pipeline, for example an ItemSender or a DiskWriter, holds up the
+ * connector that is reading the data. This stage copies each item into a
+ * fixed-size ring buffer and returns immediately. A separate thread takes items
+ * off the ring and runs the rest of the pipeline.
+ * <p>
+ * The item slots in the ring are allocated once, in initialize(), and reused.
+ * When the ring is full, processItem() waits for a free slot. If "full-timeout"
+ * is set to a number of milliseconds, it waits that long and then drops the item
+ * with an error.
+ * <p>
+ * If the item carries a DocBinary with an InputStream, the stream is read into
+ * memory before the item goes into the ring, because the connector is free to
+ * close or reuse the stream as soon as this method returns. Set "buffer-binary"
+ * to false if the connector supplies streams that stay valid.
+ */
+public class AsyncBoundary extends Stage {
+
+	public static final int DEFAULT_RING_SIZE = 64;
+
+	private Item[] ring;
+	private long head; // sequence number of the next slot to fill
+	private long tail; // sequence number of the next slot to drain
+	private final Object lock = new Object();
+
+	private long fullTimeout;
+	private boolean bufferBinary;
+	private boolean closed;
+	private Thread consumer;
+
+	@Override
+	public void initialize() throws PipelineException {
+		int ringSize = Math.max(1, params.getIntProperty("ring-size", DEFAULT_RING_SIZE));
+		fullTimeout = params.getLongProperty("full-timeout", 0);
+		bufferBinary = params.getBooleanProperty("buffer-binary", true);
+
+		ring = new Item[ringSize];
+		for (int i = 0; i < ringSize; i++) {
+			ring[i] = new Item();
+		}
+		head = 0;
+		tail = 0;
+		closed = false;
+
+		String threadName = "async-boundary";
+		if (stageList != null && stageList.getConnector() != null
+				&& stageList.getConnector().getJobName() != null) {
+			threadName = stageList.getConnector().getJobName() + "-" + threadName;
+		}
+		consumer = new Consumer();
+		consumer.setName(threadName);
+		consumer.setDaemon(true);
+		consumer.start();
+	}
+
+	@Override
+	public synchronized void processItem(Item item) throws PipelineException {
+		if (nextStage == null) {
+			return;
+		}
+
+		// wait for a free slot. Only this thread advances head, so the slot
+		// can be filled outside the lock
+		synchronized (lock) {
+			long deadline = fullTimeout > 0 ? System.currentTimeMillis() + fullTimeout : 0;
+			while (head - tail == ring.length) {
+				long wait = 0;
+				if (deadline > 0) {
+					wait = deadline - System.currentTimeMillis();
+					if (wait <= 0) {
+						throw new PipelineException("Async boundary is full, item dropped: "
+								+ item.getItemId());
+					}
+				}
+				waitOnLock(wait);
+			}
+		}
+
+		Item slot = ring[(int) (head % ring.length)];
+		item.copyTo(slot);
+		if (bufferBinary) {
+			bufferDocBinary(slot);
+		}
+
+		synchronized (lock) {
+			head++;
+			lock.notifyAll();
+		}
+	}
+
+	/**
+	 * Put each item in the ring. The consumer thread passes whatever
+	 * is waiting in the ring to the next stage as a batch.
+	 */
+	@Override
+	public void processBatch(List<Item> items) throws PipelineException {
+		for (Item item: items) {
+			processItem(item);
+		}
+	}
+
+	/**
+	 * Replace the shared DocBinary on the copy with one that has its
+	 * content in memory.
+	 */
+	private void bufferDocBinary(Item slot) throws PipelineException {
+		DocBinary docBinary = slot.getDocBinary();
+		if (docBinary == null || docBinary.getInputStream() == null) {
+			return;
+		}
+		try {
+			slot.setDocBinary(docBinary.getBufferedCopy());
+		} catch (IOException e) {
+			slot.clear();
+			throw new PipelineException(e);
+		}
+	}
+
+	/**
+	 * Wait until the consumer thread has processed every item in the ring.
+	 */
+	@Override
+	public void flush() throws PipelineException {
+		if (ring == null) {
+			return;
+		}
+		synchronized (lock) {
+			while (tail < head) {
+				waitOnLock(0);
+			}
+		}
+	}
+
+	@Override
+	public void close() throws PipelineException {
+		if (consumer == null) {
+			return;
+		}
+		flush();
+		synchronized (lock) {
+			closed = true;
+			lock.notifyAll();
+		}
+		try {
+			consumer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new PipelineException(e);
+		}
+		consumer = null;
+		ring = null;
+	}
+
+	private void waitOnLock(long millis) throws PipelineException {
+		try {
+			lock.wait(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new PipelineException(e);
+		}
+	}
+
+	private static String getItemIds(List<Item> items) {
+		FastStringBuffer buf = new FastStringBuffer();
+		for (Item item: items) {
+			if (buf.size() > 0) {
+				buf.append(", ");
+			}
+			buf.append(String.valueOf(item.getItemId()));
+		}
+		return buf.toString();
+	}
+
+	/**
+	 * Return the number of items waiting in the ring, including
+	 * the one currently being processed.
+	 * @return the number of items
+	 */
+	public int getQueuedCount() {
+		synchronized (lock) {
+			return (int) (head - tail);
+		}
+	}
+
+	@Override
+	public String getDescription() {
+		return "Runs the rest of the pipeline on a separate thread, so the connector "
+				+ "can read the next item while the current one is being processed.";
+	}
+
+	@Override
+	public String getDisplayName() {
+		return "Async Boundary";
+	}
+
+	@Override
+	public String getConfigPage() {
+		return "stage_async_boundary.jsp";
+	}
+
+	/**
+	 * Takes items off the ring and pushes them into the next stage.
+	 */
+	class Consumer extends Thread {
+		private ArrayList<Item> batch = new ArrayList();
+
+		public void run() {
+			while (true) {
+				long available;
+				synchronized (lock) {
+					while (tail == head && !closed) {
+						try {
+							lock.wait();
+						} catch (InterruptedException e) {
+							return;
+						}
+					}
+					if (tail == head) {
+						return;
+					}
+					available = head - tail;
+				}
+
+				// take everything that is waiting as one batch. The slots stay
+				// occupied until the items are finished, so flush() knows when
+				// everything downstream is done
+				batch.clear();
+				for (long seq = tail; seq < tail + available; seq++) {
+					batch.add(ring[(int) (seq % ring.length)]);
+				}
+
+				try {
+					if (available == 1) {
+						nextStage.processItem(batch.get(0));
+					} else {
+						nextStage.processBatch(batch);
+					}
+				} catch (Throwable t) {
+					// don't die, just log it. A failed batch can take any
+					// number of items with it, so name them all
+					if (available == 1) {
+						error("Error processing item " + batch.get(0).getItemId(), t);
+					} else {
+						error("Error processing batch of " + available + " items: "
+								+ getItemIds(batch), t);
+					}
+				} finally {
+					for (Item item: batch) {
+						item.clear();
+					}
+					synchronized (lock) {
+						tail += available;
+						lock.notifyAll();
+					}
+				}
+			}
+		}
+	}
+}
@@ -2,6 +2,7 @@ package org.openpipeline.pipeline.stage;
 
 import org.openpipeline.pipeline.item.Item;
 import org.openpipeline.pipeline.item.Node;
+import org.openpipeline.pipeline.item.NodeNames;
 import org.openpipeline.pipeline.item.NodeVisitor;
 import org.openpipeline.scheduler.PipelineException;
 
@@ -11,6 +12,7 @@ import org.openpipeline.scheduler.PipelineException;
 public class AttributeRenamer extends Stage implements NodeVisitor {
 
 	private String attributeToRename;
+	private int attributeToRenameId;
 	private String newAttributeName;
 
 	@Override
@@ -21,7 +23,7 @@ public class AttributeRenamer extends Stage implements NodeVisitor {
 
 	@Override
 	public void processNode(Node node) throws PipelineException {
-		if (node.getName().equals(attributeToRename)) {
+		if (attributeToRenameId != NodeNames.NO_ID && node.getNameId() == attributeToRenameId) {
 			node.setName(newAttributeName);
 		}
 	}
@@ -30,6 +32,12 @@ public class AttributeRenamer extends Stage implements NodeVisitor {
 	public void initialize() {
 		attributeToRename = params.getProperty("attribute-to-rename");
 		newAttributeName = params.getProperty("new-attribute-name");
+		attributeToRenameId = NodeNames.intern(attributeToRename);
+	}
+
+	@Override
+	public boolean isFusableVisitor() {
+		return true;
 	}
 
 	@Override
@@ -17,6 +17,7 @@ package org.openpipeline.pipeline.stage;
 
 import org.openpipeline.pipeline.item.Item;
 import org.openpipeline.pipeline.item.Node;
+import org.openpipeline.pipeline.item.NodeNames;
 import org.openpipeline.pipeline.item.NodeVisitor;
 import org.openpipeline.pipeline.item.TextValue;
 import org.openpipeline.scheduler.PipelineException;
@@ -27,6 +28,7 @@ import org.openpipeline.scheduler.PipelineException;
 public class AttributeSplitter extends Stage implements NodeVisitor {
 
 	private String attributeToSplit;
+	private int attributeToSplitId;
 	private String attributeToAdd;
 	private String splitExpression;
 	
@@ -35,6 +37,7 @@ public class AttributeSplitter extends Stage implements NodeVisitor {
 		attributeToSplit = params.getProperty("attribute-to-split");
 		attributeToAdd = params.getProperty("attribute-to-add");
 		splitExpression = params.getProperty("split-expression");
+		attributeToSplitId = NodeNames.intern(attributeToSplit);
 	}
 	
 
@@ -46,7 +49,7 @@ public class AttributeSplitter extends Stage implements NodeVisitor {
 
 	@Override
 	public void processNode(Node node) throws PipelineException {
-		if (node.getName().equals(attributeToSplit)) {
+		if (attributeToSplitId != NodeNames.NO_ID && node.getNameId() == attributeToSplitId) {
 			
 			TextValue val = node.getValue();
 			if (val != null) {
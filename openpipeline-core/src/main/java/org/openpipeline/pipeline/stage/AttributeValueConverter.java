@@ -6,6 +6,7 @@ import java.util.Map;
 
 import org.openpipeline.pipeline.item.Item;
 import org.openpipeline.pipeline.item.Node;
+import org.openpipeline.pipeline.item.NodeNames;
 import org.openpipeline.pipeline.item.NodeVisitor;
 import org.openpipeline.scheduler.PipelineException;
 
@@ -15,6 +16,7 @@ import org.openpipeline.scheduler.PipelineException;
 public class AttributeValueConverter extends Stage implements NodeVisitor {
 
 	private Map<String, Map<String, String>> attributeToModify;
+	private Map<String, String>[] patternsByNameId; // indexed by NodeNames id
 
 	@Override
 	public void processItem(Item item) throws PipelineException {
@@ -25,9 +27,10 @@ public class AttributeValueConverter extends Stage implements NodeVisitor {
 	@Override
 	public void processNode(Node node) throws PipelineException {
 
-		if (attributeToModify.containsKey(node.getName())) {
+		int nameId = node.getNameId();
+		if (nameId >= 0 && nameId < patternsByNameId.length && patternsByNameId[nameId] != null) {
 
-			Map<String, String> tmp = attributeToModify.get(node.getName());
+			Map<String, String> tmp = patternsByNameId[nameId];
 			String value = node.getValue().toString();
 
 			for (String pattern : tmp.keySet()) {
@@ -68,6 +71,20 @@ public class AttributeValueConverter extends Stage implements NodeVisitor {
 
 			attributeToModify.put(parts[0], tmp);
 		}
+
+		int maxId = -1;
+		for (String name: attributeToModify.keySet()) {
+			maxId = Math.max(maxId, NodeNames.intern(name));
+		}
+		patternsByNameId = new Map[maxId + 1];
+		for (Map.Entry<String, Map<String, String>> entry: attributeToModify.entrySet()) {
+			patternsByNameId[NodeNames.intern(entry.getKey())] = entry.getValue();
+		}
+	}
+
+	@Override
+	public boolean isFusableVisitor() {
+		return true;
 	}
 
 	@Override
@@ -15,19 +15,20 @@
  ******************************************************************************/
 package org.openpipeline.pipeline.stage;
 
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileOutputStream;
-import java.io.OutputStreamWriter;
-import java.io.Writer;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
 
 import org.openpipeline.pipeline.item.DocBinary;
 import org.openpipeline.pipeline.item.Item;
+import org.openpipeline.pipeline.item.ItemXMLWriter;
 import org.openpipeline.pipeline.item.StandardAttributeNames;
 import org.openpipeline.scheduler.PipelineException;
 import org.openpipeline.util.ByteArray;
-import org.openpipeline.util.FastStringBuffer;
 import org.openpipeline.util.FileUtil;
 
 /**
@@ -41,23 +42,74 @@ public class DiskWriter extends Stage {
 	private String outputDir;
 	private boolean includeAnnotations;
 	private boolean includeBinary;
+	private boolean combineBatches;
 
-	private FastStringBuffer xmlBuf = new FastStringBuffer();
+	private ItemXMLWriter xmlWriter = new ItemXMLWriter();
 
 	@Override
 	public void processItem(Item item) throws PipelineException {
 
+		try {
+			File file = writeBinary(item);
+			file = getXMLFile(item, file);
+
+			clearFile(file);
+			writeXML(file, Collections.singletonList(item));
+
+			super.pushItemDownPipeline(item);
+
+		} catch (Throwable e) {
+			throw new PipelineException(e);
+		}
+	}
+
+	/**
+	 * If "combine-batches" is set, write all the items in the batch to a single
+	 * multi-item XML file, named after the first item. Binaries are still
+	 * written to separate files.
+	 */
+	@Override
+	public void processBatch(List<Item> items) throws PipelineException {
+		if (!combineBatches || items.isEmpty()) {
+			super.processBatch(items);
+			return;
+		}
+
 		try {
 			File file = null;
+			for (Item item: items) {
+				File binFile = writeBinary(item);
+				if (file == null) {
+					file = getXMLFile(item, binFile);
+				}
+			}
+
+			clearFile(file);
+			writeXML(file, items);
+
+		} catch (Throwable e) {
+			throw new PipelineException(e);
+		}
+
+		super.pushBatchDownPipeline(items);
+	}
 
-			// write the binary
-			if (includeBinary) {
-				DocBinary docBinary = item.getDocBinary();
-				if (docBinary != null) {
-					String name = docBinary.getName();
-					if (name != null) {
-						file = new File(outputDir, FileUtil.fixFilename(name));
-						clearFile(file);
+	/**
+	 * Write the binary, if any, to disk.
+	 * @return the file written, or null if there was no binary
+	 */
+	private File writeBinary(Item item) throws IOException {
+		File file = null;
+		if (includeBinary) {
+			DocBinary docBinary = item.getDocBinary();
+			if (docBinary != null) {
+				String name = docBinary.getName();
+				if (name != null) {
+					file = new File(outputDir, FileUtil.fixFilename(name));
+					clearFile(file);
+					if (docBinary.getFile() != null) {
+						transferFile(docBinary, file);
+					} else {
 						try (ByteArray buf = DocBinary.getBinary(docBinary
 								.getInputStream())) {
 							buf.setPosition(0);
@@ -66,46 +118,73 @@ public class DiskWriter extends Stage {
 					}
 				}
 			}
+		}
+		return file;
+	}
 
-			// if a filename was created above, use it with an .xml extension,
-			// else create one. Start with the url, then the item_id, then
-			// generate a random one. The url preserves the directory structure
-			// of the
-			// files, if any
-
-			if (file == null) {
-				String url = item.getRootNode().getChildValue(
-						StandardAttributeNames.URL);
-				String itemId = item.getItemId();
-
-				String filename = (url == null ? "" : url)
-						+ (itemId == null ? "" : itemId);
-				if (filename.length() == 0) {
-					filename = UUID.randomUUID().toString();
+	/**
+	 * Copy a binary that is backed by a local file channel to channel. The
+	 * operating system can do the copy without moving the bytes through the heap.
+	 */
+	private void transferFile(DocBinary docBinary, File file) throws IOException {
+		FileChannel in = docBinary.getFileChannel();
+		try {
+			FileOutputStream out = new FileOutputStream(file);
+			try {
+				FileChannel outChannel = out.getChannel();
+				long size = in.size();
+				long pos = 0;
+				while (pos < size) {
+					pos += in.transferTo(pos, size - pos, outChannel);
 				}
-
-				file = new File(outputDir, FileUtil.fixFilename(filename)
-						+ ".xml");
-			} else {
-				file = new File(file.toString() + ".xml");
+			} finally {
+				out.close();
 			}
+		} finally {
+			in.close();
+		}
+	}
 
-			clearFile(file);
-
-			xmlBuf.clear();
-			xmlBuf.append("<?xml version=\"1.0\" encoding=\"utf-8\"?>");
-			item.appendXMLtoBuffer(xmlBuf, includeAnnotations);
+	/**
+	 * If a filename was created for the binary, use it with an .xml extension,
+	 * else create one. Start with the url, then the item_id, then generate a
+	 * random one. The url preserves the directory structure of the files, if
+	 * any
+	 */
+	private File getXMLFile(Item item, File binaryFile) {
+		if (binaryFile != null) {
+			return new File(binaryFile.toString() + ".xml");
+		}
 
-			FileOutputStream fos = new FileOutputStream(file);
-			Writer writer = new BufferedWriter(new OutputStreamWriter(fos,
-					"UTF-8"));
-			writer.write(xmlBuf.getArray(), 0, xmlBuf.size());
-			writer.close();
+		String url = item.getRootNode().getChildValue(
+				StandardAttributeNames.URL);
+		String itemId = item.getItemId();
+		String filename = (url == null ? "" : url)
+				+ (itemId == null ? "" : itemId);
+		if (filename.length() == 0) {
+			filename = UUID.randomUUID().toString();
+		}
 
-			super.pushItemDownPipeline(item);
+		return new File(outputDir, FileUtil.fixFilename(filename) + ".xml");
+	}
 
-		} catch (Throwable e) {
-			throw new PipelineException(e);
+	/**
+	 * Stream the items to the file as a single XML document.
+	 */
+	private void writeXML(File file, List<Item> items) throws IOException {
+		FileOutputStream fos = new FileOutputStream(file);
+		try {
+			xmlWriter.setOutputStream(fos);
+			xmlWriter.setIncludeAnnotations(includeAnnotations);
+			xmlWriter.writeDeclaration();
+			if (items.size() == 1) {
+				xmlWriter.write(items.get(0));
+			} else {
+				xmlWriter.write(items);
+			}
+			xmlWriter.flush();
+		} finally {
+			fos.close();
 		}
 	}
 
@@ -126,6 +205,7 @@ public class DiskWriter extends Stage {
 		includeAnnotations = params.getBooleanProperty("include-annotations",
 				false);
 		includeBinary = params.getBooleanProperty("include-binary", true);
+		combineBatches = params.getBooleanProperty("combine-batches", false);
 	}
 
 	@Override
@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright 2010 Dieselpoint, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.openpipeline.pipeline.stage;
+
+import org.openpipeline.pipeline.item.Item;
+import org.openpipeline.pipeline.item.Node;
+import org.openpipeline.pipeline.item.NodeVisitor;
+import org.openpipeline.scheduler.PipelineException;
+
+/**
+ * Runs a series of adjacent visitor stages in one pass over the item.
+ * Each of those stages would otherwise walk the whole tree in its own
+ * processItem(). Here the tree is walked once, and each node is passed to
+ * the processNode() method of each stage in turn, in pipeline order.
+ * <p>
+ * StageList creates one of these for each run of two or more stages that
+ * return true from {@link Stage#isFusableVisitor()}. The stages become
+ * child stages of this one, so StageList still initializes, flushes, and
+ * closes them.
+ */
+class FusedVisitorStage extends Stage implements NodeVisitor {
+
+	private NodeVisitor[] visitors = new NodeVisitor[0];
+
+	@Override
+	public boolean childStagesAccepted() {
+		return true;
+	}
+
+	@Override
+	public void addChildStage(Stage stage) {
+		super.addChildStage(stage);
+		visitors = new NodeVisitor[childStages.size()];
+		childStages.toArray(visitors);
+	}
+
+	@Override
+	public void processItem(Item item) throws PipelineException {
+		item.visitNodes(this);
+		super.pushItemDownPipeline(item);
+	}
+
+	public void processNode(Node node) throws PipelineException {
+		for (int i = 0; i < visitors.length; i++) {
+			visitors[i].processNode(node);
+		}
+	}
+
+	@Override
+	public String getDisplayName() {
+		StringBuilder buf = new StringBuilder();
+		for (Stage stage: getChildStages()) {
+			if (buf.length() > 0) {
+				buf.append(" + ");
+			}
+			buf.append(stage.getDisplayName());
+		}
+		return buf.toString();
+	}
+
+	@Override
+	public String getDescription() {
+		return "Runs several visitor stages in a single pass over the item.";
+	}
+}
@@ -0,0 +1,213 @@
+/*******************************************************************************
+ * Copyright 2010 Dieselpoint, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.openpipeline.pipeline.stage;
+
+import org.openpipeline.scheduler.PipelineException;
+
+/**
+ * Server-wide admission control for items entering a pipeline. Every
+ * StageList takes the estimated size of an item, see
+ * {@link org.openpipeline.pipeline.item.Item#estimateMemory()}, from a
+ * shared limit before it pushes the item down the pipeline, and gives it
+ * back when the pipeline returns. When the items in flight across all jobs
+ * would go over the limit, the connector thread waits until some finish.
+ * A connector therefore slows down under load instead of running the
+ * server out of memory.
+ * <p>
+ * An item is always admitted if nothing else is in flight, so a single item
+ * larger than the limit does not block forever. An item pushed into a
+ * pipeline from a thread that already has one in flight is not counted again.
+ * Items that wait in a batch stay counted until the batch is processed.
+ * <p>
+ * The server sets the limit from the "item-memory-limit" property in the
+ * server config file, in bytes. The default is half the maximum heap.
+ * Set it to 0 to turn admission control off.
+ */
+public class ItemAdmission {
+
+	private static final Object lock = new Object();
+	private static final ThreadLocal<int[]> depth = new ThreadLocal<int[]>() {
+		@Override
+		protected int[] initialValue() {
+			return new int[1];
+		}
+	};
+
+	private static volatile long maxBytes = Runtime.getRuntime().maxMemory() / 2;
+
+	// guarded by lock
+	private static long inFlightBytes;
+	private static long peakBytes;
+	private static long waitCount;
+	private static long waitNanos;
+
+	private ItemAdmission() {
+	}
+
+	/**
+	 * Wait until there is room for the specified number of bytes, and
+	 * then count them as in flight. Every call must be matched by a call
+	 * to release() with the value returned.
+	 * @param bytes the estimated size of the item or items
+	 * @return the number of bytes admitted, to pass to release()
+	 * @throws PipelineException if the thread is interrupted while waiting
+	 */
+	public static long admit(long bytes) throws PipelineException {
+		return admit(bytes, true);
+	}
+
+	/**
+	 * Like admit(), but does not wait. If there is no room, nothing is
+	 * counted, and the call must not be matched by a call to release().
+	 * @param bytes the estimated size of the item or items
+	 * @return the number of bytes admitted, or -1 if there is no room
+	 */
+	public static long tryAdmit(long bytes) {
+		try {
+			return admit(bytes, false);
+		} catch (PipelineException e) {
+			// can't happen, it doesn't wait
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static long admit(long bytes, boolean wait) throws PipelineException {
+		int[] d = depth.get();
+		if (d[0]++ > 0 || maxBytes <= 0) {
+			// nested call, or turned off
+			return 0;
+		}
+
+		synchronized (lock) {
+			if (inFlightBytes > 0 && inFlightBytes + bytes > maxBytes) {
+				if (!wait) {
+					d[0]--;
+					return -1;
+				}
+				waitCount++;
+				long start = System.nanoTime();
+				try {
+					while (inFlightBytes > 0 && inFlightBytes + bytes > maxBytes) {
+						lock.wait();
+					}
+				} catch (InterruptedException e) {
+					d[0]--;
+					Thread.currentThread().interrupt();
+					throw new PipelineException(e);
+				} finally {
+					waitNanos += System.nanoTime() - start;
+				}
+			}
+			inFlightBytes += bytes;
+			if (inFlightBytes > peakBytes) {
+				peakBytes = inFlightBytes;
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * Give back the bytes taken by admit().
+	 * @param bytes the value returned by admit()
+	 */
+	public static void release(long bytes) {
+		depth.get()[0]--;
+		releaseHeld(bytes);
+	}
+
+	/**
+	 * End the call started by admit() without giving the bytes back, because
+	 * the item stays in memory after the call returns, for example, while it
+	 * waits in a batch. Give them back later with resume() and release().
+	 */
+	public static void hold() {
+		depth.get()[0]--;
+	}
+
+	/**
+	 * Start processing items whose bytes were kept by hold(), without
+	 * counting them again. Items pushed into a pipeline from this thread
+	 * are then not counted until the matching release().
+	 */
+	public static void resume() {
+		depth.get()[0]++;
+	}
+
+	private static void releaseHeld(long bytes) {
+		if (bytes == 0) {
+			return;
+		}
+		synchronized (lock) {
+			inFlightBytes -= bytes;
+			lock.notifyAll();
+		}
+	}
+
+	/**
+	 * Return the limit on the bytes in flight, or 0 if admission control is off.
+	 */
+	public static long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * Set the limit on the bytes in flight across all jobs. Set it
+	 * to 0 to turn admission control off.
+	 */
+	public static void setMaxBytes(long bytes) {
+		maxBytes = bytes;
+		synchronized (lock) {
+			lock.notifyAll();
+		}
+	}
+
+	/**
+	 * Return the estimated size of the items currently in flight.
+	 */
+	public static long getInFlightBytes() {
+		synchronized (lock) {
+			return inFlightBytes;
+		}
+	}
+
+	/**
+	 * Return the highest value of getInFlightBytes() since the server started.
+	 */
+	public static long getPeakBytes() {
+		synchronized (lock) {
+			return peakBytes;
+		}
+	}
+
+	/**
+	 * Return the number of times a connector had to wait for room.
+	 */
+	public static long getWaitCount() {
+		synchronized (lock) {
+			return waitCount;
+		}
+	}
+
+	/**
+	 * Return the total time connectors have spent waiting for room, in
+	 * milliseconds.
+	 */
+	public static long getWaitMillis() {
+		synchronized (lock) {
+			return waitNanos / 1000000;
+		}
+	}
+}
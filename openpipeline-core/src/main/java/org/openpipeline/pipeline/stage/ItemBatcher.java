@@ -0,0 +1,161 @@
+/*******************************************************************************
+ * Copyright 2010 Dieselpoint, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.openpipeline.pipeline.stage;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+import org.openpipeline.pipeline.item.DocBinary;
+import org.openpipeline.pipeline.item.Item;
+import org.openpipeline.scheduler.PipelineException;
+
+/**
+ * Collects the items a connector submits to a StageList and passes them
+ * to the first stage in batches. A batch goes down the pipeline when it
+ * reaches the batch size, or when an item is added after the oldest item
+ * in it has waited longer than the timeout, whichever comes first. All
+ * batches are processed on the thread that adds the items or calls flush();
+ * there is no background thread. A worker in a PipelinePool that has had no
+ * work for the timeout flushes its own batch, so there the timeout holds even
+ * when the connector goes quiet. A connector that submits to a StageList
+ * directly must call StageList.flushBatch() when it stops submitting for a
+ * while, as the ItemReceiverConnector does at the end of each request.
+ * <p>
+ * Connectors reuse their Item objects, so each item is copied into a
+ * preallocated slot. An item whose DocBinary is a stream that does not come
+ * from a local file is not held, because the connector may close the stream
+ * or move on to the next entry in it, and reading it into memory would
+ * defeat streaming. The batch so far is processed, and then that item is
+ * processed by itself.
+ * <p>
+ * The items in a batch stay counted against the server's admission limit
+ * until the batch is processed. See {@link ItemAdmission}.
+ */
+class ItemBatcher {
+
+	private Stage head;
+	private Item[] slots;
+	private ArrayList<Item> batch;
+	private long timeout;
+	private long firstItemTime;
+	// bytes admitted for the items in the batch
+	private long heldBytes;
+
+	/**
+	 * Constructor.
+	 * @param head the first stage in the pipeline
+	 * @param batchSize the maximum number of items in a batch
+	 * @param timeout the maximum number of milliseconds an item waits in a
+	 * partial batch before the next add() processes it, or 0 to wait until
+	 * the batch is full or flushed
+	 */
+	ItemBatcher(Stage head, int batchSize, long timeout) {
+		this.head = head;
+		this.timeout = timeout;
+		slots = new Item[batchSize];
+		for (int i = 0; i < batchSize; i++) {
+			slots[i] = new Item();
+		}
+		batch = new ArrayList(batchSize);
+	}
+
+	/**
+	 * Copy the item into the current batch, and process the batch
+	 * if it is full or has waited long enough.
+	 * @param item the item
+	 * @param bytes the estimated size of the item, to count against the
+	 * admission limit
+	 */
+	synchronized void add(Item item, long bytes) throws PipelineException {
+		DocBinary docBinary = item.getDocBinary();
+		if (docBinary != null && docBinary.getInputStream() != null
+				&& docBinary.getFile() == null) {
+			flush();
+			long admitted = ItemAdmission.admit(bytes);
+			try {
+				head.processItem(item);
+			} finally {
+				ItemAdmission.release(admitted);
+			}
+			return;
+		}
+
+		long admitted = ItemAdmission.tryAdmit(bytes);
+		if (admitted < 0) {
+			// make room by processing this batch, rather than wait for
+			// room while holding it
+			flush();
+			admitted = ItemAdmission.admit(bytes);
+		}
+		ItemAdmission.hold();
+		heldBytes += admitted;
+
+		Item slot = slots[batch.size()];
+		item.copyTo(slot);
+		docBinary = slot.getDocBinary();
+		if (docBinary != null && docBinary.getInputStream() != null) {
+			try {
+				// opens a new stream on the file
+				slot.setDocBinary(docBinary.getBufferedCopy());
+			} catch (IOException e) {
+				slot.clear();
+				throw new PipelineException(e);
+			}
+		}
+
+		if (batch.isEmpty()) {
+			firstItemTime = System.currentTimeMillis();
+		}
+		batch.add(slot);
+
+		if (batch.size() == slots.length || isExpired()) {
+			flush();
+		}
+	}
+
+	/**
+	 * Pass the current batch, if any, to the first stage.
+	 */
+	synchronized void flush() throws PipelineException {
+		if (batch.isEmpty()) {
+			releaseHeld();
+			return;
+		}
+		ItemAdmission.resume();
+		try {
+			head.processBatch(batch);
+		} finally {
+			for (Item item: batch) {
+				item.clear();
+			}
+			batch.clear();
+			ItemAdmission.release(heldBytes);
+			heldBytes = 0;
+		}
+	}
+
+	private void releaseHeld() {
+		if (heldBytes != 0) {
+			ItemAdmission.resume();
+			ItemAdmission.release(heldBytes);
+			heldBytes = 0;
+		}
+	}
+
+	private boolean isExpired() {
+		return timeout > 0 && System.currentTimeMillis() - firstItemTime >= timeout;
+	}
+}
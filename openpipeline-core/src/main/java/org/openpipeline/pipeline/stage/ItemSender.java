@@ -29,35 +29,98 @@ import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.AbstractHttpEntity;
 import org.apache.http.impl.client.DefaultHttpClient;
 import org.openpipeline.pipeline.item.Item;
+import org.openpipeline.pipeline.item.ItemCodec;
+import org.openpipeline.pipeline.item.ItemXMLWriter;
 import org.openpipeline.scheduler.PipelineException;
 import org.openpipeline.util.ByteArray;
-import org.openpipeline.util.FastStringBuffer;
 
 /**
  * Use this class to send items to one or more remote machines for further processing.
  * To use this stage, ensure that 
  * {@link org.openpipeline.pipeline.connector.ItemReceiverConnector} instance(s) are 
  * running on the remote machines.
+ * <p>
+ * Items are sent as XML unless "wire-format" is set to "binary", in which case
+ * they are sent in the {@link ItemCodec} format, which is much cheaper to
+ * encode and decode. The receiver picks the format from the content type.
+ * In binary format, set "send-binary" to true to include the content of 
+ * each item's DocBinary.
  */
 public class ItemSender extends Stage {
 	
-	private FastStringBuffer charBuf = new FastStringBuffer();
 	private ByteArray byteBuf = new ByteArray();
+	private ItemXMLWriter xmlWriter;
 	private SizedByteArrayEntity byteEntity = new SizedByteArrayEntity();
 	private String [] addresses;
 	private DefaultHttpClient client;
+	private ItemCodec codec; // null if sending xml
 	
 
 
 	@Override
 	public void processItem(Item item) throws PipelineException {
 
-		charBuf.clear();
-		item.appendXMLtoBuffer(charBuf, true);
+		byteBuf.clear();
+		if (codec != null) {
+			codec.writeHeader(byteBuf, 1);
+			encode(item);
+		} else {
+			try {
+				xmlWriter.write(item);
+				xmlWriter.flush();
+			} catch (IOException e) {
+				throw new PipelineException(e);
+			}
+		}
 		
+		sendBuffer("itemId " + item.getItemId());
+		
+		super.pushItemDownPipeline(item);
+	}
+
+	/**
+	 * Send all the items in the batch to each remote machine in a single
+	 * request. The ItemReceiverServlet accepts a multi-item document.
+	 */
+	@Override
+	public void processBatch(List<Item> items) throws PipelineException {
+		if (items.isEmpty()) {
+			return;
+		}
+
 		byteBuf.clear();
-		byteBuf.appendModifiedUTF(charBuf.getArray(), 0, charBuf.size(), false);
+		if (codec != null) {
+			codec.writeHeader(byteBuf, items.size());
+			for (Item item: items) {
+				encode(item);
+			}
+		} else {
+			try {
+				xmlWriter.write(items);
+				xmlWriter.flush();
+			} catch (IOException e) {
+				throw new PipelineException(e);
+			}
+		}
+		
+		sendBuffer(items.size() + " items starting with itemId " + items.get(0).getItemId());
 		
+		super.pushBatchDownPipeline(items);
+	}
+
+	private void encode(Item item) throws PipelineException {
+		try {
+			codec.write(item, byteBuf);
+		} catch (IOException e) {
+			throw new PipelineException(e);
+		}
+	}
+
+	/**
+	 * Send the contents of byteBuf to all the remote machines in the list.
+	 * @param description describes the contents for error messages
+	 */
+	private void sendBuffer(String description) {
 		byteEntity.setBuf(byteBuf);
 		
 		// send the item to all the remote machines in the list
@@ -68,7 +131,7 @@ public class ItemSender extends Stage {
 			// typically http://myhost:8080/rest
 			
 			try {
-				sendItem(item, addr);
+				send(description, addr);
 			} catch (Exception e) {
 				// a checked exception should be handled as a failure for
 				// this address only. An unchecked exception should stop
@@ -76,16 +139,12 @@ public class ItemSender extends Stage {
 				super.error("Error sending item from ItemSender to " + addr, e);
 			}
 		}
-		
-		super.pushItemDownPipeline(item);
 	}
-
-	
 	
 	/**
-	 * Send the item to the address.
+	 * Send the contents of the entity to the address.
 	 */
-	private void sendItem(Item item, String addr) throws ClientProtocolException, IOException {
+	private void send(String description, String addr) throws ClientProtocolException, IOException {
 		HttpPost httpPost = new HttpPost(addr);
 		httpPost.setEntity(byteEntity);
 		
@@ -95,7 +154,7 @@ public class ItemSender extends Stage {
 		StatusLine status = response.getStatusLine();
 		if (status.getStatusCode() != 200) {
 			String content = getContent(resEnt);
-			super.error("Failed to send itemId " + item.getItemId() + 
+			super.error("Failed to send " + description + 
 					" to " + addr + " http code=" + status.getStatusCode() + 
 					" " + status.getReasonPhrase() +
 					" message=" + content);
@@ -126,7 +185,27 @@ public class ItemSender extends Stage {
 		client = new DefaultHttpClient();
 	    client.getParams().setParameter("http.useragent", "OpenPipeline ItemSender");
 	    
-        byteEntity.setContentType("binary/octet-stream");
+		if ("binary".equals(params.getProperty("wire-format"))) {
+			codec = new ItemCodec();
+			codec.setIncludeDocBinary(params.getBooleanProperty("send-binary", false));
+			byteEntity.setContentType(ItemCodec.CONTENT_TYPE);
+		} else {
+			codec = null;
+			byteEntity.setContentType("binary/octet-stream");
+
+			// the xml is encoded straight into byteBuf
+			xmlWriter = new ItemXMLWriter();
+			xmlWriter.setIncludeAnnotations(true);
+			xmlWriter.setOutputStream(new OutputStream() {
+				public void write(int b) {
+					byteBuf.appendByte((byte) b);
+				}
+
+				public void write(byte[] b, int off, int len) {
+					byteBuf.append(b, off, len);
+				}
+			});
+		}
 	}
 
 	@Override
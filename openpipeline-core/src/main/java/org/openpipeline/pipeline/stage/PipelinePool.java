@@ -0,0 +1,329 @@
+/*******************************************************************************
+ * Copyright 2010 Dieselpoint, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.openpipeline.pipeline.stage;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.openpipeline.pipeline.connector.Connector;
+import org.openpipeline.pipeline.item.Item;
+import org.openpipeline.scheduler.PipelineException;
+import org.openpipeline.util.XMLConfig;
+
+/**
+ * A pool of identical pipelines. Each pipeline is a separate StageList created
+ * from the same &lt;stages&gt; config, and each one runs on its own thread.
+ * A connector hands items to the pool through a bounded work queue, and
+ * whichever pipeline is free picks up the next item.
+ * <p>
+ * Because the item is processed on another thread, a connector cannot reuse
+ * the same Item object for every record the way it does with a plain StageList.
+ * Instead, it must call {@link #getItem()} to get an empty item, populate it, and
+ * pass it to {@link #processItem(Item)}. The pool clears the item and recycles
+ * it once the pipeline is done with it. The total number of items is fixed, so
+ * getItem() blocks when all of them are in use. That's what keeps a fast
+ * connector from running too far ahead of the pipelines.
+ * <p>
+ * Stages in a pool must not depend on seeing every item. Items are spread
+ * across the replicas, and the order in which they are processed is not
+ * guaranteed.
+ */
+public class PipelinePool {
+
+	public static final int DEFAULT_POOL_SIZE = 1;
+	public static final int DEFAULT_QUEUE_SIZE = 100;
+
+	// marks the end of the work queue; one per worker
+	private static final Item END_OF_QUEUE = new Item();
+
+	private Connector connector;
+	private StageList[] stageLists;
+	private Worker[] workers;
+	private BlockingQueue<Item> workQueue;
+	private BlockingQueue<Item> freeItems;
+	private int queueSize = DEFAULT_QUEUE_SIZE;
+
+	// number of items handed to processItem() that are not yet finished
+	private int inFlight;
+	private final Object lock = new Object();
+
+	/**
+	 * Creates the pipelines in the pool. Each pipeline is a separate StageList
+	 * built from the same configuration.
+	 * @param jobParams config object that contains the &lt;stages&gt; section
+	 * @param poolSize the number of pipelines to create
+	 * @throws PipelineException
+	 */
+	public void createPipelines(XMLConfig jobParams, int poolSize) throws PipelineException {
+		if (poolSize < 1) {
+			throw new IllegalArgumentException("Pool size must be at least 1: " + poolSize);
+		}
+		stageLists = new StageList[poolSize];
+		for (int i = 0; i < poolSize; i++) {
+			StageList stageList = new StageList();
+			stageList.setConnector(connector);
+			stageList.createPipeline(jobParams);
+			stageLists[i] = stageList;
+		}
+	}
+
+	/**
+	 * Initialize each of the pipelines and start the worker threads.
+	 * @throws PipelineException
+	 */
+	public void initialize() throws PipelineException {
+		if (stageLists == null) {
+			throw new IllegalStateException("createPipelines() has not been called");
+		}
+
+		int poolSize = stageLists.length;
+		int itemCount = queueSize + poolSize;
+
+		workQueue = new ArrayBlockingQueue<Item>(itemCount + poolSize);
+		freeItems = new ArrayBlockingQueue<Item>(itemCount);
+		for (int i = 0; i < itemCount; i++) {
+			freeItems.add(new Item());
+		}
+
+		String threadName = "pipeline";
+		if (connector != null && connector.getJobName() != null) {
+			threadName = connector.getJobName() + "-pipeline";
+		}
+
+		workers = new Worker[poolSize];
+		for (int i = 0; i < poolSize; i++) {
+			stageLists[i].initialize();
+			workers[i] = new Worker(stageLists[i]);
+			workers[i].setName(threadName + "-" + i);
+			workers[i].setDaemon(true);
+			workers[i].start();
+		}
+	}
+
+	/**
+	 * Return an empty item from the pool. Blocks until one is available.
+	 * The item must be returned to the pool by passing it to either
+	 * processItem() or releaseItem().
+	 * @return an empty item
+	 * @throws PipelineException if the thread is interrupted while waiting
+	 */
+	public Item getItem() throws PipelineException {
+		try {
+			return freeItems.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new PipelineException(e);
+		}
+	}
+
+	/**
+	 * Return an item to the pool without processing it. Use this method
+	 * if an item was obtained from getItem(), but could not be populated.
+	 * @param item the item to return
+	 */
+	public void releaseItem(Item item) {
+		item.clear();
+		freeItems.offer(item);
+	}
+
+	/**
+	 * Put the item on the work queue. The next free pipeline will process it.
+	 * The item must have been obtained from getItem(), and the caller
+	 * must not touch it after this method returns.
+	 * @param item the item to process
+	 * @throws PipelineException if the thread is interrupted while waiting
+	 */
+	public void processItem(Item item) throws PipelineException {
+		synchronized (lock) {
+			inFlight++;
+		}
+		try {
+			workQueue.put(item);
+		} catch (InterruptedException e) {
+			finished();
+			Thread.currentThread().interrupt();
+			throw new PipelineException(e);
+		}
+	}
+
+	/**
+	 * Wait until all items on the work queue have been processed.
+	 * @throws PipelineException if the thread is interrupted while waiting
+	 */
+	public void waitUntilIdle() throws PipelineException {
+		synchronized (lock) {
+			while (inFlight > 0) {
+				try {
+					lock.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new PipelineException(e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Wait for the work queue to empty, then call flush() on each pipeline.
+	 * @throws PipelineException
+	 */
+	public void flush() throws PipelineException {
+		waitUntilIdle();
+		for (StageList stageList: stageLists) {
+			stageList.flush();
+		}
+	}
+
+	/**
+	 * Process any remaining items, flush and close each pipeline, and
+	 * stop the worker threads.
+	 * @throws PipelineException
+	 */
+	public void close() throws PipelineException {
+		if (workers != null) {
+			try {
+				flush();
+			} finally {
+				// stop the workers even if the flush failed, so they
+				// don't stay blocked on the queue
+				for (int i = 0; i < workers.length; i++) {
+					workQueue.add(END_OF_QUEUE);
+				}
+				for (Worker worker: workers) {
+					try {
+						worker.join();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						break;
+					}
+				}
+				workers = null;
+			}
+		}
+
+		if (stageLists != null) {
+			for (StageList stageList: stageLists) {
+				stageList.close();
+			}
+		}
+	}
+
+	/**
+	 * Return the number of pipelines in the pool.
+	 * @return the pool size
+	 */
+	public int getPoolSize() {
+		return stageLists == null ? 0 : stageLists.length;
+	}
+
+	/**
+	 * Return the pipelines in this pool.
+	 * @return an array of StageLists
+	 */
+	public StageList[] getStageLists() {
+		return stageLists;
+	}
+
+	/**
+	 * Set the maximum number of items that can wait on the work queue. Must be
+	 * called before initialize().
+	 * @param queueSize the number of items
+	 */
+	public void setQueueSize(int queueSize) {
+		this.queueSize = Math.max(1, queueSize);
+	}
+
+	/**
+	 * Set the parent connector for the pipelines in this pool. Must
+	 * be called before createPipelines().
+	 * @param connector a connector
+	 */
+	public void setConnector(Connector connector) {
+		this.connector = connector;
+	}
+
+	/**
+	 * Get the parent connector for the pipelines in this pool.
+	 * @return a connector
+	 */
+	public Connector getConnector() {
+		return connector;
+	}
+
+	private void finished() {
+		synchronized (lock) {
+			inFlight--;
+			if (inFlight == 0) {
+				lock.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Takes items off the work queue and pushes them through one pipeline.
+	 */
+	class Worker extends Thread {
+		private StageList stageList;
+
+		Worker(StageList stageList) {
+			this.stageList = stageList;
+		}
+
+		public void run() {
+			long batchTimeout = stageList.getBatchTimeout();
+			while (true) {
+				Item item;
+				try {
+					if (batchTimeout > 0) {
+						item = workQueue.poll(batchTimeout, TimeUnit.MILLISECONDS);
+					} else {
+						item = workQueue.take();
+					}
+				} catch (InterruptedException e) {
+					return;
+				}
+				if (item == null) {
+					// idle for the batch timeout. Don't let a partial batch
+					// wait for the next item
+					try {
+						stageList.flushBatch();
+					} catch (Throwable t) {
+						if (connector != null) {
+							connector.error("Error processing batch", t);
+						}
+					}
+					continue;
+				}
+				if (item == END_OF_QUEUE) {
+					return;
+				}
+
+				try {
+					stageList.processItem(item);
+				} catch (Throwable t) {
+					// don't die, just log it
+					if (connector != null) {
+						connector.error("Error processing item " + item.getItemId(), t);
+					}
+				} finally {
+					releaseItem(item);
+					finished();
+				}
+			}
+		}
+	}
+}
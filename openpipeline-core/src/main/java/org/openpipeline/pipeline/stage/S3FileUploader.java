@@ -1,16 +1,21 @@
 package org.openpipeline.pipeline.stage;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.openpipeline.pipeline.item.DocBinary;
 import org.openpipeline.pipeline.item.Item;
 import org.openpipeline.scheduler.PipelineException;
 
+import com.amazonaws.AmazonClientException;
 import com.amazonaws.AmazonServiceException;
 import com.amazonaws.auth.AWSCredentials;
 import com.amazonaws.auth.BasicAWSCredentials;
 import com.amazonaws.services.s3.AmazonS3Client;
 import com.amazonaws.services.s3.model.PutObjectResult;
+import com.amazonaws.services.s3.transfer.TransferManager;
+import com.amazonaws.services.s3.transfer.Upload;
 /**
  * 
  *
@@ -21,6 +26,7 @@ public class S3FileUploader extends Stage {
 	private String secretKey;
 	private String rootDirectory;
 	private AmazonS3Client s3Client;
+	private TransferManager transferManager;
 
 	@Override
 	public void initialize() {
@@ -43,13 +49,60 @@ public class S3FileUploader extends Stage {
 		}
 	}
 
+	/**
+	 * Start the uploads for all the items in the batch at once, and then wait
+	 * for them to finish. The uploads run in parallel on the TransferManager's
+	 * threads.
+	 */
+	@Override
+	public void processBatch(List<Item> items) throws PipelineException {
+		if (transferManager == null) {
+			transferManager = new TransferManager(s3Client);
+		}
+
+		List<Upload> uploads = new ArrayList();
+		List<String> names = new ArrayList();
+		for (Item item: items) {
+			DocBinary bin = item.getDocBinary();
+			if (bin != null) {
+				File file = new File(bin.getName());
+				try {
+					uploads.add(transferManager.upload(bucketName, getKey(file), file));
+					names.add(file.getName());
+				} catch (AmazonClientException e) {
+					super.error("Error uploading " + file, e);
+				}
+			}
+		}
+
+		for (int i = 0; i < uploads.size(); i++) {
+			try {
+				uploads.get(i).waitForUploadResult();
+			} catch (AmazonClientException e) {
+				super.error("Error uploading " + names.get(i), e);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new PipelineException(e);
+			}
+		}
+
+		super.pushBatchDownPipeline(items);
+	}
+
+	@Override
+	public void close() throws PipelineException {
+		if (transferManager != null) {
+			transferManager.shutdownNow();
+			transferManager = null;
+		}
+	}
+
 	private void upload(Item item) throws PipelineException {
 		DocBinary bin = item.getDocBinary();
 		if (bin != null) {
 			try {
 				File file = new File(bin.getName());
-				String key = rootDirectory + convertDirToKey(file) + file.getName();
-				PutObjectResult res = s3Client.putObject(bucketName, key, file);
+				PutObjectResult res = s3Client.putObject(bucketName, getKey(file), file);
 				System.out.println(file.getName() +"\t" + res.getETag());
 			} catch (AmazonServiceException e) {
 				throw new PipelineException(e);
@@ -57,6 +110,10 @@ public class S3FileUploader extends Stage {
 		}
 	}
 
+	private String getKey(File file) {
+		return rootDirectory + convertDirToKey(file) + file.getName();
+	}
+
 	/**
 	 * Converts file path to S3 compatible key format.
 	 * @param file
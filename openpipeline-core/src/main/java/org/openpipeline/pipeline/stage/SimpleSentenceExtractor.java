@@ -35,6 +35,11 @@ public class SimpleSentenceExtractor extends Stage implements NodeVisitor {
 	private BreakIterator sentenceIterator;
 	private CharIterator charIterator = new CharIterator();
 
+	@Override
+	public boolean isFusableVisitor() {
+		return true;
+	}
+
 	@Override
 	public String getDescription() {
 		return "Extracts sentences from an item.";
@@ -86,6 +86,11 @@ public class SimpleTokenizer extends Stage implements NodeVisitor {
 	}
 	
 
+	@Override
+	public boolean isFusableVisitor() {
+		return true;
+	}
+
 	@Override
 	public String getDescription() {
 		return "A simple tokenizer that breaks on whitespace, numbers, and punctuation ";
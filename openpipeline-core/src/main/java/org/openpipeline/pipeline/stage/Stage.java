@@ -45,6 +45,7 @@ public abstract class Stage {
 	protected XMLConfig params;
 	protected ArrayList<Stage> childStages;
 	protected StageList stageList;
+	private BatchCollector batchCollector;
 
 	/**
 	 * Configure this stage. For example, if this were an entity extraction stage,
@@ -107,6 +108,19 @@ public abstract class Stage {
 		return childStages;
 	}
 
+	/**
+	 * Returns true if this stage's processItem() does nothing but call
+	 * <code>item.visitNodes(this)</code> and then push the item down the
+	 * pipeline, and its processNode() changes only the node it is given.
+	 * StageList runs adjacent stages like this in a single pass over the item.
+	 * A stage that adds or removes nodes elsewhere in the tree must return false.
+	 * Defaults to false unless overridden.
+	 * @return true if this stage can share a tree walk with its neighbors
+	 */
+	public boolean isFusableVisitor() {
+		return false;
+	}
+
 	/**
 	 * Get the name of the .jsp page in the admin webapp that 
 	 * configures this stage.
@@ -196,6 +210,64 @@ public abstract class Stage {
 		}
 	}
 
+	/**
+	 * Process a batch of items. The default implementation passes each item to
+	 * processItem(), collects the items that processItem() pushes down the
+	 * pipeline, and then passes them to the next stage as a batch. Stages that
+	 * can do their work more efficiently on many items at once, for example,
+	 * by sending them all in one request, should override this method and call
+	 * <code>super.pushBatchDownPipeline(items)</code> at the end.
+	 * <p>
+	 * A PipelineException on one item is reported as an error, and does not
+	 * stop the rest of the batch.
+	 * @param items the items to process
+	 * @throws PipelineException
+	 */
+	public void processBatch(List<Item> items) throws PipelineException {
+		Stage next = nextStage;
+		if (next == null) {
+			for (Item item: items) {
+				processItemInBatch(item);
+			}
+			return;
+		}
+
+		if (batchCollector == null) {
+			batchCollector = new BatchCollector();
+		}
+		batchCollector.setNextStage(next);
+		nextStage = batchCollector;
+		try {
+			for (Item item: items) {
+				processItemInBatch(item);
+			}
+		} finally {
+			nextStage = next;
+		}
+		batchCollector.pushBatch();
+	}
+
+	private void processItemInBatch(Item item) {
+		try {
+			processItem(item);
+		} catch (PipelineException e) {
+			error("Error processing item " + item.getItemId(), e);
+		}
+	}
+
+	/**
+	 * Pushes a batch of items into the next stage in the pipeline. A stage
+	 * that overrides processBatch() should call
+	 * <code>super.pushBatchDownPipeline(items)</code> when it is finished.
+	 * @param items the items to be processed
+	 * @throws PipelineException
+	 */
+	public void pushBatchDownPipeline(List<Item> items) throws PipelineException {
+		if (nextStage != null && items.size() > 0) {
+			nextStage.processBatch(items);
+		}
+	}
+
 	/**
 	 * Returns the list of all the stages in the pipeline of
 	 * which this stage is a part.
@@ -265,6 +337,35 @@ public abstract class Stage {
 			}
 		}
 	}
-	
-	
+
+	/**
+	 * Stands in for the next stage during processBatch() and collects the
+	 * items that get pushed to it. Some stages push the same Item object
+	 * more than once with different content, for example, when a file
+	 * contains several items. If that happens, the items collected so far
+	 * are pushed down first, so none of them get overwritten.
+	 */
+	private static class BatchCollector extends Stage {
+		private ArrayList<Item> batch = new ArrayList();
+
+		@Override
+		public void processItem(Item item) throws PipelineException {
+			for (int i = 0; i < batch.size(); i++) {
+				if (batch.get(i) == item) {
+					pushBatch();
+					break;
+				}
+			}
+			batch.add(item);
+		}
+
+		void pushBatch() throws PipelineException {
+			try {
+				pushBatchDownPipeline(batch);
+			} finally {
+				batch.clear();
+			}
+		}
+	}
+
 }
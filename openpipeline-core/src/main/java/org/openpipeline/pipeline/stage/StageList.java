@@ -15,10 +15,12 @@
  ******************************************************************************/
 package org.openpipeline.pipeline.stage;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import org.openpipeline.pipeline.connector.Connector;
 import org.openpipeline.pipeline.item.Item;
+import org.openpipeline.pipeline.item.NodeVisitor;
 import org.openpipeline.scheduler.PipelineException;
 import org.openpipeline.util.XMLConfig;
 
@@ -32,6 +34,14 @@ public class StageList {
 	private Stage head;
 	private Connector connector;
 
+	// if batching is on, items are passed to the stages in batches
+	private int batchSize = 1;
+	private long batchTimeout;
+	private ItemBatcher batcher;
+
+	// if stats are on, there's a probe in front of each stage
+	private ArrayList<StageProbe> probes = new ArrayList();
+
 	/**
 	 * Creates and assembles a pipeline of stages using the specified
 	 * configuration.
@@ -41,11 +51,20 @@ public class StageList {
 	public void createPipeline(XMLConfig jobParams) throws PipelineException {
 
 		// see SelectStagesPage for the layout of a <stages> section.
+		// adjacent visitor stages are fused into one pass over the tree,
+		// unless the job sets "fuse-visitors" to false
 
 		head = null;
 		Stage current = null;
 
+		batchSize = jobParams.getIntProperty("batch-size", 1);
+		batchTimeout = jobParams.getLongProperty("batch-timeout", 0);
+		boolean collectStats = jobParams.getBooleanProperty("stage-stats", true);
+		boolean fuse = jobParams.getBooleanProperty("fuse-visitors", true);
+		probes.clear();
+
 		try {
+		List<Stage> pipeline = new ArrayList();
 		XMLConfig stages = jobParams.getChild("stages");
 		if (stages != null) {
 			for (XMLConfig stageConf: stages.getChildren()) { 
@@ -57,17 +76,31 @@ public class StageList {
 				Stage stage = StageFactory.getStage(className);
 				stage.setParams(stageConf);
 				stage.setStageList(this);
-
-				if (current == null) {
-					head = stage;
-					current = stage;
-				} else {
-					current.setNextStage(stage);
-					current = stage;
-				}
+				pipeline.add(stage);
 				// TODO implement child stages
+			}
+		}
+		
+		if (fuse) {
+			pipeline = fuseVisitors(pipeline);
+		}
+
+		for (Stage stage: pipeline) {
+			Stage first = stage;
+			if (collectStats) {
+				StageProbe previous = probes.isEmpty() ? null : probes.get(probes.size() - 1);
+				StageProbe probe = new StageProbe(stage, previous);
+				probe.setStageList(this);
+				probes.add(probe);
+				first = probe;
+			}
 
+			if (current == null) {
+				head = first;
+			} else {
+				current.setNextStage(first);
 			}
+			current = stage;
 		}
 		
 		} catch (Exception e) {
@@ -75,11 +108,49 @@ public class StageList {
 		}
 	}
 
+	/**
+	 * Replace each run of two or more adjacent fusable visitor stages
+	 * with a FusedVisitorStage, so the run walks the tree once per item.
+	 */
+	private List<Stage> fuseVisitors(List<Stage> pipeline) {
+		List<Stage> out = new ArrayList();
+		for (int i = 0; i < pipeline.size(); i++) {
+			Stage stage = pipeline.get(i);
+			int end = i;
+			while (end < pipeline.size() && isFusable(pipeline.get(end))) {
+				end++;
+			}
+			if (end - i < 2) {
+				out.add(stage);
+				continue;
+			}
+			FusedVisitorStage fused = new FusedVisitorStage();
+			fused.setStageList(this);
+			for (int j = i; j < end; j++) {
+				fused.addChildStage(pipeline.get(j));
+			}
+			out.add(fused);
+			i = end - 1;
+		}
+		return out;
+	}
+
+	private boolean isFusable(Stage stage) {
+		return stage.isFusableVisitor() && stage instanceof NodeVisitor;
+	}
+
 	/**
 	 * Call the initialize() method on each stage.
 	 */
 	public  void initialize() throws PipelineException {
+		long now = System.currentTimeMillis();
+		for (StageProbe probe: probes) {
+			probe.getStats().startTime = now;
+		}
 		initializeInternal(head);
+		if (head != null && batchSize > 1) {
+			batcher = new ItemBatcher(head, batchSize, batchTimeout);
+		}
 	}
 	
 	private void initializeInternal(Stage stage) throws PipelineException {
@@ -102,9 +173,32 @@ public class StageList {
 	 * @throws PipelineException 
 	 */
 	public void flush() throws PipelineException {
+		if (batcher != null) {
+			batcher.flush();
+		}
 		flushInternal(head);
 	}
 	
+	/**
+	 * Process the items waiting in a partial batch, if batching is on,
+	 * without calling flush() on the stages. A connector that calls
+	 * processItem() directly should call this when it stops submitting
+	 * for a while, so the last items don't wait for the next one.
+	 * @throws PipelineException 
+	 */
+	public void flushBatch() throws PipelineException {
+		if (batcher != null) {
+			batcher.flush();
+		}
+	}
+
+	/**
+	 * Return the "batch-timeout" in milliseconds, or 0 if batching is off.
+	 */
+	long getBatchTimeout() {
+		return batcher == null ? 0 : batchTimeout;
+	}
+	
 	public void flushInternal(Stage stage) throws PipelineException {
 		if (stage == null) {
 			return;
@@ -121,11 +215,23 @@ public class StageList {
 	}
 
 	/**
-	 * Call the close() method on each stage in sequence.
+	 * Call the close() method on each stage in sequence. If batching is
+	 * on, any partial batch is processed first.
 	 * @throws PipelineException 
 	 */
 	public void close() throws PipelineException {
+		if (batcher != null) {
+			try {
+				batcher.flush();
+			} finally {
+				batcher = null;
+			}
+		}
 		closeInternal(head);
+		long now = System.currentTimeMillis();
+		for (StageProbe probe: probes) {
+			probe.getStats().endTime = now;
+		}
 	}
 	
 	private void closeInternal(Stage stage) throws PipelineException {
@@ -145,15 +251,73 @@ public class StageList {
 
 	/**
 	 * Process an item by pushing it into the first stage in the list. 
+	 * If the job sets "batch-size" greater than 1, the item is copied
+	 * and added to a batch instead, and the batch is processed on this thread
+	 * when it is full, when an item arrives after the batch is older than
+	 * "batch-timeout" milliseconds, or on flush() or flushBatch(). See
+	 * {@link ItemBatcher}.
+	 * <p>
+	 * The call waits first if the server has too many items in flight.
+	 * See {@link ItemAdmission}.
 	 * @param item the item to process
 	 * @throws PipelineException
 	 */
 	public void processItem(Item item) throws PipelineException {
-		if (head != null) {
-			head.processItem(item);
+		long bytes = ItemAdmission.getMaxBytes() > 0 ? item.estimateMemory() : 0;
+		if (batcher != null) {
+			// the item stays admitted until its batch is processed
+			batcher.add(item, bytes);
+			return;
+		}
+		long admitted = ItemAdmission.admit(bytes);
+		try {
+			if (head != null) {
+				head.processItem(item);
+			}
+		} finally {
+			ItemAdmission.release(admitted);
+		}
+	}
+
+	/**
+	 * Process a batch of items by pushing them into the first stage in the list.
+	 * @param items the items to process
+	 * @throws PipelineException
+	 */
+	public void processBatch(List<Item> items) throws PipelineException {
+		long bytes = 0;
+		if (ItemAdmission.getMaxBytes() > 0) {
+			for (Item item: items) {
+				bytes += item.estimateMemory();
+			}
+		}
+		long admitted = ItemAdmission.admit(bytes);
+		try {
+			if (batcher != null) {
+				batcher.flush();
+			}
+			if (head != null) {
+				head.processBatch(items);
+			}
+		} finally {
+			ItemAdmission.release(admitted);
 		}
 	}
 	
+	/**
+	 * Return the statistics for each stage, in pipeline order. The objects
+	 * are live, and continue to change as items are processed. Call
+	 * StageStats.snapshot() to get a copy.
+	 * @return a list of stats, which is empty if the job has turned off "stage-stats"
+	 */
+	public List<StageStats> getStageStats() {
+		List<StageStats> list = new ArrayList();
+		for (StageProbe probe: probes) {
+			list.add(probe.getStats());
+		}
+		return list;
+	}
+
 	/**
 	 * Return true if this pipeline is empty.
 	 * @return true if no stages have been defined
@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * Copyright 2010 Dieselpoint, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.openpipeline.pipeline.stage;
+
+import java.util.List;
+
+import org.openpipeline.pipeline.item.DocBinary;
+import org.openpipeline.pipeline.item.Item;
+import org.openpipeline.scheduler.PipelineException;
+
+/**
+ * Sits in front of a stage in a StageList and measures it. StageList
+ * inserts one of these before each stage, so the chain becomes
+ * probe, stage, probe, stage... The probe times the call to the stage, and the
+ * probe after it reports the time spent downstream, which is subtracted
+ * to get the stage's self time.
+ */
+class StageProbe extends Stage {
+
+	private Stage stage;
+	private StageStats stats;
+	private StageProbe previous;
+
+	// time spent downstream during the current call, and the thread making it
+	private long downstreamNanos;
+	private Thread activeThread;
+
+	StageProbe(Stage stage, StageProbe previous) {
+		this.stage = stage;
+		this.previous = previous;
+		this.stats = new StageStats(stage.getDisplayName(), stage.getClass().getName());
+		setNextStage(stage);
+	}
+
+	@Override
+	public void processItem(Item item) throws PipelineException {
+		stats.itemsIn.incrementAndGet();
+		stats.bytesIn.addAndGet(getSize(item));
+		if (previous != null) {
+			previous.stats.itemsOut.incrementAndGet();
+		}
+
+		Thread thread = Thread.currentThread();
+		Thread callerThread = activeThread;
+		long callerDownstream = downstreamNanos;
+		activeThread = thread;
+		downstreamNanos = 0;
+
+		long start = System.nanoTime();
+		boolean ok = false;
+		try {
+			stage.processItem(item);
+			ok = true;
+		} finally {
+			finished(start, ok, 1, callerThread, callerDownstream);
+		}
+	}
+
+	@Override
+	public void processBatch(List<Item> items) throws PipelineException {
+		long bytes = 0;
+		for (Item item: items) {
+			bytes += getSize(item);
+		}
+		stats.bytesIn.addAndGet(bytes);
+		stats.itemsIn.addAndGet(items.size());
+		if (previous != null) {
+			previous.stats.itemsOut.addAndGet(items.size());
+		}
+
+		Thread thread = Thread.currentThread();
+		Thread callerThread = activeThread;
+		long callerDownstream = downstreamNanos;
+		activeThread = thread;
+		downstreamNanos = 0;
+
+		long start = System.nanoTime();
+		boolean ok = false;
+		try {
+			stage.processBatch(items);
+			ok = true;
+		} finally {
+			finished(start, ok, items.size(), callerThread, callerDownstream);
+		}
+	}
+
+	private void finished(long start, boolean ok, int itemCount, Thread callerThread, long callerDownstream) {
+		long elapsed = System.nanoTime() - start;
+		stats.totalNanos.addAndGet(elapsed);
+		stats.recordSelfTime(elapsed - downstreamNanos);
+		if (!ok) {
+			stats.errors.incrementAndGet();
+		} else if (stage.getNextStage() == null) {
+			stats.itemsOut.addAndGet(itemCount);
+		}
+
+		// restore the state of any call on this probe that is still
+		// running, for example, a stage that pushes items from a
+		// consumer thread
+		activeThread = callerThread;
+		downstreamNanos = callerDownstream;
+
+		// charge the elapsed time to the stage upstream, unless it's
+		// running on another thread
+		if (previous != null && previous.activeThread == Thread.currentThread()) {
+			previous.downstreamNanos += elapsed;
+		}
+	}
+
+	private long getSize(Item item) {
+		long size = item.getBuffer().size() * 2L;
+		DocBinary docBinary = item.getDocBinary();
+		if (docBinary != null && docBinary.getSize() > 0) {
+			size += docBinary.getSize();
+		}
+		return size;
+	}
+
+	Stage getStage() {
+		return stage;
+	}
+
+	StageStats getStats() {
+		return stats;
+	}
+}
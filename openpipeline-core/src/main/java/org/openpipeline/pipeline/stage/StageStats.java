@@ -0,0 +1,245 @@
+/*******************************************************************************
+ * Copyright 2010 Dieselpoint, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.openpipeline.pipeline.stage;
+
+import java.io.Serializable;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.openpipeline.util.FastStringBuffer;
+
+/**
+ * Latency and throughput statistics for one stage in a pipeline. StageList
+ * collects these when "stage-stats" is enabled on the job, which it is by
+ * default.
+ * <p>
+ * "Self time" is the time spent in the stage's own processItem() method,
+ * minus the time spent in the stages downstream of it. Self times are also
+ * recorded in a histogram with power-of-two buckets, so percentiles are
+ * approximate; each one is reported as the upper bound of its bucket.
+ * <p>
+ * Items out is the number of items the stage passed to the next stage. For the
+ * last stage in the pipeline, it is the number of items that the stage finished
+ * without an exception.
+ * <p>
+ * The counters are atomic, because they are read from other threads while the
+ * job runs, and a stage after an AsyncBoundary counts the items out of the
+ * stage before it from the consumer thread.
+ */
+public class StageStats implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+	private static final int BUCKET_COUNT = 64;
+
+	private String stageName;
+	private String className;
+	final AtomicLong itemsIn = new AtomicLong();
+	final AtomicLong itemsOut = new AtomicLong();
+	final AtomicLong errors = new AtomicLong();
+	final AtomicLong bytesIn = new AtomicLong();
+	final AtomicLong totalNanos = new AtomicLong();
+	final AtomicLong selfNanos = new AtomicLong();
+	final AtomicLongArray histogram = new AtomicLongArray(BUCKET_COUNT);
+	volatile long startTime;
+	volatile long endTime;
+
+	public StageStats(String stageName, String className) {
+		this.stageName = stageName;
+		this.className = className;
+	}
+
+	/**
+	 * Record the self time of one call.
+	 */
+	void recordSelfTime(long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		selfNanos.addAndGet(nanos);
+		// bucket i holds times from 2^i up to 2^(i+1) nanoseconds
+		int bucket = Math.max(0, BUCKET_COUNT - 1 - Long.numberOfLeadingZeros(nanos));
+		histogram.incrementAndGet(bucket);
+	}
+
+	/**
+	 * Add the counts from another object to this one. Used to combine
+	 * the stats of the pipelines in a pool.
+	 * @param other the stats to add
+	 */
+	public void add(StageStats other) {
+		itemsIn.addAndGet(other.itemsIn.get());
+		itemsOut.addAndGet(other.itemsOut.get());
+		errors.addAndGet(other.errors.get());
+		bytesIn.addAndGet(other.bytesIn.get());
+		totalNanos.addAndGet(other.totalNanos.get());
+		selfNanos.addAndGet(other.selfNanos.get());
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			histogram.addAndGet(i, other.histogram.get(i));
+		}
+		if (startTime == 0 || (other.startTime != 0 && other.startTime < startTime)) {
+			startTime = other.startTime;
+		}
+		endTime = Math.max(endTime, other.endTime);
+	}
+
+	/**
+	 * Return a copy of this object that will not change as more items
+	 * are processed.
+	 * @return a copy
+	 */
+	public StageStats snapshot() {
+		StageStats copy = new StageStats(stageName, className);
+		copy.add(this);
+		copy.endTime = endTime;
+		return copy;
+	}
+
+	public String getStageName() {
+		return stageName;
+	}
+
+	public String getClassName() {
+		return className;
+	}
+
+	public long getItemsIn() {
+		return itemsIn.get();
+	}
+
+	public long getItemsOut() {
+		return itemsOut.get();
+	}
+
+	/**
+	 * Return the number of calls that ended in an exception.
+	 */
+	public long getErrors() {
+		return errors.get();
+	}
+
+	/**
+	 * Return the approximate number of bytes in the items that entered
+	 * the stage: two bytes per char of text, plus the size of any binary,
+	 * if known.
+	 */
+	public long getBytesIn() {
+		return bytesIn.get();
+	}
+
+	/**
+	 * Return the total time spent in this stage and all the stages after it, in nanoseconds.
+	 */
+	public long getTotalNanos() {
+		return totalNanos.get();
+	}
+
+	/**
+	 * Return the total time spent in this stage alone, in nanoseconds.
+	 */
+	public long getSelfNanos() {
+		return selfNanos.get();
+	}
+
+	/**
+	 * Return the average self time per item in microseconds.
+	 */
+	public double getMeanSelfMicros() {
+		long items = itemsIn.get();
+		if (items == 0) {
+			return 0;
+		}
+		return selfNanos.get() / 1000.0 / items;
+	}
+
+	/**
+	 * Return the approximate self time, in microseconds, below which the given
+	 * fraction of calls fall.
+	 * @param fraction a number between 0 and 1, for example, 0.99
+	 * @return the upper bound of the histogram bucket that contains the percentile
+	 */
+	public double getSelfMicrosPercentile(double fraction) {
+		long count = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			count += histogram.get(i);
+		}
+		if (count == 0) {
+			return 0;
+		}
+		long target = (long) Math.ceil(count * fraction);
+		long seen = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			seen += histogram.get(i);
+			if (seen >= target) {
+				return Math.pow(2, i + 1) / 1000.0;
+			}
+		}
+		return Math.pow(2, BUCKET_COUNT) / 1000.0;
+	}
+
+	/**
+	 * Return the number of items per second that entered the stage, measured
+	 * by the wall clock from the start of the job until now, or until the end
+	 * of the job if it has finished.
+	 */
+	public double getItemsPerSecond() {
+		if (startTime == 0) {
+			return 0;
+		}
+		long end = endTime == 0 ? System.currentTimeMillis() : endTime;
+		long elapsed = end - startTime;
+		if (elapsed <= 0) {
+			return 0;
+		}
+		return itemsIn.get() * 1000.0 / elapsed;
+	}
+
+	/**
+	 * Append these stats to the buffer as an XML element.
+	 * @param buf the buffer to receive the data
+	 */
+	public void appendXMLtoBuffer(FastStringBuffer buf) {
+		buf.append("<stage name=\"");
+		buf.appendWithXMLEncode(stageName);
+		buf.append("\" class=\"");
+		buf.appendWithXMLEncode(className);
+		buf.append("\" items_in=\"");
+		buf.append(Long.toString(itemsIn.get()));
+		buf.append("\" items_out=\"");
+		buf.append(Long.toString(itemsOut.get()));
+		buf.append("\" errors=\"");
+		buf.append(Long.toString(errors.get()));
+		buf.append("\" bytes_in=\"");
+		buf.append(Long.toString(bytesIn.get()));
+		buf.append("\" total_nanos=\"");
+		buf.append(Long.toString(totalNanos.get()));
+		buf.append("\" self_nanos=\"");
+		buf.append(Long.toString(selfNanos.get()));
+		buf.append("\" mean_self_micros=\"");
+		buf.append(format(getMeanSelfMicros()));
+		buf.append("\" p50_self_micros=\"");
+		buf.append(format(getSelfMicrosPercentile(0.50)));
+		buf.append("\" p99_self_micros=\"");
+		buf.append(format(getSelfMicrosPercentile(0.99)));
+		buf.append("\" items_per_sec=\"");
+		buf.append(format(getItemsPerSecond()));
+		buf.append("\"/>");
+	}
+
+	private static String format(double value) {
+		return String.format(Locale.ROOT, "%.1f", value);
+	}
+}
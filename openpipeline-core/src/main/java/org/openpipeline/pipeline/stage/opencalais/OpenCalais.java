@@ -21,6 +21,7 @@ import java.util.List;
 import org.openpipeline.pipeline.item.Item;
 import org.openpipeline.pipeline.item.Node;
 import org.openpipeline.pipeline.item.NodeList;
+import org.openpipeline.pipeline.item.NodeNames;
 import org.openpipeline.pipeline.item.NodeVisitor;
 import org.openpipeline.pipeline.item.Token;
 import org.openpipeline.pipeline.item.TokenList;
@@ -45,7 +46,7 @@ public class OpenCalais extends Stage implements NodeVisitor {
 	private String apiKey;
 	private CalaisSoap calaisClient;
 	private String paramXML = "";
-	private String[] tagNames;
+	private int[] tagIds; // sorted NodeNames ids of the tags to process
 
 	@Override
 	public String getDescription() {
@@ -84,13 +85,13 @@ public class OpenCalais extends Stage implements NodeVisitor {
 		 * Set the tag names.
 		 */
 		List<String> tags = this.params.getValues("tags");
-		this.tagNames = new String[tags.size()];
+		this.tagIds = new int[tags.size()];
 		for (int i = 0; i < tags.size(); i++) {
 			String tag = tags.get(i);
-			this.tagNames[i] = tag.trim().toLowerCase();
+			this.tagIds[i] = NodeNames.intern(tag.trim().toLowerCase());
 		}
 
-		Arrays.sort(this.tagNames);
+		Arrays.sort(this.tagIds);
 
 		/*
 		 * Construct paramXML 
@@ -123,8 +124,10 @@ public class OpenCalais extends Stage implements NodeVisitor {
 		/*
 		 * Extract entities from tags specified by the user.
 		 */
-		String nodeTagName = node.getName();
-		int index = Arrays.binarySearch(this.tagNames, nodeTagName);
+		int nameId = node.getNameId();
+		if (nameId == NodeNames.NO_ID)
+			return;
+		int index = Arrays.binarySearch(this.tagIds, nameId);
 		if (index < 0)
 			return;
 
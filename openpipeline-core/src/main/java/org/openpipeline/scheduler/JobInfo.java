@@ -15,6 +15,10 @@
  ******************************************************************************/
 package org.openpipeline.scheduler;
 
+import java.util.Collections;
+import java.util.List;
+
+import org.openpipeline.pipeline.stage.StageStats;
 
 /**
  * Contains information on a job in the scheduler. Intended for displaying
@@ -30,6 +34,7 @@ public class JobInfo implements Comparable<JobInfo>{
 	private boolean isRunning;
 	private int errorCount;
 	private int warningCount;
+	private List<StageStats> stageStats;
 
 	public String getJobName() {
 		return jobName;
@@ -117,6 +122,20 @@ public class JobInfo implements Comparable<JobInfo>{
 	public String getLogLink() {
 		return logLink;
 	}
+	/**
+	 * Return the statistics for each stage in the pipeline, either for the
+	 * current run, or for the last one if the job is not running.
+	 */
+	public List<StageStats> getStageStats() {
+		if (stageStats == null) {
+			return Collections.EMPTY_LIST;
+		}
+		return stageStats;
+	}
+	public void setStageStats(List<StageStats> stageStats) {
+		this.stageStats = stageStats;
+	}
+	
 	public int compareTo(JobInfo o) {
 		return jobName.compareToIgnoreCase(o.jobName);
 	}
@@ -83,6 +83,7 @@ public class PipelineJobWrapper implements InterruptableJob, StatefulJob {
 			dataMap.put("lastmessage", errMsg + job.getLastMessage());
 			dataMap.put("errorcount", job.getErrorCount() + "");
 			dataMap.put("warningcount", job.getWarningCount() + "");
+			dataMap.put("stagestats", job.getStageStats());
 		}
 	}
 
@@ -22,6 +22,7 @@ import java.util.Date;
 import java.util.List;
 
 import org.openpipeline.pipeline.connector.Connector;
+import org.openpipeline.pipeline.stage.StageStats;
 import org.openpipeline.util.XMLConfig;
 import org.quartz.CronExpression;
 import org.quartz.JobDataMap;
@@ -130,6 +131,7 @@ public class PipelineScheduler {
 						String lastMessage;
 						int errorCount = 0;
 						int warningCount = 0;
+						List<StageStats> stageStats;
 						boolean isRunning;
 
 						// returns a job instance if executing, else null
@@ -150,6 +152,7 @@ public class PipelineScheduler {
 							if (warnings != null) {
 								warningCount = Integer.parseInt(warnings);
 							}
+							stageStats = (List) dataMap.get("stagestats");
 							
 							isRunning = false;
 
@@ -158,6 +161,7 @@ public class PipelineScheduler {
 							lastMessage = pipelineJob.getLastMessage();
 							errorCount = pipelineJob.getErrorCount();
 							warningCount = pipelineJob.getWarningCount();
+							stageStats = pipelineJob.getStageStats();
 							isRunning = true;
 						}
 
@@ -175,6 +179,7 @@ public class PipelineScheduler {
 						jobInfo.setLastMessage(lastMessage);
 						jobInfo.setErrorCount(errorCount);
 						jobInfo.setWarningCount(warningCount);
+						jobInfo.setStageStats(stageStats);
 
 						list.add(jobInfo);
 					}
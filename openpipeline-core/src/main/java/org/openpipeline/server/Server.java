@@ -23,6 +23,8 @@ import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.openpipeline.logger.LoggerSetup;
+import org.openpipeline.pipeline.item.BinaryMemoryBudget;
+import org.openpipeline.pipeline.stage.ItemAdmission;
 import org.openpipeline.scheduler.PipelineScheduler;
 import org.openpipeline.util.Util;
 import org.openpipeline.util.XMLConfig;
@@ -125,6 +127,8 @@ public class Server {
 			}
 		} 
 
+		configureMemoryLimits();
+
 		// starts scheduler, loads jobs
 		try {
 			PipelineScheduler.getInstance();
@@ -145,6 +149,39 @@ public class Server {
 
 
 
+	/**
+	 * Apply the server-wide limits on memory used by items and binary content.
+	 * See {@link ItemAdmission} and {@link BinaryMemoryBudget}.
+	 */
+	private void configureMemoryLimits() {
+		try {
+			String budget = config.getProperty("binary-memory-budget");
+			if (budget != null && budget.length() > 0) {
+				BinaryMemoryBudget.setMaxBytes(Long.parseLong(budget.trim()));
+			}
+			String threshold = config.getProperty("binary-spill-threshold");
+			if (threshold != null && threshold.length() > 0) {
+				BinaryMemoryBudget.setSpillThreshold(Integer.parseInt(threshold.trim()));
+			}
+		} catch (NumberFormatException e) {
+			logger.warn("Bad binary memory setting in server config file", e);
+		}
+		try {
+			String limit = config.getProperty("item-memory-limit");
+			if (limit != null && limit.length() > 0) {
+				ItemAdmission.setMaxBytes(Long.parseLong(limit.trim()));
+			}
+		} catch (NumberFormatException e) {
+			logger.warn("Bad item-memory-limit in server config file", e);
+		}
+		String spillDir = config.getProperty("binary-spill-dir");
+		if (spillDir != null && spillDir.length() > 0) {
+			File dir = new File(spillDir);
+			dir.mkdirs();
+			BinaryMemoryBudget.setTempDir(dir);
+		}
+	}
+
 	public String getVersion() {
 		return getClass().getPackage().getImplementationVersion();
 	}
@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright 2010 Dieselpoint, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.openpipeline.server;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.openpipeline.pipeline.stage.StageStats;
+import org.openpipeline.scheduler.JobInfo;
+import org.openpipeline.server.pages.LoginPage;
+import org.openpipeline.scheduler.PipelineScheduler;
+import org.openpipeline.util.FastStringBuffer;
+
+/**
+ * Returns the per-stage statistics for each job as XML, for monitoring tools.
+ * Pass a "jobname" parameter to get a single job. The output looks like this:
+ * <pre>
+ * &lt;jobs&gt;
+ *   &lt;job name="myjob" running="true"&gt;
+ *     &lt;stage name="Disk Writer" class="..." items_in="100" items_out="100" .../&gt;
+ *   &lt;/job&gt;
+ * &lt;/jobs&gt;
+ * </pre>
+ * See {@link StageStats#appendXMLtoBuffer(FastStringBuffer)} for the full list of attributes.
+ * <p>
+ * The caller must be logged in to the admin app as a user who is allowed
+ * to see server_stats.jsp, or the response is 403 Forbidden.
+ */
+public class StageStatsServlet extends HttpServlet {
+
+	private static final long serialVersionUID = 1L;
+
+	// the page that links to this servlet; a user who can see it can see the stats
+	private static final String STATS_PAGE = "server_stats.jsp";
+
+	@Override
+	protected void doGet(HttpServletRequest req, HttpServletResponse resp)
+			throws ServletException, IOException {
+
+		LoginPage loginPage = new LoginPage();
+		loginPage.setRequest(req);
+		if (!loginPage.isLoggedIn() || !loginPage.isAllowed(STATS_PAGE)) {
+			resp.sendError(HttpServletResponse.SC_FORBIDDEN);
+			return;
+		}
+
+		String jobName = req.getParameter("jobname");
+
+		List<JobInfo> jobs;
+		try {
+			jobs = PipelineScheduler.getInstance().getJobs();
+		} catch (Exception e) {
+			resp.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e.toString());
+			return;
+		}
+
+		FastStringBuffer buf = new FastStringBuffer();
+		buf.append("<?xml version=\"1.0\" encoding=\"utf-8\"?>");
+		buf.append("<jobs>");
+		for (JobInfo job: jobs) {
+			if (jobName != null && !jobName.equals(job.getJobName())) {
+				continue;
+			}
+			buf.append("<job name=\"");
+			buf.appendWithXMLEncode(job.getJobName());
+			buf.append("\" running=\"");
+			buf.append(job.getIsRunning() ? "true" : "false");
+			buf.append("\">");
+			for (StageStats stats: job.getStageStats()) {
+				stats.appendXMLtoBuffer(buf);
+			}
+			buf.append("</job>");
+		}
+		buf.append("</jobs>");
+
+		resp.setContentType("text/xml; charset=utf-8");
+		Writer writer = resp.getWriter();
+		writer.write(buf.getArray(), 0, buf.size());
+		writer.close();
+	}
+}
@@ -33,9 +33,20 @@ public class LoginPage extends AdminPage {
 	private static final String LOGIN_COOKIE_NAME = "login";
 	
 	private PageContext pageContext;
+	private HttpServletRequest request;
 
 	public void setPageContext(PageContext pageContext) {
 		this.pageContext = pageContext;
+		this.request = (HttpServletRequest) pageContext.getRequest();
+	}
+
+	/**
+	 * Use the request directly, for checking the login from a servlet
+	 * rather than a jsp page. login() is not available.
+	 * @param request the current request
+	 */
+	public void setRequest(HttpServletRequest request) {
+		this.request = request;
 	}
 	
 	/**
@@ -99,14 +110,14 @@ public class LoginPage extends AdminPage {
 	
 	
 	public boolean isLoggedIn() throws IOException {
-		HttpSession session = pageContext.getSession();
+		HttpSession session = request.getSession();
 		if (session.getAttribute(LOGIN_ATTR_NAME) != null) {
 			return true;
 		}
 		
 		// if we get here, this is probably the initial call to this method
 		// check to see if we can log in automatically
-		String [] userPass = getLoginFromCookie((HttpServletRequest)pageContext.getRequest());
+		String [] userPass = getLoginFromCookie(request);
 		String user = userPass[0];
 		String password = userPass[1];
 		
@@ -190,7 +201,7 @@ public class LoginPage extends AdminPage {
 	 * @throws IOException 
 	 */
 	public boolean isAllowed(String pageName) throws IOException {
-		String userName = (String) pageContext.getSession().getAttribute(LOGIN_USERNAME);
+		String userName = (String) request.getSession().getAttribute(LOGIN_USERNAME);
 		
 		// test only the page name, not the path
 		int pos = pageName.lastIndexOf('/');
@@ -15,8 +15,16 @@
  ******************************************************************************/
 package org.openpipeline.server.pages;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import javax.servlet.jsp.PageContext;
 
+import org.openpipeline.pipeline.item.BinaryMemoryBudget;
+import org.openpipeline.pipeline.stage.ItemAdmission;
+import org.openpipeline.pipeline.stage.StageStats;
+import org.openpipeline.scheduler.JobInfo;
+import org.openpipeline.scheduler.PipelineScheduler;
 import org.openpipeline.server.Server;
 import org.openpipeline.util.Util;
 
@@ -25,13 +33,56 @@ import org.openpipeline.util.Util;
  */
 public class ServerStatsPage extends AdminPage {
 
-
+	private List<JobInfo> jobs = new ArrayList();
 	
 	/**
 	 * Process a request for the server_properties page in the admin interface.
 	 */
 	public void processPage(PageContext pageContext) {
 		super.processPage(pageContext);
+		try {
+			List<JobInfo> allJobs = PipelineScheduler.getInstance().getJobs();
+			for (JobInfo job: allJobs) {
+				if (!job.getStageStats().isEmpty()) {
+					jobs.add(job);
+				}
+			}
+		} catch (Exception e) {
+			super.handleError("Error in PipelineScheduler. See log for details.", e);
+		}
+	}
+
+	/**
+	 * Return the jobs that have per-stage statistics, either for the
+	 * current run or the last one.
+	 */
+	public List<JobInfo> getJobsWithStats() {
+		return jobs;
+	}
+
+	/**
+	 * Format a number of nanoseconds as milliseconds for display.
+	 */
+	public String formatNanos(long nanos) {
+		return String.format("%,.1f ms", nanos / 1000000.0);
+	}
+
+	/**
+	 * Format a number of microseconds for display.
+	 */
+	public String formatMicros(double micros) {
+		return String.format("%,.1f &micro;s", micros);
+	}
+
+	/**
+	 * Format the number of items per second for display.
+	 */
+	public String formatRate(StageStats stats) {
+		return String.format("%,.1f", stats.getItemsPerSecond());
+	}
+
+	public String formatBytes(long bytes) {
+		return Util.getFormattedDataSize(bytes);
 	}
 
 	public String getJavaVersion() {
@@ -65,6 +116,46 @@ public class ServerStatsPage extends AdminPage {
 		return Util.getFormattedDataSize(java.lang.Runtime.getRuntime().maxMemory());
 	}
 
+	/**
+	 * Returns the memory held by document binaries, out of the
+	 * server-wide budget.
+	 */
+	public String getBinaryMemoryUsage() {
+		return Util.getFormattedDataSize(BinaryMemoryBudget.getUsedBytes()) + " of "
+				+ Util.getFormattedDataSize(BinaryMemoryBudget.getMaxBytes());
+	}
+
+	/**
+	 * Returns the number of document binaries written to temp files,
+	 * and their total size.
+	 */
+	public String getBinarySpills() {
+		return BinaryMemoryBudget.getSpillCount() + " ("
+				+ Util.getFormattedDataSize(BinaryMemoryBudget.getSpilledBytes()) + ")";
+	}
+
+	/**
+	 * Returns the estimated size of the items in flight in all pipelines,
+	 * out of the admission limit.
+	 */
+	public String getItemMemoryUsage() {
+		String usage = Util.getFormattedDataSize(ItemAdmission.getInFlightBytes())
+				+ " (peak " + Util.getFormattedDataSize(ItemAdmission.getPeakBytes()) + ")";
+		if (ItemAdmission.getMaxBytes() > 0) {
+			usage += " of " + Util.getFormattedDataSize(ItemAdmission.getMaxBytes());
+		}
+		return usage;
+	}
+
+	/**
+	 * Returns the number of times connectors waited for room in the
+	 * admission limit, and the total time they waited.
+	 */
+	public String getItemAdmissionWaits() {
+		return ItemAdmission.getWaitCount() + " ("
+				+ formatNanos(ItemAdmission.getWaitMillis() * 1000000) + ")";
+	}
+
 	/**
 	 * Return the current classpath (formatted for display).
 	 * @return the classpath
@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * Copyright 2010 Dieselpoint, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.openpipeline.util;
+
+/**
+ * 64-bit FNV-1a hashing, used for the signatures that connectors store in
+ * a link queue. It's fast and good enough to tell whether content has
+ * changed, but it is not a cryptographic hash.
+ * <p>
+ * Start with OFFSET_BASIS and pass the result of each update() call to
+ * the next one.
+ */
+public class FNVHash {
+
+	public static final long OFFSET_BASIS = 0xcbf29ce484222325L;
+	public static final long PRIME = 0x100000001b3L;
+
+	/**
+	 * Return the hash of a span of characters.
+	 */
+	public static long hash(char[] array, int offset, int len) {
+		return update(OFFSET_BASIS, array, offset, len);
+	}
+
+	/**
+	 * Add one character to the hash.
+	 */
+	public static long update(long hash, char ch) {
+		return (hash ^ ch) * PRIME;
+	}
+
+	/**
+	 * Add a span of characters to the hash.
+	 */
+	public static long update(long hash, char[] array, int offset, int len) {
+		int end = offset + len;
+		for (int i = offset; i < end; i++) {
+			hash ^= array[i];
+			hash *= PRIME;
+		}
+		return hash;
+	}
+
+	/**
+	 * Add the 8 bytes of a long to the hash, low byte first.
+	 */
+	public static long update(long hash, long value) {
+		for (int i = 0; i < 8; i++) {
+			hash ^= value & 0xff;
+			hash *= PRIME;
+			value >>>= 8;
+		}
+		return hash;
+	}
+}
@@ -0,0 +1,64 @@
+package org.openpipeline.filesystem.s3;
+
+import java.io.IOException;
+import java.util.Date;
+
+import junit.framework.TestCase;
+
+import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+
+public class TestS3FileSystem extends TestCase {
+
+	/**
+	 * Files from a listing answer from the listing. There is no client, so
+	 * any request to S3 would fail.
+	 */
+	public void testListedFiles() throws IOException {
+		ObjectListing listing = new ObjectListing();
+		listing.getObjectSummaries().add(summary("dir/a.txt", "\"abc\"", 10, 1000));
+		listing.getCommonPrefixes().add("dir/sub/");
+
+		S3File dir = new S3File("dir/", "bucket", null);
+		S3File[] files = dir.toFiles(listing);
+		assertEquals(2, files.length);
+
+		S3File file = files[0];
+		assertTrue(file.exists());
+		assertTrue(file.isFile());
+		assertFalse(file.isDirectory());
+		assertEquals(10, file.length());
+		assertEquals(1000, file.lastModified());
+		assertEquals("\"abc\"", file.getETag());
+
+		S3File sub = files[1];
+		assertTrue(sub.exists());
+		assertTrue(sub.isDirectory());
+		assertNull(sub.getSummary());
+	}
+
+	public void testSignature() throws IOException {
+		long sig = signature("\"abc\"", 10, 1000);
+		assertEquals(sig, signature("\"abc\"", 10, 1000));
+		assertEquals(sig, signature("abc", 10, 1000));
+		assertTrue(sig != signature("\"abd\"", 10, 1000));
+		assertTrue(sig != signature("\"abc\"", 11, 1000));
+		assertTrue(sig != signature("\"abc\"", 10, 1001));
+	}
+
+	private long signature(String eTag, long size, long lastModified) {
+		S3File file = new S3File(summary("a", eTag, size, lastModified), null);
+		return new S3FileSystem(file).getSignature();
+	}
+
+	private S3ObjectSummary summary(String key, String eTag, long size,
+			long lastModified) {
+		S3ObjectSummary summary = new S3ObjectSummary();
+		summary.setBucketName("bucket");
+		summary.setKey(key);
+		summary.setETag(eTag);
+		summary.setSize(size);
+		summary.setLastModified(new Date(lastModified));
+		return summary;
+	}
+}
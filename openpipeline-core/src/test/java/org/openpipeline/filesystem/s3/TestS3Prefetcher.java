@@ -0,0 +1,124 @@
+package org.openpipeline.filesystem.s3;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.openpipeline.util.FastStringBuffer;
+
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+
+public class TestS3Prefetcher extends TestCase {
+
+	/**
+	 * A file that serves its content from memory, so no client is needed.
+	 */
+	static class MemoryFile extends S3File {
+		String content;
+		AtomicInteger reads;
+
+		MemoryFile(String key, String content, AtomicInteger reads) {
+			super(summary(key, content.length()), null);
+			this.content = content;
+			this.reads = reads;
+		}
+
+		public InputStream getInputStream() throws IOException {
+			reads.incrementAndGet();
+			return new ByteArrayInputStream(content.getBytes("UTF-8"));
+		}
+	}
+
+	static S3ObjectSummary summary(String key, long size) {
+		S3ObjectSummary summary = new S3ObjectSummary();
+		summary.setBucketName("bucket");
+		summary.setKey(key);
+		summary.setSize(size);
+		return summary;
+	}
+
+	public void testTake() throws IOException {
+		AtomicInteger reads = new AtomicInteger();
+		MemoryFile[] files = new MemoryFile[20];
+		for (int i = 0; i < files.length; i++) {
+			files[i] = new MemoryFile("dir/file" + i, "content " + i, reads);
+		}
+
+		S3Prefetcher prefetcher = new S3Prefetcher(4, 1024);
+		try {
+			prefetcher.add(files);
+			for (int i = 0; i < files.length; i++) {
+				InputStream in = prefetcher.take(files[i]);
+				assertNotNull(in);
+				assertEquals("content " + i, read(in));
+				prefetcher.done(files[i]);
+			}
+			assertEquals(files.length, reads.get());
+			assertEquals(0, prefetcher.getReservedBytes());
+		} finally {
+			prefetcher.close();
+		}
+	}
+
+	public void testTooBig() throws IOException {
+		AtomicInteger reads = new AtomicInteger();
+		MemoryFile small = new MemoryFile("small", "12345", reads);
+		MemoryFile big = new MemoryFile("big", "1234567890", reads);
+
+		S3Prefetcher prefetcher = new S3Prefetcher(4, 8);
+		try {
+			prefetcher.add(new S3File[] { big, small });
+
+			// the big one has to be read directly
+			assertNull(prefetcher.take(big));
+			prefetcher.done(big);
+
+			assertEquals("12345", read(prefetcher.take(small)));
+			prefetcher.done(small);
+			assertEquals(1, reads.get());
+		} finally {
+			prefetcher.close();
+		}
+	}
+
+	public void testSkipped() throws IOException {
+		AtomicInteger reads = new AtomicInteger();
+		MemoryFile[] files = new MemoryFile[3];
+		for (int i = 0; i < files.length; i++) {
+			files[i] = new MemoryFile("file" + i, "abc", reads);
+		}
+
+		S3Prefetcher prefetcher = new S3Prefetcher(1, 1024);
+		try {
+			prefetcher.setFilter(new S3Prefetcher.Filter() {
+				public boolean accept(S3File file) {
+					return !file.getFullPath().equals("file1");
+				}
+			});
+			prefetcher.add(files);
+
+			// moving past a file without taking it releases its room
+			prefetcher.done(files[0]);
+			assertNull(prefetcher.take(files[1]));
+			prefetcher.done(files[1]);
+			assertEquals("abc", read(prefetcher.take(files[2])));
+			prefetcher.done(files[2]);
+			assertEquals(0, prefetcher.getReservedBytes());
+		} finally {
+			prefetcher.close();
+		}
+	}
+
+	private String read(InputStream in) throws IOException {
+		FastStringBuffer buf = new FastStringBuffer();
+		int ch;
+		while ((ch = in.read()) != -1) {
+			buf.append((char) ch);
+		}
+		in.close();
+		return buf.toString();
+	}
+}
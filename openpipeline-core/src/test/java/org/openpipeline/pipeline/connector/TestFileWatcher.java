@@ -0,0 +1,191 @@
+/*******************************************************************************
+ * Copyright 2010 Dieselpoint, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.openpipeline.pipeline.connector;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+
+import org.openpipeline.pipeline.connector.filesystem.DiskFileSystem;
+import org.openpipeline.pipeline.item.Item;
+import org.openpipeline.pipeline.stage.Stage;
+import org.openpipeline.pipeline.stage.StageList;
+import org.openpipeline.scheduler.PipelineException;
+import org.openpipeline.util.FileUtil;
+import org.openpipeline.util.XMLConfig;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tests that FileWatcher picks up creates, modifies and deletes after
+ * the initial scan.
+ */
+public class TestFileWatcher extends TestCase {
+
+	static List<String> processed = Collections.synchronizedList(new ArrayList<String>());
+
+	private File root;
+
+	@Override
+	protected void setUp() throws Exception {
+		root = File.createTempFile("watcher", "");
+		root.delete();
+		root.mkdirs();
+		processed.clear();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		FileUtil.deleteDir(root);
+	}
+
+	public void test() throws Exception {
+		File a = new File(root, "a.txt");
+		write(a, "a");
+
+		XMLConfig params = new XMLConfig();
+		params.addChild("stages").addChild("stage").setProperty("classname",
+				CollectingStage.class.getName());
+		StageList stageList = new StageList();
+		stageList.createPipeline(params);
+		stageList.initialize();
+
+		FileScanner connector = new FileScanner();
+		GenericScanner scanner = new GenericScanner();
+		scanner.setParentConnector(connector);
+		scanner.setLogger(LoggerFactory.getLogger(getClass()));
+		scanner.setDocLoggingCount(1);
+		scanner.setStageList(stageList);
+		scanner.setScanSubDirs(true);
+
+		final FileWatcher watcher = new FileWatcher(connector, scanner,
+				Collections.singletonList(root.getPath()), true);
+		watcher.setDelay(100);
+		watcher.start();
+
+		scanner.setStartOfCrawl(System.currentTimeMillis());
+		scanner.scan(new DiskFileSystem(root));
+		assertTrue(processed.contains("add " + a.getAbsolutePath()));
+
+		Thread thread = new Thread() {
+			public void run() {
+				try {
+					watcher.watch();
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+			}
+		};
+		thread.start();
+
+		try {
+			File b = new File(root, "b.txt");
+			write(b, "b");
+			waitFor("add " + b.getAbsolutePath());
+
+			a.delete();
+			waitFor("delete " + a.getAbsolutePath());
+
+			File sub = new File(root, "sub");
+			sub.mkdir();
+			File c = new File(sub, "c.txt");
+			write(c, "c");
+			waitFor("add " + c.getAbsolutePath());
+
+		} finally {
+			watcher.interrupt();
+			thread.join(5000);
+		}
+		assertFalse(thread.isAlive());
+	}
+
+	public void testDeleteZip() throws Exception {
+		File zip = new File(root, "a.zip");
+		ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip));
+		out.putNextEntry(new ZipEntry("x.txt"));
+		out.write("x".getBytes());
+		out.close();
+		String entryName = zip.getAbsolutePath() + "/x.txt";
+
+		XMLConfig params = new XMLConfig();
+		params.setProperty("fileroots", root.getPath());
+		params.setProperty("watch", "true");
+		params.setProperty("watch-delay", "100");
+		params.setProperty("linkqueue-name", "DerbyLinkQueue");
+		params.setProperty("database-url", "jdbc:derby:memory:watcherzip;create=true");
+		params.addChild("stages").addChild("stage").setProperty("classname",
+				CollectingStage.class.getName());
+
+		final FileScanner connector = new FileScanner();
+		connector.setParams(params);
+		connector.setJobName("watcherzip");
+		connector.initialize();
+		Thread thread = new Thread() {
+			public void run() {
+				connector.execute();
+			}
+		};
+		thread.start();
+
+		try {
+			waitFor("add " + entryName);
+
+			// the link queue has the entry, not the zip file
+			zip.delete();
+			waitFor("delete " + entryName);
+
+		} finally {
+			connector.interrupt();
+			thread.join(5000);
+			connector.close();
+		}
+		assertFalse(thread.isAlive());
+	}
+
+	private void waitFor(String entry) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 20000;
+		while (!processed.contains(entry)) {
+			if (System.currentTimeMillis() > deadline) {
+				fail("Not processed: " + entry + " processed=" + processed);
+			}
+			Thread.sleep(50);
+		}
+	}
+
+	private void write(File file, String text) throws Exception {
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(text.getBytes());
+		out.close();
+	}
+
+	public static class CollectingStage extends Stage {
+		@Override
+		public void processItem(Item item) throws PipelineException {
+			String action = item.getAction() == Item.ACTION_DELETE ? "delete " : "add ";
+			String name = item.getItemId();
+			if (name == null && item.getDocBinary() != null) {
+				name = item.getDocBinary().getName();
+			}
+			processed.add(action + name);
+			super.pushItemDownPipeline(item);
+		}
+	}
+}
@@ -15,12 +15,20 @@
  ******************************************************************************/
 package org.openpipeline.pipeline.connector;
 
+import java.io.File;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import junit.framework.TestCase;
 
+import org.openpipeline.pipeline.item.Item;
+import org.openpipeline.pipeline.stage.Stage;
+import org.openpipeline.scheduler.PipelineException;
+import org.openpipeline.server.Server;
 import org.openpipeline.util.FileUtil;
 import org.openpipeline.util.XMLConfig;
 
@@ -94,6 +102,211 @@ public class TestSQLCrawler extends TestCase {
 
 	
 	
+	/**
+	 * Scan with partitions, including negative keys, a key range smaller
+	 * than the number of partitions, and decimal keys. Every row must be
+	 * processed exactly once.
+	 */
+	public void testPartitions() throws Exception {
+		Connection con = getConnection("partitions");
+		execSQL(con, "create table neg (id bigint primary key, v varchar(10))");
+		for (int i = -7; i <= 5; i++) {
+			execSQL(con, "insert into neg values (" + i + ", 'v" + i + "')");
+		}
+		execSQL(con, "create table small (id decimal(10,0) primary key, v varchar(10))");
+		for (int i = -1; i <= 1; i++) {
+			execSQL(con, "insert into small values (" + i + ", 'v" + i + "')");
+		}
+
+		// the bounds are -7 and 5, so the step is 5/4 - (-7/4) + 1 = 3, 
+		// and the ranges are (-8,-5] (-5,-2] (-2,1] (1,5]. The index SQL 
+		// fetches 2 rows at a time, so the scans page within each range
+		String indexSQL = " where id > ? and id <= ? order by id fetch first 2 rows only";
+		SQLDatabaseCrawler crawler = runPartitions("partitions", "neg", indexSQL, 4);
+		assertEquals(13, crawler.getItemsAdded());
+		assertIds(-7, 5);
+
+		// a range of 3 keys over 8 partitions, several of which are empty
+		crawler = runPartitions("partitions", "small", indexSQL, 8);
+		assertEquals(3, crawler.getItemsAdded());
+		assertIds(-1, 1);
+
+		con.close();
+	}
+
+	private SQLDatabaseCrawler runPartitions(String db, String table, 
+			String where, int partitions) throws Exception {
+		XMLConfig params = getParams(db, "partitionjob");
+		params.setProperty("index-sql", "select * from " + table + where);
+		params.setProperty("bounds-sql", "select min(id), max(id) from " + table);
+		params.setProperty("partitions", String.valueOf(partitions));
+		return run(params);
+	}
+
+	private void assertIds(int first, int last) {
+		List<Integer> expected = new ArrayList<Integer>();
+		for (int i = first; i <= last; i++) {
+			expected.add(i);
+		}
+		List<Integer> actual = new ArrayList<Integer>();
+		for (String id: CaptureStage.ids) {
+			actual.add(Integer.parseInt(id));
+		}
+		Collections.sort(actual);
+		assertEquals(expected, actual);
+	}
+
+	/**
+	 * Fetch only the changed rows, and the deleted ones, and keep the
+	 * watermark between runs in config/watermarks/[job name].xml.
+	 */
+	public void testWatermark() throws Exception {
+		Connection con = getConnection("watermark");
+		execSQL(con, "create table t (id int primary key, v varchar(10), ver bigint)");
+		execSQL(con, "create table tomb (id int, ver bigint)");
+		execSQL(con, "insert into t values (1, 'a', 1)");
+		execSQL(con, "insert into t values (2, 'b', 2)");
+		execSQL(con, "insert into t values (3, 'c', 3)");
+
+		File file = getWatermarkFile("watermarkjob");
+		file.delete();
+		XMLConfig params = getWatermarkParams("watermark", "watermarkjob");
+
+		SQLDatabaseCrawler crawler = run(params);
+		assertEquals(3, crawler.getItemsAdded());
+		assertWatermark(file, "3");
+
+		// nothing changed
+		crawler = run(params);
+		assertEquals(0, crawler.getItemsAdded());
+		assertEquals(0, crawler.getItemsDeleted());
+		assertWatermark(file, "3");
+
+		// one update and one delete
+		execSQL(con, "update t set v = 'x', ver = 4 where id = 1");
+		execSQL(con, "delete from t where id = 2");
+		execSQL(con, "insert into tomb values (2, 5)");
+		crawler = run(params);
+		assertEquals(1, crawler.getItemsAdded());
+		assertEquals(1, crawler.getItemsDeleted());
+		assertEquals("[2, 1]", CaptureStage.ids.toString());
+		assertEquals(Item.ACTION_DELETE, (int) CaptureStage.actions.get(0));
+		assertWatermark(file, "5");
+
+		// the tombstone is not fetched again
+		crawler = run(params);
+		assertEquals(0, crawler.getItemsDeleted());
+
+		con.close();
+		file.delete();
+	}
+
+	/**
+	 * A row that fails is fetched again on the next run.
+	 */
+	public void testWatermarkFailure() throws Exception {
+		Connection con = getConnection("failure");
+		execSQL(con, "create table t (id int primary key, v varchar(10), ver bigint)");
+		execSQL(con, "create table tomb (id int, ver bigint)");
+		execSQL(con, "insert into t values (1, 'a', 1)");
+		execSQL(con, "insert into t values (2, 'b', 2)");
+		execSQL(con, "insert into t values (3, 'c', 3)");
+
+		File file = getWatermarkFile("failurejob");
+		file.delete();
+		XMLConfig params = getWatermarkParams("failure", "failurejob");
+
+		CaptureStage.failOn = "2";
+		SQLDatabaseCrawler crawler;
+		try {
+			crawler = run(params);
+		} finally {
+			CaptureStage.failOn = null;
+		}
+		assertEquals(2, crawler.getItemsAdded());
+		assertWatermark(file, "1");
+
+		crawler = run(params);
+		assertEquals("[2, 3]", CaptureStage.ids.toString());
+		assertWatermark(file, "3");
+
+		con.close();
+		file.delete();
+	}
+
+	private XMLConfig getWatermarkParams(String db, String jobName) {
+		XMLConfig params = getParams(db, jobName);
+		params.setProperty("watermark-col", "VER");
+		params.setProperty("changes-sql", "select * from t where ver > ? order by ver");
+		params.setProperty("deletes-sql", "select id, ver from tomb where ver > ?");
+		return params;
+	}
+
+	private File getWatermarkFile(String jobName) {
+		return new File(Server.getServer().getHomeDir(), "config/watermarks/"
+				+ jobName + ".xml");
+	}
+
+	private void assertWatermark(File file, String expected) throws Exception {
+		XMLConfig conf = new XMLConfig();
+		conf.load(file);
+		assertEquals(expected, conf.getProperty("watermark"));
+		assertEquals("N", conf.getProperty("watermark-type"));
+	}
+
+	private Connection getConnection(String db) throws Exception {
+		Class.forName("org.apache.derby.jdbc.EmbeddedDriver");
+		return DriverManager.getConnection("jdbc:derby:memory:" + db + ";create=true");
+	}
+
+	private XMLConfig getParams(String db, String jobName) {
+		XMLConfig params = new XMLConfig();
+		params.setProperty("jobname", jobName);
+		params.setProperty("jdbc-driver", "org.apache.derby.jdbc.EmbeddedDriver");
+		params.setProperty("jdbc-url", "jdbc:derby:memory:" + db);
+		params.setProperty("itemid-col", "ID");
+		params.setProperty("primary-key-col", "ID");
+		params.setProperty("fetch-size", "100");
+		XMLConfig stages = params.addChild("stages");
+		stages.addChild("stage").setProperty("classname", CaptureStage.class.getName());
+		return params;
+	}
+
+	private SQLDatabaseCrawler run(XMLConfig params) throws Exception {
+		CaptureStage.ids.clear();
+		CaptureStage.actions.clear();
+
+		SQLDatabaseCrawler crawler = new SQLDatabaseCrawler();
+		crawler.setParams(params);
+		crawler.setJobName(params.getProperty("jobname"));
+		crawler.initialize();
+		try {
+			crawler.execute();
+		} finally {
+			crawler.close();
+		}
+		assertFalse(crawler.getLastMessage(), crawler.getLastMessage().startsWith("Error"));
+		return crawler;
+	}
+
+	/**
+	 * Records the items that reach the end of the pipeline.
+	 */
+	public static class CaptureStage extends Stage {
+		static List<String> ids = Collections.synchronizedList(new ArrayList<String>());
+		static List<Integer> actions = Collections.synchronizedList(new ArrayList<Integer>());
+		static volatile String failOn;
+
+		@Override
+		public void processItem(Item item) throws PipelineException {
+			if (item.getItemId().equals(failOn)) {
+				throw new PipelineException("Failing on purpose: " + failOn);
+			}
+			ids.add(item.getItemId());
+			actions.add(item.getAction());
+		}
+	}
+
 	private void execSQL(Connection con, String sql) throws Exception {
 		Statement state = con.createStatement();
 		state.executeUpdate(sql);
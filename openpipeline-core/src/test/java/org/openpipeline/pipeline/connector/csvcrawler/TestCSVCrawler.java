@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * Copyright 2010 Dieselpoint, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.openpipeline.pipeline.connector.csvcrawler;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.openpipeline.pipeline.item.Item;
+import org.openpipeline.pipeline.stage.Stage;
+import org.openpipeline.scheduler.PipelineException;
+import org.openpipeline.util.XMLConfig;
+
+/**
+ * Tests that a second crawl with a link queue skips the rows that are
+ * unchanged, sends the rows that changed, and deletes the rows that are
+ * gone, with and without threads and a pipeline pool.
+ */
+public class TestCSVCrawler extends TestCase {
+
+	private File file;
+
+	@Override
+	protected void tearDown() throws Exception {
+		if (file != null) {
+			file.delete();
+		}
+	}
+
+	public void testRecrawl() throws Exception {
+		recrawl("single", 1, 1);
+	}
+
+	public void testRecrawlThreads() throws Exception {
+		recrawl("threads", 2, 3);
+	}
+
+	private void recrawl(String name, int threads, int poolSize) throws Exception {
+		file = File.createTempFile("test", ".csv");
+		XMLConfig params = new XMLConfig();
+		params.setProperty("filename", file.getPath());
+		params.setProperty("itemid-col", "id");
+		params.setProperty("threads", String.valueOf(threads));
+		params.setProperty("pipeline-pool-size", String.valueOf(poolSize));
+		params.setProperty("linkqueue-name", "DerbyLinkQueue");
+		params.setProperty("database-url", "jdbc:derby:memory:csv" + name + ";create=true");
+		params.addChild("stages").addChild("stage").setProperty("classname",
+				CaptureStage.class.getName());
+
+		write("id,value\n1,a\n2,b\n3,c\n");
+		CSVCrawler crawler = crawl(params, name);
+		assertEquals(3, crawler.getItemsAdded());
+		assertEquals(0, crawler.getItemsUnchanged());
+		assertEquals(0, crawler.getItemsDeleted());
+
+		// 1 is unchanged, 2 changed, 3 removed
+		write("id,value\n1,a\n2,changed\n");
+		crawler = crawl(params, name);
+		assertEquals(1, crawler.getItemsAdded());
+		assertEquals(1, crawler.getItemsUnchanged());
+		assertEquals(1, crawler.getItemsDeleted());
+		Collections.sort(CaptureStage.received);
+		assertEquals("[2 changed, 3 deleted]", CaptureStage.received.toString());
+	}
+
+	private CSVCrawler crawl(XMLConfig params, String jobName) throws Exception {
+		CaptureStage.received.clear();
+		CSVCrawler crawler = new CSVCrawler();
+		crawler.setParams(params);
+		crawler.setJobName(jobName);
+		crawler.initialize();
+		try {
+			crawler.execute();
+		} finally {
+			crawler.close();
+		}
+		assertEquals(0, crawler.getErrorCount());
+		return crawler;
+	}
+
+	private void write(String csv) throws Exception {
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(csv.getBytes("UTF-8"));
+		out.close();
+	}
+
+	/**
+	 * Records the items that reach the end of the pipeline.
+	 */
+	public static class CaptureStage extends Stage {
+		static List<String> received = Collections.synchronizedList(new ArrayList<String>());
+
+		@Override
+		public void processItem(Item item) throws PipelineException {
+			if (item.getAction() == Item.ACTION_DELETE) {
+				received.add(item.getItemId() + " deleted");
+			} else {
+				received.add(item.getItemId() + " " + item.getRootNode().getChildValue("value"));
+			}
+		}
+	}
+}
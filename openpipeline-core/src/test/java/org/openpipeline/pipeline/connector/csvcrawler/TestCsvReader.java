@@ -0,0 +1,64 @@
+/*******************************************************************************
+ * Copyright 2010 Dieselpoint, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.openpipeline.pipeline.connector.csvcrawler;
+
+import junit.framework.TestCase;
+
+import org.openpipeline.pipeline.item.Item;
+import org.openpipeline.util.CharSpan;
+
+/**
+ * Tests that CsvReader returns the same values as spans and as Strings.
+ */
+public class TestCsvReader extends TestCase {
+
+	public void testSpans() throws Exception {
+		StringBuilder longValue = new StringBuilder();
+		for (int i = 0; i < 5000; i++) {
+			longValue.append((char) ('a' + i % 26));
+		}
+		String csv = "a,b,c\n" 
+			+ "\" one \", \"two, \"\"2\"\"\" ,\n"
+			+ longValue + ",\"multi\nline\",x\n";
+		CsvReader rows = CsvReader.parse(csv);
+		rows.readHeaders();
+
+		assertTrue(rows.readRecord());
+		assertEquals(" one ", rows.getSpan(0).toString());
+		assertEquals("one", rows.getTrimmedSpan(0).toString());
+		assertEquals("two, \"2\"", rows.getTrimmedSpan(1).toString());
+		assertEquals(0, rows.getTrimmedSpan(2).size());
+		assertEquals(0, rows.getSpan(3).size());
+		assertEquals("one", rows.get(0).trim());
+		assertEquals("two, \"2\"", rows.get(1));
+
+		Item item = new Item();
+		CharSpan span = rows.getTrimmedSpan(1);
+		item.getRootNode().addNode("b", span);
+
+		assertTrue(rows.readRecord());
+		assertEquals(longValue.toString(), rows.getSpan(0).toString());
+		assertEquals("multi\nline", rows.getSpan(1).toString());
+		assertEquals("x", rows.get(2));
+		assertEquals(3, rows.getValues().length);
+
+		// the node kept its own copy of the first record's value
+		assertEquals("two, \"2\"", item.getRootNode().getChildren().get(0).getValue().toString());
+
+		assertFalse(rows.readRecord());
+		rows.close();
+	}
+}
@@ -0,0 +1,103 @@
+/*******************************************************************************
+ * Copyright 2010 Dieselpoint, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.openpipeline.pipeline.connector.csvcrawler;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests that CsvSplitter splits a file only at record boundaries, so that
+ * parsing the chunks separately gives the same records as parsing the
+ * whole file.
+ */
+public class TestCsvSplitter extends TestCase {
+
+	private File file;
+
+	@Override
+	protected void tearDown() throws Exception {
+		if (file != null) {
+			file.delete();
+		}
+	}
+
+	public void testSplit() throws Exception {
+		StringBuilder csv = new StringBuilder();
+		csv.append("id,name,notes\r\n");
+		for (int i = 0; i < 2000; i++) {
+			csv.append(i).append(",name").append(i).append(',');
+			if (i % 3 == 0) {
+				// a quoted field with newlines and escaped quotes
+				csv.append("\"line one\nline \"\"two\"\"\n,é中\"");
+			} else {
+				csv.append("plain é");
+			}
+			csv.append("\r\n");
+		}
+		file = File.createTempFile("test", ".csv");
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(csv.toString().getBytes("UTF-8"));
+		out.close();
+
+		List<String> expected = new ArrayList();
+		InputStream in = new FileInputStream(file);
+		parse(in, true, expected);
+		assertEquals(2000, expected.size());
+
+		for (int chunks : new int[] { 1, 2, 7, 64 }) {
+			long[] bounds = CsvSplitter.split(file, chunks);
+			assertEquals(chunks + 1, bounds.length);
+			assertEquals(0, bounds[0]);
+			assertEquals(file.length(), bounds[chunks]);
+
+			List<String> records = new ArrayList();
+			for (int i = 0; i < chunks; i++) {
+				assertTrue(bounds[i] <= bounds[i + 1]);
+				in = new CsvSplitter.ChunkInputStream(file, bounds[i], bounds[i + 1]);
+				parse(in, i == 0, records);
+			}
+			assertEquals(expected, records);
+		}
+	}
+
+	public void testSplittable() {
+		assertTrue(CsvSplitter.isSplittable("UTF-8"));
+		assertTrue(CsvSplitter.isSplittable("ISO-8859-1"));
+		assertFalse(CsvSplitter.isSplittable("UTF-16"));
+	}
+
+	private void parse(InputStream in, boolean hasHeaders, List<String> records) 
+			throws Exception {
+		CsvReader rows = new CsvReader(new InputStreamReader(in, "UTF-8"));
+		if (hasHeaders) {
+			rows.readHeaders();
+			assertEquals(3, rows.getHeaderCount());
+		}
+		while (rows.readRecord()) {
+			records.add(Arrays.asList(rows.getValues()).toString());
+		}
+		rows.close();
+		in.close();
+	}
+}
@@ -0,0 +1,254 @@
+/*******************************************************************************
+ * Copyright 2010 Dieselpoint, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.openpipeline.pipeline.connector.filesystem;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.openpipeline.pipeline.connector.FileScanner;
+import org.openpipeline.pipeline.connector.GenericScanner;
+import org.openpipeline.pipeline.connector.linkqueue.LinkQueue;
+import org.openpipeline.pipeline.item.Item;
+import org.openpipeline.pipeline.stage.Stage;
+import org.openpipeline.pipeline.stage.StageList;
+import org.openpipeline.scheduler.PipelineException;
+import org.openpipeline.util.XMLConfig;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tests that MultiItemXMLFileSystem splits a file into items, and that
+ * GenericScanner processes only the changed items and deletes removed ones.
+ */
+public class TestMultiItemXMLFileSystem extends TestCase {
+
+	static List<String> processed = new ArrayList();
+
+	private File file;
+
+	@Override
+	protected void setUp() throws Exception {
+		file = File.createTempFile("items", ".xml");
+		processed.clear();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		file.delete();
+	}
+
+	public void testIterator() throws Exception {
+		write("<items><item><item_id>1</item_id><title>one</title></item>"
+				+ "<item><item_id>2</item_id><title>two</title></item>"
+				+ "<item><title>no id</title></item></items>");
+		assertTrue(MultiItemXMLFileSystem.isMultiItem(file));
+
+		List<String> names = new ArrayList();
+		List<Long> sigs = new ArrayList();
+		Item item = new Item();
+		FileIterator it = new MultiItemXMLFileSystem(file).getIterator();
+		while (it.hasNext()) {
+			FileSystem entry = it.next();
+			names.add(entry.getFullName());
+			sigs.add(entry.getSignature());
+			assertTrue(entry.getItem(item));
+		}
+		assertEquals("no id", item.getRootNode().getChild("title").getValue().toString());
+
+		assertEquals(3, names.size());
+		assertEquals(file.getAbsolutePath() + "/1", names.get(0));
+		assertEquals(file.getAbsolutePath() + "/2", names.get(1));
+		assertEquals(file.getAbsolutePath() + "#3", names.get(2));
+		assertEquals(file.getAbsolutePath() + "#3", item.getItemId());
+		assertFalse(sigs.get(0).equals(sigs.get(1)));
+
+		// change item 2 only
+		write("<items><item><item_id>1</item_id><title>one</title></item>"
+				+ "<item><item_id>2</item_id><title>changed</title></item></items>");
+		it = new MultiItemXMLFileSystem(file).getIterator();
+		assertTrue(it.hasNext());
+		assertEquals(sigs.get(0).longValue(), it.next().getSignature());
+		assertTrue(it.hasNext());
+		assertFalse(sigs.get(1).longValue() == it.next().getSignature());
+		assertFalse(it.hasNext());
+	}
+
+	public void testNotMultiItem() throws Exception {
+		write("<doc><title>one</title></doc>");
+		assertFalse(MultiItemXMLFileSystem.isMultiItem(file));
+	}
+
+	public void testScan() throws Exception {
+		GenericScanner scanner = newScanner();
+
+		write("<items><item><item_id>1</item_id><title>one</title></item>"
+				+ "<item><item_id>2</item_id><title>two</title></item>"
+				+ "<item><item_id>3</item_id><title>three</title></item></items>");
+		scanner.setStartOfCrawl(1000);
+		scanner.scan(new DiskFileSystem(file));
+		scanner.lookForDeletes();
+		assertEquals("[add 1, add 2, add 3]", processed.toString());
+
+		processed.clear();
+		write("<items><item><item_id>1</item_id><title>one</title></item>"
+				+ "<item><item_id>3</item_id><title>changed</title></item></items>");
+		scanner.setStartOfCrawl(2000);
+		scanner.scan(new DiskFileSystem(file));
+		scanner.lookForDeletes();
+		assertEquals("[add 3, delete 2]", processed.toString());
+	}
+
+	/**
+	 * Two files with the same item_id are tracked separately in the link
+	 * queue, and the pipeline sees the plain item_id.
+	 */
+	public void testSameIdInTwoFiles() throws Exception {
+		File other = File.createTempFile("items", ".xml");
+		try {
+			GenericScanner scanner = newScanner();
+			write(file, "<items><item><item_id>1</item_id><title>one</title></item>"
+					+ "<item><item_id>2</item_id><title>two</title></item></items>");
+			write(other, "<items><item><item_id>1</item_id><title>other</title></item></items>");
+			scanner.setStartOfCrawl(1000);
+			scanner.scan(new DiskFileSystem(file));
+			scanner.scan(new DiskFileSystem(other));
+			scanner.lookForDeletes();
+			assertEquals("[add 1, add 2, add 1]", processed.toString());
+
+			// neither file changed, so nothing is sent
+			processed.clear();
+			scanner.setStartOfCrawl(2000);
+			scanner.scan(new DiskFileSystem(file));
+			scanner.scan(new DiskFileSystem(other));
+			scanner.lookForDeletes();
+			assertEquals("[]", processed.toString());
+
+			// the item is removed from one file only
+			write(other, "<items><item><item_id>3</item_id><title>three</title></item></items>");
+			scanner.setStartOfCrawl(3000);
+			scanner.scan(new DiskFileSystem(file));
+			scanner.scan(new DiskFileSystem(other));
+			scanner.lookForDeletes();
+			assertEquals("[add 3, delete 1]", processed.toString());
+		} finally {
+			other.delete();
+		}
+	}
+
+	public void testGetItemId() throws Exception {
+		String path = file.getAbsolutePath();
+		assertEquals("42", MultiItemXMLFileSystem.getItemId(path + "/42"));
+		assertEquals("a/b", MultiItemXMLFileSystem.getItemId(path + "/a/b"));
+		assertNull(MultiItemXMLFileSystem.getItemId(path));
+
+		// a directory, or an entry in a zip file, is not an XML file
+		File dir = new File(file.getParentFile(), file.getName() + ".dir.xml");
+		dir.mkdir();
+		try {
+			assertNull(MultiItemXMLFileSystem.getItemId(dir.getAbsolutePath() + "/f.txt"));
+		} finally {
+			dir.delete();
+		}
+		File zip = File.createTempFile("entries", ".zip");
+		try {
+			assertNull(MultiItemXMLFileSystem.getItemId(zip.getAbsolutePath() + "/sub/inner.xml/f.txt"));
+		} finally {
+			zip.delete();
+		}
+	}
+
+	private GenericScanner newScanner() throws Exception {
+		XMLConfig params = new XMLConfig();
+		params.addChild("stages").addChild("stage").setProperty("classname",
+				CollectingStage.class.getName());
+		StageList stageList = new StageList();
+		stageList.createPipeline(params);
+		stageList.initialize();
+
+		GenericScanner scanner = new GenericScanner();
+		scanner.setParentConnector(new FileScanner());
+		scanner.setLogger(LoggerFactory.getLogger(getClass()));
+		scanner.setDocLoggingCount(1);
+		scanner.setStageList(stageList);
+		scanner.setLinkQueue(new MapLinkQueue());
+		scanner.setSplitMultiItemXML(true);
+		return scanner;
+	}
+
+	private void write(String xml) throws Exception {
+		write(file, xml);
+	}
+
+	private void write(File file, String xml) throws Exception {
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(xml.getBytes("UTF-8"));
+		out.close();
+	}
+
+	public static class CollectingStage extends Stage {
+		@Override
+		public void processItem(Item item) throws PipelineException {
+			String action = item.getAction() == Item.ACTION_DELETE ? "delete " : "add ";
+			processed.add(action + item.getItemId());
+			super.pushItemDownPipeline(item);
+		}
+	}
+
+	static class MapLinkQueue implements LinkQueue {
+		private Map<String, long[]> map = new HashMap();
+
+		public long getSignature(String id) {
+			long[] entry = map.get(id);
+			return entry == null ? -1 : entry[0];
+		}
+
+		public void update(String id, long signature, long lastCrawl) {
+			map.put(id, new long[] {signature, lastCrawl});
+		}
+
+		public String fetchNextUncrawled(long beforeTimestamp) {
+			for (Map.Entry<String, long[]> entry: map.entrySet()) {
+				if (entry.getValue()[1] < beforeTimestamp) {
+					return entry.getKey();
+				}
+			}
+			return null;
+		}
+
+		public void remove(String id) {
+			map.remove(id);
+		}
+
+		public void close() {
+		}
+
+		public String getName() {
+			return "map";
+		}
+
+		public String getDescription() {
+			return "map";
+		}
+
+		public void setParams(XMLConfig params) {
+		}
+	}
+}
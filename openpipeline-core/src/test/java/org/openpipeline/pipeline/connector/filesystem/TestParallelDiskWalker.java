@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright 2010 Dieselpoint, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.openpipeline.pipeline.connector.filesystem;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.openpipeline.util.FileUtil;
+import org.openpipeline.util.WildcardMatcher;
+
+/**
+ * Tests that ParallelDiskWalker finds the same files as a serial walk,
+ * and applies the include/exclude patterns.
+ */
+public class TestParallelDiskWalker extends TestCase {
+
+	private File root;
+
+	@Override
+	protected void setUp() throws Exception {
+		root = File.createTempFile("walker", "");
+		root.delete();
+		for (int i = 0; i < 5; i++) {
+			for (int j = 0; j < 5; j++) {
+				File dir = new File(root, "dir" + i + "/sub" + j);
+				dir.mkdirs();
+				write(new File(dir, "a.txt"));
+				write(new File(dir, "b.pdf"));
+			}
+		}
+		write(new File(root, "top.txt"));
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		FileUtil.deleteDir(root);
+	}
+
+	public void testWalk() throws Exception {
+		Set<String> found = walk(null, true);
+		assertEquals(51, found.size());
+		assertTrue(found.contains(new File(root, "dir3/sub4/b.pdf").getAbsolutePath()));
+	}
+
+	public void testPatterns() throws Exception {
+		WildcardMatcher matcher = new WildcardMatcher();
+		matcher.setIncludePatterns(Arrays.asList(new String[] {"*.txt"}));
+		matcher.setExcludePatterns(Arrays.asList(new String[] {"*dir2*"}));
+		Set<String> found = walk(matcher, true);
+		assertEquals(21, found.size());
+		for (String name: found) {
+			assertTrue(name.endsWith(".txt"));
+		}
+	}
+
+	public void testNoSubdirs() throws Exception {
+		Set<String> found = walk(null, false);
+		assertEquals(1, found.size());
+	}
+
+	public void testAttributes() throws Exception {
+		ParallelDiskWalker walker = new ParallelDiskWalker(2, 2);
+		walker.setScanSubDirs(false);
+		walker.start(root);
+		DiskFileSystem file = walker.next();
+		assertTrue(file.isFile());
+		assertFalse(file.isDirectory());
+		assertEquals(3, file.getSize());
+		assertEquals(new File(root, "top.txt").lastModified(), file.getLastUpdate());
+		assertNull(walker.next());
+		walker.close();
+	}
+
+	private Set<String> walk(WildcardMatcher matcher, boolean subdirs) throws Exception {
+		// a small queue, so the walker threads have to wait for the consumer
+		ParallelDiskWalker walker = new ParallelDiskWalker(4, 3);
+		walker.setWildcardMatcher(matcher);
+		walker.setScanSubDirs(subdirs);
+		walker.start(root);
+		Set<String> found = new HashSet();
+		DiskFileSystem file;
+		while ((file = walker.next()) != null) {
+			assertTrue(found.add(file.getFullName()));
+		}
+		assertNull(walker.pollError());
+		walker.close();
+		return found;
+	}
+
+	private void write(File file) throws Exception {
+		FileOutputStream out = new FileOutputStream(file);
+		out.write("abc".getBytes());
+		out.close();
+	}
+}
@@ -0,0 +1,230 @@
+/*******************************************************************************
+ * Copyright 2010 Dieselpoint, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.openpipeline.pipeline.connector.filesystem;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+
+import org.openpipeline.util.ByteArray;
+
+/**
+ * Tests that TarFileSystem reads plain and gzipped tar files, long names,
+ * and archives nested inside other archives.
+ */
+public class TestTarFileSystem extends TestCase {
+
+	private File file;
+
+	@Override
+	protected void tearDown() throws Exception {
+		if (file != null) {
+			file.delete();
+		}
+	}
+
+	public void testTar() throws Exception {
+		ByteArrayOutputStream tar = new ByteArrayOutputStream();
+		addEntry(tar, "dir/", '5', new byte[0]);
+		addEntry(tar, "dir/a.txt", '0', "hello".getBytes("UTF-8"));
+		addEntry(tar, "dir/b.txt", '0', new byte[1000]);
+		addEntry(tar, "link", '2', new byte[0]);
+		endArchive(tar);
+
+		file = File.createTempFile("test", ".tar");
+		write(file, tar.toByteArray(), false);
+
+		List<String> names = new ArrayList();
+		List<String> contents = new ArrayList();
+		scan(new TarFileSystem(file), names, contents);
+
+		assertEquals(2, names.size());
+		assertEquals(file.getAbsolutePath() + "/dir/a.txt", names.get(0));
+		assertEquals("hello", contents.get(0));
+		assertEquals(1000, contents.get(1).length());
+	}
+
+	public void testGzipAndLongName() throws Exception {
+		StringBuilder longName = new StringBuilder();
+		while (longName.length() < 150) {
+			longName.append("longdirectoryname/");
+		}
+		longName.append("c.txt");
+
+		ByteArrayOutputStream tar = new ByteArrayOutputStream();
+		addEntry(tar, "././@LongLink", 'L', (longName + "\0").getBytes("UTF-8"));
+		addEntry(tar, longName.substring(0, 99), '0', "long".getBytes("UTF-8"));
+		addEntry(tar, "d.txt", '0', "short".getBytes("UTF-8"));
+		endArchive(tar);
+
+		file = File.createTempFile("test", ".tgz");
+		write(file, tar.toByteArray(), true);
+
+		List<String> names = new ArrayList();
+		List<String> contents = new ArrayList();
+		scan(new TarFileSystem(file), names, contents);
+
+		assertEquals(2, names.size());
+		assertEquals(file.getAbsolutePath() + "/" + longName, names.get(0));
+		assertEquals("long", contents.get(0));
+		assertEquals("short", contents.get(1));
+	}
+
+	public void testNested() throws Exception {
+		ByteArrayOutputStream inner = new ByteArrayOutputStream();
+		addEntry(inner, "inner.txt", '0', "inner".getBytes("UTF-8"));
+		endArchive(inner);
+
+		ByteArrayOutputStream zip = new ByteArrayOutputStream();
+		ZipOutputStream zipOut = new ZipOutputStream(zip);
+		zipOut.putNextEntry(new ZipEntry("zipped.txt"));
+		zipOut.write("zipped".getBytes("UTF-8"));
+		zipOut.close();
+
+		ByteArrayOutputStream outer = new ByteArrayOutputStream();
+		addEntry(outer, "inner.tar", '0', inner.toByteArray());
+		addEntry(outer, "inner.zip", '0', zip.toByteArray());
+		addEntry(outer, "outer.txt", '0', "outer".getBytes("UTF-8"));
+		endArchive(outer);
+
+		TarFileSystem tarFile = new TarFileSystem("/outer.tar", 
+				new ByteArrayInputStream(outer.toByteArray()), false);
+		FileIterator it = tarFile.getIterator();
+		List<String> names = new ArrayList();
+		List<String> contents = new ArrayList();
+		while (it.hasNext()) {
+			FileSystem entry = it.next();
+			String name = entry.getFullName();
+			if (name.endsWith(".tar")) {
+				scan(new TarFileSystem(name, entry.getInputStream(), false), names, contents);
+			} else if (name.endsWith(".zip")) {
+				scan(new ZipFileSystem(name, entry.getInputStream()), names, contents);
+			} else {
+				names.add(name);
+				contents.add(read(entry.getInputStream()));
+			}
+		}
+
+		assertEquals(3, names.size());
+		assertEquals("/outer.tar/inner.tar/inner.txt", names.get(0));
+		assertEquals("inner", contents.get(0));
+		assertEquals("/outer.tar/inner.zip/zipped.txt", names.get(1));
+		assertEquals("zipped", contents.get(1));
+		assertEquals("/outer.tar/outer.txt", names.get(2));
+		assertEquals("outer", contents.get(2));
+	}
+
+	public void testBadChecksum() throws Exception {
+		ByteArrayOutputStream tar = new ByteArrayOutputStream();
+		addEntry(tar, "a.txt", '0', "hello".getBytes("UTF-8"));
+		byte[] bytes = tar.toByteArray();
+		bytes[0] = 'b';
+
+		TarFileSystem tarFile = new TarFileSystem("/bad.tar", 
+				new ByteArrayInputStream(bytes), false);
+		try {
+			tarFile.getIterator().hasNext();
+			fail("Expected an IOException");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	private void scan(FileSystem container, List<String> names, List<String> contents)
+			throws Exception {
+		FileIterator it = container.getIterator();
+		while (it.hasNext()) {
+			FileSystem entry = it.next();
+			names.add(entry.getFullName());
+			InputStream in = entry.getInputStream();
+			contents.add(read(in));
+			in.close(); // must not close the archive
+		}
+	}
+
+	private String read(InputStream in) throws IOException {
+		ByteArray bytes = new ByteArray();
+		bytes.append(in);
+		return new String(bytes.getArray(), 0, bytes.size(), "UTF-8");
+	}
+
+	private void write(File file, byte[] bytes, boolean gzip) throws IOException {
+		FileOutputStream fileOut = new FileOutputStream(file);
+		if (gzip) {
+			GZIPOutputStream out = new GZIPOutputStream(fileOut);
+			out.write(bytes);
+			out.close();
+		} else {
+			fileOut.write(bytes);
+			fileOut.close();
+		}
+	}
+
+	/**
+	 * Write a ustar header and the data, padded to a whole block.
+	 */
+	private void addEntry(ByteArrayOutputStream out, String name, char type, 
+			byte[] data) throws IOException {
+		byte[] header = new byte[512];
+		byte[] nameBytes = name.getBytes("UTF-8");
+		System.arraycopy(nameBytes, 0, header, 0, nameBytes.length);
+		putOctal(header, 100, 8, 0644);
+		putOctal(header, 108, 8, 0);
+		putOctal(header, 116, 8, 0);
+		putOctal(header, 124, 12, data.length);
+		putOctal(header, 136, 12, 1300000000L);
+		header[156] = (byte) type;
+		System.arraycopy("ustar\00000".getBytes("US-ASCII"), 0, header, 257, 8);
+
+		for (int i = 148; i < 156; i++) {
+			header[i] = ' ';
+		}
+		long sum = 0;
+		for (byte b: header) {
+			sum += b & 0xff;
+		}
+		putOctal(header, 148, 7, sum);
+
+		out.write(header);
+		out.write(data);
+		out.write(new byte[(512 - data.length % 512) % 512]);
+	}
+
+	private void endArchive(ByteArrayOutputStream out) throws IOException {
+		out.write(new byte[1024]);
+	}
+
+	private void putOctal(byte[] header, int offset, int len, long value) {
+		String str = Long.toOctalString(value);
+		while (str.length() < len - 1) {
+			str = "0" + str;
+		}
+		for (int i = 0; i < len - 1; i++) {
+			header[offset + i] = (byte) str.charAt(i);
+		}
+		header[offset + len - 1] = 0;
+	}
+}
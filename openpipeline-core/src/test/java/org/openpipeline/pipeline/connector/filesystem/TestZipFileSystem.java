@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * Copyright 2010 Dieselpoint, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.openpipeline.pipeline.connector.filesystem;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+
+import org.openpipeline.util.ByteArray;
+
+/**
+ * Tests that ZipFileSystem reads the entries of a zip file on disk 
+ * independently of each other, and fetches single entries.
+ */
+public class TestZipFileSystem extends TestCase {
+
+	private File file;
+
+	@Override
+	protected void setUp() throws Exception {
+		file = File.createTempFile("test", ".zip");
+		ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file));
+		out.putNextEntry(new ZipEntry("dir/"));
+		for (int i = 0; i < 20; i++) {
+			out.putNextEntry(new ZipEntry("dir/file" + i + ".txt"));
+			for (int j = 0; j < 1000; j++) {
+				out.write(("entry " + i + "\n").getBytes("UTF-8"));
+			}
+		}
+		out.close();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		file.delete();
+	}
+
+	public void testParallelRead() throws Exception {
+		ZipFileSystem zip = new ZipFileSystem(file);
+		assertTrue(zip.isRandomAccess());
+
+		// open all the streams first, then read them on separate threads
+		final List<FileSystem> entries = new ArrayList();
+		final List<InputStream> streams = new ArrayList();
+		FileIterator it = zip.getIterator();
+		while (it.hasNext()) {
+			FileSystem entry = it.next();
+			entries.add(entry);
+			streams.add(entry.getInputStream());
+		}
+		assertEquals(20, entries.size());
+
+		final String[] contents = new String[streams.size()];
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			final int first = t;
+			threads[t] = new Thread() {
+				public void run() {
+					try {
+						for (int i = first; i < contents.length; i += 4) {
+							contents[i] = read(streams.get(i));
+						}
+					} catch (Exception e) {
+						e.printStackTrace();
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread: threads) {
+			thread.join();
+		}
+		zip.close();
+
+		for (int i = 0; i < contents.length; i++) {
+			FileSystem entry = entries.get(i);
+			assertEquals(file.getAbsolutePath() + "/dir/file" + i + ".txt", entry.getFullName());
+			assertEquals(entry.getSize(), contents[i].length());
+			assertTrue(contents[i].startsWith("entry " + i + "\n"));
+		}
+	}
+
+	public void testFetch() throws Exception {
+		ZipFileSystem zip = new ZipFileSystem(file);
+		try {
+			String name = file.getAbsolutePath() + "/dir/file7.txt";
+			FileSystem entry = zip.fetch(name);
+			assertNotNull(entry);
+			assertEquals(name, entry.getFullName());
+			assertTrue(read(entry.getInputStream()).startsWith("entry 7\n"));
+
+			assertNull(zip.fetch(file.getAbsolutePath() + "/dir/missing.txt"));
+			assertNull(zip.fetch(file.getAbsolutePath() + "/dir/"));
+			assertNull(zip.fetch("/some/other.zip/dir/file7.txt"));
+		} finally {
+			zip.close();
+		}
+	}
+
+	private String read(InputStream in) throws Exception {
+		ByteArray bytes = new ByteArray();
+		bytes.append(in);
+		in.close();
+		return new String(bytes.getArray(), 0, bytes.size(), "UTF-8");
+	}
+}
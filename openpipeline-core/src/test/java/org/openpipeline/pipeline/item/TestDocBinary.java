@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Copyright 2010 Dieselpoint, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.openpipeline.pipeline.item;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import junit.framework.TestCase;
+
+import org.openpipeline.util.ByteArray;
+import org.openpipeline.util.ByteBufferInputStream;
+
+/**
+ * Tests access to a DocBinary that is backed by a local file.
+ */
+public class TestDocBinary extends TestCase {
+
+	private File file;
+	private byte[] content;
+
+	@Override
+	protected void setUp() throws Exception {
+		content = new byte[10000];
+		for (int i = 0; i < content.length; i++) {
+			content[i] = (byte) i;
+		}
+		file = File.createTempFile("docbinary", ".bin");
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(content);
+		out.close();
+	}
+
+	@Override
+	protected void tearDown() {
+		file.delete();
+	}
+
+	public void testMappedBuffer() throws Exception {
+		DocBinary docBinary = new DocBinary();
+		assertNull(docBinary.getMappedBuffer());
+		assertNull(docBinary.getFileChannel());
+
+		docBinary.setFile(file);
+		ByteBuffer buf = docBinary.getMappedBuffer();
+		assertEquals(content.length, buf.remaining());
+
+		InputStream in = new ByteBufferInputStream(buf);
+		assertEquals(content.length, in.available());
+		ByteArray arr = DocBinary.getBinary(in);
+		assertEquals(content.length, arr.size());
+		for (int i = 0; i < content.length; i++) {
+			assertEquals(content[i], arr.getArray()[i]);
+		}
+		assertEquals(-1, in.read());
+	}
+
+	public void testFileChannel() throws Exception {
+		DocBinary docBinary = new DocBinary();
+		docBinary.setFile(file);
+		FileChannel channel = docBinary.getFileChannel();
+		try {
+			assertEquals(content.length, channel.size());
+		} finally {
+			channel.close();
+		}
+	}
+
+	public void testBufferedCopy() throws Exception {
+		DocBinary docBinary = new DocBinary();
+		docBinary.setName(file.getPath());
+		docBinary.setFile(file);
+		docBinary.setInputStream(new FileInputStream(file));
+
+		DocBinary copy = docBinary.getBufferedCopy();
+		assertSame(file, copy.getFile());
+		assertFalse(copy.getInputStream() instanceof ByteArray);
+		ByteArray arr = DocBinary.getBinary(copy.getInputStream());
+		copy.getInputStream().close();
+		assertEquals(content.length, arr.size());
+		assertEquals(content[content.length - 1], arr.getArray()[content.length - 1]);
+	}
+}
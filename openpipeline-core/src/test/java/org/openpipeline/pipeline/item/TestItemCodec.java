@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright 2010 Dieselpoint, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.openpipeline.pipeline.item;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+import org.openpipeline.util.ByteArray;
+import org.openpipeline.util.FastStringBuffer;
+
+/**
+ * Round-trips items through the binary wire format.
+ */
+public class TestItemCodec extends TestCase {
+
+	public void test() throws Exception {
+		Item first = new Item();
+		first.setItemId("doc1");
+		first.setAction(Item.ACTION_UPDATE);
+		AttributeDef def = new AttributeDef();
+		def.setAttributeId("title");
+		def.put("datatype", "C");
+		first.getAttributeDefs().put("title", def);
+
+		Node title = first.getRootNode().addNode("title", "Caf\u00e9 \u4e2d\u6587 <&>");
+		title.addAttribute("lang", "fr");
+		Node body = first.getRootNode().addNode("body");
+		body.addValue("one two");
+		body.addNode("b", "three");
+		TokenList tokens = new TokenList();
+		Token token = new Token();
+		token.setBuffer(first.getBuffer());
+		token.setOffset(title.getValue().getOffset());
+		token.setSize(4);
+		token.setType(7);
+		tokens.append(token);
+		title.putAnnotations("token", tokens);
+
+		DocBinary docBinary = new DocBinary();
+		docBinary.setName("doc1.txt");
+		docBinary.setSize(5);
+		docBinary.setInputStream(new ByteArrayInputStream("hello".getBytes("UTF-8")));
+		first.setDocBinary(docBinary);
+
+		Item second = new Item();
+		second.getRootNode().addNode("title", "second");
+
+		ItemCodec codec = new ItemCodec();
+		codec.setIncludeDocBinary(true);
+		ByteArray buf = new ByteArray();
+		codec.writeHeader(buf, 2);
+		codec.write(first, buf);
+		codec.write(second, buf);
+
+		// the sender's stream was consumed, so the item now carries an in-memory copy
+		assertEquals("hello", read(first.getDocBinary()));
+
+		Item target = new Item();
+		ItemCodec reader = new ItemCodec();
+		assertEquals(2, reader.readHeader(buf));
+
+		reader.read(buf, target);
+		assertEquals(xml(first), xml(target));
+		assertEquals("doc1", target.getItemId());
+		assertEquals(Item.ACTION_UPDATE, target.getAction());
+		assertEquals("C", target.getAttributeDefs().get("title").get("datatype"));
+		TokenList readTokens = (TokenList) target.getRootNode().getChild("title").getAnnotations("token");
+		assertEquals("Caf\u00e9", readTokens.get(0).toString());
+		assertEquals(7, readTokens.get(0).getType());
+		assertEquals("doc1.txt", target.getDocBinary().getName());
+		assertEquals(5, target.getDocBinary().getSize());
+		assertEquals("hello", read(target.getDocBinary()));
+
+		reader.read(buf, target);
+		assertEquals(xml(second), xml(target));
+		assertNull(target.getDocBinary());
+		assertEquals(buf.size(), buf.getPosition());
+	}
+
+	public void testCorrupt() throws Exception {
+		Item item = new Item();
+		item.getRootNode().addNode("title", "some text");
+		ItemCodec codec = new ItemCodec();
+		ByteArray buf = new ByteArray();
+		codec.writeHeader(buf, 1);
+		codec.write(item, buf);
+		buf.setSize(buf.size() - 3);
+
+		ItemCodec reader = new ItemCodec();
+		reader.readHeader(buf);
+		try {
+			reader.read(buf, new Item());
+			fail();
+		} catch (IOException e) {
+			// expected
+		}
+
+		try {
+			reader.readHeader(new ByteArray("<items>", false));
+			fail();
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	private String xml(Item item) {
+		FastStringBuffer buf = new FastStringBuffer();
+		item.appendXMLtoBuffer(buf, true);
+		return buf.toString();
+	}
+
+	private String read(DocBinary docBinary) throws IOException {
+		return DocBinary.getBinary(docBinary.getInputStream()).toASCII();
+	}
+}
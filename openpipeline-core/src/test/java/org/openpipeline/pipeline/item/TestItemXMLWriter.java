@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * Copyright 2010 Dieselpoint, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.openpipeline.pipeline.item;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.openpipeline.util.FastStringBuffer;
+
+/**
+ * Checks that the streaming writer produces the same XML as Item.appendXMLtoBuffer().
+ */
+public class TestItemXMLWriter extends TestCase {
+
+	public void test() throws Exception {
+		Item item = new Item();
+		AttributeDef def = new AttributeDef();
+		def.setAttributeId("title");
+		def.put("datatype", "C");
+		item.getAttributeDefs().put("title", def);
+		Node title = item.getRootNode().addNode("title", "Caf\u00e9 \u4e2d\u6587 <a & \"b\">");
+		title.addAttribute("lang", "f<r>");
+		title.putAnnotations("note", "<x/>");
+		Node body = item.getRootNode().addNode("body");
+		body.addValue("first");
+		body.addNode("b", "bold");
+		StringBuilder big = new StringBuilder();
+		for (int i = 0; i < 5000; i++) {
+			big.append("line ").append(i).append(" & more\n");
+		}
+		item.getRootNode().addNode("text", big.toString());
+
+		Item second = new Item();
+		second.getRootNode().addNode("title", "second");
+		List<Item> items = new ArrayList();
+		items.add(item);
+		items.add(second);
+
+		for (boolean annotations: new boolean[] {false, true}) {
+			FastStringBuffer expected = new FastStringBuffer();
+			expected.append("<?xml version=\"1.0\" encoding=\"utf-8\"?>");
+			item.appendXMLtoBuffer(expected, annotations);
+			assertEquals(expected.toString(), write(item, null, annotations));
+
+			expected.clear();
+			Item.appendXMLtoBuffer(items, expected, annotations);
+			assertEquals(expected.toString(), write(null, items, annotations).substring(38));
+		}
+
+		// appendWithXMLEncode() turns a surrogate pair into spaces when the
+		// text also has chars to escape. The writer keeps it
+		second.clear();
+		second.getRootNode().addNode("title", "\ud83d\ude00 & ok");
+		assertTrue(write(second, null, false).contains("<title>\ud83d\ude00 &amp; ok</title>"));
+	}
+
+	private String write(Item item, List<Item> items, boolean annotations) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ItemXMLWriter writer = new ItemXMLWriter(64);
+		writer.setOutputStream(out);
+		writer.setIncludeAnnotations(annotations);
+		writer.writeDeclaration();
+		if (item != null) {
+			writer.write(item);
+		} else {
+			writer.write(items);
+		}
+		writer.flush();
+		return new String(out.toByteArray(), "UTF-8");
+	}
+}
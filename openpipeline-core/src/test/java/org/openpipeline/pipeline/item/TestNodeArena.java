@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright 2010 Dieselpoint, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.openpipeline.pipeline.item;
+
+import junit.framework.TestCase;
+
+import org.openpipeline.util.FastStringBuffer;
+
+/**
+ * Tests that an Item recycles its nodes on clear() without
+ * leaking content from one record into the next.
+ */
+public class TestNodeArena extends TestCase {
+
+	public void testReuse() throws Exception {
+		Item item = new Item();
+		Node root = item.getRootNode();
+		Node first = root.addNode("title", "first title");
+		first.addAttribute("lang", "en");
+		first.putAnnotations("foo", "bar");
+		root.addNode("body").addNode("p", "text");
+		assertEquals("<item><title lang=\"en\">first title</title><body><p>text</p></body></item>",
+				xml(item));
+
+		item.clear();
+		assertSame(root, item.getRootNode());
+		Node second = item.getRootNode().addNode("title", "second");
+		assertSame(first, second);
+		assertFalse(second.hasAttributes());
+		assertNull(second.getAnnotations("foo"));
+		assertEquals("<item><title>second</title></item>", xml(item));
+	}
+
+	public void testCopy() throws Exception {
+		Item source = new Item();
+		Item target = new Item();
+		for (int i = 0; i < 3; i++) {
+			source.clear();
+			source.setItemId("id" + i);
+			source.getRootNode().addNode("field", "value " + i).addAttribute("n", "" + i);
+			source.copyTo(target);
+			assertEquals(xml(source), xml(target));
+		}
+		source.clear();
+		assertEquals("<item><field n=\"2\">value 2</field></item>", xml(target));
+	}
+
+	private String xml(Item item) {
+		FastStringBuffer buf = new FastStringBuffer();
+		item.appendXMLtoBuffer(buf);
+		return buf.toString();
+	}
+}
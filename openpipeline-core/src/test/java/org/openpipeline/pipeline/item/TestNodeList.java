@@ -0,0 +1,151 @@
+/*******************************************************************************
+ * Copyright 2010 Dieselpoint, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.openpipeline.pipeline.item;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests child lookups by name on nodes wide enough to be indexed.
+ */
+public class TestNodeList extends TestCase {
+
+	public void testWideNode() throws Exception {
+		Item item = new Item();
+		Node root = item.getRootNode();
+		for (int i = 0; i < 100; i++) {
+			root.addNode("col" + i, "value" + i);
+		}
+		assertEquals("value0", root.getChildValue("col0"));
+		assertEquals("value99", root.getChildValue("col99"));
+		assertNull(root.getChild("missing"));
+
+		// appended after the index was built
+		root.addNode("col100", "value100");
+		root.addNode("col5", "second");
+		assertEquals("value100", root.getChildValue("col100"));
+		assertEquals("value5", root.getChildValue("col5"));
+
+		// renamed and removed
+		root.getChild("col5").setName("renamed");
+		assertEquals("second", root.getChildValue("col5"));
+		assertEquals("value5", root.getChildValue("renamed"));
+		root.getChild("col5").remove();
+		assertNull(root.getChild("col5"));
+		assertEquals("value6", root.getChildValue("col6"));
+
+		int id = NodeNames.intern("col42");
+		assertEquals("value42", root.getChildValue(id));
+	}
+
+	public void testDepthFirstOrder() throws Exception {
+		Item item = new Item();
+		Node root = item.getRootNode();
+		root.addNode("group").addNode("field", "nested");
+		for (int i = 0; i < 30; i++) {
+			root.addNode("col" + i, "value" + i);
+		}
+		root.addNode("field", "direct");
+
+		// the nested one comes first in document order
+		assertEquals("nested", root.getChildValue("field"));
+		root.getChild("group").remove();
+		assertEquals("direct", root.getChildValue("field"));
+	}
+
+	/**
+	 * A list whose nodes have no children is searched by the index alone.
+	 * It stops being flat as soon as one of its nodes gets children, however
+	 * they are added.
+	 */
+	public void testFlat() throws Exception {
+		Item item = new Item();
+		Node root = item.getRootNode();
+		for (int i = 0; i < 1000; i++) {
+			root.addNode("col" + i, "value" + i);
+		}
+		NodeList children = root.getChildren();
+		assertTrue(children.isFlat());
+		assertEquals("value999", root.getChildValue("col999"));
+		assertNull(root.getChild("missing"));
+
+		// a child that gets a child after the index is built
+		root.getChild("col998").addNode("field", "nested");
+		assertFalse(children.isFlat());
+		assertEquals("nested", root.getChildValue("field"));
+
+		// a text value that is demoted to a child
+		Node row = root.addNode("row");
+		for (int i = 0; i < 20; i++) {
+			row.addNode("col" + i, "value" + i);
+		}
+		assertTrue(row.getChildren().isFlat());
+		row.getChild("col3").addNode("inner", "x");
+		assertFalse(row.getChildren().isFlat());
+		assertEquals("x", row.getChildValue("inner"));
+
+		// a node that already has children when it's appended, the way
+		// ItemCodec builds the tree
+		Node other = new Item().getRootNode().addNode("group");
+		for (int i = 0; i < 20; i++) {
+			other.addNode("col" + i, "value" + i);
+		}
+		Node sub = new Node(other.getItem(), null);
+		sub.setName("sub");
+		sub.addNode("deep", "found");
+		assertTrue(other.getChildren().isFlat());
+		sub.setParent(other);
+		other.getChildren().append(sub);
+		assertFalse(other.getChildren().isFlat());
+		assertEquals("found", other.getChildValue("deep"));
+
+		children.clear();
+		assertTrue(children.isFlat());
+	}
+
+	public void testWideAttributes() throws Exception {
+		Item item = new Item();
+		Node node = item.getRootNode().addNode("row");
+		for (int i = 0; i < 40; i++) {
+			node.addAttribute("a" + i, "v" + i);
+		}
+		assertEquals("v17", node.getAttribute("a17").toString());
+		assertEquals("v39", node.getAttribute(NodeNames.intern("a39")).toString());
+		assertNull(node.getAttribute("b"));
+	}
+
+	/**
+	 * Adding attributes to a node must not throw away the index of its
+	 * parent's children, or the other way around.
+	 */
+	public void testIndexesKept() throws Exception {
+		Item item = new Item();
+		Node root = item.getRootNode();
+		for (int i = 0; i < 20; i++) {
+			root.addNode("row" + i);
+		}
+		for (int i = 0; i < 20; i++) {
+			root.addAttribute("a" + i, "v" + i);
+		}
+		assertEquals(5, root.getChildren().indexOf("row5"));
+		assertEquals(5, root.getAttributes().indexOf("a5"));
+
+		root.addAttribute("b", "x");
+		root.getChild("row3").addAttribute("c", "y");
+		assertTrue(root.getChildren().isIndexValid());
+		assertTrue(root.getAttributes().isIndexValid());
+		assertEquals(20, root.getAttributes().indexOf("b"));
+	}
+}
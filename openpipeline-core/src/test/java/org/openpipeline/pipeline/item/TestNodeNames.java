@@ -0,0 +1,50 @@
+/*******************************************************************************
+ * Copyright 2010 Dieselpoint, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.openpipeline.pipeline.item;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the interned node name ids.
+ */
+public class TestNodeNames extends TestCase {
+
+	public void test() throws Exception {
+		Item item = new Item();
+		Node title = item.getRootNode().addNode("testnodenames-title", "hello");
+		title.addAttribute("testnodenames-lang", "en");
+		Node body = item.getRootNode().addNode("testnodenames-body", "world");
+
+		// not interned yet
+		assertEquals(NodeNames.NO_ID, NodeNames.lookup("testnodenames-title"));
+		assertEquals(NodeNames.NO_ID, title.getNameId());
+
+		// a name interned after the node was created is still picked up
+		int titleId = NodeNames.intern("testnodenames-title");
+		assertEquals(titleId, NodeNames.intern("testnodenames-title"));
+		assertEquals("testnodenames-title", NodeNames.getName(titleId));
+		assertEquals(titleId, title.getNameId());
+		assertEquals(NodeNames.NO_ID, body.getNameId());
+
+		int langId = NodeNames.intern("testnodenames-lang");
+		assertEquals("en", title.getAttribute(langId).toString());
+		assertEquals("hello", item.getRootNode().getChildValue(titleId));
+
+		title.setName("testnodenames-body");
+		assertEquals(NodeNames.NO_ID, title.getNameId());
+		assertEquals(NodeNames.NO_ID, NodeNames.intern(null));
+	}
+}
@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright 2010 Dieselpoint, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.openpipeline.pipeline.item;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+import junit.framework.TestCase;
+
+import org.openpipeline.util.ByteArray;
+
+/**
+ * Tests that a SpillBuffer keeps small content in memory, moves large
+ * content to disk, and accounts for it in the BinaryMemoryBudget.
+ */
+public class TestSpillBuffer extends TestCase {
+
+	private long oldMax;
+
+	@Override
+	protected void setUp() {
+		oldMax = BinaryMemoryBudget.getMaxBytes();
+	}
+
+	@Override
+	protected void tearDown() {
+		BinaryMemoryBudget.setMaxBytes(oldMax);
+	}
+
+	public void testInMemory() throws Exception {
+		long used = BinaryMemoryBudget.getUsedBytes();
+		SpillBuffer buf = new SpillBuffer(100000);
+		buf.append(new ByteArrayInputStream(data(5000)));
+		assertFalse(buf.isSpilled());
+		assertEquals(5000, buf.size());
+		assertTrue(BinaryMemoryBudget.getUsedBytes() >= used + 5000);
+
+		// can be read more than once
+		check(buf.getInputStream(), 5000);
+		check(buf.getInputStream(), 5000);
+
+		buf.release();
+		assertEquals(used, BinaryMemoryBudget.getUsedBytes());
+	}
+
+	public void testOverThreshold() throws Exception {
+		long used = BinaryMemoryBudget.getUsedBytes();
+		long spills = BinaryMemoryBudget.getSpillCount();
+		SpillBuffer buf = new SpillBuffer(10000);
+		byte[] data = data(50000);
+		for (int i = 0; i < data.length; i += 1000) {
+			buf.write(data, i, 1000);
+		}
+		assertTrue(buf.isSpilled());
+		assertEquals(used, BinaryMemoryBudget.getUsedBytes());
+		assertEquals(50000, buf.size());
+
+		InputStream in = buf.getInputStream();
+		check(in, 50000);
+		in.close();
+		assertEquals(spills + 1, BinaryMemoryBudget.getSpillCount());
+		buf.release();
+	}
+
+	public void testBudgetExhausted() throws Exception {
+		BinaryMemoryBudget.setMaxBytes(BinaryMemoryBudget.getUsedBytes() + 8192);
+		SpillBuffer first = new SpillBuffer(100000);
+		first.write(data(8000));
+		assertFalse(first.isSpilled());
+
+		SpillBuffer second = new SpillBuffer(100000);
+		second.write(data(8000));
+		assertTrue(second.isSpilled());
+
+		InputStream in = second.getInputStream();
+		check(in, 8000);
+		in.close();
+		first.release();
+		second.release();
+	}
+
+	private byte[] data(int len) {
+		byte[] data = new byte[len];
+		for (int i = 0; i < len; i++) {
+			data[i] = (byte) (i % 251);
+		}
+		return data;
+	}
+
+	private void check(InputStream in, int len) throws Exception {
+		ByteArray arr = DocBinary.getBinary(in);
+		assertEquals(len, arr.size());
+		for (int i = 0; i < len; i++) {
+			assertEquals((byte) (i % 251), arr.getArray()[i]);
+		}
+	}
+}
@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * Copyright 2010 Dieselpoint, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.openpipeline.pipeline.stage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.openpipeline.pipeline.item.Item;
+import org.openpipeline.scheduler.PipelineException;
+import org.openpipeline.util.XMLConfig;
+
+/**
+ * Make sure items that pass through an AsyncBoundary arrive intact and in
+ * order, even though the caller reuses the same Item object.
+ */
+public class TestAsyncBoundary extends TestCase {
+
+	static List<String> received = new ArrayList<String>();
+
+	public void test() throws PipelineException {
+		XMLConfig params = new XMLConfig();
+		XMLConfig stages = params.addChild("stages");
+		XMLConfig boundary = stages.addChild("stage");
+		boundary.setProperty("classname", AsyncBoundary.class.getName());
+		boundary.setProperty("ring-size", "4");
+		stages.addChild("stage").setProperty("classname", SlowStage.class.getName());
+
+		StageList stageList = new StageList();
+		stageList.createPipeline(params);
+		stageList.initialize();
+
+		int itemCount = 200;
+		Item item = new Item();
+		for (int i = 0; i < itemCount; i++) {
+			item.clear();
+			item.setItemId("item" + i);
+			item.getRootNode().addNode("num", i + "");
+			stageList.processItem(item);
+		}
+		stageList.close();
+
+		assertEquals(itemCount, received.size());
+		for (int i = 0; i < itemCount; i++) {
+			assertEquals("item" + i + "/" + i, received.get(i));
+		}
+	}
+
+	public static class SlowStage extends Stage {
+		@Override
+		public void processItem(Item item) throws PipelineException {
+			if (received.size() % 50 == 0) {
+				try {
+					Thread.sleep(10);
+				} catch (InterruptedException e) {
+					throw new PipelineException(e);
+				}
+			}
+			received.add(item.getItemId() + "/" + item.getRootNode().getChildValue("num"));
+		}
+	}
+}
@@ -0,0 +1,194 @@
+/*******************************************************************************
+ * Copyright 2010 Dieselpoint, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.openpipeline.pipeline.stage;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.openpipeline.pipeline.item.DocBinary;
+import org.openpipeline.pipeline.item.Item;
+import org.openpipeline.scheduler.PipelineException;
+import org.openpipeline.util.XMLConfig;
+
+/**
+ * Make sure a StageList with a batch size passes items through a stage
+ * that only implements processItem() and delivers them in batches to
+ * a stage that implements processBatch().
+ */
+public class TestBatchProcessing extends TestCase {
+
+	static List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<Integer>());
+	static List<String> received = Collections.synchronizedList(new ArrayList<String>());
+	static List<String> single = Collections.synchronizedList(new ArrayList<String>());
+
+	public void test() throws PipelineException {
+		StageList stageList = newStageList();
+
+		Item item = new Item();
+		for (int i = 0; i < 25; i++) {
+			item.clear();
+			item.setItemId("item" + i);
+			stageList.processItem(item);
+		}
+		stageList.close();
+
+		assertEquals("[10, 10, 5]", batchSizes.toString());
+		assertEquals(25, received.size());
+		for (int i = 0; i < 25; i++) {
+			assertEquals("item" + i + "/marked", received.get(i));
+		}
+	}
+
+	/**
+	 * Batched items stay counted against the admission limit until the
+	 * batch is processed.
+	 */
+	public void testAdmission() throws PipelineException {
+		long maxBytes = ItemAdmission.getMaxBytes();
+		ItemAdmission.setMaxBytes(1024 * 1024 * 1024);
+		try {
+			StageList stageList = newStageList();
+			Item item = new Item();
+			for (int i = 0; i < 5; i++) {
+				item.clear();
+				item.setItemId("item" + i);
+				stageList.processItem(item);
+			}
+			assertTrue(ItemAdmission.getInFlightBytes() > 0);
+			stageList.close();
+			assertEquals(0, ItemAdmission.getInFlightBytes());
+		} finally {
+			ItemAdmission.setMaxBytes(maxBytes);
+		}
+	}
+
+	/**
+	 * An item with a stream is not held in the batch. The batch before it
+	 * is processed, and then the item by itself.
+	 */
+	public void testStream() throws PipelineException {
+		StageList stageList = newStageList();
+		Item item = new Item();
+		for (int i = 0; i < 3; i++) {
+			item.clear();
+			item.setItemId("item" + i);
+			if (i == 1) {
+				DocBinary docBinary = new DocBinary();
+				docBinary.setInputStream(new ByteArrayInputStream(new byte[10]));
+				item.setDocBinary(docBinary);
+			}
+			stageList.processItem(item);
+		}
+		stageList.close();
+
+		assertEquals("[1, 1]", batchSizes.toString());
+		assertEquals("[item0/marked, item2/marked]", received.toString());
+		assertEquals("[item1/marked]", single.toString());
+	}
+
+	/**
+	 * flushBatch() processes a partial batch without waiting for the
+	 * next item.
+	 */
+	public void testFlushBatch() throws PipelineException {
+		StageList stageList = newStageList();
+		Item item = new Item();
+		for (int i = 0; i < 3; i++) {
+			item.clear();
+			item.setItemId("item" + i);
+			stageList.processItem(item);
+		}
+		assertEquals(0, received.size());
+		stageList.flushBatch();
+		assertEquals("[3]", batchSizes.toString());
+		stageList.close();
+	}
+
+	/**
+	 * A pool worker that runs out of work processes its partial batch once
+	 * the batch timeout has passed, without another item or a flush.
+	 */
+	public void testPoolTimeout() throws Exception {
+		XMLConfig params = newParams();
+		params.setProperty("batch-timeout", "100");
+		PipelinePool pool = new PipelinePool();
+		pool.createPipelines(params, 1);
+		pool.initialize();
+		try {
+			for (int i = 0; i < 3; i++) {
+				Item item = pool.getItem();
+				item.setItemId("item" + i);
+				pool.processItem(item);
+			}
+			long deadline = System.currentTimeMillis() + 10000;
+			while (received.size() < 3 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(20);
+			}
+			assertEquals("[3]", batchSizes.toString());
+		} finally {
+			pool.close();
+		}
+	}
+
+	private StageList newStageList() throws PipelineException {
+		StageList stageList = new StageList();
+		stageList.createPipeline(newParams());
+		stageList.initialize();
+		return stageList;
+	}
+
+	private XMLConfig newParams() {
+		batchSizes.clear();
+		received.clear();
+		single.clear();
+
+		XMLConfig params = new XMLConfig();
+		params.setProperty("batch-size", "10");
+		XMLConfig stages = params.addChild("stages");
+		stages.addChild("stage").setProperty("classname", MarkingStage.class.getName());
+		stages.addChild("stage").setProperty("classname", BatchSink.class.getName());
+		return params;
+	}
+
+	public static class MarkingStage extends Stage {
+		@Override
+		public void processItem(Item item) throws PipelineException {
+			item.getRootNode().addNode("mark", "marked");
+			super.pushItemDownPipeline(item);
+		}
+	}
+
+	public static class BatchSink extends Stage {
+		@Override
+		public void processItem(Item item) throws PipelineException {
+			// only an item with a stream arrives by itself
+			assertNotNull(item.getDocBinary());
+			single.add(item.getItemId() + "/" + item.getRootNode().getChildValue("mark"));
+		}
+
+		@Override
+		public void processBatch(List<Item> items) throws PipelineException {
+			batchSizes.add(items.size());
+			for (Item item: items) {
+				received.add(item.getItemId() + "/" + item.getRootNode().getChildValue("mark"));
+			}
+		}
+	}
+}
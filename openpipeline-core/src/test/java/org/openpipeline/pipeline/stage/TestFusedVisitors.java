@@ -0,0 +1,103 @@
+/*******************************************************************************
+ * Copyright 2010 Dieselpoint, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.openpipeline.pipeline.stage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.openpipeline.pipeline.item.Item;
+import org.openpipeline.pipeline.item.Node;
+import org.openpipeline.pipeline.item.NodeVisitor;
+import org.openpipeline.scheduler.PipelineException;
+import org.openpipeline.util.XMLConfig;
+
+/**
+ * Check that adjacent visitor stages run in a single pass over the item.
+ */
+public class TestFusedVisitors extends TestCase {
+
+	static List<String> visits = new ArrayList();
+
+	public void test() throws PipelineException {
+		assertEquals("[A:item, B:item, A:title, B:title, A:body, B:body]", run(true));
+		assertEquals("[A:item, A:title, A:body, B:item, B:title, B:body]", run(false));
+	}
+
+	private String run(boolean fuse) throws PipelineException {
+		XMLConfig params = new XMLConfig();
+		params.setProperty("fuse-visitors", Boolean.toString(fuse));
+		XMLConfig stages = params.addChild("stages");
+		stages.addChild("stage").setProperty("classname", VisitorA.class.getName());
+		stages.addChild("stage").setProperty("classname", VisitorB.class.getName());
+		stages.addChild("stage").setProperty("classname", Sink.class.getName());
+
+		StageList stageList = new StageList();
+		stageList.createPipeline(params);
+		stageList.initialize();
+
+		Item item = new Item();
+		item.getRootNode().addNode("title", "hello");
+		item.getRootNode().addNode("body", "world");
+		visits.clear();
+		stageList.processItem(item);
+		stageList.close();
+
+		assertTrue(visits.remove("sink"));
+		assertEquals(fuse ? 2 : 3, stageList.getStageStats().size());
+		if (fuse) {
+			assertEquals("A + B", stageList.getStageStats().get(0).getStageName());
+		}
+		return visits.toString();
+	}
+
+	public static class VisitorA extends Stage implements NodeVisitor {
+		@Override
+		public void processItem(Item item) throws PipelineException {
+			item.visitNodes(this);
+			super.pushItemDownPipeline(item);
+		}
+
+		public void processNode(Node node) {
+			visits.add(getDisplayName() + ":" + node.getName());
+		}
+
+		@Override
+		public boolean isFusableVisitor() {
+			return true;
+		}
+
+		@Override
+		public String getDisplayName() {
+			return "A";
+		}
+	}
+
+	public static class VisitorB extends VisitorA {
+		@Override
+		public String getDisplayName() {
+			return "B";
+		}
+	}
+
+	public static class Sink extends Stage {
+		@Override
+		public void processItem(Item item) {
+			visits.add("sink");
+		}
+	}
+}
@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright 2010 Dieselpoint, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.openpipeline.pipeline.stage;
+
+import junit.framework.TestCase;
+
+import org.openpipeline.pipeline.item.Item;
+import org.openpipeline.pipeline.item.Node;
+
+/**
+ * Tests item size estimation and server-wide admission control.
+ */
+public class TestItemAdmission extends TestCase {
+
+	private long oldMax;
+
+	@Override
+	protected void setUp() {
+		oldMax = ItemAdmission.getMaxBytes();
+	}
+
+	@Override
+	protected void tearDown() {
+		ItemAdmission.setMaxBytes(oldMax);
+	}
+
+	public void testEstimate() {
+		Item item = new Item();
+		long empty = item.estimateMemory();
+		Node root = item.getRootNode();
+		for (int i = 0; i < 100; i++) {
+			root.addNode("field", "some text in field " + i).putAnnotations("x", "annotation");
+		}
+		long full = item.estimateMemory();
+		assertTrue(full > empty + 100 * 40);
+		item.clear();
+		assertEquals(empty, item.estimateMemory());
+	}
+
+	public void testWait() throws Exception {
+		ItemAdmission.setMaxBytes(1000);
+		long base = ItemAdmission.getInFlightBytes();
+		long waits = ItemAdmission.getWaitCount();
+
+		// an item is admitted when nothing else is in flight, whatever its size
+		final long first = ItemAdmission.admit(5000);
+		assertEquals(base + 5000, ItemAdmission.getInFlightBytes());
+
+		final boolean[] admitted = new boolean[1];
+		Thread other = new Thread() {
+			public void run() {
+				try {
+					long bytes = ItemAdmission.admit(100);
+					synchronized (admitted) {
+						admitted[0] = true;
+					}
+					ItemAdmission.release(bytes);
+				} catch (Exception e) {
+					// fails the test below
+				}
+			}
+		};
+		other.start();
+		Thread.sleep(100);
+		synchronized (admitted) {
+			assertFalse(admitted[0]);
+		}
+
+		ItemAdmission.release(first);
+		other.join(5000);
+		assertTrue(admitted[0]);
+		assertEquals(waits + 1, ItemAdmission.getWaitCount());
+		assertEquals(base, ItemAdmission.getInFlightBytes());
+	}
+
+	public void testNested() throws Exception {
+		ItemAdmission.setMaxBytes(1000);
+		long outer = ItemAdmission.admit(800);
+		// the same thread is not blocked by its own item
+		long inner = ItemAdmission.admit(800);
+		assertEquals(0, inner);
+		ItemAdmission.release(inner);
+		ItemAdmission.release(outer);
+	}
+}
@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * Copyright 2010 Dieselpoint, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.openpipeline.pipeline.stage;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.openpipeline.pipeline.item.Item;
+import org.openpipeline.scheduler.PipelineException;
+import org.openpipeline.util.XMLConfig;
+
+/**
+ * Make sure a PipelinePool processes every item exactly once, and
+ * flushes and closes every replica.
+ */
+public class TestPipelinePool extends TestCase {
+
+	static Set<String> itemIds = ConcurrentHashMap.newKeySet();
+	static AtomicInteger flushCount = new AtomicInteger();
+	static AtomicInteger closeCount = new AtomicInteger();
+
+	public void test() throws PipelineException {
+		XMLConfig params = new XMLConfig();
+		XMLConfig stage = params.addChild("stages").addChild("stage");
+		stage.setProperty("classname", CollectingStage.class.getName());
+
+		PipelinePool pool = new PipelinePool();
+		pool.setQueueSize(10);
+		pool.createPipelines(params, 4);
+		pool.initialize();
+
+		int itemCount = 1000;
+		for (int i = 0; i < itemCount; i++) {
+			Item item = pool.getItem();
+			item.setItemId("item" + i);
+			item.getRootNode().addNode("num", i + "");
+			pool.processItem(item);
+		}
+		pool.close();
+
+		assertEquals(itemCount, itemIds.size());
+		assertEquals(4, flushCount.get());
+		assertEquals(4, closeCount.get());
+	}
+
+	/**
+	 * The worker threads stop even if a pipeline fails to flush.
+	 */
+	public void testFlushFails() throws PipelineException, InterruptedException {
+		XMLConfig params = new XMLConfig();
+		XMLConfig stage = params.addChild("stages").addChild("stage");
+		stage.setProperty("classname", FailingFlushStage.class.getName());
+
+		PipelinePool pool = new PipelinePool();
+		pool.createPipelines(params, 1);
+		pool.initialize();
+		pool.processItem(pool.getItem());
+		pool.waitUntilIdle();
+		try {
+			pool.close();
+			fail("flush error not thrown");
+		} catch (PipelineException e) {
+			// expected
+		}
+		FailingFlushStage.worker.join(5000);
+		assertFalse(FailingFlushStage.worker.isAlive());
+	}
+
+	public static class FailingFlushStage extends Stage {
+		static volatile Thread worker;
+
+		@Override
+		public void processItem(Item item) {
+			worker = Thread.currentThread();
+		}
+
+		@Override
+		public void flush() throws PipelineException {
+			throw new PipelineException("flush failed");
+		}
+	}
+
+	public static class CollectingStage extends Stage {
+
+		@Override
+		public void processItem(Item item) throws PipelineException {
+			String num = item.getRootNode().getChildValue("num");
+			if (!item.getItemId().equals("item" + num)) {
+				throw new PipelineException("Item was modified while in the queue");
+			}
+			if (!itemIds.add(item.getItemId())) {
+				throw new PipelineException("Item processed twice");
+			}
+			super.pushItemDownPipeline(item);
+		}
+
+		@Override
+		public void flush() {
+			flushCount.incrementAndGet();
+		}
+
+		@Override
+		public void close() {
+			closeCount.incrementAndGet();
+		}
+	}
+}
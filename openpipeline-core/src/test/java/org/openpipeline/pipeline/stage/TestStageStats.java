@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright 2010 Dieselpoint, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.openpipeline.pipeline.stage;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.openpipeline.pipeline.item.Item;
+import org.openpipeline.scheduler.PipelineException;
+import org.openpipeline.util.XMLConfig;
+
+/**
+ * Check the item counts and self times collected by StageList.
+ */
+public class TestStageStats extends TestCase {
+
+	public void test() throws PipelineException {
+		XMLConfig params = new XMLConfig();
+		XMLConfig stages = params.addChild("stages");
+		stages.addChild("stage").setProperty("classname", FilterStage.class.getName());
+		stages.addChild("stage").setProperty("classname", SlowStage.class.getName());
+
+		StageList stageList = new StageList();
+		stageList.createPipeline(params);
+		stageList.initialize();
+
+		Item item = new Item();
+		for (int i = 0; i < 10; i++) {
+			item.clear();
+			item.setItemId("item" + i);
+			stageList.processItem(item);
+		}
+		stageList.close();
+
+		List<StageStats> stats = stageList.getStageStats();
+		assertEquals(2, stats.size());
+
+		StageStats filter = stats.get(0);
+		StageStats slow = stats.get(1);
+		assertEquals(10, filter.getItemsIn());
+		assertEquals(5, filter.getItemsOut());
+		assertEquals(5, slow.getItemsIn());
+		assertEquals(5, slow.getItemsOut());
+
+		// the filter's own time should not include the sleep downstream
+		assertTrue(slow.getSelfNanos() >= 5 * 5000000L);
+		assertTrue(filter.getTotalNanos() >= slow.getTotalNanos());
+		assertTrue(filter.getSelfNanos() < slow.getSelfNanos() / 10);
+		assertTrue(slow.getSelfMicrosPercentile(0.5) >= 5000);
+	}
+
+	public void testDisabled() throws PipelineException {
+		XMLConfig params = new XMLConfig();
+		params.setProperty("stage-stats", "false");
+		params.addChild("stages").addChild("stage").setProperty("classname", FilterStage.class.getName());
+
+		StageList stageList = new StageList();
+		stageList.createPipeline(params);
+		assertTrue(stageList.getStageStats().isEmpty());
+	}
+
+	/**
+	 * Passes every other item.
+	 */
+	public static class FilterStage extends Stage {
+		private int count;
+
+		@Override
+		public void processItem(Item item) throws PipelineException {
+			if (count++ % 2 == 0) {
+				super.pushItemDownPipeline(item);
+			}
+		}
+	}
+
+	public static class SlowStage extends Stage {
+		@Override
+		public void processItem(Item item) throws PipelineException {
+			try {
+				Thread.sleep(5);
+			} catch (InterruptedException e) {
+				throw new PipelineException(e);
+			}
+		}
+	}
+}
@@ -0,0 +1,46 @@
+/*******************************************************************************
+ * Copyright 2010 Dieselpoint, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.openpipeline.util;
+
+import junit.framework.TestCase;
+
+public class TestFNVHash extends TestCase {
+
+	public void testKnownValues() {
+		assertEquals(0xcbf29ce484222325L, hash(""));
+		assertEquals(0xaf63dc4c8601ec8cL, hash("a"));
+		assertEquals(0x85944171f73967e8L, hash("foobar"));
+	}
+
+	public void testUpdate() {
+		char[] chars = "xfoobarx".toCharArray();
+		assertEquals(hash("foobar"), FNVHash.hash(chars, 1, 6));
+
+		long hash = FNVHash.OFFSET_BASIS;
+		for (char ch: "foobar".toCharArray()) {
+			hash = FNVHash.update(hash, ch);
+		}
+		assertEquals(hash("foobar"), hash);
+
+		// a long is hashed as its bytes, low byte first
+		assertEquals(FNVHash.update(FNVHash.OFFSET_BASIS, "a\0\0\0\0\0\0\0".toCharArray(), 0, 8),
+				FNVHash.update(FNVHash.OFFSET_BASIS, (long) 'a'));
+	}
+
+	private long hash(String str) {
+		return FNVHash.hash(str.toCharArray(), 0, str.length());
+	}
+}